@@ -129,6 +129,14 @@ public interface ExecPreparedStatement
 	 */
 	boolean needsSavepoint();
 
+	/**
+	 * Does this statement have an ORDER BY clause, so that its
+	 * rows must be returned in order
+	 *
+	 * @return true if the statement has an ORDER BY clause
+	 */
+	boolean hasOrderBy();
+
 	/**
 	 * Get a new prepared statement that is a shallow copy
 	 * of the current one.
@@ -115,6 +115,7 @@ public class GenericPreparedStatement implements ExecPreparedStatement {
     protected UUID UUIDValue;
 
     private boolean needsSavepoint;
+    private boolean hasOrderBy;
 
     private String execStmtName;
     private String execSchemaName;
@@ -1020,6 +1021,23 @@ public class GenericPreparedStatement implements ExecPreparedStatement {
         this.needsSavepoint = needsSavepoint;
     }
 
+    /**
+     * Does this statement have an ORDER BY clause?
+     */
+    @Override
+    public boolean hasOrderBy() {
+        return hasOrderBy;
+    }
+
+    /**
+     * Set the stmts 'hasOrderBy' state.
+     *
+     * @param hasOrderBy true if this statement has an ORDER BY clause
+     */
+    public void setHasOrderBy(boolean hasOrderBy) {
+        this.hasOrderBy = hasOrderBy;
+    }
+
     /**
      * Set the stmts 'isAtomic' state.
      *
@@ -1080,6 +1098,7 @@ public class GenericPreparedStatement implements ExecPreparedStatement {
         clone.updateColumns = updateColumns;
         clone.updateMode = updateMode;
         clone.needsSavepoint = needsSavepoint;
+        clone.hasOrderBy = hasOrderBy;
     }
 
     @Override
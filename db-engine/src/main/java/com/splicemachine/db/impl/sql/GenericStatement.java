@@ -616,6 +616,7 @@ public class GenericStatement implements Statement{
             preparedStmt.incrementVersionCounter();
             preparedStmt.setActivationClass(ac);
             preparedStmt.setNeedsSavepoint(qt.needsSavepoint());
+            preparedStmt.setHasOrderBy(qt.hasOrderBy());
             preparedStmt.setCursorInfo((CursorInfo)cc.getCursorInfo());
             preparedStmt.setIsAtomic(qt.isAtomic());
             preparedStmt.setExecuteStatementNameAndSchema(qt.executeStatementName(), qt.executeSchemaName());
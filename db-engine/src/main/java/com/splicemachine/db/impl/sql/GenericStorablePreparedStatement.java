@@ -176,6 +176,11 @@ public class GenericStorablePreparedStatement extends GenericPreparedStatement
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         setCursorInfo((CursorInfo) in.readObject());
         setNeedsSavepoint(in.readBoolean());
+        /*
+         * Whether the statement has an ORDER BY is not stored, so that statements stored by
+         * earlier versions can still be read; assume that it does.
+         */
+        setHasOrderBy(true);
         isAtomic = (in.readBoolean());
         executionConstants = (ConstantAction) in.readObject();
         resultDesc = (ResultDescription) in.readObject();
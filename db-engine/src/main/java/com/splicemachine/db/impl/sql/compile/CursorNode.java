@@ -57,6 +57,7 @@ public class CursorNode extends DMLStatementNode{
 
     private String name;
     private OrderByList orderByList;
+    private boolean hasOrderBy;
     private ValueNode offset;     // <result offset clause> value
     private ValueNode fetchFirst; // <fetch first clause> value
     private boolean hasJDBClimitClause; // true if using JDBC limit/offset escape syntax
@@ -112,6 +113,7 @@ public class CursorNode extends DMLStatementNode{
         this.name=(String)name;
         this.statementType=(String)statementType;
         this.orderByList=(OrderByList)orderByList;
+        this.hasOrderBy=orderByList!=null;
         this.offset=(ValueNode)offset;
         this.fetchFirst=(ValueNode)fetchFirst;
         this.hasJDBClimitClause=(hasJDBClimitClause!=null) && (Boolean)hasJDBClimitClause;
@@ -481,6 +483,17 @@ public class CursorNode extends DMLStatementNode{
         return false;
     }
 
+    /**
+     * The ORDER BY list itself is pushed into the result set during preprocessing (and may be removed entirely
+     * if the rows are already in order), so whether there was one is recorded when the cursor is created.
+     *
+     * @return true if the cursor has an ORDER BY clause
+     */
+    @Override
+    public boolean hasOrderBy(){
+        return hasOrderBy;
+    }
+
     /**
      * Get information about this cursor.  For sps,
      * this is info saved off of the original query
@@ -284,6 +284,23 @@ public class ExecSPSNode extends StatementNode
 		return ps.needsSavepoint();
 	}
 
+	/**
+	 * Whether the underlying statement has an ORDER BY clause.
+	 *
+	 * @return the hasOrderBy() state of the stored prepared statement
+	 */
+	@Override
+	public boolean hasOrderBy()
+	{
+		if (SanityManager.DEBUG)
+		{
+			SanityManager.ASSERT(ps != null,
+				"statement expected to be bound before calling hasOrderBy()");
+		}
+
+		return ps.hasOrderBy();
+	}
+
 	/** @see StatementNode#executeStatementName */
 	public String executeStatementName()
 	{
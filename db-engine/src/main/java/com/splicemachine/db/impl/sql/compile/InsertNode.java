@@ -86,6 +86,7 @@ public final class InsertNode extends DMLModStatementNode {
     public static final String INSERT_MODE = "insertMode";
     public static final String STATUS_DIRECTORY = "statusDirectory";
     public static final String BAD_RECORDS_ALLOWED = "badRecordsAllowed";
+    public static final String BULK_IMPORT_DIRECTORY = "bulkImportDirectory";
     public static final String INSERT = "INSERT";
 
 
@@ -100,6 +101,7 @@ public final class InsertNode extends DMLModStatementNode {
     private     boolean           hasJDBClimitClause; // true if using JDBC limit/offset escape syntax
     private     String              statusDirectory;
     private     int              badRecordsAllowed = 0;
+    private     String              bulkImportDirectory;
 
 
 	protected   RowLocation[] 		autoincRowLocation;
@@ -711,6 +713,7 @@ public final class InsertNode extends DMLModStatementNode {
 		String insertModeString = targetProperties.getProperty(INSERT_MODE);
         String statusDirectoryString = targetProperties.getProperty(STATUS_DIRECTORY);
         String failBadRecordCountString = targetProperties.getProperty(BAD_RECORDS_ALLOWED);
+        String bulkImportDirectoryString = targetProperties.getProperty(BULK_IMPORT_DIRECTORY);
 
 		if (insertModeString != null) {
             String upperValue = StringUtil.SQLToUpperCase(insertModeString);
@@ -731,6 +734,10 @@ public final class InsertNode extends DMLModStatementNode {
             statusDirectory = statusDirectoryString;
         }
 
+        if (bulkImportDirectoryString != null) {
+            // HFiles are staged here, validated for writing at execution time
+            bulkImportDirectory = bulkImportDirectoryString;
+        }
 
     }
 
@@ -950,12 +957,16 @@ public final class InsertNode extends DMLModStatementNode {
             else
                 mb.push(statusDirectory);
             mb.push(badRecordsAllowed);
+            if (bulkImportDirectory==null)
+                mb.pushNull("java.lang.String");
+            else
+                mb.push(bulkImportDirectory);
             mb.push((double) this.resultSet.getFinalCostEstimate().getEstimatedRowCount());
             mb.push(this.resultSet.getFinalCostEstimate().getEstimatedCost());
             mb.push(targetTableDescriptor.getVersion());
             mb.push(this.printExplainInformationForActivation());
 
-			mb.callMethod(VMOpcode.INVOKEINTERFACE, (String) null, "getInsertResultSet", ClassName.ResultSet, 10);
+			mb.callMethod(VMOpcode.INVOKEINTERFACE, (String) null, "getInsertResultSet", ClassName.ResultSet, 11);
 		}
 		else
 		{
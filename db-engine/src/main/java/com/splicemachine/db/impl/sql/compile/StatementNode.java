@@ -96,6 +96,16 @@ public abstract class StatementNode extends QueryTreeNode{
      */
     public boolean needsSavepoint(){ return true; }
 
+    /**
+     * Returns whether or not the results of this Statement must be returned in a
+     * specific order, i.e. whether it has an ORDER BY clause.
+     * <p/>
+     * This implementation returns false, cursors override it.
+     *
+     * @return boolean    Whether or not this Statement has an ORDER BY clause
+     */
+    public boolean hasOrderBy(){ return false; }
+
     /**
      * Get the name of the SPS that is used to execute this statement. Only
      * relevant for an ExecSPSNode -- otherwise, returns null.
@@ -96,7 +96,8 @@ public class HBasePipelineEnvironment implements PipelineEnvironment{
         KryoPool kryoPool=new KryoPool(pipelineConfiguration.getPipelineKryoPoolSize());
         kryoPool.setKryoRegistry(new PipelineKryoRegistry());
         //TODO -sf- enable snappy compression here
-        this.compressor = new SimplePipelineCompressor(kryoPool,env.getSIDriver().getOperationFactory());
+        this.compressor = new SimplePipelineCompressor(kryoPool,env.getSIDriver().getOperationFactory(),
+                pipelineConfiguration.getCompactPipelineEncoding());
 
         RpcChannelFactory channelFactory = ChannelFactoryService.loadChannelFactory(this.pipelineConfiguration);
         this.writerFactory = new CoprocessorWriterFactory(compressor,partitionInfoCache(),pipelineExceptionFactory,channelFactory,
@@ -27,6 +27,7 @@ import com.splicemachine.pipeline.PipelineDriver;
 import com.splicemachine.pipeline.PipelineEnvironment;
 import com.splicemachine.pipeline.api.PipelineExceptionFactory;
 import com.splicemachine.pipeline.client.WriteResult;
+import com.splicemachine.pipeline.constraint.ForeignKeyParentKeyCache;
 import com.splicemachine.pipeline.context.WriteContext;
 import com.splicemachine.pipeline.contextfactory.ContextFactoryDriver;
 import com.splicemachine.pipeline.contextfactory.ContextFactoryLoader;
@@ -44,10 +45,12 @@ import com.splicemachine.utils.SpliceLogUtils;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.Durability;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.BaseRegionObserver;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
 import org.apache.hadoop.hbase.regionserver.RegionCoprocessorHost;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
 import org.apache.hadoop.hbase.regionserver.RegionServerServices;
 import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
 import org.apache.hadoop.hbase.regionserver.HRegion;
@@ -93,6 +96,7 @@ public class SpliceIndexObserver extends BaseRegionObserver {
         }
 
         final long cId = conglomId;
+        invalidateForeignKeyCache();
         final RegionPartition baseRegion=new RegionPartition((HRegion)rce.getRegion());
         ServerControl sc = new RegionServerControl((HRegion)rce.getRegion(),rce.getRegionServerServices());
         try{
@@ -145,6 +149,7 @@ public class SpliceIndexObserver extends BaseRegionObserver {
     @Override
     public void stop(CoprocessorEnvironment e) throws IOException {
         super.stop(e);
+        invalidateForeignKeyCache();
         if (region != null)
             region.close();
         if(service!=null)
@@ -188,6 +193,21 @@ public class SpliceIndexObserver extends BaseRegionObserver {
         super.prePut(e, put, edit, durability);
     }
 
+    @Override
+    public RegionScanner preScannerOpen(ObserverContext<RegionCoprocessorEnvironment> e,Scan scan,RegionScanner s) throws IOException{
+        if(conglomId>0){
+            /*
+             * A parent row is being deleted, and the parent is scanning this FK backing index for references. Drop
+             * the key from the FK cache here, since this is the region server which checks child writes for it.
+             */
+            byte[] fkInvalidation=scan.getAttribute(ForeignKeyParentKeyCache.INVALIDATE_ATTRIBUTE);
+            PipelineDriver pipelineDriver=PipelineDriver.driver();
+            if(fkInvalidation!=null && pipelineDriver!=null)
+                pipelineDriver.foreignKeyParentKeyCache().invalidate(conglomId,fkInvalidation);
+        }
+        return super.preScannerOpen(e,scan,s);
+    }
+
     @Override
     public void postRollBackSplit(ObserverContext<RegionCoprocessorEnvironment> ctx) throws IOException{
         RegionCoprocessorEnvironment rce=ctx.getEnvironment();
@@ -202,6 +222,16 @@ public class SpliceIndexObserver extends BaseRegionObserver {
      * ***************************************************************************************************************
      */
     /*private helper methods*/
+    private void invalidateForeignKeyCache(){
+        /*
+         * While the region is hosted elsewhere, parent deletes evict their keys over there, so whatever this
+         * server verified for the index before can't be trusted anymore.
+         */
+        PipelineDriver pipelineDriver=PipelineDriver.driver();
+        if(conglomId>0 && pipelineDriver!=null)
+            pipelineDriver.foreignKeyParentKeyCache().invalidateAll(conglomId);
+    }
+
     private void mutate(KVPair mutation,TxnView txn) throws IOException {
         if (LOG.isTraceEnabled())
             SpliceLogUtils.trace(LOG, "mutate %s", mutation);
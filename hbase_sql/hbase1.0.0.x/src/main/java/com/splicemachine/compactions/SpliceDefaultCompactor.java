@@ -260,9 +260,13 @@ public class SpliceDefaultCompactor extends DefaultCompactor {
                 }
                 if (needsSI(store.getTableName())) {
                     SIDriver driver=SIDriver.driver();
+                    long lowWatermark=driver.getConfiguration().getCompactionPurgeVersions()?
+                            driver.getTxnLowWatermark().lowWatermark():0L;
                     SICompactionState state = new SICompactionState(driver.getTxnSupplier(),
                             driver.getRollForward(),
-                            driver.getConfiguration().getActiveTransactionCacheSize());
+                            driver.getConfiguration().getActiveTransactionCacheSize(),
+                            lowWatermark,
+                            scanType==ScanType.COMPACT_DROP_DELETES);
                     scanner = new SICompactionScanner(state,scanner);
                 }
                 if (scanner == null) {
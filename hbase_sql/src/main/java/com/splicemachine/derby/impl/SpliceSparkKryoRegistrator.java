@@ -39,6 +39,7 @@ import com.splicemachine.derby.impl.sql.execute.actions.DeleteConstantOperation;
 import com.splicemachine.derby.impl.sql.execute.actions.InsertConstantOperation;
 import com.splicemachine.derby.impl.sql.execute.actions.UpdateConstantOperation;
 import com.splicemachine.derby.impl.sql.execute.operations.*;
+import com.splicemachine.derby.impl.sql.execute.operations.batchonce.BatchOnceOperation;
 import com.splicemachine.derby.impl.sql.execute.operations.framework.DerbyAggregateContext;
 import com.splicemachine.derby.impl.sql.execute.operations.groupedaggregate.DerbyGroupedAggregateContext;
 import com.splicemachine.derby.impl.store.access.btree.IndexConglomerate;
@@ -684,6 +685,11 @@ public class SpliceSparkKryoRegistrator implements KryoRegistrator, KryoPool.Kry
         instance.register(MapFunction.class,EXTERNALIZABLE_SERIALIZER);
         instance.register(RowTransformFunction.class,EXTERNALIZABLE_SERIALIZER);
         instance.register(TxnViewDecoderFunction.class,EXTERNALIZABLE_SERIALIZER);
+        // operation trees are broadcast with this registry, see BroadcastedActivation
+        instance.register(RowCountOperation.class,EXTERNALIZABLE_SERIALIZER);
+        instance.register(WindowOperation.class,EXTERNALIZABLE_SERIALIZER);
+        instance.register(SetOpOperation.class,EXTERNALIZABLE_SERIALIZER);
+        instance.register(BatchOnceOperation.class,EXTERNALIZABLE_SERIALIZER);
 
 
     }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.derby.stream.ActivationHolder;
+import org.spark_project.guava.cache.Cache;
+import org.spark_project.guava.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deserialized ActivationHolders of an executor, by broadcast id.
+ *
+ * A holder is assigned to a task attempt until the task completes, and is then kept idle for the next task
+ * reading the same broadcast. ActivationHolder isn't thread safe, so tasks running concurrently are never
+ * handed the same holder. Idle holders of a broadcast expire once no task has asked for them for a while.
+ */
+class ActivationHolderCache {
+    /* Holders not in use by any task, by broadcast id */
+    private final Cache<Long, Queue<ActivationHolder>> idleHolders;
+    /* Holders in use, by task attempt and broadcast id */
+    private final ConcurrentMap<TaskActivation, ActivationHolder> taskHolders = new ConcurrentHashMap<>();
+
+    ActivationHolderCache(long idleExpiration, TimeUnit unit) {
+        this(CacheBuilder.newBuilder().expireAfterAccess(idleExpiration, unit).<Long, Queue<ActivationHolder>>build());
+    }
+
+    ActivationHolderCache(Cache<Long, Queue<ActivationHolder>> idleHolders) {
+        this.idleHolders = idleHolders;
+    }
+
+    /**
+     * @return the holder the task attempt was assigned for the broadcast, or null if it has none yet
+     */
+    ActivationHolder taskHolder(long taskAttemptId, long broadcastId) {
+        return taskHolders.get(new TaskActivation(taskAttemptId, broadcastId));
+    }
+
+    /**
+     * Assign the task attempt an idle holder of the broadcast, or one from {@code deserializer} if there is none.
+     * The holder must be handed back with {@link #release(long, long)} once the task completes.
+     */
+    ActivationHolder acquire(long taskAttemptId, long broadcastId, Callable<ActivationHolder> deserializer) throws IOException {
+        ActivationHolder ah = idleQueue(broadcastId).poll();
+        if (ah == null) {
+            try {
+                ah = deserializer.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        taskHolders.put(new TaskActivation(taskAttemptId, broadcastId), ah);
+        return ah;
+    }
+
+    /**
+     * Make the holder of the task attempt available to the next task reading the broadcast.
+     */
+    void release(long taskAttemptId, long broadcastId) {
+        ActivationHolder released = taskHolders.remove(new TaskActivation(taskAttemptId, broadcastId));
+        if (released != null)
+            idleQueue(broadcastId).offer(released);
+    }
+
+    private Queue<ActivationHolder> idleQueue(long broadcastId) {
+        ConcurrentMap<Long, Queue<ActivationHolder>> idle = idleHolders.asMap();
+        Queue<ActivationHolder> queue = idle.get(broadcastId);
+        if (queue == null) {
+            Queue<ActivationHolder> newQueue = new ConcurrentLinkedQueue<>();
+            queue = idle.putIfAbsent(broadcastId, newQueue);
+            if (queue == null)
+                queue = newQueue;
+        }
+        return queue;
+    }
+
+    private static class TaskActivation {
+        private final long taskAttemptId;
+        private final long broadcastId;
+
+        TaskActivation(long taskAttemptId, long broadcastId) {
+            this.taskAttemptId = taskAttemptId;
+            this.broadcastId = broadcastId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TaskActivation)) return false;
+            TaskActivation that = (TaskActivation) o;
+            return taskAttemptId == that.taskAttemptId && broadcastId == that.broadcastId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (taskAttemptId ^ (taskAttemptId >>> 32)) + (int) (broadcastId ^ (broadcastId >>> 32));
+        }
+    }
+}
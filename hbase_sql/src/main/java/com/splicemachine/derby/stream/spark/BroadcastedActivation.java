@@ -15,24 +15,38 @@
 
 package com.splicemachine.derby.stream.spark;
 
-import com.google.protobuf.ByteString;
-import com.google.protobuf.ZeroCopyLiteralByteString;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.splicemachine.db.iapi.sql.Activation;
 import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
-import com.splicemachine.derby.impl.SpliceSpark;import com.splicemachine.derby.stream.ActivationHolder;
+import com.splicemachine.derby.impl.SpliceSpark;
+import com.splicemachine.derby.impl.SpliceSparkKryoRegistrator;
+import com.splicemachine.derby.stream.ActivationHolder;
+import com.splicemachine.utils.kryo.KryoPool;
+import org.apache.spark.TaskContext;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.util.TaskCompletionListener;
 
 import java.io.*;
-import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encapsulates and ActivationHolder and the Broadcast Spark object used to transfer it to all servers.
  * Makes it possible to (de)serialize only once the activation and operation tree.
  *
+ * The ActivationHolder is encoded with Kryo. On executors the deserialized holders are cached by broadcast id
+ * (see {@link ActivationHolderCache}): all the BroadcastedActivations read by a task share one holder, and when
+ * the task completes the holder is handed on to the next task of the same job. ActivationHolder isn't thread
+ * safe, so tasks running concurrently each deserialize a holder of their own.
+ *
  * Created by dgomezferro on 1/14/16.
  */
 public class BroadcastedActivation implements Externalizable {
-    private static ThreadLocal<ActivationHolderAndBytes> activationHolderTL =new ThreadLocal<>();
+    private static final KryoPool kp = SpliceSparkKryoRegistrator.getInstance();
+    private static final ActivationHolderCache holders = new ActivationHolderCache(5, TimeUnit.MINUTES);
+
     private byte[] serializedValue;
     private ActivationHolder activationHolder;
     private Broadcast<byte[]> bcast;
@@ -56,13 +70,8 @@ public class BroadcastedActivation implements Externalizable {
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         bcast = (Broadcast<byte[]>) in.readObject();
         serializedValue = bcast.getValue();
-        ActivationHolderAndBytes ah= activationHolderTL.get();
-        if(ah==null || !Arrays.equals(ah.bytes,serializedValue)){
-            ah = readActivationHolder();
-            activationHolderTL.set(ah);
-        }
-
-        activationHolder = ah.activationHolder;
+        TaskContext taskContext = TaskContext.get();
+        activationHolder = taskContext == null ? readActivationHolder() : taskActivationHolder(taskContext);
     }
 
     public ActivationHolder getActivationHolder() {
@@ -70,43 +79,48 @@ public class BroadcastedActivation implements Externalizable {
     }
 
     private byte[] writeActivationHolder(){
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try(ObjectOutputStream oos = new ObjectOutputStream(baos)){
-            oos.writeObject(activationHolder);
-        }catch(IOException e){
-            throw new RuntimeException(e);
-        }
-        return baos.toByteArray();
-    }
-
-    public ActivationHolderAndBytes readActivationHolder(){
-        ByteArrayInputStream bais = new ByteArrayInputStream(serializedValue);
-        try(ObjectInputStream ois = new ObjectInputStream(bais)){
-            return new ActivationHolderAndBytes((ActivationHolder)ois.readObject(),serializedValue);
-        }catch(ClassNotFoundException | IOException e){
-            throw new RuntimeException(e);
+        Output output = new Output(4096, -1);
+        Kryo kryo = kp.get();
+        try {
+            kryo.writeClassAndObject(output, activationHolder);
+        } finally {
+            kp.returnInstance(kryo);
         }
+        return output.toBytes();
     }
 
-    public static class ActivationHolderAndBytes {
-        ActivationHolder activationHolder;
-        byte[] bytes;
-
-        public ActivationHolderAndBytes(ActivationHolder activationHolder,byte[] bytes){
-            this.activationHolder=activationHolder;
-            this.bytes=bytes;
-        }
-
-        public ActivationHolder getActivationHolder() {
-            return activationHolder;
+    public ActivationHolder readActivationHolder(){
+        Kryo kryo = kp.get();
+        try {
+            return (ActivationHolder) kryo.readClassAndObject(new Input(serializedValue));
+        } finally {
+            kp.returnInstance(kryo);
         }
     }
 
-    public ActivationHolderAndBytes getActivationHolderAndBytes() {
-        return activationHolderTL.get();
-    }
-
     public void setActivationHolder(ActivationHolder ah) {
         activationHolder = ah;
     }
-}
\ No newline at end of file
+
+    private ActivationHolder taskActivationHolder(TaskContext taskContext) throws IOException {
+        final long taskAttemptId = taskContext.taskAttemptId();
+        final long broadcastId = bcast.id();
+        ActivationHolder ah = holders.taskHolder(taskAttemptId, broadcastId);
+        if (ah != null)
+            return ah; // another operation of this task already has it
+
+        ah = holders.acquire(taskAttemptId, broadcastId, new Callable<ActivationHolder>() {
+            @Override
+            public ActivationHolder call() {
+                return readActivationHolder();
+            }
+        });
+        taskContext.addTaskCompletionListener(new TaskCompletionListener() {
+            @Override
+            public void onTaskCompletion(TaskContext context) {
+                holders.release(taskAttemptId, broadcastId);
+            }
+        });
+        return ah;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.access.HConfiguration;
+import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.access.hbase.HBaseConnectionFactory;
+import com.splicemachine.access.hbase.HBaseTableInfoFactory;
+import com.splicemachine.db.catalog.IndexDescriptor;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.conn.LanguageConnectionContext;
+import com.splicemachine.db.iapi.sql.dictionary.ConglomerateDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.ConstraintDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.DataDictionary;
+import com.splicemachine.db.iapi.sql.dictionary.TableDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.ddl.DDLMessage;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.impl.SpliceSpark;
+import com.splicemachine.derby.impl.sql.execute.operations.InsertOperation;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
+import com.splicemachine.derby.stream.iapi.DataSet;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import com.splicemachine.derby.stream.iapi.TableWriter;
+import com.splicemachine.derby.stream.output.DataSetWriter;
+import com.splicemachine.derby.stream.output.WriteReadUtils;
+import com.splicemachine.derby.stream.output.insert.InsertPipelineWriter;
+import com.splicemachine.pipeline.ErrorState;
+import com.splicemachine.pipeline.Exceptions;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.protobuf.ProtoUtil;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.driver.SIDriver;
+import com.splicemachine.utils.SpliceLogUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.log4j.Logger;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.storage.StorageLevel;
+import scala.util.Either;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes the rows of an import directly into HFiles and bulk loads them into the base table and its indexes,
+ * bypassing the write pipeline.
+ *
+ * The import runs in a child transaction of the statement: every cell is written with the begin timestamp of
+ * that transaction, which is committed once all the HFiles have been loaded (or rolled back if anything fails),
+ * so the loaded rows become visible atomically.
+ *
+ * Since no write goes through the pipeline, constraints are only checked among the imported rows themselves:
+ * primary key and unique index violations within the imported data fail the import, but collisions with rows
+ * already in the table would not be detected. Tables with triggers or foreign keys, and non-empty tables with a
+ * primary key or a unique index, are therefore imported through the pipeline instead
+ * (see {@link SparkInsertTableWriterBuilder}).
+ */
+public class BulkImportDataSetWriter<K, V> implements DataSetWriter {
+    private static final Logger LOG = Logger.getLogger(BulkImportDataSetWriter.class);
+    /**
+     * Number of encoded keys sampled for each partition of the sorted output to compute its split points
+     */
+    private static final int SAMPLE_SIZE_PER_PARTITION = 20;
+    /**
+     * Maximum number of encoded keys used to compute the split points, however many partitions there are
+     */
+    private static final int MAX_SAMPLE_SIZE = 100000;
+
+    private JavaPairRDD<K, Either<Exception, V>> rdd;
+    private OperationContext<? extends SpliceOperation> opContext;
+    private int[] pkCols;
+    private String tableVersion;
+    private ExecRow execRowDefinition;
+    private long heapConglom;
+    private String bulkImportDirectory;
+    private TxnView txn;
+
+    public BulkImportDataSetWriter() {
+    }
+
+    public BulkImportDataSetWriter(JavaPairRDD<K, Either<Exception, V>> rdd,
+                                   OperationContext<? extends SpliceOperation> opContext,
+                                   int[] pkCols,
+                                   String tableVersion,
+                                   ExecRow execRowDefinition,
+                                   long heapConglom,
+                                   String bulkImportDirectory) {
+        this.rdd = rdd;
+        this.opContext = opContext;
+        this.pkCols = pkCols;
+        this.tableVersion = tableVersion;
+        this.execRowDefinition = execRowDefinition;
+        this.heapConglom = heapConglom;
+        this.bulkImportDirectory = bulkImportDirectory;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public DataSet<LocatedRow> write() throws StandardException {
+        LanguageConnectionContext lcc = opContext.getActivation().getLanguageConnectionContext();
+        List<byte[]> indexes = getTentativeIndexes(lcc, heapConglom);
+        int[] formatIds = WriteReadUtils.getExecRowTypeFormatIds(execRowDefinition);
+        JavaPairRDD<K, Either<Exception, ExecRow>> rows = (JavaPairRDD) rdd;
+        TableDescriptor td = getTableDescriptor(lcc, heapConglom);
+        HashMap<Long, String> constraintNames = getConstraintNames(lcc, td);
+
+        Txn importTxn;
+        try {
+            importTxn = SIDriver.driver().lifecycleManager().beginChildTransaction(getTxn(), getDestinationTable());
+        } catch (IOException e) {
+            throw Exceptions.parseException(e);
+        }
+        SConfiguration sConfig = HConfiguration.getConfiguration();
+        Configuration conf = HConfiguration.unwrapDelegate();
+        Path stagingDirectory = new Path(bulkImportDirectory, "bulk-" + importTxn.getTxnId());
+        FileSystem fs = null;
+        JavaPairRDD<BulkImportKey, byte[]> encoded = null;
+        boolean committed = false;
+        try {
+            fs = FileSystem.get(stagingDirectory.toUri(), conf);
+            Connection connection = HBaseConnectionFactory.getInstance(sConfig).getConnection();
+            List<Long> conglomerates = new ArrayList<>(indexes.size() + 1);
+            conglomerates.add(heapConglom);
+            for (byte[] index : indexes) {
+                conglomerates.add(DDLMessage.TentativeIndex.parseFrom(index).getIndex().getConglomerate());
+            }
+
+            /*
+             * The rows are encoded (and writes and bad records counted) exactly once: the encoded cells are kept
+             * so that the same data is sampled for the split points and then sorted into HFiles.
+             */
+            int numPartitions = Math.max(1, rows.getNumPartitions());
+            encoded = rows.mapPartitionsToPair(new BulkImportEncodeFunction<K>(opContext, heapConglom, pkCols,
+                    tableVersion, formatIds, indexes))
+                    .persist(StorageLevel.MEMORY_AND_DISK_SER());
+            BulkImportPartitioner partitioner = new BulkImportPartitioner(
+                    getBoundaries(encoded, conglomerates, connection, sConfig, numPartitions));
+            encoded.repartitionAndSortWithinPartitions(partitioner)
+                    .foreachPartition(new BulkImportHFileWriterFunction(stagingDirectory.toString(),
+                            importTxn.getBeginTimestamp(), sConfig.getCompressionAlgorithm(), td.getName(), constraintNames));
+
+            LoadIncrementalHFiles loader = new LoadIncrementalHFiles(conf);
+            try (Admin admin = connection.getAdmin()) {
+                for (Long conglomerate : conglomerates) {
+                    Path conglomerateDirectory = new Path(stagingDirectory, conglomerate.toString());
+                    if (!fs.exists(conglomerateDirectory))
+                        continue;
+                    TableName tableName = HBaseTableInfoFactory.getInstance(sConfig).getTableInfo(conglomerate.toString());
+                    try (Table table = connection.getTable(tableName);
+                         RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+                        loader.doBulkLoad(conglomerateDirectory, admin, table, regionLocator);
+                    }
+                }
+            }
+            importTxn.commit();
+            committed = true;
+        } catch (Exception e) {
+            throw Exceptions.parseException(e);
+        } finally {
+            if (!committed) {
+                try {
+                    importTxn.rollback();
+                } catch (IOException e) {
+                    SpliceLogUtils.error(LOG, "Unable to roll back bulk import transaction", e);
+                }
+            }
+            if (encoded != null)
+                encoded.unpersist();
+            deleteStagingDirectory(fs, stagingDirectory);
+        }
+
+        ValueRow valueRow = new ValueRow(3);
+        valueRow.setColumn(1, new SQLLongint(opContext.getRecordsWritten()));
+        valueRow.setColumn(2, new SQLLongint());
+        valueRow.setColumn(3, new SQLVarchar());
+        InsertOperation insertOperation = ((InsertOperation) opContext.getOperation());
+        if (insertOperation != null && opContext.isPermissive()) {
+            long numBadRecords = opContext.getBadRecords();
+            valueRow.setColumn(2, new SQLLongint(numBadRecords));
+            if (numBadRecords > 0) {
+                String fileName = opContext.getBadRecordFileName();
+                valueRow.setColumn(3, new SQLVarchar(fileName));
+                if (insertOperation.isAboveFailThreshold(numBadRecords)) {
+                    throw ErrorState.LANG_IMPORT_TOO_MANY_BAD_RECORDS.newException(fileName);
+                }
+            }
+        }
+        return new SparkDataSet<>(SpliceSpark.getContext().parallelize(Collections.singletonList(new LocatedRow(valueRow)), 1));
+    }
+
+    /**
+     * Computes the split points of the sorted output: the region boundaries of every conglomerate we write to, so
+     * that no HFile has to be split while loading, plus evenly spaced keys from a sample of the encoded cells, so that
+     * the sort is balanced even when the tables have a single region.
+     */
+    private static List<BulkImportKey> getBoundaries(JavaPairRDD<BulkImportKey, byte[]> encoded,
+                                                 List<Long> conglomerates,
+                                                 Connection connection,
+                                                 SConfiguration sConfig,
+                                                 int numPartitions) throws IOException {
+        SortedSet<BulkImportKey> boundaries = new TreeSet<>();
+        if (numPartitions > 1) {
+            int sampleSize = sampleSizePerPartition(numPartitions, Math.max(1, encoded.getNumPartitions()));
+            List<BulkImportKey> sample = encoded.keys()
+                    .mapPartitions(new BulkImportSampleFunction(sampleSize))
+                    .collect();
+            if (!sample.isEmpty()) {
+                List<BulkImportKey> sorted = new ArrayList<>(sample);
+                Collections.sort(sorted);
+                for (int i = 1; i < numPartitions; i++) {
+                    boundaries.add(sorted.get((int) ((long) i * sorted.size() / numPartitions)));
+                }
+            }
+        }
+        for (Long conglomerate : conglomerates) {
+            TableName tableName = HBaseTableInfoFactory.getInstance(sConfig).getTableInfo(conglomerate.toString());
+            try (RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+                for (byte[] startKey : regionLocator.getStartKeys()) {
+                    boundaries.add(new BulkImportKey(conglomerate, startKey));
+                }
+            }
+        }
+        return new ArrayList<>(boundaries);
+    }
+
+    /**
+     * @return the number of keys to sample from each of the {@code inputPartitions} partitions of the encoded cells,
+     * for {@link #SAMPLE_SIZE_PER_PARTITION} keys (but no more than {@link #MAX_SAMPLE_SIZE} in all) for each of the
+     * {@code numPartitions} partitions of the sorted output. Like Spark's RangePartitioner, we sample three times as
+     * many keys as that, since the input partitions may not be balanced.
+     */
+    static int sampleSizePerPartition(int numPartitions, int inputPartitions) {
+        long sampleSize = Math.min((long) SAMPLE_SIZE_PER_PARTITION * numPartitions, MAX_SAMPLE_SIZE);
+        return (int) Math.ceil(3.0d * sampleSize / inputPartitions);
+    }
+
+    private static void deleteStagingDirectory(FileSystem fs, Path stagingDirectory) {
+        if (fs == null)
+            return;
+        try {
+            fs.delete(stagingDirectory, true);
+        } catch (IOException e) {
+            SpliceLogUtils.warn(LOG, "Unable to delete bulk import staging directory %s: %s", stagingDirectory, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the serialized {@link DDLMessage.TentativeIndex} of each index of the table stored in {@code heapConglom}
+     */
+    static List<byte[]> getTentativeIndexes(LanguageConnectionContext lcc, long heapConglom) throws StandardException {
+        TableDescriptor td = getTableDescriptor(lcc, heapConglom);
+        Map<Long, ConglomerateDescriptor> indexConglomerates = new LinkedHashMap<>();
+        for (ConglomerateDescriptor cd : td.getConglomerateDescriptorList()) {
+            if (!cd.isIndex())
+                continue;
+            // several descriptors may share the same conglomerate, in which case the unique one defines its encoding
+            ConglomerateDescriptor previous = indexConglomerates.get(cd.getConglomerateNumber());
+            if (previous == null || (!previous.getIndexDescriptor().isUnique() && cd.getIndexDescriptor().isUnique()))
+                indexConglomerates.put(cd.getConglomerateNumber(), cd);
+        }
+        List<byte[]> indexes = new ArrayList<>(indexConglomerates.size());
+        for (ConglomerateDescriptor cd : indexConglomerates.values()) {
+            IndexDescriptor indexDescriptor = cd.getIndexDescriptor().getIndexDescriptor();
+            indexes.add(ProtoUtil.createTentativeIndex(lcc, heapConglom, cd.getConglomerateNumber(), td, indexDescriptor).toByteArray());
+        }
+        return indexes;
+    }
+
+    /**
+     * @return true if the HBase table of {@code conglomerate} holds no cell at all. Deleted rows which have not
+     * been compacted away yet count as data, so this may report a logically empty table as non-empty, never the
+     * opposite.
+     */
+    static boolean isEmpty(long conglomerate) throws StandardException {
+        SConfiguration sConfig = HConfiguration.getConfiguration();
+        try {
+            Connection connection = HBaseConnectionFactory.getInstance(sConfig).getConnection();
+            TableName tableName = HBaseTableInfoFactory.getInstance(sConfig).getTableInfo(Long.toString(conglomerate));
+            Scan scan = new Scan();
+            scan.setFilter(new FirstKeyOnlyFilter());
+            scan.setCaching(1);
+            try (Table table = connection.getTable(tableName);
+                 ResultScanner scanner = table.getScanner(scan)) {
+                return scanner.next() == null;
+            }
+        } catch (IOException e) {
+            throw Exceptions.parseException(e);
+        }
+    }
+
+    /**
+     * @return the name reported for a duplicate key in each conglomerate of the table: the primary key constraint
+     * for the base table, and the constraint or index name for each index
+     */
+    static HashMap<Long, String> getConstraintNames(LanguageConnectionContext lcc, TableDescriptor td) throws StandardException {
+        DataDictionary dd = lcc.getDataDictionary();
+        ConstraintDescriptor pk = dd.getConstraintDescriptors(td).getPrimaryKey();
+        HashMap<Long, String> names = new HashMap<>();
+        for (ConglomerateDescriptor cd : td.getConglomerateDescriptorList()) {
+            long conglomerate = cd.getConglomerateNumber();
+            if (!cd.isIndex()) {
+                names.put(conglomerate, pk != null ? pk.getConstraintName() : td.getName());
+            } else if (cd.isConstraint()) {
+                // several descriptors may share the same conglomerate, in which case the constraint names it
+                ConstraintDescriptor constraint = dd.getConstraintDescriptor(td, cd.getUUID());
+                names.put(conglomerate, constraint != null ? constraint.getConstraintName() : cd.getConglomerateName());
+            } else if (!names.containsKey(conglomerate)) {
+                names.put(conglomerate, cd.getConglomerateName());
+            }
+        }
+        return names;
+    }
+
+    static TableDescriptor getTableDescriptor(LanguageConnectionContext lcc, long heapConglom) throws StandardException {
+        DataDictionary dd = lcc.getDataDictionary();
+        ConglomerateDescriptor cd = dd.getConglomerateDescriptor(heapConglom);
+        return dd.getTableDescriptor(cd.getTableID());
+    }
+
+    @Override
+    public void setTxn(TxnView childTxn) {
+        this.txn = childTxn;
+    }
+
+    @Override
+    public TableWriter getTableWriter() throws StandardException {
+        return new InsertPipelineWriter(pkCols, tableVersion, execRowDefinition, null, null, heapConglom,
+                txn, opContext, false);
+    }
+
+    @Override
+    public TxnView getTxn() {
+        if (txn == null)
+            return opContext.getTxn();
+        else
+            return txn;
+    }
+
+    @Override
+    public byte[] getDestinationTable() {
+        return Bytes.toBytes(heapConglom);
+    }
+}
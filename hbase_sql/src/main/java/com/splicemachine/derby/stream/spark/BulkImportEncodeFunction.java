@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.ddl.DDLMessage;
+import com.splicemachine.derby.impl.sql.execute.index.IndexTransformer;
+import com.splicemachine.derby.impl.sql.execute.operations.DMLWriteOperation;
+import com.splicemachine.derby.stream.ActivationHolder;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import com.splicemachine.derby.stream.output.WriteReadUtils;
+import com.splicemachine.derby.stream.output.insert.InsertPipelineWriter;
+import com.splicemachine.derby.utils.marshall.PairEncoder;
+import com.splicemachine.kvpair.KVPair;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import scala.Tuple2;
+import scala.util.Either;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Encodes the rows of a bulk import into the cells of the base table and of each of its indexes, exactly as the
+ * write pipeline would encode them.
+ */
+public class BulkImportEncodeFunction<K> implements PairFlatMapFunction<Iterator<Tuple2<K, Either<Exception, ExecRow>>>, BulkImportKey, byte[]>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private OperationContext operationContext;
+    private long heapConglom;
+    private int[] pkCols;
+    private String tableVersion;
+    private int[] execRowTypeFormatIds;
+    private List<byte[]> indexes;
+
+    public BulkImportEncodeFunction() {
+    }
+
+    /**
+     * @param indexes the serialized {@link DDLMessage.TentativeIndex} of each index of the table
+     */
+    public BulkImportEncodeFunction(OperationContext operationContext, long heapConglom, int[] pkCols, String tableVersion,
+                                    int[] execRowTypeFormatIds, List<byte[]> indexes) {
+        this.operationContext = operationContext;
+        this.heapConglom = heapConglom;
+        this.pkCols = pkCols;
+        this.tableVersion = tableVersion;
+        this.execRowTypeFormatIds = execRowTypeFormatIds;
+        this.indexes = indexes;
+    }
+
+    @Override
+    public Iterator<Tuple2<BulkImportKey, byte[]>> call(Iterator<Tuple2<K, Either<Exception, ExecRow>>> rows) throws Exception {
+        ExecRow template = WriteReadUtils.getExecRowFromTypeFormatIds(execRowTypeFormatIds);
+        PairEncoder encoder = new PairEncoder(InsertPipelineWriter.newKeyEncoder(pkCols, tableVersion, template),
+                InsertPipelineWriter.newRowHash(pkCols, tableVersion, template), KVPair.Type.INSERT);
+        IndexTransformer[] transformers = new IndexTransformer[indexes.size()];
+        long[] indexConglomerates = new long[indexes.size()];
+        for (int i = 0; i < transformers.length; i++) {
+            DDLMessage.TentativeIndex tentativeIndex = DDLMessage.TentativeIndex.parseFrom(indexes.get(i));
+            transformers[i] = new IndexTransformer(tentativeIndex);
+            indexConglomerates[i] = tentativeIndex.getIndex().getConglomerate();
+        }
+        ActivationHolder activationHolder = null;
+        if (operationContext != null) {
+            activationHolder = ((SparkOperationContext) operationContext).getActivationHolder();
+            activationHolder.reinitialize(null);
+        }
+        return new EncodingIterator(rows, encoder, transformers, indexConglomerates, activationHolder);
+    }
+
+    private class EncodingIterator implements Iterator<Tuple2<BulkImportKey, byte[]>> {
+        private final Iterator<Tuple2<K, Either<Exception, ExecRow>>> rows;
+        private final PairEncoder encoder;
+        private final IndexTransformer[] transformers;
+        private final long[] indexConglomerates;
+        private final ArrayDeque<Tuple2<BulkImportKey, byte[]>> pending;
+        private ActivationHolder activationHolder;
+
+        EncodingIterator(Iterator<Tuple2<K, Either<Exception, ExecRow>>> rows, PairEncoder encoder,
+                         IndexTransformer[] transformers, long[] indexConglomerates, ActivationHolder activationHolder) {
+            this.rows = rows;
+            this.encoder = encoder;
+            this.transformers = transformers;
+            this.indexConglomerates = indexConglomerates;
+            this.activationHolder = activationHolder;
+            this.pending = new ArrayDeque<>(transformers.length + 1);
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (pending.isEmpty() && rows.hasNext()) {
+                    encode(rows.next()._2());
+                }
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            } catch (Exception e) {
+                close();
+                throw new RuntimeException(e);
+            }
+            if (pending.isEmpty()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Tuple2<BulkImportKey, byte[]> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return pending.poll();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+
+        private void encode(Either<Exception, ExecRow> value) throws Exception {
+            if (value.isLeft()) {
+                // failure reading the rows
+                throw value.left().get();
+            }
+            ExecRow row = value.right().get();
+            try {
+                if (operationContext != null && operationContext.getOperation() != null)
+                    ((DMLWriteOperation) operationContext.getOperation()).evaluateGenerationClauses(row);
+                KVPair base = encoder.encode(row);
+                pending.add(new Tuple2<>(new BulkImportKey(heapConglom, base.getRowKey()), base.getValue()));
+                for (int i = 0; i < transformers.length; i++) {
+                    KVPair index = transformers[i].translate(base);
+                    if (index != null)
+                        pending.add(new Tuple2<>(new BulkImportKey(indexConglomerates[i], index.getRowKey()), index.getValue()));
+                }
+                if (operationContext != null)
+                    operationContext.recordWrite();
+            } catch (Exception e) {
+                pending.clear();
+                if (operationContext != null && operationContext.isPermissive()) {
+                    operationContext.recordBadRecord(e.getLocalizedMessage() + row.toString(), e);
+                    return;
+                }
+                throw e;
+            }
+        }
+
+        private void close() {
+            if (activationHolder != null) {
+                activationHolder.close();
+                activationHolder = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.access.HConfiguration;
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.shared.common.reference.SQLState;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.constants.SIConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.VoidFunction;
+import scala.Tuple2;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Writes a sorted partition of a bulk import into HFiles, one per conglomerate found in the partition, under
+ * {@code <stagingDirectory>/<conglomerate>/<family>/}, which is the layout expected by LoadIncrementalHFiles.
+ *
+ * Every cell is written with the begin timestamp of the import transaction, so the rows become visible
+ * once that transaction commits, just like rows written through the pipeline. Two cells with the same key violate
+ * the primary key or a unique index, and fail the import with the same error the pipeline would raise.
+ */
+public class BulkImportHFileWriterFunction implements VoidFunction<Iterator<Tuple2<BulkImportKey, byte[]>>>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String stagingDirectory;
+    private long txnId;
+    private String compression;
+    private String tableName;
+    private HashMap<Long, String> constraintNames;
+
+    public BulkImportHFileWriterFunction() {
+    }
+
+    /**
+     * @param constraintNames the name of the primary key or unique index stored in each conglomerate, for
+     *                        reporting duplicate keys
+     */
+    public BulkImportHFileWriterFunction(String stagingDirectory, long txnId, String compression,
+                                         String tableName, HashMap<Long, String> constraintNames) {
+        this.stagingDirectory = stagingDirectory;
+        this.txnId = txnId;
+        this.compression = compression;
+        this.tableName = tableName;
+        this.constraintNames = constraintNames;
+    }
+
+    @Override
+    public void call(Iterator<Tuple2<BulkImportKey, byte[]>> cells) throws Exception {
+        if (!cells.hasNext())
+            return;
+        Configuration conf = HConfiguration.unwrapDelegate();
+        FileSystem fs = FileSystem.get(new Path(stagingDirectory).toUri(), conf);
+        String fileName = "part-" + TaskContext.get().partitionId();
+        StoreFile.Writer writer = null;
+        BulkImportKey previous = null;
+        try {
+            while (cells.hasNext()) {
+                Tuple2<BulkImportKey, byte[]> cell = cells.next();
+                BulkImportKey key = cell._1();
+                if (previous == null || previous.getConglomerate() != key.getConglomerate()) {
+                    close(writer);
+                    writer = newWriter(conf, fs, key.getConglomerate(), fileName);
+                } else if (previous.compareTo(key) == 0) {
+                    String constraintName = constraintNames.get(key.getConglomerate());
+                    throw StandardException.newException(SQLState.LANG_DUPLICATE_KEY_CONSTRAINT,
+                            constraintName != null ? constraintName : Long.toString(key.getConglomerate()), tableName);
+                }
+                writer.append(new KeyValue(key.getRowKey(), SIConstants.DEFAULT_FAMILY_BYTES,
+                        SIConstants.PACKED_COLUMN_BYTES, txnId, cell._2()));
+                previous = key;
+            }
+        } finally {
+            close(writer);
+        }
+    }
+
+    private StoreFile.Writer newWriter(Configuration conf, FileSystem fs, long conglomerate, String fileName) throws IOException {
+        Path familyDirectory = new Path(new Path(stagingDirectory, Long.toString(conglomerate)), SIConstants.DEFAULT_FAMILY_NAME);
+        fs.mkdirs(familyDirectory);
+        HFileContextBuilder context = new HFileContextBuilder()
+                .withCompression(Compression.getCompressionAlgorithmByName(compression));
+        return new StoreFile.WriterBuilder(conf, new CacheConfig(conf), fs)
+                .withFilePath(new Path(familyDirectory, fileName))
+                .withFileContext(context.build())
+                .withBloomType(BloomType.ROW)
+                .build();
+    }
+
+    private static void close(StoreFile.Writer writer) throws IOException {
+        if (writer == null)
+            return;
+        writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+        writer.appendTrackedTimestampsToMetadata();
+        writer.close();
+    }
+}
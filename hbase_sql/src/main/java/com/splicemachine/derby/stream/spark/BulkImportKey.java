@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.primitives.Bytes;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The key of a cell written by a bulk import: the conglomerate it belongs to, and its row key. Keys sort by
+ * conglomerate and then by row key, so a sorted partition holds the cells of each conglomerate in HFile order.
+ */
+public class BulkImportKey implements Comparable<BulkImportKey>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long conglomerate;
+    private byte[] rowKey;
+
+    public BulkImportKey() {
+    }
+
+    public BulkImportKey(long conglomerate, byte[] rowKey) {
+        this.conglomerate = conglomerate;
+        this.rowKey = rowKey;
+    }
+
+    public long getConglomerate() {
+        return conglomerate;
+    }
+
+    public byte[] getRowKey() {
+        return rowKey;
+    }
+
+    @Override
+    public int compareTo(BulkImportKey o) {
+        int c = Long.compare(conglomerate, o.conglomerate);
+        if (c != 0)
+            return c;
+        return Bytes.basicByteComparator().compare(rowKey, o.rowKey);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BulkImportKey)) return false;
+        BulkImportKey that = (BulkImportKey) o;
+        return conglomerate == that.conglomerate && Arrays.equals(rowKey, that.rowKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(conglomerate) + Arrays.hashCode(rowKey);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkImportKey{" +
+                "conglomerate=" + conglomerate +
+                ", rowKey=" + Bytes.toStringBinary(rowKey) +
+                '}';
+    }
+}
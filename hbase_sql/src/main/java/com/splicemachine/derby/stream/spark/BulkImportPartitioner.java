@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import org.apache.spark.Partitioner;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Range partitioner for bulk import cells. Partition {@code i} holds the keys in {@code [boundaries[i], boundaries[i+1])},
+ * keys sorting before the first boundary go to the first partition.
+ */
+public class BulkImportPartitioner extends Partitioner {
+    private static final long serialVersionUID = 1L;
+
+    private final BulkImportKey[] boundaries;
+
+    /**
+     * @param boundaries sorted, distinct start keys of the partitions
+     */
+    public BulkImportPartitioner(List<BulkImportKey> boundaries) {
+        this.boundaries = boundaries.toArray(new BulkImportKey[boundaries.size()]);
+    }
+
+    @Override
+    public int numPartitions() {
+        return Math.max(1, boundaries.length);
+    }
+
+    @Override
+    public int getPartition(Object key) {
+        int pos = Arrays.binarySearch(boundaries, (BulkImportKey) key);
+        if (pos >= 0)
+            return pos;
+        // the insertion point is the first boundary greater than the key, we belong to the one before it
+        int insertionPoint = -pos - 1;
+        return Math.max(0, insertionPoint - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BulkImportPartitioner && Arrays.equals(boundaries, ((BulkImportPartitioner) o).boundaries);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(boundaries);
+    }
+}
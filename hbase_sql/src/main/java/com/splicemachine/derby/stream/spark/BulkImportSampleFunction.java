@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import org.apache.spark.api.java.function.FlatMapFunction;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Samples a fixed number of keys from each partition of a bulk import, using a reservoir, so that the sample
+ * collected to compute the split points of the sorted output stays bounded however many rows are loaded.
+ */
+public class BulkImportSampleFunction implements FlatMapFunction<Iterator<BulkImportKey>, BulkImportKey>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int sampleSize;
+
+    public BulkImportSampleFunction() {
+    }
+
+    /**
+     * @param sampleSize the maximum number of keys sampled from each partition
+     */
+    public BulkImportSampleFunction(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    @Override
+    public Iterator<BulkImportKey> call(Iterator<BulkImportKey> keys) throws Exception {
+        List<BulkImportKey> reservoir = new ArrayList<>(sampleSize);
+        Random random = new Random();
+        long seen = 0;
+        while (keys.hasNext()) {
+            BulkImportKey key = keys.next();
+            seen++;
+            if (reservoir.size() < sampleSize) {
+                reservoir.add(key);
+            } else {
+                // keep the key with probability sampleSize/seen
+                long pos = (long) (random.nextDouble() * seen);
+                if (pos < sampleSize)
+                    reservoir.set((int) pos, key);
+            }
+        }
+        return reservoir.iterator();
+    }
+}
@@ -19,10 +19,18 @@ import java.io.IOException;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.log4j.Logger;
 import org.apache.spark.api.java.JavaPairRDD;
 
 import com.splicemachine.access.HConfiguration;
 import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.conn.LanguageConnectionContext;
+import com.splicemachine.db.iapi.sql.dictionary.ConglomerateDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.ConstraintDescriptor;
+import com.splicemachine.db.iapi.sql.dictionary.DataDictionary;
+import com.splicemachine.db.iapi.sql.dictionary.TableDescriptor;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.impl.sql.execute.operations.DMLWriteOperation;
 import com.splicemachine.derby.stream.output.DataSetWriter;
 import com.splicemachine.derby.stream.output.insert.InsertTableWriterBuilder;
 import com.splicemachine.derby.stream.utils.TableWriterUtils;
@@ -35,6 +43,7 @@ import scala.util.Either;
  *         Date: 1/25/16
  */
 public class SparkInsertTableWriterBuilder<K,V> extends InsertTableWriterBuilder{
+    private static final Logger LOG=Logger.getLogger(SparkInsertTableWriterBuilder.class);
     private transient JavaPairRDD<K,Either<Exception, V>> rdd;
 
     public SparkInsertTableWriterBuilder(JavaPairRDD<K,Either<Exception, V>> rdd){
@@ -57,6 +66,15 @@ public class SparkInsertTableWriterBuilder<K,V> extends InsertTableWriterBuilder
             throw Exceptions.parseException(e);
         }
         conf.setClass(JobContext.OUTPUT_FORMAT_CLASS_ATTR,SMOutputFormat.class,SMOutputFormat.class);
+        if(canBulkImport()){
+            return new BulkImportDataSetWriter<>(rdd,
+                    operationContext,
+                    pkCols,
+                    tableVersion,
+                    execRowDefinition,
+                    heapConglom,
+                    bulkImportDirectory);
+        }
         return new InsertDataSetWriter<>(rdd,
                 operationContext,
                 conf,
@@ -68,4 +86,40 @@ public class SparkInsertTableWriterBuilder<K,V> extends InsertTableWriterBuilder
                 heapConglom,
                 isUpsert);
     }
+
+    /**
+     * Writing HFiles bypasses the write pipeline, so tables with triggers or foreign keys, which are enforced
+     * there, are always written through the pipeline. Primary keys and unique indexes are only checked among
+     * the imported rows, so tables having any of them are bulk imported only while they are empty.
+     */
+    private boolean canBulkImport() throws StandardException{
+        if(bulkImportDirectory==null || isUpsert)
+            return false;
+        SpliceOperation operation=operationContext.getOperation();
+        if(!(operation instanceof DMLWriteOperation) || ((DMLWriteOperation)operation).getTriggerHandler()!=null)
+            return false;
+        LanguageConnectionContext lcc=operationContext.getActivation().getLanguageConnectionContext();
+        TableDescriptor td=BulkImportDataSetWriter.getTableDescriptor(lcc,heapConglom);
+        for(ConstraintDescriptor cd : lcc.getDataDictionary().getConstraintDescriptors(td)){
+            if(cd.getConstraintType()==DataDictionary.FOREIGNKEY_CONSTRAINT){
+                LOG.warn("Table "+td.getName()+" has foreign keys, importing through the write pipeline");
+                return false;
+            }
+        }
+        if(hasUniqueKey(td) && !BulkImportDataSetWriter.isEmpty(heapConglom)){
+            LOG.warn("Table "+td.getName()+" has unique keys and already holds data, importing through the write pipeline");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean hasUniqueKey(TableDescriptor td){
+        if(pkCols!=null && pkCols.length>0)
+            return true;
+        for(ConglomerateDescriptor cd : td.getConglomerateDescriptorList()){
+            if(cd.isIndex() && (cd.getIndexDescriptor().isUnique() || cd.getIndexDescriptor().isUniqueWithDuplicateNulls()))
+                return true;
+        }
+        return false;
+    }
 }
@@ -30,6 +30,8 @@ import com.splicemachine.derby.stream.control.BadRecordsRecorder;
 import com.splicemachine.stream.accumulator.BadRecordsAccumulator;
 import org.apache.log4j.Logger;
 import org.apache.spark.Accumulable;
+import org.apache.spark.TaskContext;
+import org.apache.spark.util.TaskCompletionListener;
 import org.apache.spark.util.LongAccumulator;
 import java.io.*;
 import java.sql.SQLException;
@@ -384,6 +386,25 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         return broadcastedActivation.getActivationHolder().getTxn();
     }
 
+    @Override
+    public void registerCloseable(final AutoCloseable closeable) throws StandardException{
+        TaskContext taskContext=TaskContext.get();
+        if(taskContext==null){
+            op.registerCloseable(closeable);
+            return;
+        }
+        taskContext.addTaskCompletionListener(new TaskCompletionListener(){
+            @Override
+            public void onTaskCompletion(TaskContext context){
+                try{
+                    closeable.close();
+                }catch(Exception e){
+                    LOG.warn("Unable to close resource on task completion",e);
+                }
+            }
+        });
+    }
+
     @Override
     public void recordBadRecord(String badRecord, Exception e) {
         if (! failed) {
@@ -475,8 +496,7 @@ public class SparkOperationContext<Op extends SpliceOperation> implements Operat
         ObjectInputStream ois = new ObjectInputStream(is);
         SparkOperationContext operationContext = (SparkOperationContext) ois.readObject();
         BroadcastedActivation  broadcastedActivation = operationContext.broadcastedActivation;
-        BroadcastedActivation.ActivationHolderAndBytes activationHolderAndBytes = broadcastedActivation.readActivationHolder();
-        broadcastedActivation.setActivationHolder(activationHolderAndBytes.getActivationHolder());
+        broadcastedActivation.setActivationHolder(broadcastedActivation.readActivationHolder());
         operationContext.op = broadcastedActivation.getActivationHolder().getOperationsMap().get(op.resultSetNumber());
         operationContext.activation = operationContext.broadcastedActivation.getActivationHolder().getActivation();
         return operationContext;
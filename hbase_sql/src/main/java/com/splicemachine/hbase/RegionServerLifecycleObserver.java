@@ -37,7 +37,9 @@ import com.splicemachine.derby.lifecycle.NetworkLifecycleService;
 import com.splicemachine.lifecycle.DatabaseLifecycleManager;
 import com.splicemachine.lifecycle.RegionServerLifecycle;
 import com.splicemachine.si.data.hbase.coprocessor.HBaseSIEnvironment;
+import com.splicemachine.si.api.txn.TxnSupplier;
 import com.splicemachine.si.impl.driver.SIDriver;
+import com.splicemachine.si.impl.store.CompletedTxnCacheSupplier;
 import org.apache.log4j.Logger;
 
 /**
@@ -67,6 +69,9 @@ public class RegionServerLifecycleObserver extends BaseRegionServerObserver{
     public void preStopRegionServer(ObserverContext<RegionServerCoprocessorEnvironment> env) throws IOException{
         lifecycleManager.shutdown();
         HBaseRegionLoads.INSTANCE.stopWatching();
+        TxnSupplier txnSupplier=SIDriver.driver().getTxnSupplier();
+        if(txnSupplier instanceof CompletedTxnCacheSupplier)
+            ((CompletedTxnCacheSupplier)txnSupplier).close();
     }
 
     /* ****************************************************************************************************************/
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.olap;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.derby.iapi.sql.olap.DistributedJob;
+import com.splicemachine.derby.iapi.sql.olap.OlapStatus;
+import org.apache.log4j.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Admission control for the jobs of the OLAP server.
+ * <p/>
+ * When resource pools are configured, at most {@code splice.olap_server.threads} user jobs run at once (without
+ * them, user jobs are not limited). Each user job is assigned to a {@link OlapResourcePool}
+ * by its user (or failing that, its role), and waits in that pool until both the server and the pool have room
+ * for it. Whenever a slot frees up, it goes to the eligible pool which is furthest below its weighted share of
+ * the running jobs (ties going to the pool whose job has waited longest), so that a burst of jobs from one pool
+ * cannot shut the others out, while any pool may use the whole server when the others are idle.
+ * <p/>
+ * Jobs which are cancelled, or whose client stops checking in, while waiting are dropped when they reach the
+ * head of their pool's queue.
+ * <p/>
+ * Internal jobs (see {@link DistributedJob#isInternal()}) are not admitted through any pool and don't count
+ * against the limit: compactions and the like must not wait behind user queries, nor take slots away from them.
+ */
+class OlapJobScheduler implements OlapJobSchedulerManagement{
+    private static final Logger LOG=Logger.getLogger(OlapJobScheduler.class);
+    static final String JMX_NAME="com.splicemachine.olap:type=OlapJobScheduler";
+
+    private final List<OlapResourcePool> pools;
+    private final Map<String,OlapResourcePool> poolsByMember;
+    private final OlapResourcePool defaultPool;
+    private final int maxRunningJobs;
+    private final ExecutorService executionPool;
+    private final Clock clock;
+
+    private int running; //guarded by this
+    private int runningInternal; //guarded by this
+
+    OlapJobScheduler(List<OlapResourcePool> pools,int maxRunningJobs,ExecutorService executionPool,Clock clock){
+        this.pools=pools;
+        this.maxRunningJobs=maxRunningJobs;
+        this.executionPool=executionPool;
+        this.clock=clock;
+        this.poolsByMember=new HashMap<>();
+        OlapResourcePool defPool=null;
+        for(OlapResourcePool pool:pools){
+            if(OlapResourcePool.DEFAULT_POOL.equals(pool.name))
+                defPool=pool;
+            for(String member:pool.members){
+                OlapResourcePool old=poolsByMember.put(member,pool);
+                if(old!=null)
+                    throw new IllegalArgumentException(member+" is a member of both resource pools "+old.name+" and "+pool.name);
+            }
+        }
+        if(defPool==null)
+            throw new IllegalArgumentException("No "+OlapResourcePool.DEFAULT_POOL+" resource pool");
+        this.defaultPool=defPool;
+    }
+
+    static OlapJobScheduler create(SConfiguration config,Clock clock){
+        String poolConfig=config.getOlapServerResourcePools();
+        int maxRunningJobs=poolConfig==null || poolConfig.trim().isEmpty()?Integer.MAX_VALUE:config.getOlapServerThreads();
+        List<OlapResourcePool> pools=OlapResourcePool.parse(poolConfig,maxRunningJobs);
+        ThreadFactory tf=new ThreadFactoryBuilder().setDaemon(true).setNameFormat("olap-worker-%d").build();
+        return new OlapJobScheduler(pools,maxRunningJobs,Executors.newCachedThreadPool(tf),clock);
+    }
+
+    /**
+     * Queue the job in its resource pool, and start it as soon as there is room for it.
+     *
+     * @param job the job being submitted
+     * @param jobStatus the status of the job, which must already be marked as submitted
+     * @param task the work to run
+     */
+    void submit(DistributedJob job,OlapJobStatus jobStatus,Callable<Void> task){
+        if(job.isInternal()){
+            startInternal(job,jobStatus,task);
+            return;
+        }
+        OlapResourcePool pool=poolFor(job);
+        long now=clock.currentTimeMillis();
+        jobStatus.markQueued(pool.name,now);
+        if(LOG.isTraceEnabled())
+            LOG.trace("Queueing job "+job.getUniqueName()+" in resource pool "+pool.name);
+        synchronized(this){
+            pool.waiting.addLast(new OlapResourcePool.QueuedJob(jobStatus,task,now));
+            dispatch();
+        }
+    }
+
+    void registerJMX(MBeanServer mbs) throws MalformedObjectNameException,
+            NotCompliantMBeanException,
+            InstanceAlreadyExistsException,
+            MBeanRegistrationException{
+        mbs.registerMBean(this,new ObjectName(JMX_NAME));
+    }
+
+    void unregisterJMX(MBeanServer mbs) throws MalformedObjectNameException,
+            InstanceNotFoundException,
+            MBeanRegistrationException{
+        mbs.unregisterMBean(new ObjectName(JMX_NAME));
+    }
+
+    @Override
+    public synchronized Map<String,Integer> getRunningJobs(){
+        Map<String,Integer> result=new LinkedHashMap<>();
+        for(OlapResourcePool pool:pools){
+            result.put(pool.name,pool.running);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String,Integer> getQueuedJobs(){
+        Map<String,Integer> result=new LinkedHashMap<>();
+        for(OlapResourcePool pool:pools){
+            result.put(pool.name,pool.waiting.size());
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String,Long> getReservedMemory(){
+        Map<String,Long> result=new LinkedHashMap<>();
+        for(OlapResourcePool pool:pools){
+            result.put(pool.name,pool.memoryInUse);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String,Long> getAdmittedJobs(){
+        Map<String,Long> result=new LinkedHashMap<>();
+        for(OlapResourcePool pool:pools){
+            result.put(pool.name,pool.admitted);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String,Long> getAverageQueueTime(){
+        Map<String,Long> result=new LinkedHashMap<>();
+        for(OlapResourcePool pool:pools){
+            result.put(pool.name,pool.admitted==0?0L:pool.totalQueueTime/pool.admitted);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String,Long> getMaxQueueTime(){
+        Map<String,Long> result=new LinkedHashMap<>();
+        for(OlapResourcePool pool:pools){
+            result.put(pool.name,pool.maxQueueTime);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int getRunningInternalJobs(){
+        return runningInternal;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private OlapResourcePool poolFor(DistributedJob job){
+        OlapResourcePool pool=memberPool(job.getUserId());
+        if(pool==null)
+            pool=memberPool(job.getRoleId());
+        return pool==null?defaultPool:pool;
+    }
+
+    private OlapResourcePool memberPool(String member){
+        if(member==null) return null;
+        return poolsByMember.get(member.toUpperCase(Locale.ENGLISH));
+    }
+
+    private void dispatch(){
+        assert Thread.holdsLock(this);
+        while(running<maxRunningJobs){
+            OlapResourcePool next=null;
+            for(OlapResourcePool pool:pools){
+                if(!pool.hasCapacity()) continue;
+                dropAbandonedJobs(pool);
+                if(pool.waiting.isEmpty()) continue;
+                if(next==null || isFurtherBelowShare(pool,next))
+                    next=pool;
+            }
+            if(next==null) return;
+            start(next,next.waiting.pollFirst());
+        }
+    }
+
+    private static boolean isFurtherBelowShare(OlapResourcePool pool,OlapResourcePool other){
+        long share=(long)pool.running*other.weight;
+        long otherShare=(long)other.running*pool.weight;
+        if(share!=otherShare) return share<otherShare;
+        return pool.waiting.peekFirst().queuedAt<other.waiting.peekFirst().queuedAt;
+    }
+
+    private static void dropAbandonedJobs(OlapResourcePool pool){
+        OlapResourcePool.QueuedJob head;
+        while((head=pool.waiting.peekFirst())!=null){
+            OlapJobStatus status=head.status;
+            if(status.currentState()==OlapStatus.State.SUBMITTED){
+                if(status.isAvailable()) return;
+                if(LOG.isDebugEnabled())
+                    LOG.debug("Client of queued job in resource pool "+pool.name+" stopped checking in, cancelling it");
+                status.cancel();
+            }
+            pool.waiting.pollFirst();
+        }
+    }
+
+    private void start(final OlapResourcePool pool,final OlapResourcePool.QueuedJob job){
+        long now=clock.currentTimeMillis();
+        pool.admit(job,now);
+        running++;
+        job.status.markDispatched(now);
+        executionPool.submit(new Callable<Void>(){
+            @Override
+            public Void call() throws Exception{
+                try{
+                    return job.task.call();
+                }finally{
+                    finished(pool);
+                }
+            }
+        });
+    }
+
+    private void startInternal(DistributedJob job,OlapJobStatus jobStatus,final Callable<Void> task){
+        long now=clock.currentTimeMillis();
+        jobStatus.markQueued(OlapResourcePool.INTERNAL_POOL,now);
+        jobStatus.markDispatched(now);
+        if(LOG.isTraceEnabled())
+            LOG.trace("Starting internal job "+job.getUniqueName());
+        synchronized(this){
+            runningInternal++;
+        }
+        executionPool.submit(new Callable<Void>(){
+            @Override
+            public Void call() throws Exception{
+                try{
+                    return task.call();
+                }finally{
+                    finishedInternal();
+                }
+            }
+        });
+    }
+
+    private synchronized void finishedInternal(){
+        runningInternal--;
+    }
+
+    private synchronized void finished(OlapResourcePool pool){
+        pool.release();
+        running--;
+        dispatch();
+    }
+}
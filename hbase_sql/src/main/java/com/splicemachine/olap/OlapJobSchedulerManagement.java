@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.olap;
+
+import javax.management.MXBean;
+import java.util.Map;
+
+/**
+ * JMX view of the OLAP server's job scheduler. Every map is keyed by resource pool name; internal jobs are
+ * not admitted through any pool, and only show up in {@link #getRunningInternalJobs()}.
+ */
+@MXBean
+public interface OlapJobSchedulerManagement{
+
+    /**
+     * @return the number of jobs currently running in each pool
+     */
+    Map<String,Integer> getRunningJobs();
+
+    /**
+     * @return the number of jobs waiting to be admitted to each pool
+     */
+    Map<String,Integer> getQueuedJobs();
+
+    /**
+     * @return the memory (in MB) reserved by the running jobs of each pool
+     */
+    Map<String,Long> getReservedMemory();
+
+    /**
+     * @return the number of jobs each pool has admitted since the server started
+     */
+    Map<String,Long> getAdmittedJobs();
+
+    /**
+     * @return the mean time (in milliseconds) the admitted jobs of each pool spent waiting
+     */
+    Map<String,Long> getAverageQueueTime();
+
+    /**
+     * @return the longest time (in milliseconds) an admitted job of each pool spent waiting
+     */
+    Map<String,Long> getMaxQueueTime();
+
+    /**
+     * @return the number of internal jobs (compactions, index population and the like) currently running
+     */
+    int getRunningInternalJobs();
+}
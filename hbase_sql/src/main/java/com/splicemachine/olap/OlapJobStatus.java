@@ -39,6 +39,9 @@ public class OlapJobStatus implements OlapStatus{
 
     private volatile AtomicReference<OlapStatus.State> currentState = new AtomicReference<>(State.NOT_SUBMITTED);
     private volatile OlapResult results;
+    private volatile String poolName;
+    private volatile long queuedAt = -1L;
+    private volatile long dispatchedAt = -1L;
 
     public OlapJobStatus(long tickTime,int numTicks){
         //TODO -sf- remove the constants
@@ -140,6 +143,22 @@ public class OlapJobStatus implements OlapStatus{
         return true;
     }
 
+    /**
+     * @return the resource pool the job was queued in, or null if it has not been queued
+     */
+    public String getPoolName(){
+        return poolName;
+    }
+
+    /**
+     * @return how long (in milliseconds) the job waited in its resource pool before being started, or -1
+     * if it has not been started yet
+     */
+    public long getQueueTime(){
+        long dispatched = dispatchedAt;
+        return dispatched<0 ? -1L : dispatched-queuedAt;
+    }
+
     @Override
     public boolean isRunning(){
         /*
@@ -158,6 +177,15 @@ public class OlapJobStatus implements OlapStatus{
         return checkFailed();
     }
 
+    void markQueued(String poolName,long time){
+        this.poolName = poolName;
+        this.queuedAt = time;
+    }
+
+    void markDispatched(long time){
+        this.dispatchedAt = time;
+    }
+
     /*private helper methods*/
     /* ****************************************************************************************************************/
 
@@ -185,6 +213,8 @@ public class OlapJobStatus implements OlapStatus{
     public String toString() {
         return "OlapJobStatus{" +
                 "currentState=" + currentState +
+                ", poolName=" + poolName +
+                ", queueTime=" + getQueueTime() +
                 ", failureDetector.phi =" + ((PhiAccrualFailureDetector)failureDetector).phi() +
                 '}';
     }
@@ -15,8 +15,6 @@
 
 package com.splicemachine.olap;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.splicemachine.access.api.SConfiguration;
 import com.splicemachine.olap.OlapMessage;
 import com.splicemachine.concurrent.Clock;
 import com.splicemachine.derby.iapi.sql.olap.DistributedJob;
@@ -25,9 +23,6 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 /**
  * @author Scott Fines
@@ -36,16 +31,16 @@ import java.util.concurrent.ThreadFactory;
 class OlapRequestHandler extends AbstractOlapHandler{
     private static final Logger LOG =Logger.getLogger(OlapRequestHandler.class);
 
-    private final ExecutorService executionPool;
+    private final OlapJobScheduler scheduler;
     private final Clock clock;
     private final long clientCheckTimeMs;
 
-    OlapRequestHandler(SConfiguration config,
+    OlapRequestHandler(OlapJobScheduler scheduler,
                        OlapJobRegistry jobRegistry,
                        Clock clock,
                        long clientCheckTimeMs){
         super(jobRegistry);
-        this.executionPool=configureThreadPool(config);
+        this.scheduler=scheduler;
         this.clock=clock;
         this.clientCheckTimeMs=clientCheckTimeMs;
     }
@@ -94,7 +89,7 @@ class OlapRequestHandler extends AbstractOlapHandler{
         }
         final Callable<Void> job=jr.toCallable(jobStatus,clock,clientCheckTimeMs);
 
-        executionPool.submit(new Callable<Void>() {
+        scheduler.submit(jr,jobStatus,new Callable<Void>() {
             @Override
             public Void call() throws Exception {
                 try {
@@ -112,16 +107,4 @@ class OlapRequestHandler extends AbstractOlapHandler{
             LOG.trace("Job "+ jobRequest.getUniqueName()+" successfully submitted");
         writeResponse(e,jr.getUniqueName(),jobStatus);
     }
-
-
-
-    /* ****************************************************************************************************************/
-    /*private helper methods*/
-
-
-    private ExecutorService configureThreadPool(SConfiguration config){
-        //TODO -sf- bound this by the number of possible Spark tasks which can run in YARN
-        ThreadFactory tf =new ThreadFactoryBuilder().setDaemon(true).setNameFormat("olap-worker-%d").build();
-        return Executors.newCachedThreadPool(tf);
-    }
 }
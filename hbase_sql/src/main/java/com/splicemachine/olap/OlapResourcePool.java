@@ -0,0 +1,199 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.olap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * A named share of the OLAP server, to which jobs are admitted by the {@link OlapJobScheduler}.
+ * <p/>
+ * Pools are configured with {@code splice.olap_server.resourcePools}, as a list of pools separated by
+ * {@code ;}, each of the form {@code name:key=value,key=value...}, where the keys are
+ * <ul>
+ *     <li>{@code weight}: the relative share of the server's job slots this pool gets when pools compete
+ *     (default 1)</li>
+ *     <li>{@code maxJobs}: the maximum number of jobs from this pool which may run at once (default: the
+ *     server-wide limit)</li>
+ *     <li>{@code maxMemory}: the memory (in MB) which the running jobs of this pool may reserve, or 0 for
+ *     no limit (default 0)</li>
+ *     <li>{@code jobMemory}: the memory (in MB) each job of this pool reserves while running (default 0)</li>
+ *     <li>{@code members}: the users and roles whose jobs run in this pool, separated by {@code |}</li>
+ * </ul>
+ * For example {@code interactive:weight=4,members=ANALYST|BI;reports:maxJobs=2,members=REPORTING}.
+ * User jobs which belong to no pool run in the {@value #DEFAULT_POOL} pool, which exists even when it is not
+ * configured. Internal jobs bypass the pools, and are reported as belonging to the reserved
+ * {@value #INTERNAL_POOL} pool.
+ * <p/>
+ * All mutable state is guarded by the owning scheduler.
+ */
+class OlapResourcePool{
+    static final String DEFAULT_POOL = "default";
+    static final String INTERNAL_POOL = "internal";
+
+    final String name;
+    final int weight;
+    final int maxJobs;
+    final long maxMemory;
+    final long jobMemory;
+    final Set<String> members;
+
+    final ArrayDeque<QueuedJob> waiting = new ArrayDeque<>();
+    int running;
+    long memoryInUse;
+
+    long admitted;
+    long totalQueueTime;
+    long maxQueueTime;
+
+    OlapResourcePool(String name,int weight,int maxJobs,long maxMemory,long jobMemory,Set<String> members){
+        if(weight<=0)
+            throw new IllegalArgumentException("Resource pool "+name+" must have a positive weight");
+        if(maxJobs<=0)
+            throw new IllegalArgumentException("Resource pool "+name+" must allow at least one job");
+        if(maxMemory>0 && jobMemory>maxMemory)
+            throw new IllegalArgumentException("Resource pool "+name+" reserves more memory per job than its limit");
+        this.name=name;
+        this.weight=weight;
+        this.maxJobs=maxJobs;
+        this.maxMemory=maxMemory;
+        this.jobMemory=jobMemory;
+        this.members=members;
+    }
+
+    /**
+     * @return true if another job of this pool may start now
+     */
+    boolean hasCapacity(){
+        return running<maxJobs && (maxMemory<=0 || memoryInUse+jobMemory<=maxMemory);
+    }
+
+    void admit(QueuedJob job,long now){
+        running++;
+        memoryInUse+=jobMemory;
+        admitted++;
+        long queueTime=now-job.queuedAt;
+        totalQueueTime+=queueTime;
+        if(queueTime>maxQueueTime)
+            maxQueueTime=queueTime;
+    }
+
+    void release(){
+        running--;
+        memoryInUse-=jobMemory;
+    }
+
+    /**
+     * Parse the configured pools, adding the default pool if it is not configured.
+     *
+     * @param poolConfig the value of {@code splice.olap_server.resourcePools}
+     * @param defaultMaxJobs the number of jobs a pool may run if it doesn't specify a limit
+     * @throws IllegalArgumentException if the configuration is malformed
+     */
+    static List<OlapResourcePool> parse(String poolConfig,int defaultMaxJobs){
+        List<OlapResourcePool> pools=new ArrayList<>();
+        boolean hasDefault=false;
+        if(poolConfig!=null){
+            for(String poolSpec:poolConfig.split(";")){
+                poolSpec=poolSpec.trim();
+                if(poolSpec.isEmpty()) continue;
+                OlapResourcePool pool=parsePool(poolSpec,defaultMaxJobs);
+                for(OlapResourcePool other:pools){
+                    if(other.name.equals(pool.name))
+                        throw new IllegalArgumentException("Resource pool "+pool.name+" is configured twice");
+                }
+                hasDefault|=DEFAULT_POOL.equals(pool.name);
+                pools.add(pool);
+            }
+        }
+        if(!hasDefault)
+            pools.add(new OlapResourcePool(DEFAULT_POOL,1,defaultMaxJobs,0L,0L,Collections.<String>emptySet()));
+        return pools;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static OlapResourcePool parsePool(String poolSpec,int defaultMaxJobs){
+        int sep=poolSpec.indexOf(':');
+        String name=(sep<0?poolSpec:poolSpec.substring(0,sep)).trim();
+        if(name.isEmpty())
+            throw new IllegalArgumentException("Unnamed resource pool: "+poolSpec);
+        if(INTERNAL_POOL.equals(name))
+            throw new IllegalArgumentException("Resource pool name "+INTERNAL_POOL+" is reserved for internal jobs");
+        int weight=1;
+        int maxJobs=defaultMaxJobs;
+        long maxMemory=0L;
+        long jobMemory=0L;
+        Set<String> members=new HashSet<>();
+        if(sep>=0){
+            for(String property:poolSpec.substring(sep+1).split(",")){
+                property=property.trim();
+                if(property.isEmpty()) continue;
+                int eq=property.indexOf('=');
+                if(eq<0)
+                    throw new IllegalArgumentException("Malformed property "+property+" of resource pool "+name);
+                String key=property.substring(0,eq).trim();
+                String value=property.substring(eq+1).trim();
+                try{
+                    switch(key){
+                        case "weight":
+                            weight=Integer.parseInt(value);
+                            break;
+                        case "maxJobs":
+                            maxJobs=Integer.parseInt(value);
+                            break;
+                        case "maxMemory":
+                            maxMemory=Long.parseLong(value);
+                            break;
+                        case "jobMemory":
+                            jobMemory=Long.parseLong(value);
+                            break;
+                        case "members":
+                            for(String member:value.split("\\|")){
+                                member=member.trim();
+                                if(!member.isEmpty())
+                                    members.add(member.toUpperCase(Locale.ENGLISH));
+                            }
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown property "+key+" of resource pool "+name);
+                    }
+                }catch(NumberFormatException nfe){
+                    throw new IllegalArgumentException("Malformed value of property "+key+" of resource pool "+name,nfe);
+                }
+            }
+        }
+        return new OlapResourcePool(name,weight,maxJobs,maxMemory,jobMemory,members);
+    }
+
+    static class QueuedJob{
+        final OlapJobStatus status;
+        final Callable<Void> task;
+        final long queuedAt;
+
+        QueuedJob(OlapJobStatus status,Callable<Void> task,long queuedAt){
+            this.status=status;
+            this.task=task;
+            this.queuedAt=queuedAt;
+        }
+    }
+}
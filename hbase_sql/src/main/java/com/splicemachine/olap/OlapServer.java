@@ -26,6 +26,7 @@ import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -38,6 +39,7 @@ public class OlapServer {
     private Clock clock;
     private ChannelFactory factory;
     private Channel channel;
+    private OlapJobScheduler scheduler;
 
     public OlapServer(int port,Clock clock) {
         this.port = port;
@@ -57,7 +59,13 @@ public class OlapServer {
         OlapJobRegistry registry = new MappedJobRegistry(config.getOlapClientTickTime(),
                 config.getOlapServerTickLimit(),
                 TimeUnit.MILLISECONDS);
-        ChannelHandler submitHandler = new OlapRequestHandler(config,
+        this.scheduler = OlapJobScheduler.create(config,clock);
+        try {
+            scheduler.registerJMX(ManagementFactory.getPlatformMBeanServer());
+        } catch (Exception e) {
+            LOG.warn("Unable to register the OLAP job scheduler with JMX", e);
+        }
+        ChannelHandler submitHandler = new OlapRequestHandler(scheduler,
                 registry,clock,config.getOlapClientTickTime());
         ChannelHandler statusHandler = new OlapStatusHandler(registry);
         ChannelHandler cancelHandler = new OlapCancelHandler(registry);
@@ -94,5 +102,10 @@ public class OlapServer {
             LOG.error("unexpected exception during stop server", e);
         }
         this.factory.shutdown();
+        try {
+            scheduler.unregisterJMX(ManagementFactory.getPlatformMBeanServer());
+        } catch (Exception e) {
+            LOG.warn("Unable to unregister the OLAP job scheduler from JMX", e);
+        }
     }
 }
@@ -40,6 +40,13 @@ public class KryoDecoder extends ByteToMessageDecoder {
         in.markReaderIndex();
 
         int len = in.readUnsignedShort();
+        if (len == KryoEncoder.EXTENDED_LENGTH) {
+            if (in.readableBytes() < 4) {
+                in.resetReaderIndex();
+                return;
+            }
+            len = in.readInt();
+        }
 //        LOG.warn("Read lenght " + len);
 
         if (in.readableBytes() < len) {
@@ -26,6 +26,11 @@ import io.netty.handler.codec.MessageToByteEncoder;
 import java.io.ByteArrayOutputStream;
 
 public class KryoEncoder extends MessageToByteEncoder<Object> {
+    /*
+     * Messages are prefixed with their length as an unsigned short. Longer messages (i.e. row frames) write this
+     * marker instead, followed by their length as an int.
+     */
+    static final int EXTENDED_LENGTH = 0xFFFF;
 
 
     ByteArrayOutputStream outStream;
@@ -53,7 +58,12 @@ public class KryoEncoder extends MessageToByteEncoder<Object> {
 
         output.flush();
         byte[] outArray = outStream.toByteArray();
-        out.writeShort(outArray.length);
+        if (outArray.length < EXTENDED_LENGTH) {
+            out.writeShort(outArray.length);
+        } else {
+            out.writeShort(EXTENDED_LENGTH);
+            out.writeInt(outArray.length);
+        }
         out.writeBytes(outArray);
     }
 
@@ -20,6 +20,7 @@ import com.splicemachine.EngineDriver;
 import com.splicemachine.access.HConfiguration;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.Activation;
+import com.splicemachine.db.iapi.sql.execute.ExecPreparedStatement;
 import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
 import com.splicemachine.derby.iapi.sql.olap.OlapResult;
 import com.splicemachine.derby.impl.sql.execute.operations.*;
@@ -74,7 +75,11 @@ public class RemoteQueryClientImpl implements RemoteQueryClient {
             updateLimitOffset();
             int streamingBatches = HConfiguration.getConfiguration().getSparkResultStreamingBatches();
             int streamingBatchSize = HConfiguration.getConfiguration().getSparkResultStreamingBatchSize();
-            streamListener = new StreamListener(limit, offset, streamingBatches, streamingBatchSize);
+            boolean interleaved = HConfiguration.getConfiguration().getSparkResultStreamingInterleaved()
+                    && offset == 0 && !dependsOnOrder(activation.getPreparedStatement());
+            String sql = activation.getPreparedStatement().getSource();
+            sql = sql == null ? root.toString() : sql;
+            streamListener = new StreamListener(limit, offset, streamingBatches, streamingBatchSize, interleaved);
             StreamListenerServer server = getServer();
             server.register(streamListener);
             HostAndPort hostAndPort = server.getHostAndPort();
@@ -82,12 +87,14 @@ public class RemoteQueryClientImpl implements RemoteQueryClient {
             int port = hostAndPort.getPort();
             UUID uuid = streamListener.getUuid();
 
-            String sql = activation.getPreparedStatement().getSource();
-            sql = sql == null ? root.toString() : sql;
             String userId = activation.getLanguageConnectionContext().getCurrentUserId(activation);
+            String roleId = activation.getLanguageConnectionContext().getCurrentRoleId(activation);
 
-            RemoteQueryJob jobRequest = new RemoteQueryJob(ah, root.getResultSetNumber(), uuid, host, port, userId, sql,
-                    streamingBatches, streamingBatchSize);
+            boolean framed = HConfiguration.getConfiguration().getSparkResultStreamingFramed();
+            boolean frameCompression = HConfiguration.getConfiguration().getSparkResultStreamingFrameCompression();
+
+            RemoteQueryJob jobRequest = new RemoteQueryJob(ah, root.getResultSetNumber(), uuid, host, port, userId, roleId, sql,
+                    streamingBatches, streamingBatchSize, framed, frameCompression);
             olapFuture = EngineDriver.driver().getOlapClient().submit(jobRequest);
             olapFuture.addListener(new Runnable() {
                 @Override
@@ -111,6 +118,15 @@ public class RemoteQueryClientImpl implements RemoteQueryClient {
         }
     }
 
+    /**
+     * Whether the order in which the statement returns its rows is significant, i.e. whether it has an ORDER BY.
+     * This is recorded when the statement is compiled, so it holds even if sort avoidance has replaced the ORDER BY
+     * with the order of a scan, which is only reproduced by reading the partitions one after the other.
+     */
+    static boolean dependsOnOrder(ExecPreparedStatement ps) {
+        return ps.hasOrderBy();
+    }
+
     private void updateLimitOffset() throws StandardException {
         if (root instanceof ScrollInsensitiveOperation
                 || root instanceof AnyOperation
@@ -34,23 +34,29 @@ public class RemoteQueryJob extends DistributedJob {
     String host;
     int port;
     String userId;
+    String roleId;
     String sql;
     int streamingBatches;
     int streamingBatchSize;
-
+    boolean streamingFramed;
+    boolean streamingFrameCompression;
 
     public RemoteQueryJob(ActivationHolder ah, int rootResultSetNumber, UUID uuid, String host, int port,
-                          String userId, String sql,
-                          int streamingBatches, int streamingBatchSize) {
+                          String userId, String roleId, String sql,
+                          int streamingBatches, int streamingBatchSize,
+                          boolean streamingFramed, boolean streamingFrameCompression) {
         this.ah = ah;
         this.rootResultSetNumber = rootResultSetNumber;
         this.uuid = uuid;
         this.host = host;
         this.port = port;
         this.userId = userId;
+        this.roleId = roleId;
         this.sql = sql;
         this.streamingBatches = streamingBatches;
         this.streamingBatchSize = streamingBatchSize;
+        this.streamingFramed = streamingFramed;
+        this.streamingFrameCompression = streamingFrameCompression;
     }
 
     @Override
@@ -62,4 +68,19 @@ public class RemoteQueryJob extends DistributedJob {
     public String getName() {
         return "query-"+uuid;
     }
+
+    @Override
+    public boolean isInternal() {
+        return false;
+    }
+
+    @Override
+    public String getUserId() {
+        return userId;
+    }
+
+    @Override
+    public String getRoleId() {
+        return roleId;
+    }
 }
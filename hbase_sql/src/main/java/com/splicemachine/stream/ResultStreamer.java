@@ -60,12 +60,23 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
     private transient CountDownLatch active;
     private int batches;
     private volatile TaskContext taskContext;
+    private boolean framed;
+    private boolean compressFrames;
 
     // Serialization
     public ResultStreamer() {
     }
 
     public ResultStreamer(OperationContext<?> context, UUID uuid, String host, int port, int numPartitions, int batches, int batchSize) {
+        this(context, uuid, host, port, numPartitions, batches, batchSize, false, false);
+    }
+
+    /**
+     * @param framed if true, the rows of each batch are sent to the client as a single {@link StreamProtocol.RowFrame}
+     * @param compressFrames if true, frames are compressed
+     */
+    public ResultStreamer(OperationContext<?> context, UUID uuid, String host, int port, int numPartitions, int batches, int batchSize,
+                          boolean framed, boolean compressFrames) {
         this.context = context;
         this.uuid = uuid;
         this.host = host;
@@ -74,7 +85,8 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
         this.batches = batches;
         this.batchSize = batchSize;
         this.permits = new Semaphore(batches - 1); // we start with one permit taken
-
+        this.framed = framed;
+        this.compressFrames = compressFrames;
     }
 
     @Override
@@ -87,6 +99,7 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
             private long consumed;
             private long sent;
             private int currentBatch;
+            private RowFrameWriter frame;
 
             @Override
             public Long call() throws InterruptedException {
@@ -98,13 +111,19 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
                     ah.reinitialize(null, false);
                     prepared = true;
                 }
+                if (framed) {
+                    frame = new RowFrameWriter(compressFrames);
+                }
                 try {
                     while (locatedRowIterator.hasNext()) {
                         T lr = locatedRowIterator.next();
                         consumed++;
 
-
-                        ctx.write(lr, ctx.voidPromise());
+                        if (frame != null) {
+                            frame.add(lr);
+                        } else {
+                            ctx.write(lr, ctx.voidPromise());
+                        }
                         currentBatch++;
                         sent++;
 
@@ -117,21 +136,35 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
                         consumeOffset();
                     }
                     // Data has been written, request close
+                    writeFrame();
                     ctx.writeAndFlush(new StreamProtocol.RequestClose());
 
                     return consumed;
                 } finally {
+                    if (frame != null)
+                        frame.close();
                     if (prepared)
                         ah.close();
                 }
             }
 
+            /**
+             * Write the rows accumulated so far as a single frame, if we are framing rows. Any message which
+             * has to be ordered with respect to the rows must be preceded by a call to this method.
+             */
+            private void writeFrame() {
+                if (frame != null && !frame.isEmpty()) {
+                    ctx.write(frame.build(), ctx.voidPromise());
+                }
+            }
+
             /**
              * If the current batch exceeds the batch size, flush the connection and take a new permit, blocking if the client
              * hasn't had time yet to process previous messages
              */
             private void flushAndGetPermit() throws InterruptedException {
                 if (currentBatch >= batchSize) {
+                    writeFrame();
                     ctx.flush();
                     currentBatch = 0;
                     permits.acquire();
@@ -144,6 +177,7 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
              */
             private void consumeOffset() {
                 if (consumed < offset) {
+                    writeFrame();
                     long count = 0;
                     while (locatedRowIterator.hasNext() && consumed < offset) {
                         locatedRowIterator.next();
@@ -160,6 +194,7 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
              */
             private boolean checkLimit() {
                 if (consumed > limit) {
+                    writeFrame();
                     ctx.flush();
                     if (LOG.isTraceEnabled())
                         LOG.trace("Reached limit, stopping. consumed " + consumed + " sent " + sent + " limit " + limit);
@@ -245,6 +280,7 @@ public class ResultStreamer<T> extends ChannelInboundHandlerAdapter implements F
                 ", limit=" + limit +
                 ", partition=" + partition +
                 ", batches=" + batches +
+                ", framed=" + framed +
                 '}';
     }
 }
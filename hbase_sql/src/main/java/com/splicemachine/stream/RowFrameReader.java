@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.stream;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.splicemachine.derby.impl.SpliceSparkKryoRegistrator;
+import com.splicemachine.utils.kryo.KryoPool;
+
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes the rows of a {@link StreamProtocol.RowFrame} one at a time, as the client consumes them, so that
+ * a frame which is discarded (because we reached the limit, or the task was retried) is never fully decoded.
+ */
+class RowFrameReader {
+    private static final KryoPool kp = SpliceSparkKryoRegistrator.getInstance();
+
+    private final Input input;
+    private final int rows;
+    private int read;
+
+    RowFrameReader(StreamProtocol.RowFrame frame) {
+        this.rows = frame.rows;
+        this.input = new Input(frame.compressed ? decompress(frame) : frame.data, 0, frame.length);
+    }
+
+    boolean hasNext() {
+        return read < rows;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    Object next() {
+        if (read >= rows)
+            throw new NoSuchElementException();
+        Kryo kryo = kp.get();
+        try {
+            Object row = kryo.readClassAndObject(input);
+            read++;
+            return row;
+        } finally {
+            kp.returnInstance(kryo);
+        }
+    }
+
+    private static byte[] decompress(StreamProtocol.RowFrame frame) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(frame.data);
+            byte[] data = new byte[frame.length];
+            int size = 0;
+            while (size < data.length && !inflater.finished()) {
+                int n = inflater.inflate(data, size, data.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                size += n;
+            }
+            if (size != data.length)
+                throw new IllegalStateException("Corrupted frame, expected " + data.length + " bytes, got " + size);
+            return data;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted frame", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
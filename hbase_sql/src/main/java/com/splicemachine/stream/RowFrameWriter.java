@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.stream;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import com.splicemachine.derby.impl.SpliceSparkKryoRegistrator;
+import com.splicemachine.utils.kryo.KryoPool;
+
+import java.util.zip.Deflater;
+
+/**
+ * Accumulates rows into a {@link StreamProtocol.RowFrame}, so that a whole batch of rows goes through the channel
+ * (and the client's queues) as a single message.
+ *
+ * Not thread safe, each ResultStreamer writes its frames from a single thread.
+ */
+class RowFrameWriter {
+    // compressing tiny frames costs more than it saves
+    static final int MIN_COMPRESSION_SIZE = 1024;
+
+    private static final KryoPool kp = SpliceSparkKryoRegistrator.getInstance();
+
+    private final Output output = new Output(4096, -1);
+    private final boolean compress;
+    private Deflater deflater;
+    private byte[] compressBuffer;
+    private int rows;
+
+    RowFrameWriter(boolean compress) {
+        this.compress = compress;
+    }
+
+    void add(Object row) {
+        Kryo kryo = kp.get();
+        try {
+            kryo.writeClassAndObject(output, row);
+        } finally {
+            kp.returnInstance(kryo);
+        }
+        rows++;
+    }
+
+    boolean isEmpty() {
+        return rows == 0;
+    }
+
+    /**
+     * @return a frame with all the rows added since the last call, the writer is ready to accept new rows afterwards
+     */
+    StreamProtocol.RowFrame build() {
+        int length = output.position();
+        StreamProtocol.RowFrame frame;
+        byte[] compressed = compress && length >= MIN_COMPRESSION_SIZE ? compress(output.getBuffer(), length) : null;
+        if (compressed != null) {
+            frame = new StreamProtocol.RowFrame(rows, length, true, compressed);
+        } else {
+            frame = new StreamProtocol.RowFrame(rows, length, false, output.toBytes());
+        }
+        output.clear();
+        rows = 0;
+        return frame;
+    }
+
+    void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    /**
+     * @return the compressed data, or null if it doesn't compress
+     */
+    private byte[] compress(byte[] data, int length) {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        if (compressBuffer == null || compressBuffer.length < length) {
+            compressBuffer = new byte[length];
+        }
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished() && size < compressBuffer.length) {
+            size += deflater.deflate(compressBuffer, size, compressBuffer.length - size);
+        }
+        if (!deflater.finished()) {
+            // the compressed data is larger than the original
+            return null;
+        }
+        byte[] result = new byte[size];
+        System.arraycopy(compressBuffer, 0, result, 0, size);
+        return result;
+    }
+}
@@ -27,12 +27,19 @@ import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 
 
 /**
  * This class handles connections from Spark tasks streaming data to the query client. One connection is created from
  * each task, it handles failures and recovery in case the task is retried.
  *
+ * By default partitions are consumed strictly in order, so the rows are returned in the order Spark produced them.
+ * When the order doesn't matter (i.e. the plan does not depend on it), the listener can be created in <em>interleaved</em> mode
+ * instead, in which rows are consumed from whichever partition has data ready. A partition is served for at most one
+ * batch at a time before the listener moves on to the next partition with data, so that every task keeps streaming
+ * rather than waiting for its predecessors to finish. Flow control remains per partition.
+ *
  * Created by dgomezferro on 5/20/16.
  */
 @ChannelHandler.Sharable
@@ -60,6 +67,14 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
     private volatile boolean canBlock = true;
     private volatile boolean stopped = false;
 
+    /* Interleaved mode only */
+    private final boolean interleaved;
+    // one permit for each message enqueued on any partition
+    private final Semaphore available = new Semaphore(0);
+    private PartitionState servingState;
+    private int servedFromState;
+    private int finishedPartitions;
+
     StreamListener() {
         this(-1, 0);
     }
@@ -69,6 +84,16 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
     }
 
     public StreamListener(long limit, long offset, int batches, int batchSize) {
+        this(limit, offset, batches, batchSize, false);
+    }
+
+    /**
+     * @param interleaved if true, return rows from partitions in whichever order they become available. This is
+     *                    only honored when there is no offset, since skipping the first N rows requires a
+     *                    well-defined order.
+     */
+    public StreamListener(long limit, long offset, int batches, int batchSize, boolean interleaved) {
+        this.interleaved = interleaved && offset <= 0;
         this.offset = offset;
         this.limit = limit;
         this.batchSize = batchSize;
@@ -83,9 +108,11 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
 
     public Iterator<T> getIterator() {
         // Initialize first partition
-        PartitionState ps = partitionStateMap.putIfAbsent(0, new PartitionState(1, queueSize));
+        PartitionState ps = new PartitionState(0, queueSize);
+        PartitionState old = partitionStateMap.putIfAbsent(0, ps);
+        ps = old != null ? old : ps;
         if (failure != null) {
-            ps.messages.add(FAILURE);
+            enqueue(ps, FAILURE);
         }
         // This will block until some data is available
         advance();
@@ -111,7 +138,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         }
         if (msg instanceof StreamProtocol.RequestClose) {
             // We can't block here, we negotiate throughput with the server to guarantee it
-            state.messages.add(SENTINEL);
+            enqueue(state, SENTINEL);
             // Let server know it can close the connection
             ctx.writeAndFlush(new StreamProtocol.ConfirmClose());
             ctx.close().sync();
@@ -121,7 +148,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         } else {
             // Data or StreamProtocol.Skipped
             // We can't block here, we negotiate throughput with the server to guarantee it
-            state.messages.add(msg);
+            enqueue(state, msg);
         }
     }
 
@@ -147,12 +174,22 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
     }
 
     private void advance() {
+        if (interleaved) {
+            advanceInterleaved();
+            return;
+        }
         T next = null;
         try {
             while (next == null) {
                 PartitionState state = partitionStateMap.get(currentQueue);
                 // We take a message first to make sure we have a connection
-                Object msg = canBlock ? state.messages.take() : state.messages.remove();
+                Object msg;
+                if (state.hasFrameRows()) {
+                    msg = state.frame.next();
+                } else {
+                    msg = canBlock ? state.messages.take() : state.messages.remove();
+                    msg = openFrame(state, msg);
+                }
                 if (!state.initialized && (offset > 0 || limit > 0)) {
                     if (LOG.isTraceEnabled())
                         LOG.trace("Sending skip " + limit + ", " + offset);
@@ -200,9 +237,11 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
                     }
 
                     // Set the partitionState so we can block on the queue in case the connection hasn't opened yet
-                    PartitionState ps = partitionStateMap.putIfAbsent(currentQueue, new PartitionState(currentQueue, queueSize));
+                    PartitionState ps = new PartitionState(currentQueue, queueSize);
+                    PartitionState old = partitionStateMap.putIfAbsent(currentQueue, ps);
+                    ps = old != null ? old : ps;
                     if (failure != null) {
-                        ps.messages.add(FAILURE);
+                        enqueue(ps, FAILURE);
                     }
                 } else {
                     if (msg instanceof StreamProtocol.Skipped) {
@@ -242,6 +281,151 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         }
     }
 
+    private void advanceInterleaved() {
+        T next = null;
+        try {
+            while (next == null) {
+                if (stopped || finishedPartitions >= numPartitions) {
+                    if (LOG.isTraceEnabled())
+                        LOG.trace("End of stream");
+                    currentResult = null;
+                    close();
+                    return;
+                }
+                PartitionState state = servingState;
+                Object msg;
+                if (state != null && state.hasFrameRows()) {
+                    // finish the frame we are reading before looking at other partitions
+                    msg = state.frame.next();
+                } else {
+                    if (canBlock) {
+                        available.acquire();
+                    } else if (!available.tryAcquire()) {
+                        // the olap job completed and every message it sent has been consumed
+                        currentResult = null;
+                        close();
+                        return;
+                    }
+                    state = nextReadyPartition();
+                    if (state == null) {
+                        // the permit belonged to a message discarded by a retry, or to a stop request
+                        continue;
+                    }
+                    msg = openFrame(state, state.messages.poll());
+                    if (state.hasFrameRows()) {
+                        // a frame holds a whole batch, account for it against this partition's turn
+                        servedFromState += state.frame.rows() - 1;
+                    }
+                }
+                if (!state.initialized && limit > 0) {
+                    if (LOG.isTraceEnabled())
+                        LOG.trace("Sending skip " + limit);
+                    state.channel.writeAndFlush(new StreamProtocol.Skip(limit, 0));
+                }
+                state.initialized = true;
+                if (msg == RETRY) {
+                    // There was a retried task, skip all records already read from the previous run of the task
+                    long currentRead = state.readTotal;
+                    long serverLimit = limit > 0 ? limit + currentRead : -1;
+
+                    state.next.channel.writeAndFlush(new StreamProtocol.Skip(serverLimit, currentRead));
+                    state.next.initialized = true;
+                    state.next.readTotal = currentRead;
+                    state.messages.clear();
+
+                    partitionStateMap.put(state.partition, state.next);
+                    servingState = null;
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Retried task, currentRead " + currentRead + " serverLimit " + serverLimit + " state " + state);
+                    }
+                } else if (msg == FAILURE) {
+                    // The olap job failed, return
+                    currentResult = null;
+                    return;
+                } else if (msg == SENTINEL) {
+                    if (LOG.isTraceEnabled())
+                        LOG.trace("Partition " + state.partition + " finished");
+                    PartitionState ps = partitionStateMap.remove(state.partition);
+                    if (ps != null && ps.channel != null)
+                        partitionMap.remove(ps.channel);
+                    servingState = null;
+                    finishedPartitions++;
+                } else {
+                    if (!(msg instanceof StreamProtocol.Skipped)) {
+                        // We are returning a message
+                        next = (T) msg;
+                        state.consumed++;
+                        state.readTotal++;
+                        // Check the limit
+                        if (limit > 0) {
+                            limit--;
+                            if (limit == 0) {
+                                stopAllStreams();
+                            }
+                        }
+                    }
+                    // a retried task reports the rows it skipped, but we already counted them in readTotal
+
+                    if (state.consumed > batchSize) {
+                        if (LOG.isTraceEnabled())
+                            LOG.trace("Writing CONT");
+                        state.channel.writeAndFlush(new StreamProtocol.Continue());
+                        state.consumed -= batchSize;
+                    }
+                }
+            }
+            currentResult = next;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Pick the partition to read the next message from. We keep reading from the same partition for up
+     * to a batch of messages, and then move on to the next partition (in round-robin order) which has
+     * messages waiting.
+     *
+     * @return a partition with at least one message, or null if there isn't one
+     */
+    private PartitionState nextReadyPartition() {
+        PartitionState serving = servingState;
+        if (serving != null && servedFromState < batchSize
+                && !serving.messages.isEmpty() && partitionStateMap.get(serving.partition) == serving) {
+            servedFromState++;
+            return serving;
+        }
+        int n = (int) numPartitions;
+        int start = serving == null ? 0 : serving.partition + 1;
+        for (int i = 0; i < n; i++) {
+            PartitionState state = partitionStateMap.get((start + i) % n);
+            if (state != null && !state.messages.isEmpty()) {
+                servingState = state;
+                servedFromState = 1;
+                return state;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * If the message is a frame of rows, start reading it.
+     *
+     * @return the first row of the frame, or the message itself if it isn't a frame
+     */
+    private Object openFrame(PartitionState state, Object msg) {
+        if (msg instanceof StreamProtocol.RowFrame) {
+            state.frame = new RowFrameReader((StreamProtocol.RowFrame) msg);
+            return state.frame.next();
+        }
+        return msg;
+    }
+
+    private void enqueue(PartitionState state, Object msg) {
+        state.messages.add(msg);
+        if (interleaved)
+            available.release();
+    }
+
     private void clearCurrentQueue() {
         PartitionState ps = partitionStateMap.remove(currentQueue);
         if (ps != null && ps.channel != null)
@@ -267,6 +451,12 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         for (Channel channel : partitionMap.keySet()) {
             channel.writeAndFlush(new StreamProtocol.RequestClose());
         }
+        if (interleaved) {
+            // wake up the iterator so that it sees we are stopped
+            available.release();
+            close();
+            return;
+        }
         // create fake queue with finish message so the next call to next() returns null
         currentQueue = (int) numPartitions + 1;
         PartitionState ps = new PartitionState(currentQueue, 0);
@@ -292,7 +482,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         ps = old != null ? old : ps;
 
         if (failure != null) {
-            ps.messages.add(FAILURE);
+            enqueue(ps, FAILURE);
         }
         Channel previousChannel = ps.channel;
         if (previousChannel != null) {
@@ -303,7 +493,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
             partitionMap.put(channel, ps.next);
             partitionMap.remove(ps.channel); // don't accept more messages from this channel
             // this is a new connection from a retried task
-            ps.messages.add(RETRY);
+            enqueue(ps, RETRY);
         } else {
             partitionMap.put(channel, ps);
             ps.channel = channel;
@@ -376,7 +566,7 @@ public class StreamListener<T> extends ChannelInboundHandlerAdapter implements I
         // Unblock iterator
         for (PartitionState state : partitionStateMap.values()) {
             if (state != null) {
-                state.messages.add(FAILURE);
+                enqueue(state, FAILURE);
             }
         }
     }
@@ -390,12 +580,17 @@ class PartitionState {
     long readTotal;
     boolean initialized;
     volatile PartitionState next = null; // used when a task is retried after a failure
+    RowFrameReader frame; // frame we are currently reading rows from, if any
 
     PartitionState(int partition, int queueSize) {
         this.partition = partition;
         this.messages = new ArrayBlockingQueue<>(queueSize + 4);  // Extra to account for out of band messages
     }
 
+    boolean hasFrameRows() {
+        return frame != null && frame.hasNext();
+    }
+
     @Override
     public String toString() {
         return "PartitionState{" +
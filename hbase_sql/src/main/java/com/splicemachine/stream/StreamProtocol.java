@@ -100,6 +100,35 @@ public class StreamProtocol implements Serializable {
         }
     }
 
+    /**
+     * A batch of rows sent as a single message. {@code data} holds {@code rows} Kryo encoded objects, possibly
+     * compressed, in which case {@code length} is the size of the uncompressed data.
+     */
+    public static class RowFrame implements Serializable {
+        public int rows;
+        public int length;
+        public boolean compressed;
+        public byte[] data;
+
+        public RowFrame() {}
+
+        public RowFrame(int rows, int length, boolean compressed, byte[] data) {
+            this.rows = rows;
+            this.length = length;
+            this.compressed = compressed;
+            this.data = data;
+        }
+
+        @Override
+        public String toString() {
+            return "RowFrame{" +
+                    "rows=" + rows +
+                    ", length=" + length +
+                    ", compressed=" + compressed +
+                    '}';
+        }
+    }
+
     public static class Continue implements Serializable {
     }
 
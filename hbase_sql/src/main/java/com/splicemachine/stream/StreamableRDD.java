@@ -46,6 +46,8 @@ public class StreamableRDD<T> {
     private final int clientBatches;
     private final UUID uuid;
     private final OperationContext<?> context;
+    private final boolean framed;
+    private final boolean compressFrames;
 
 
     StreamableRDD(JavaRDD<T> rdd, UUID uuid, String clientHost, int clientPort) {
@@ -53,6 +55,11 @@ public class StreamableRDD<T> {
     }
 
     public StreamableRDD(JavaRDD<T> rdd, OperationContext<?> context, UUID uuid, String clientHost, int clientPort, int batches, int batchSize) {
+        this(rdd, context, uuid, clientHost, clientPort, batches, batchSize, false, false);
+    }
+
+    public StreamableRDD(JavaRDD<T> rdd, OperationContext<?> context, UUID uuid, String clientHost, int clientPort, int batches, int batchSize,
+                         boolean framed, boolean compressFrames) {
         this.rdd = rdd;
         this.context = context;
         this.uuid = uuid;
@@ -62,12 +69,14 @@ public class StreamableRDD<T> {
         completionService = new ExecutorCompletionService<>(executor);
         this.clientBatchSize = batchSize;
         this.clientBatches = batches;
+        this.framed = framed;
+        this.compressFrames = compressFrames;
     }
 
     public void submit() throws Exception {
         Exception error = null;
         try {
-            final JavaRDD<String> streamed = rdd.mapPartitionsWithIndex(new ResultStreamer(context, uuid, host, port, rdd.getNumPartitions(), clientBatches, clientBatchSize), true);
+            final JavaRDD<String> streamed = rdd.mapPartitionsWithIndex(new ResultStreamer(context, uuid, host, port, rdd.getNumPartitions(), clientBatches, clientBatchSize, framed, compressFrames), true);
             int numPartitions = streamed.getNumPartitions();
             int partitionsBatchSize = PARALLEL_PARTITIONS / 2;
             int partitionBatches = numPartitions / partitionsBatchSize;
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.derby.stream.ActivationHolder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spark_project.guava.base.Ticker;
+import org.spark_project.guava.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the per-executor cache of deserialized activations.
+ */
+public class ActivationHolderCacheTest {
+    private static final long EXPIRATION = 100L;
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final ActivationHolderCache cache = new ActivationHolderCache(CacheBuilder.newBuilder()
+            .expireAfterAccess(EXPIRATION, TimeUnit.NANOSECONDS)
+            .ticker(ticker)
+            .<Long, Queue<ActivationHolder>>build());
+    private final CountingDeserializer deserializer = new CountingDeserializer();
+
+    @Test
+    public void testTaskSharesItsHolder() throws Exception {
+        ActivationHolder ah = cache.acquire(1L, 10L, deserializer);
+
+        Assert.assertSame(ah, cache.taskHolder(1L, 10L));
+        Assert.assertNull("Holder assigned to the wrong task", cache.taskHolder(2L, 10L));
+        Assert.assertNull("Holder assigned to the wrong broadcast", cache.taskHolder(1L, 11L));
+        Assert.assertEquals(1, deserializer.count);
+    }
+
+    @Test
+    public void testConcurrentTasksGetTheirOwnHolders() throws Exception {
+        ActivationHolder first = cache.acquire(1L, 10L, deserializer);
+        ActivationHolder second = cache.acquire(2L, 10L, deserializer);
+
+        Assert.assertNotSame("Holder shared by running tasks", first, second);
+        Assert.assertEquals(2, deserializer.count);
+    }
+
+    @Test
+    public void testReleasedHolderIsReusedByNextTask() throws Exception {
+        ActivationHolder ah = cache.acquire(1L, 10L, deserializer);
+        cache.release(1L, 10L);
+        Assert.assertNull("Holder still assigned to a completed task", cache.taskHolder(1L, 10L));
+
+        Assert.assertSame(ah, cache.acquire(2L, 10L, deserializer));
+        Assert.assertEquals("Holder was deserialized again", 1, deserializer.count);
+
+        // it's in use again, so a concurrent task gets a new one
+        Assert.assertNotSame(ah, cache.acquire(3L, 10L, deserializer));
+        Assert.assertEquals(2, deserializer.count);
+    }
+
+    @Test
+    public void testHoldersAreNotReusedAcrossBroadcasts() throws Exception {
+        ActivationHolder ah = cache.acquire(1L, 10L, deserializer);
+        cache.release(1L, 10L);
+
+        Assert.assertNotSame(ah, cache.acquire(2L, 11L, deserializer));
+        Assert.assertEquals(2, deserializer.count);
+    }
+
+    @Test
+    public void testIdleHoldersExpire() throws Exception {
+        ActivationHolder ah = cache.acquire(1L, 10L, deserializer);
+        cache.release(1L, 10L);
+
+        ticker.advance(EXPIRATION);
+        Assert.assertNotSame("Idle holder should have expired", ah, cache.acquire(2L, 10L, deserializer));
+        Assert.assertEquals(2, deserializer.count);
+    }
+
+    @Test
+    public void testReleaseOfTaskWithoutHolderIsIgnored() throws Exception {
+        cache.release(1L, 10L);
+
+        cache.acquire(2L, 10L, deserializer);
+        Assert.assertEquals(1, deserializer.count);
+    }
+
+    @Test
+    public void testFailedDeserializationAssignsNothing() throws Exception {
+        try {
+            cache.acquire(1L, 10L, new Callable<ActivationHolder>() {
+                @Override
+                public ActivationHolder call() throws Exception {
+                    throw new IllegalStateException("corrupt broadcast");
+                }
+            });
+            Assert.fail("Deserialization failure was swallowed");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertNull(cache.taskHolder(1L, 10L));
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper classes*/
+    private static class CountingDeserializer implements Callable<ActivationHolder> {
+        private int count;
+
+        @Override
+        public ActivationHolder call() throws IOException {
+            count++;
+            return new ActivationHolder();
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long time) {
+            nanos += time;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.derby.test.framework.SpliceSchemaWatcher;
+import com.splicemachine.derby.test.framework.SpliceWatcher;
+import com.splicemachine.homeless.TestUtils;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs queries on Spark, so that their activations go through the Kryo encoded broadcast, and checks that they
+ * return the same results as on control.
+ */
+public class BroadcastedActivationIT {
+    private static final String SCHEMA = BroadcastedActivationIT.class.getSimpleName().toUpperCase();
+
+    @ClassRule
+    public static final SpliceSchemaWatcher schemaWatcher = new SpliceSchemaWatcher(SCHEMA);
+
+    @ClassRule
+    public static final SpliceWatcher classWatcher = new SpliceWatcher(SCHEMA);
+
+    @Rule
+    public final SpliceWatcher methodWatcher = new SpliceWatcher(SCHEMA);
+
+    @BeforeClass
+    public static void createTables() throws Exception {
+        classWatcher.executeUpdate("create table T(a int, b int, c varchar(9))");
+        classWatcher.executeUpdate("create table S(a int, b int, c varchar(9))");
+        classWatcher.executeUpdate("insert into T values " +
+                "(1, 1, 'a'), (2, 1, 'b'), (3, 2, 'c'), (4, 2, 'd'), (5, 2, 'e'), (6, 3, 'f'), (7, 3, null), (8, 4, 'h')");
+        classWatcher.executeUpdate("insert into S values (2, 1, 'b'), (4, 2, 'd'), (6, 3, 'f'), (9, 5, 'i')");
+        for (String table : new String[]{"U_CONTROL", "U_SPARK"}) {
+            classWatcher.executeUpdate("create table " + table + "(a int, c varchar(9))");
+            classWatcher.executeUpdate("insert into " + table + " select a, cast(null as varchar(9)) from T");
+        }
+    }
+
+    @Test
+    public void testRowCount() throws Exception {
+        assertSameOnSpark("select a, c from T --splice-properties useSpark=%s\n order by a " +
+                "offset 2 rows fetch next 3 rows only");
+    }
+
+    @Test
+    public void testWindowFunctions() throws Exception {
+        assertSameOnSpark("select a, b, row_number() over (partition by b order by a desc), " +
+                "sum(a) over (partition by b order by a rows between unbounded preceding and current row) " +
+                "from T --splice-properties useSpark=%s\n order by a");
+    }
+
+    @Test
+    public void testSetOperations() throws Exception {
+        assertSameOnSpark("select a, c from T --splice-properties useSpark=%s\n except select a, c from S order by 1");
+        assertSameOnSpark("select a, c from T --splice-properties useSpark=%s\n intersect select a, c from S order by 1");
+        assertSameOnSpark("select a from T --splice-properties useSpark=%s\n union select a from S order by 1");
+    }
+
+    @Test
+    public void testBatchOnceUpdate() throws Exception {
+        String update = "update %s --splice-properties useSpark=%s\n set c = (select S.c from S where S.a = %1$s.a)";
+        methodWatcher.executeUpdate(String.format(update, "U_CONTROL", "false"));
+        methodWatcher.executeUpdate(String.format(update, "U_SPARK", "true"));
+
+        assertEquals(query("select a, c from U_CONTROL order by a"), query("select a, c from U_SPARK order by a"));
+    }
+
+    @Test
+    public void testRepeatedExecutionsUseTheirOwnActivation() throws Exception {
+        // each execution broadcasts a new activation, a holder cached for an earlier one must not be picked up
+        PreparedStatement ps = methodWatcher.prepareStatement("select count(*), max(a) from T --splice-properties useSpark=true\n where b = ?");
+        int[][] expected = {{1, 2, 2}, {2, 3, 5}, {3, 2, 7}, {4, 1, 8}, {1, 2, 2}, {5, 0, 0}};
+        for (int[] e : expected) {
+            ps.setInt(1, e[0]);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals("Incorrect count for b = " + e[0], e[1], rs.getInt(1));
+                assertEquals("Incorrect max for b = " + e[0], e[2], rs.getInt(2));
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    private void assertSameOnSpark(String query) throws Exception {
+        assertEquals(query, query(String.format(query, "false")), query(String.format(query, "true")));
+    }
+
+    private String query(String sql) throws Exception {
+        try (ResultSet rs = methodWatcher.executeQuery(sql)) {
+            return TestUtils.FormattedResult.ResultFactory.toString(rs);
+        }
+    }
+}
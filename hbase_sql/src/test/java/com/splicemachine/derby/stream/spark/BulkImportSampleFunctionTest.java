@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.spark;
+
+import com.splicemachine.primitives.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public class BulkImportSampleFunctionTest {
+
+    @Test
+    public void sampleIsBoundedHoweverManyRows() throws Exception {
+        for (int rows : new int[]{1000, 100000, 10000000}) {
+            Assert.assertEquals("Incorrect sample size for " + rows + " rows!", 60, count(new BulkImportSampleFunction(60).call(keys(rows))));
+        }
+    }
+
+    @Test
+    public void smallPartitionIsSampledEntirely() throws Exception {
+        Iterator<BulkImportKey> sample = new BulkImportSampleFunction(60).call(keys(10));
+        Set<BulkImportKey> sampled = new HashSet<>();
+        while (sample.hasNext()) {
+            sampled.add(sample.next());
+        }
+        Assert.assertEquals("Incorrect sample size!", 10, sampled.size());
+    }
+
+    @Test
+    public void totalSampleIsBoundedHoweverManyPartitions() throws Exception {
+        Assert.assertEquals("Incorrect sample size!", 60, BulkImportDataSetWriter.sampleSizePerPartition(100, 100));
+        Assert.assertEquals("Incorrect sample size!", 6, BulkImportDataSetWriter.sampleSizePerPartition(100, 1000));
+        for (int partitions : new int[]{1000, 100000, 1000000}) {
+            long total = (long) BulkImportDataSetWriter.sampleSizePerPartition(partitions, partitions) * partitions;
+            Assert.assertTrue("Sample too large for " + partitions + " partitions: " + total, total <= 3 * 100000 + partitions);
+        }
+    }
+
+    private static int count(Iterator<BulkImportKey> keys) {
+        int count = 0;
+        while (keys.hasNext()) {
+            keys.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static Iterator<BulkImportKey> keys(final int count) {
+        return new Iterator<BulkImportKey>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public BulkImportKey next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return new BulkImportKey(1L, Bytes.toBytes(next++));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
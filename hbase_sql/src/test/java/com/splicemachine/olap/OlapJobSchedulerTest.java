@@ -0,0 +1,308 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.olap;
+
+import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.derby.iapi.sql.olap.DistributedJob;
+import com.splicemachine.derby.iapi.sql.olap.OlapStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for admission control in the OLAP server.
+ */
+public class OlapJobSchedulerTest{
+    private static final long MILLIS=1000000L;
+
+    private final IncrementingClock clock=new IncrementingClock();
+    private final ManualExecutor executor=new ManualExecutor();
+    private final List<String> ran=new ArrayList<>();
+
+    @Test
+    public void testJobsBeyondServerLimitAreQueued() throws Exception{
+        OlapJobScheduler scheduler=scheduler("",2);
+        OlapJobStatus first=submit(scheduler,"first",null);
+        submit(scheduler,"second",null);
+        OlapJobStatus third=submit(scheduler,"third",null);
+
+        Assert.assertEquals(2,executor.pending());
+        Assert.assertEquals(1,(int)scheduler.getQueuedJobs().get(OlapResourcePool.DEFAULT_POOL));
+        Assert.assertEquals(OlapResourcePool.DEFAULT_POOL,third.getPoolName());
+        Assert.assertEquals(0L,first.getQueueTime());
+        Assert.assertEquals("Queued job should not have a queue time yet",-1L,third.getQueueTime());
+
+        clock.increment(25*MILLIS);
+        executor.runNext();
+        Assert.assertEquals(Collections.singletonList("first"),ran);
+        Assert.assertEquals("Queued job should have been started",2,executor.pending());
+        Assert.assertEquals(25L,third.getQueueTime());
+        Assert.assertEquals(25L,(long)scheduler.getMaxQueueTime().get(OlapResourcePool.DEFAULT_POOL));
+        Assert.assertEquals(3L,(long)scheduler.getAdmittedJobs().get(OlapResourcePool.DEFAULT_POOL));
+    }
+
+    @Test
+    public void testPoolLimitsDoNotBlockOtherPools() throws Exception{
+        OlapJobScheduler scheduler=scheduler("reports:maxJobs=2,maxMemory=300,jobMemory=100,members=REPORTER",8);
+        submit(scheduler,"report1","reporter");
+        submit(scheduler,"report2","reporter");
+        submit(scheduler,"report3","reporter");
+        submit(scheduler,"adhoc","analyst");
+
+        Assert.assertEquals(2,(int)scheduler.getRunningJobs().get("reports"));
+        Assert.assertEquals(200L,(long)scheduler.getReservedMemory().get("reports"));
+        Assert.assertEquals(1,(int)scheduler.getQueuedJobs().get("reports"));
+        Assert.assertEquals(1,(int)scheduler.getRunningJobs().get(OlapResourcePool.DEFAULT_POOL));
+    }
+
+    @Test
+    public void testSlotsAreSharedByWeight() throws Exception{
+        OlapJobScheduler scheduler=scheduler("interactive:weight=2,members=ANALYST;reports:weight=1,members=REPORTER",3);
+        for(int i=0;i<3;i++){
+            submit(scheduler,"report"+i,"reporter");
+        }
+        for(int i=0;i<3;i++){
+            submit(scheduler,"query"+i,"analyst");
+            submit(scheduler,"report"+(i+3),"reporter");
+        }
+        Assert.assertEquals(3,(int)scheduler.getRunningJobs().get("reports"));
+
+        //as the reports finish, the interactive pool should catch up to twice the share of the reports pool
+        executor.runNext();
+        executor.runNext();
+        executor.runNext();
+        Assert.assertEquals(2,(int)scheduler.getRunningJobs().get("interactive"));
+        Assert.assertEquals(1,(int)scheduler.getRunningJobs().get("reports"));
+    }
+
+    @Test
+    public void testCancelledQueuedJobIsDropped() throws Exception{
+        OlapJobScheduler scheduler=scheduler("",1);
+        submit(scheduler,"first",null);
+        OlapJobStatus second=submit(scheduler,"second",null);
+        submit(scheduler,"third",null);
+        second.cancel();
+
+        executor.runNext();
+        executor.runNext();
+        Assert.assertEquals(0,executor.pending());
+        Assert.assertEquals(2,ran.size());
+        Assert.assertEquals("third",ran.get(1));
+        Assert.assertEquals(0,(int)scheduler.getQueuedJobs().get(OlapResourcePool.DEFAULT_POOL));
+    }
+
+    @Test
+    public void testInternalJobsBypassAdmission() throws Exception{
+        OlapJobScheduler scheduler=scheduler("",1);
+        submit(scheduler,"first","analyst");
+        submit(scheduler,"second","analyst");
+        OlapJobStatus compaction=submit(scheduler,"compaction",null,true);
+
+        Assert.assertEquals("Internal job should not wait for a slot",2,executor.pending());
+        Assert.assertEquals(1,(int)scheduler.getQueuedJobs().get(OlapResourcePool.DEFAULT_POOL));
+        Assert.assertEquals(1,(int)scheduler.getRunningJobs().get(OlapResourcePool.DEFAULT_POOL));
+        Assert.assertEquals(1,scheduler.getRunningInternalJobs());
+        Assert.assertEquals(OlapResourcePool.INTERNAL_POOL,compaction.getPoolName());
+        Assert.assertEquals(0L,compaction.getQueueTime());
+
+        executor.runNext();
+        executor.runNext();
+        Assert.assertEquals(0,scheduler.getRunningInternalJobs());
+        Assert.assertEquals("Internal job should not hold a user slot",1,executor.pending());
+        executor.runNext();
+        Assert.assertEquals(Arrays.asList("first","compaction","second"),ran);
+    }
+
+    @Test
+    public void testUserJobsAreOnlyLimitedWithPools() throws Exception{
+        CountDownLatch done=new CountDownLatch(1);
+        try{
+            OlapJobScheduler scheduler=OlapJobScheduler.create(config("",2),clock);
+            for(int i=0;i<3;i++){
+                submitBlocking(scheduler,"analyst",done);
+            }
+            Assert.assertEquals("Jobs should not be limited without resource pools",
+                    3,(int)scheduler.getRunningJobs().get(OlapResourcePool.DEFAULT_POOL));
+
+            scheduler=OlapJobScheduler.create(config("reports:members=REPORTER",2),clock);
+            for(int i=0;i<3;i++){
+                submitBlocking(scheduler,"analyst",done);
+            }
+            Assert.assertEquals(2,(int)scheduler.getRunningJobs().get(OlapResourcePool.DEFAULT_POOL));
+            Assert.assertEquals(1,(int)scheduler.getQueuedJobs().get(OlapResourcePool.DEFAULT_POOL));
+        }finally{
+            done.countDown();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInternalPoolNameIsReserved() throws Exception{
+        OlapResourcePool.parse("internal:weight=2",16);
+    }
+
+    @Test
+    public void testParsePools() throws Exception{
+        List<OlapResourcePool> pools=OlapResourcePool.parse("a:weight=3,maxJobs=4,members=X|y ; b",16);
+        Assert.assertEquals(3,pools.size());
+        Assert.assertEquals(3,pools.get(0).weight);
+        Assert.assertEquals(4,pools.get(0).maxJobs);
+        Assert.assertTrue(pools.get(0).members.contains("Y"));
+        Assert.assertEquals(16,pools.get(1).maxJobs);
+        Assert.assertEquals(OlapResourcePool.DEFAULT_POOL,pools.get(2).name);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownPoolPropertyIsRejected() throws Exception{
+        OlapResourcePool.parse("a:priority=3",16);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMemberOfTwoPoolsIsRejected() throws Exception{
+        scheduler("a:members=X;b:members=X",16);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private OlapJobScheduler scheduler(String pools,int maxRunningJobs){
+        return new OlapJobScheduler(OlapResourcePool.parse(pools,maxRunningJobs),maxRunningJobs,executor,clock);
+    }
+
+    private OlapJobStatus submit(OlapJobScheduler scheduler,String label,String userId){
+        return submit(scheduler,label,userId,false);
+    }
+
+    private OlapJobStatus submit(OlapJobScheduler scheduler,final String label,String userId,boolean internal){
+        OlapJobStatus status=new OlapJobStatus(1000L,120);
+        Assert.assertTrue(status.markSubmitted());
+        scheduler.submit(new TestJob(label,userId,internal),status,new Callable<Void>(){
+            @Override
+            public Void call() throws Exception{
+                ran.add(label);
+                return null;
+            }
+        });
+        return status;
+    }
+
+    private static void submitBlocking(OlapJobScheduler scheduler,String userId,final CountDownLatch done){
+        OlapJobStatus status=new OlapJobStatus(1000L,120);
+        Assert.assertTrue(status.markSubmitted());
+        scheduler.submit(new TestJob("blocking",userId,false),status,new Callable<Void>(){
+            @Override
+            public Void call() throws Exception{
+                done.await();
+                return null;
+            }
+        });
+    }
+
+    private static SConfiguration config(String pools,int threads){
+        SConfiguration config=mock(SConfiguration.class);
+        when(config.getOlapServerResourcePools()).thenReturn(pools);
+        when(config.getOlapServerThreads()).thenReturn(threads);
+        return config;
+    }
+
+    private static class TestJob extends DistributedJob{
+        private final String name;
+        private final String userId;
+        private final boolean internal;
+
+        TestJob(String name,String userId,boolean internal){
+            this.name=name;
+            this.userId=userId;
+            this.internal=internal;
+        }
+
+        @Override
+        public Callable<Void> toCallable(OlapStatus jobStatus,Clock clock,long clientTimeoutCheckIntervalMs){
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getName(){
+            return name;
+        }
+
+        @Override
+        public boolean isInternal(){
+            return internal;
+        }
+
+        @Override
+        public String getUserId(){
+            return userId;
+        }
+    }
+
+    /**
+     * Holds on to submitted tasks until the test runs them.
+     */
+    private static class ManualExecutor extends AbstractExecutorService{
+        private final LinkedList<Runnable> tasks=new LinkedList<>();
+
+        int pending(){
+            return tasks.size();
+        }
+
+        void runNext(){
+            tasks.removeFirst().run();
+        }
+
+        @Override
+        public void execute(Runnable command){
+            tasks.addLast(command);
+        }
+
+        @Override
+        public void shutdown(){
+        }
+
+        @Override
+        public List<Runnable> shutdownNow(){
+            return new ArrayList<>(tasks);
+        }
+
+        @Override
+        public boolean isShutdown(){
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated(){
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout,TimeUnit unit) throws InterruptedException{
+            return true;
+        }
+    }
+}
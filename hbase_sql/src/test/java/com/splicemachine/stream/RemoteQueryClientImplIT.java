@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.stream;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.services.io.FormatIdInputStream;
+import com.splicemachine.db.iapi.services.io.FormatIdOutputStream;
+import com.splicemachine.db.iapi.sql.dictionary.DataDictionary;
+import com.splicemachine.db.iapi.sql.dictionary.SPSDescriptor;
+import com.splicemachine.db.iapi.sql.execute.ExecPreparedStatement;
+import com.splicemachine.db.impl.jdbc.EmbedConnection;
+import com.splicemachine.derby.test.framework.SpliceSchemaWatcher;
+import com.splicemachine.derby.test.framework.SpliceTableWatcher;
+import com.splicemachine.derby.test.framework.SpliceUnitTest;
+import com.splicemachine.derby.test.framework.SpliceWatcher;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.CallableStatement;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks whether results are interleaved for statements compiled by the server. The statements are
+ * prepared inside stored procedures, so that the decision is made on the real compiled (or stored)
+ * prepared statement.
+ */
+public class RemoteQueryClientImplIT extends SpliceUnitTest {
+
+    public static final String CLASS_NAME = RemoteQueryClientImplIT.class.getSimpleName().toUpperCase();
+    protected static SpliceWatcher spliceClassWatcher = new SpliceWatcher(CLASS_NAME);
+    protected static SpliceSchemaWatcher spliceSchemaWatcher = new SpliceSchemaWatcher(CLASS_NAME);
+    protected static SpliceTableWatcher spliceTableWatcher = new SpliceTableWatcher("A", CLASS_NAME, "(a int, b int, primary key(a))");
+
+    /* the text of SYS."getCatalogs", which has no ORDER BY */
+    private static final String GET_CATALOGS = "SELECT TABLE_CAT FROM ( VALUES ('') ) AS CATALOGS(TABLE_CAT) WHERE (1=0)";
+
+    @ClassRule
+    public static TestRule chain = RuleChain.outerRule(spliceClassWatcher)
+            .around(spliceSchemaWatcher)
+            .around(spliceTableWatcher);
+
+    @Rule
+    public SpliceWatcher methodWatcher = new SpliceWatcher(CLASS_NAME);
+
+    @BeforeClass
+    public static void createProcedures() throws Exception {
+        spliceClassWatcher.executeUpdate(format("CREATE PROCEDURE %s.DEPENDS_ON_ORDER(IN statement VARCHAR(1024), OUT dependsOnOrder BOOLEAN)" +
+                " PARAMETER STYLE JAVA READS SQL DATA LANGUAGE JAVA" +
+                " EXTERNAL NAME 'com.splicemachine.stream.RemoteQueryClientImplIT.DEPENDS_ON_ORDER'", CLASS_NAME));
+        spliceClassWatcher.executeUpdate(format("CREATE PROCEDURE %s.STORED_DEPENDS_ON_ORDER(IN name VARCHAR(128), OUT dependsOnOrder BOOLEAN)" +
+                " PARAMETER STYLE JAVA READS SQL DATA LANGUAGE JAVA" +
+                " EXTERNAL NAME 'com.splicemachine.stream.RemoteQueryClientImplIT.STORED_DEPENDS_ON_ORDER'", CLASS_NAME));
+    }
+
+    @Test
+    public void orderByDependsOnOrder() throws Exception {
+        assertTrue(dependsOnOrder(format("select * from %s.A order by b", CLASS_NAME)));
+    }
+
+    @Test
+    public void sortAvoidedOrderByDependsOnOrder() throws Exception {
+        // the ORDER BY is satisfied by the primary key scan, so the plan no longer sorts
+        assertTrue(dependsOnOrder(format("select * from %s.A order by a", CLASS_NAME)));
+    }
+
+    @Test
+    public void noOrderByDoesNotDependOnOrder() throws Exception {
+        // the scan still returns rows in primary key order, but that order is not significant
+        assertFalse(dependsOnOrder(format("select * from %s.A", CLASS_NAME)));
+    }
+
+    @Test
+    public void orderByInSubqueryDoesNotDependOnOrder() throws Exception {
+        assertFalse(dependsOnOrder(format("select * from (select * from %s.A order by b) s", CLASS_NAME)));
+        assertFalse(dependsOnOrder(format("select * from %s.A where b in (select b from %s.A order by a)", CLASS_NAME, CLASS_NAME)));
+    }
+
+    @Test
+    public void storedStatementWithOrderByDependsOnOrder() throws Exception {
+        assertTrue(dependsOnOrder("EXECUTE STATEMENT SYS.\"getTableTypes\""));
+    }
+
+    @Test
+    public void storedStatementReadBackDependsOnOrder() throws Exception {
+        // whether there is an ORDER BY is not stored, so statements read back keep their order
+        assertFalse(dependsOnOrder(GET_CATALOGS));
+        assertTrue(storedDependsOnOrder("getCatalogs"));
+        assertTrue(storedDependsOnOrder("getTableTypes"));
+    }
+
+    private boolean dependsOnOrder(String sql) throws Exception {
+        return call("DEPENDS_ON_ORDER", sql);
+    }
+
+    private boolean storedDependsOnOrder(String name) throws Exception {
+        return call("STORED_DEPENDS_ON_ORDER", name);
+    }
+
+    private boolean call(String procedure, String argument) throws Exception {
+        CallableStatement cs = methodWatcher.prepareCall(format("CALL %s.%s(?, ?)", CLASS_NAME, procedure));
+        cs.setString(1, argument);
+        cs.registerOutParameter(2, Types.BOOLEAN);
+        cs.execute();
+        return cs.getBoolean(2);
+    }
+
+    // Stored procedure that compiles the given statement and returns whether its results must stay in order
+    public static void DEPENDS_ON_ORDER(String statement, boolean[] dependsOnOrder) throws SQLException {
+        EmbedConnection conn = (EmbedConnection) DriverManager.getConnection("jdbc:default:connection");
+        PreparedStatement ps = conn.prepareStatement(statement);
+        try {
+            // preparing the statement created its activation
+            ExecPreparedStatement compiled = conn.getLanguageConnection().getLastActivation().getPreparedStatement();
+            dependsOnOrder[0] = RemoteQueryClientImpl.dependsOnOrder(compiled);
+        } finally {
+            ps.close();
+        }
+    }
+
+    // Stored procedure that writes and reads back a SYS stored statement the way SYSSTATEMENTS does, and returns
+    // whether the results of the statement read back must stay in order
+    public static void STORED_DEPENDS_ON_ORDER(String name, boolean[] dependsOnOrder) throws SQLException {
+        EmbedConnection conn = (EmbedConnection) DriverManager.getConnection("jdbc:default:connection");
+        try {
+            DataDictionary dd = conn.getLanguageConnection().getDataDictionary();
+            SPSDescriptor sps = dd.getSPSDescriptor(name, dd.getSystemSchemaDescriptor());
+            ExecPreparedStatement stored = sps.getPreparedStatement();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            FormatIdOutputStream out = new FormatIdOutputStream(bytes);
+            out.writeObject(stored);
+            out.flush();
+            FormatIdInputStream in = new FormatIdInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            ExecPreparedStatement read = (ExecPreparedStatement) in.readObject();
+
+            dependsOnOrder[0] = RemoteQueryClientImpl.dependsOnOrder(read);
+        } catch (StandardException | IOException | ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+    }
+}
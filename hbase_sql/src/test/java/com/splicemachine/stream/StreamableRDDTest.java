@@ -34,6 +34,7 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -400,6 +401,156 @@ public class StreamableRDDTest extends BaseStreamTest implements Serializable {
     }
 
 
+    @Test
+    public void testFramedOffsetLimit() throws StandardException {
+        StreamListener<ExecRow> sl = new StreamListener<>(400, 30000);
+        HostAndPort hostAndPort = server.getHostAndPort();
+        server.register(sl);
+
+        List<Tuple2<ExecRow,ExecRow>> manyRows = new ArrayList<>();
+        for(int i = 0; i < 100000; ++i) {
+            manyRows.add(new Tuple2<ExecRow, ExecRow>(getExecRow(i, 1), getExecRow(i, 2)));
+        }
+
+        JavaPairRDD<ExecRow, ExecRow> rdd = SpliceSpark.getContext().parallelizePairs(manyRows, 13);
+        final StreamableRDD srdd = new StreamableRDD(rdd.values(), null, sl.getUuid(), hostAndPort.getHostText(), hostAndPort.getPort(), 2, 512, true, false);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    srdd.submit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+            }
+        }.start();
+        Iterator<ExecRow> it = sl.getIterator();
+        int count = 0;
+        int first = 30000;
+        while (it.hasNext()) {
+            ExecRow execRow = it.next();
+            assertNotNull(execRow);
+            assertEquals(count+first, execRow.getColumn(1).getInt());
+            count++;
+        }
+        assertEquals(400, count);
+    }
+
+
+    @Test
+    public void testFramedCompressed() throws StandardException {
+        StreamListener<ExecRow> sl = new StreamListener<>();
+        HostAndPort hostAndPort = server.getHostAndPort();
+        server.register(sl);
+
+        List<Tuple2<ExecRow,ExecRow>> manyRows = new ArrayList<>();
+        for(int i = 0; i < 100000; ++i) {
+            manyRows.add(new Tuple2<ExecRow, ExecRow>(getExecRow(i, 1), getExecRow(i, 2)));
+        }
+
+        JavaPairRDD<ExecRow, ExecRow> rdd = SpliceSpark.getContext().parallelizePairs(manyRows, 13);
+        final StreamableRDD srdd = new StreamableRDD(rdd.values(), null, sl.getUuid(), hostAndPort.getHostText(), hostAndPort.getPort(), 2, 512, true, true);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    srdd.submit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+            }
+        }.start();
+        Iterator<ExecRow> it = sl.getIterator();
+        int count = 0;
+        while (it.hasNext()) {
+            ExecRow execRow = it.next();
+            assertNotNull(execRow);
+            assertEquals(count, execRow.getColumn(1).getInt());
+            count++;
+        }
+        assertEquals(100000, count);
+    }
+
+
+    @Test
+    public void testInterleaved() throws StandardException {
+        int batches = 2;
+        int batchSize = 512;
+        StreamListener<ExecRow> sl = new StreamListener<>(-1, 0, batches, batchSize, true);
+        HostAndPort hostAndPort = server.getHostAndPort();
+        server.register(sl);
+
+        List<Tuple2<ExecRow,ExecRow>> manyRows = new ArrayList<>();
+        for(int i = 0; i < 100000; ++i) {
+            manyRows.add(new Tuple2<ExecRow, ExecRow>(getExecRow(i, 1), getExecRow(i, 2)));
+        }
+
+        JavaPairRDD<ExecRow, ExecRow> rdd = SpliceSpark.getContext().parallelizePairs(manyRows, 13);
+        final StreamableRDD srdd = new StreamableRDD(rdd.values(), null, sl.getUuid(), hostAndPort.getHostText(), hostAndPort.getPort(), batches, batchSize);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    srdd.submit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+            }
+        }.start();
+        Iterator<ExecRow> it = sl.getIterator();
+        BitSet seen = new BitSet(100000);
+        int count = 0;
+        while (it.hasNext()) {
+            ExecRow execRow = it.next();
+            assertNotNull(execRow);
+            int value = execRow.getColumn(1).getInt();
+            assertFalse("Duplicate row " + value, seen.get(value));
+            seen.set(value);
+            count++;
+        }
+        assertEquals(100000, count);
+        assertEquals(100000, seen.cardinality());
+    }
+
+
+    @Test
+    public void testInterleavedLimit() throws StandardException {
+        StreamListener<ExecRow> sl = new StreamListener<>(400, 0, 2, 512, true);
+        HostAndPort hostAndPort = server.getHostAndPort();
+        server.register(sl);
+
+        List<Tuple2<ExecRow,ExecRow>> manyRows = new ArrayList<>();
+        for(int i = 0; i < 100000; ++i) {
+            manyRows.add(new Tuple2<ExecRow, ExecRow>(getExecRow(i, 1), getExecRow(i, 2)));
+        }
+
+        JavaPairRDD<ExecRow, ExecRow> rdd = SpliceSpark.getContext().parallelizePairs(manyRows, 13);
+        final StreamableRDD srdd = new StreamableRDD(rdd.values(), null, sl.getUuid(), hostAndPort.getHostText(), hostAndPort.getPort(), 2, 512);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    srdd.submit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+            }
+        }.start();
+        Iterator<ExecRow> it = sl.getIterator();
+        Set<Integer> seen = new HashSet<>();
+        while (it.hasNext()) {
+            ExecRow execRow = it.next();
+            assertNotNull(execRow);
+            assertTrue("Duplicate row", seen.add(execRow.getColumn(1).getInt()));
+        }
+        assertEquals(400, seen.size());
+    }
+
+
     @Test
     public void testConcurrentQueries() throws StandardException, ExecutionException, InterruptedException {
         final StreamListener<ExecRow> sl1 = new StreamListener<>();
@@ -5,7 +5,6 @@ import com.splicemachine.si.impl.TxnNetworkLayerFactory;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.HConnection;
 import org.apache.hadoop.hbase.client.HTable;
-import org.apache.hadoop.hbase.client.HTableInterface;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
@@ -26,7 +25,7 @@ public class H98TxnNetworkLayerFactory implements TxnNetworkLayerFactory{
     @Override
     public TxnNetworkLayer accessTxnNetwork() throws IOException{
         HConnection conn = connectionPool.getConnection();
-        HTableInterface table=new HTable(TXN_TABLE,conn);
+        HTable table=new HTable(TXN_TABLE,conn);
         return new Hbase98TxnNetworkLayer(table);
     }
 }
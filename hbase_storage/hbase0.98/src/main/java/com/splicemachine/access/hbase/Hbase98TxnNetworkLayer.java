@@ -2,7 +2,7 @@ package com.splicemachine.access.hbase;
 
 import com.splicemachine.si.coprocessor.TxnMessage;
 import com.splicemachine.si.impl.SkeletonTxnNetworkLayer;
-import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.coprocessor.Batch;
 import org.apache.hadoop.hbase.ipc.CoprocessorRpcChannel;
 import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
@@ -15,12 +15,17 @@ import java.util.Map;
  *         Date: 12/22/15
  */
 public class Hbase98TxnNetworkLayer extends SkeletonTxnNetworkLayer{
-    private final HTableInterface table;
+    private final HTable table;
 
-    public Hbase98TxnNetworkLayer(HTableInterface table){
+    public Hbase98TxnNetworkLayer(HTable table){
         this.table=table;
     }
 
+    @Override
+    public byte[][] getStartKeys() throws IOException{
+        return table.getStartKeys();
+    }
+
     @Override
     protected TxnMessage.TxnLifecycleService getLifecycleService(byte[] rowKey) throws IOException{
         TxnMessage.TxnLifecycleService service;
@@ -17,6 +17,8 @@ package com.splicemachine.access.hbase;
 
 import com.splicemachine.si.coprocessor.TxnMessage;
 import com.splicemachine.si.impl.SkeletonTxnNetworkLayer;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.RegionLocator;
 import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.client.coprocessor.Batch;
 import org.apache.hadoop.hbase.ipc.CoprocessorRpcChannel;
@@ -30,9 +32,11 @@ import java.util.Map;
  *         Date: 12/22/15
  */
 public class H10TxnNetworkLayer extends SkeletonTxnNetworkLayer{
+    private final Connection connection;
     private final Table table;
 
-    public H10TxnNetworkLayer(Table table){
+    public H10TxnNetworkLayer(Connection connection,Table table){
+        this.connection=connection;
         this.table=table;
     }
 
@@ -41,6 +45,13 @@ public class H10TxnNetworkLayer extends SkeletonTxnNetworkLayer{
         table.close();
     }
 
+    @Override
+    public byte[][] getStartKeys() throws IOException{
+        try(RegionLocator regionLocator=connection.getRegionLocator(table.getName())){
+            return regionLocator.getStartKeys();
+        }
+    }
+
     @Override
     protected TxnMessage.TxnLifecycleService getLifecycleService(byte[] rowKey) throws IOException{
         TxnMessage.TxnLifecycleService service;
@@ -15,8 +15,10 @@
 
 package com.splicemachine.hbase;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.splicemachine.si.impl.server.SICompactionState;
 import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.regionserver.InternalScanner;
 
 import java.io.IOException;
@@ -26,11 +28,17 @@ import java.util.List;
 /**
  * Decorator for an HBase scanner that performs SI operations at compaction time. Delegates the core work to
  * SICompactionState.
+ * <p/>
+ * Rows are read ahead until roughly an HFile block's worth of data is buffered, so that the transactions of the
+ * whole batch can be resolved together; the rows are then handed out one at a time.
  */
 public class SICompactionScanner implements InternalScanner {
     private final SICompactionState compactionState;
     private final InternalScanner delegate;
-    private List<Cell> rawList =new ArrayList<>();
+    private final List<Cell> batch =new ArrayList<>();
+    private final IntArrayList rowEnds =new IntArrayList();
+    private int currentRow;
+    private boolean delegateHasMore =true;
 
     public SICompactionScanner(SICompactionState compactionState,
                                InternalScanner scanner) {
@@ -43,10 +51,33 @@ public class SICompactionScanner implements InternalScanner {
         /*
          * Read data from the underlying scanner and send the results through the SICompactionState.
          */
-        rawList.clear();
-        final boolean more = delegate.next(rawList);
-        compactionState.mutate(rawList, list);
-        return more;
+        if(currentRow>=rowEnds.size()){
+            fillBatch();
+            if(rowEnds.isEmpty()) return false;
+        }
+        int from = currentRow==0 ? 0 : rowEnds.get(currentRow-1);
+        int to = rowEnds.get(currentRow++);
+        compactionState.mutate(batch,from,to,list);
+        return currentRow<rowEnds.size() || delegateHasMore;
+    }
+
+    private void fillBatch() throws IOException{
+        batch.clear();
+        rowEnds.clear();
+        currentRow = 0;
+        long batchSize = 0;
+        while(delegateHasMore && batchSize<HConstants.DEFAULT_BLOCKSIZE){
+            int start = batch.size();
+            delegateHasMore = delegate.next(batch);
+            int end = batch.size();
+            if(end==start) continue;
+            for(int i=start;i<end;i++){
+                Cell cell = batch.get(i);
+                batchSize+=cell.getRowLength()+cell.getFamilyLength()+cell.getQualifierLength()+cell.getValueLength();
+            }
+            rowEnds.add(end);
+        }
+        compactionState.resolve(batch);
     }
 
     public boolean next(List<Cell> results, int limit) throws IOException {
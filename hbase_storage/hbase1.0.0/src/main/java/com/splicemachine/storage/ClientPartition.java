@@ -30,7 +30,6 @@ import com.splicemachine.concurrent.Clock;
 import com.splicemachine.kvpair.KVPair;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.storage.util.PartitionInRangePredicate;
-import com.splicemachine.utils.Pair;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.client.coprocessor.Batch;
@@ -40,7 +39,6 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
 
 /**
  * Represents an HBase Table as a single Partition.
@@ -290,7 +288,7 @@ public class ClientPartition extends SkeletonHBaseClientPartition{
     }
 
     @Override
-    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker,Pair<KVPair, Lock>[] dataAndLocks) throws IOException {
+    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker,KVPair[] mutations) throws IOException {
         return null;
     }
 }
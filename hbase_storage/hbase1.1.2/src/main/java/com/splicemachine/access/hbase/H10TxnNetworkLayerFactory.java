@@ -49,6 +49,6 @@ public class H10TxnNetworkLayerFactory implements TxnNetworkLayerFactory{
     @Override
     public TxnNetworkLayer accessTxnNetwork() throws IOException{
         Table table=connection.getTable(txnTable);
-        return new H10TxnNetworkLayer(table);
+        return new H10TxnNetworkLayer(connection,table);
     }
 }
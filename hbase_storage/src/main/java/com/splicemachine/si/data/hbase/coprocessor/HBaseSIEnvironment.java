@@ -16,6 +16,7 @@
 package com.splicemachine.si.data.hbase.coprocessor;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
 import com.splicemachine.access.api.SnowflakeFactory;
 import com.splicemachine.access.hbase.HSnowflakeFactory;
@@ -41,9 +42,9 @@ import com.splicemachine.si.api.txn.TxnStore;
 import com.splicemachine.si.api.txn.TxnSupplier;
 import com.splicemachine.si.data.HExceptionFactory;
 import com.splicemachine.si.data.hbase.HOperationStatusFactory;
+import com.splicemachine.si.impl.BatchedKeepAliveScheduler;
 import com.splicemachine.si.impl.CoprocessorTxnStore;
 import com.splicemachine.si.impl.HOperationFactory;
-import com.splicemachine.si.impl.QueuedKeepAliveScheduler;
 import com.splicemachine.si.impl.SimpleTxnOperationFactory;
 import com.splicemachine.si.impl.TxnNetworkLayerFactory;
 import com.splicemachine.si.impl.driver.SIDriver;
@@ -57,12 +58,15 @@ import com.splicemachine.storage.HNIOFileSystem;
 import com.splicemachine.storage.PartitionInfoCache;
 import com.splicemachine.timestamp.api.TimestampSource;
 import com.splicemachine.timestamp.hbase.ZkTimestampSource;
+import com.splicemachine.utils.SpliceLogUtils;
+import org.apache.log4j.Logger;
 
 /**
  * @author Scott Fines
  *         Date: 12/18/15
  */
 public class HBaseSIEnvironment implements SIEnvironment{
+    private static final Logger LOG = Logger.getLogger(HBaseSIEnvironment.class);
     private static volatile HBaseSIEnvironment INSTANCE;
 
     private final TimestampSource timestampSource;
@@ -104,20 +108,26 @@ public class HBaseSIEnvironment implements SIEnvironment{
         this.partitionCache = PartitionCacheService.loadPartitionCache(config);
         this.partitionFactory =TableFactoryService.loadTableFactory(clock,this.config,partitionCache);
         TxnNetworkLayerFactory txnNetworkLayerFactory= TableFactoryService.loadTxnNetworkLayer(this.config);
-        this.txnStore = new CoprocessorTxnStore(txnNetworkLayerFactory,timestampSource,null);
+        CoprocessorTxnStore coprocessorTxnStore = new CoprocessorTxnStore(txnNetworkLayerFactory,timestampSource,null);
+        this.txnStore = coprocessorTxnStore;
         int completedTxnCacheSize = config.getCompletedTxnCacheSize();
         int completedTxnConcurrency = config.getCompletedTxnConcurrency();
-        this.txnSupplier = new CompletedTxnCacheSupplier(txnStore,completedTxnCacheSize,completedTxnConcurrency);
+        CompletedTxnCacheSupplier completedTxnCache = new CompletedTxnCacheSupplier(txnStore,completedTxnCacheSize,
+                completedTxnConcurrency,config.getCompletedTxnCacheOffHeap());
+        registerJMX(completedTxnCache);
+        this.txnSupplier = completedTxnCache;
         this.txnStore.setCache(txnSupplier);
         this.opFactory =HOperationFactory.INSTANCE;
         this.txnOpFactory = new SimpleTxnOperationFactory(exceptionFactory(),opFactory);
         this.clock = clock;
         this.snowflakeFactory = new HSnowflakeFactory();
         this.fileSystem =new HNIOFileSystem(FileSystem.get((Configuration) config.getConfigSource().unwrapDelegate()), exceptionFactory());
-        this.keepAlive = new QueuedKeepAliveScheduler(config.getTransactionKeepAliveInterval(),
+        BatchedKeepAliveScheduler keepAliveScheduler = new BatchedKeepAliveScheduler(config.getTransactionKeepAliveInterval(),
                 config.getTransactionTimeout(),
                 config.getTransactionKeepAliveThreads(),
-                txnStore);
+                coprocessorTxnStore);
+        registerJMX(keepAliveScheduler);
+        this.keepAlive = keepAliveScheduler;
         siDriver = SIDriver.loadDriver(this);
     }
 
@@ -130,10 +140,14 @@ public class HBaseSIEnvironment implements SIEnvironment{
         this.partitionCache = PartitionCacheService.loadPartitionCache(config);
         this.partitionFactory =TableFactoryService.loadTableFactory(clock, this.config,partitionCache);
         TxnNetworkLayerFactory txnNetworkLayerFactory= TableFactoryService.loadTxnNetworkLayer(this.config);
-        this.txnStore = new CoprocessorTxnStore(txnNetworkLayerFactory,timestampSource,null);
+        CoprocessorTxnStore coprocessorTxnStore = new CoprocessorTxnStore(txnNetworkLayerFactory,timestampSource,null);
+        this.txnStore = coprocessorTxnStore;
         int completedTxnCacheSize = config.getCompletedTxnCacheSize();
         int completedTxnConcurrency = config.getCompletedTxnConcurrency();
-        this.txnSupplier = new CompletedTxnCacheSupplier(txnStore,completedTxnCacheSize,completedTxnConcurrency);
+        CompletedTxnCacheSupplier completedTxnCache = new CompletedTxnCacheSupplier(txnStore,completedTxnCacheSize,
+                completedTxnConcurrency,config.getCompletedTxnCacheOffHeap());
+        registerJMX(completedTxnCache);
+        this.txnSupplier = completedTxnCache;
         this.txnStore.setCache(txnSupplier);
         this.opFactory =HOperationFactory.INSTANCE;
         this.txnOpFactory = new SimpleTxnOperationFactory(exceptionFactory(),opFactory);
@@ -142,10 +156,12 @@ public class HBaseSIEnvironment implements SIEnvironment{
         this.snowflakeFactory = new HSnowflakeFactory();
 
 
-        this.keepAlive = new QueuedKeepAliveScheduler(config.getTransactionKeepAliveInterval(),
+        BatchedKeepAliveScheduler keepAliveScheduler = new BatchedKeepAliveScheduler(config.getTransactionKeepAliveInterval(),
                 config.getTransactionTimeout(),
                 config.getTransactionKeepAliveThreads(),
-                txnStore);
+                coprocessorTxnStore);
+        registerJMX(keepAliveScheduler);
+        this.keepAlive = keepAliveScheduler;
         siDriver = SIDriver.loadDriver(this);
     }
 
@@ -240,4 +256,20 @@ public class HBaseSIEnvironment implements SIEnvironment{
     public SnowflakeFactory snowflakeFactory() {
         return snowflakeFactory;
     }
+
+    private static void registerJMX(BatchedKeepAliveScheduler keepAliveScheduler){
+        try{
+            keepAliveScheduler.registerJMX(ManagementFactory.getPlatformMBeanServer());
+        }catch(Exception e){
+            SpliceLogUtils.warn(LOG,"Unable to register Keep Alive Scheduler with JMX. Keep alives will function but metrics will not be available.");
+        }
+    }
+
+    private static void registerJMX(CompletedTxnCacheSupplier completedTxnCache){
+        try{
+            completedTxnCache.registerJMX(ManagementFactory.getPlatformMBeanServer());
+        }catch(Exception e){
+            SpliceLogUtils.warn(LOG,"Unable to register Completed Transaction Cache with JMX. Cache will function but metrics will not be available.");
+        }
+    }
 }
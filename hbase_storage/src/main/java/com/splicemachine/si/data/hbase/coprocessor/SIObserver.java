@@ -166,9 +166,13 @@ public class SIObserver extends BaseRegionObserver{
                                       InternalScanner scanner,ScanType scanType,CompactionRequest compactionRequest) throws IOException{
         if(tableEnvMatch){
             SIDriver driver=SIDriver.driver();
+            long lowWatermark=driver.getConfiguration().getCompactionPurgeVersions()?
+                    driver.getTxnLowWatermark().lowWatermark():0L;
             SICompactionState state = new SICompactionState(driver.getTxnSupplier(),
                     driver.getRollForward(),
-                    driver.getConfiguration().getActiveTransactionCacheSize());
+                    driver.getConfiguration().getActiveTransactionCacheSize(),
+                    lowWatermark,
+                    scanType==ScanType.COMPACT_DROP_DELETES);
             return new SICompactionScanner(state,scanner);
         }else{
             return super.preCompact(e,store,scanner,scanType,compactionRequest);
@@ -259,6 +263,7 @@ public class SIObserver extends BaseRegionObserver{
         assert attribute!=null: "Transaction information is missing";
 
         TxnView txn=txnOperationFactory.fromReads(attribute,0,attribute.length);
+        checkSnapshot(txn);
         final Filter newFilter=makeSIFilter(txn,get.getFilter(), getPredicateFilter(get),false);
         get.setFilter(newFilter);
     }
@@ -268,11 +273,18 @@ public class SIObserver extends BaseRegionObserver{
         assert attribute!=null: "Transaction information is missing";
 
         TxnView txn=txnOperationFactory.fromReads(attribute,0,attribute.length);
+        checkSnapshot(txn);
         final Filter newFilter=makeSIFilter(txn,scan.getFilter(),
                 getPredicateFilter(scan),scan.getAttribute(SIConstants.SI_COUNT_STAR)!=null);
         scan.setFilter(newFilter);
     }
 
+    private void checkSnapshot(TxnView txn) throws IOException{
+        SIDriver driver=SIDriver.driver();
+        if(driver.getConfiguration().getCompactionPurgeVersions())
+            driver.getTxnLowWatermark().checkSnapshot(txn,driver.getExceptionFactory());
+    }
+
     private EntryPredicateFilter getPredicateFilter(OperationWithAttributes operation) throws IOException{
         final byte[] serializedPredicateFilter=operation.getAttribute(ENTRY_PREDICATE_LABEL);
         return EntryPredicateFilter.fromBytes(serializedPredicateFilter);
@@ -23,6 +23,7 @@ import com.google.protobuf.Service;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.hadoop.hbase.Coprocessor;
 import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.coprocessor.CoprocessorService;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
 import org.apache.hadoop.hbase.protobuf.ResponseConverter;
@@ -37,6 +38,8 @@ import com.splicemachine.hbase.ZkUtils;
 import com.splicemachine.si.api.txn.lifecycle.TxnLifecycleStore;
 import com.splicemachine.si.api.txn.lifecycle.TxnPartition;
 import com.splicemachine.si.coprocessor.TxnMessage;
+import com.splicemachine.si.impl.HTransactionTimeout;
+import com.splicemachine.si.impl.TxnUtils;
 import com.splicemachine.si.impl.data.StripedTxnLifecycleStore;
 import com.splicemachine.si.impl.driver.SIDriver;
 import com.splicemachine.si.impl.region.RegionServerControl;
@@ -55,6 +58,7 @@ public class TxnLifecycleEndpoint extends TxnMessage.TxnLifecycleService impleme
     private static final Logger LOG=Logger.getLogger(TxnLifecycleEndpoint.class);
 
     private TxnLifecycleStore lifecycleStore;
+    private HRegionInfo regionInfo;
     private volatile boolean isTxnTable=false;
 
     public static final CountedReference<TransactionResolver> resolverRef=new CountedReference<>(new Supplier<TransactionResolver>(){
@@ -73,6 +77,7 @@ public class TxnLifecycleEndpoint extends TxnMessage.TxnLifecycleService impleme
     public void start(CoprocessorEnvironment env) throws IOException{
         RegionCoprocessorEnvironment rce=(RegionCoprocessorEnvironment)env;
         HRegion region=(HRegion)rce.getRegion();
+        regionInfo=region.getRegionInfo();
         HBaseSIEnvironment siEnv = HBaseSIEnvironment.loadEnvironment(new SystemClock(),ZkUtils.getRecoverableZooKeeper());
         SConfiguration configuration=siEnv.configuration();
         TableType table=EnvUtils.getTableType(configuration,rce);
@@ -213,6 +218,31 @@ public class TxnLifecycleEndpoint extends TxnMessage.TxnLifecycleService impleme
 
     }
 
+    @Override
+    public void keepAlive(RpcController controller,TxnMessage.KeepAliveRequest request,RpcCallback<TxnMessage.KeepAliveResponse> done){
+        TxnMessage.KeepAliveResponse.Builder response=TxnMessage.KeepAliveResponse.newBuilder();
+        int size=request.getTxnIdsCount();
+        for(int i=0;i<size;i++){
+            long txnId=request.getTxnIds(i);
+            if(!regionInfo.containsRow(TxnUtils.getRowKey(txnId))) continue; //another region owns this transaction
+            try{
+                if(keepAlive(txnId))
+                    response.addActiveTxnIds(txnId);
+                else
+                    response.addInactiveTxnIds(txnId);
+            }catch(HTransactionTimeout tte){
+                response.addTimedOutTxnIds(txnId);
+            }catch(IOException ioe){
+                /*
+                 * Leave it out of the response, so that the client will retry it individually. We don't
+                 * fail the whole batch, because the other transactions may still be kept alive.
+                 */
+                SpliceLogUtils.warn(LOG,"Unable to keep alive transaction %d: %s",txnId,ioe.getMessage());
+            }
+        }
+        done.run(response.build());
+    }
+
     public long commit(long txnId) throws IOException{
         return lifecycleStore.commitTransaction(txnId);
     }
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl;
+
+import com.carrotsearch.hppc.LongOpenHashSet;
+import com.carrotsearch.hppc.cursors.LongCursor;
+import org.spark_project.guava.util.concurrent.ThreadFactoryBuilder;
+import com.splicemachine.annotations.ThreadSafe;
+import com.splicemachine.concurrent.ThreadLocalRandom;
+import com.splicemachine.si.api.txn.KeepAliveManagement;
+import com.splicemachine.si.api.txn.KeepAliveScheduler;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.coprocessor.TxnMessage;
+import com.splicemachine.utils.SpliceLogUtils;
+import org.apache.log4j.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KeepAliveScheduler which keeps alive all of its transactions with a single periodic heartbeat.
+ * <p/>
+ * Rather than issuing one keep alive RPC per transaction, every heartbeat groups the active transactions by
+ * the region of the transaction table which owns them, and sends each region the ids of its own transactions at once.
+ * This makes the cost of keeping transactions alive proportional to the number of transaction regions, rather
+ * than the number of transactions.
+ * <p/>
+ * Any transaction which is missing from the heartbeat's response (for example, because its region is moving, or
+ * because the server does not support batched keep alives) is kept alive individually instead.
+ */
+public class BatchedKeepAliveScheduler implements KeepAliveScheduler, KeepAliveManagement{
+    private static final Logger LOG=Logger.getLogger(BatchedKeepAliveScheduler.class);
+    public static final String JMX_NAME="com.splicemachine.si.txn:type=KeepAliveManagement";
+
+    private final long maxKeepAliveIntervalMs;
+    private final ScheduledExecutorService threadPool;
+    private final ConcurrentMap<Long,KeepAlive> activeTxns=new ConcurrentHashMap<>();
+
+    private final
+    @ThreadSafe
+    CoprocessorTxnStore txnStore;
+
+    private volatile boolean shutdown=false;
+
+    /*monitoring fields*/
+    private final AtomicLong heartbeats=new AtomicLong(0l);
+    private final AtomicLong failedHeartbeats=new AtomicLong(0l);
+    private final AtomicLong txnsKeptAlive=new AtomicLong(0l);
+    private final AtomicLong individualKeepAlives=new AtomicLong(0l);
+    private final AtomicLong totalLatencyNanos=new AtomicLong(0l);
+    private volatile long maxLatencyNanos=0l;
+
+    public BatchedKeepAliveScheduler(long keepAliveIntervalMs,long maxKeepAliveIntervalMs,
+                                     int numKeepers,CoprocessorTxnStore txnStore){
+        ThreadFactory factory=new ThreadFactoryBuilder().setNameFormat("keepAlive-thread-%d").setDaemon(true).build();
+
+        this.threadPool=Executors.newScheduledThreadPool(numKeepers,factory);
+        this.txnStore=txnStore;
+        this.maxKeepAliveIntervalMs=maxKeepAliveIntervalMs;
+        //use a random initial delay so that the heartbeats of different servers don't all line up
+        long initialDelay=ThreadLocalRandom.current().nextLong(keepAliveIntervalMs);
+        threadPool.scheduleWithFixedDelay(new Runnable(){
+            @Override
+            public void run(){
+                try{
+                    heartbeat();
+                }catch(Throwable t){
+                    //never let an error cancel future heartbeats
+                    LOG.error("Unexpected error during keep alive heartbeat",t);
+                }
+            }
+        },initialDelay,keepAliveIntervalMs,TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void scheduleKeepAlive(Txn txn){
+        if(shutdown) return;
+        if(txn.getEffectiveState()!=Txn.State.ACTIVE) return;
+        activeTxns.putIfAbsent(txn.getTxnId(),new KeepAlive(txn));
+    }
+
+    @Override
+    public void start(){
+    }
+
+    @Override
+    public void stop(){
+        shutdown=true;
+        threadPool.shutdownNow();
+        activeTxns.clear();
+    }
+
+    public void registerJMX(MBeanServer mbs) throws MalformedObjectNameException, NotCompliantMBeanException, InstanceAlreadyExistsException, MBeanRegistrationException{
+        mbs.registerMBean(this,new ObjectName(JMX_NAME));
+    }
+
+    /*monitoring methods*/
+    @Override public int getActiveTransactionCount(){ return activeTxns.size(); }
+    @Override public long getTotalHeartbeats(){ return heartbeats.get(); }
+    @Override public long getTotalFailedHeartbeats(){ return failedHeartbeats.get(); }
+    @Override public long getTotalTransactionsKeptAlive(){ return txnsKeptAlive.get(); }
+    @Override public long getTotalIndividualKeepAlives(){ return individualKeepAlives.get(); }
+    @Override public double getMaxHeartbeatLatency(){ return maxLatencyNanos/1000000d; }
+
+    @Override
+    public double getAverageHeartbeatLatency(){
+        long count=heartbeats.get();
+        if(count==0) return 0d;
+        return totalLatencyNanos.get()/(1000000d*count);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    void heartbeat(){
+        if(shutdown || activeTxns.isEmpty()) return;
+
+        long now=System.currentTimeMillis();
+        LongOpenHashSet toKeepAlive=new LongOpenHashSet(activeTxns.size());
+        for(KeepAlive keepAlive:activeTxns.values()){
+            Txn txn=keepAlive.txn;
+            if(txn.getEffectiveState()!=Txn.State.ACTIVE){
+                activeTxns.remove(txn.getTxnId()); //nothing to do, we no longer need to keep anything alive
+            }else if(now-keepAlive.lastKeepAliveTime>2*maxKeepAliveIntervalMs){
+                SpliceLogUtils.warn(LOG,"It has been %d ms since the last time we kept alive transaction %d, "+
+                        "which is longer than the maximum interval",now-keepAlive.lastKeepAliveTime,txn.getTxnId());
+                /*
+                 * We are the only ones trying to keep this transaction alive. If we know
+                 * for a fact that we had to wait longer than the transaction timeout, then
+                 * we don't need to keep trying--just roll back the transaction.
+                 *
+                 * However, we want to leave some room for network slop here, so we err
+                 * on the side of caution, and only use this if we exceed twice the actual
+                 * keep alive window.
+                 */
+                timedOut(keepAlive);
+            }else
+                toKeepAlive.add(txn.getTxnId());
+        }
+        if(toKeepAlive.isEmpty()) return;
+
+        long start=System.nanoTime();
+        TxnMessage.KeepAliveResponse response=null;
+        try{
+            response=txnStore.keepAlive(toKeepAlive.toArray());
+        }catch(IOException e){
+            failedHeartbeats.incrementAndGet();
+            LOG.error("Unable to perform keep alive heartbeat for "+toKeepAlive.size()+" transactions. "+
+                    "Will keep them alive individually",e);
+        }
+        long latency=System.nanoTime()-start;
+        recordLatency(latency);
+        if(TimeUnit.NANOSECONDS.toMillis(latency)>0.1*maxKeepAliveIntervalMs)
+            SpliceLogUtils.warn(LOG,"It took longer than 10%% of the keep-alive interval to perform "+
+                    "a keep alive heartbeat for %d transactions. This may be a sign that load will begin interfering "+
+                    "with the transaction system",toKeepAlive.size());
+
+        if(response!=null){
+            long kaTime=System.currentTimeMillis(); //include network latency in our wait period
+            for(int i=0;i<response.getActiveTxnIdsCount();i++){
+                long txnId=response.getActiveTxnIds(i);
+                if(!toKeepAlive.remove(txnId)) continue;
+                KeepAlive keepAlive=activeTxns.get(txnId);
+                if(keepAlive!=null)
+                    keepAlive.lastKeepAliveTime=kaTime;
+                txnsKeptAlive.incrementAndGet();
+            }
+            for(int i=0;i<response.getInactiveTxnIdsCount();i++){
+                long txnId=response.getInactiveTxnIds(i);
+                toKeepAlive.remove(txnId);
+                activeTxns.remove(txnId);
+            }
+            for(int i=0;i<response.getTimedOutTxnIdsCount();i++){
+                long txnId=response.getTimedOutTxnIds(i);
+                toKeepAlive.remove(txnId);
+                KeepAlive keepAlive=activeTxns.get(txnId);
+                if(keepAlive!=null){
+                    LOG.error("Transaction "+txnId+" has timed out");
+                    timedOut(keepAlive);
+                }
+            }
+        }
+
+        //anything left over didn't get a response, so try it on its own
+        for(LongCursor c:toKeepAlive){
+            final KeepAlive keepAlive=activeTxns.get(c.value);
+            if(keepAlive==null) continue;
+            individualKeepAlives.incrementAndGet();
+            threadPool.execute(keepAlive);
+        }
+    }
+
+    private void recordLatency(long latencyNanos){
+        heartbeats.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        if(latencyNanos>maxLatencyNanos)
+            maxLatencyNanos=latencyNanos; //racy, but only ever written by the heartbeat thread
+    }
+
+    private void timedOut(KeepAlive keepAlive){
+        activeTxns.remove(keepAlive.txn.getTxnId());
+        /*
+         * We attempted to keep alive a transaction that has already timed out. Ensure that
+         * the transaction is rolled back
+         */
+        try{
+            keepAlive.txn.rollback();
+        }catch(IOException e){
+            LOG.info("Unable to roll back transaction "+keepAlive.txn.getTxnId()
+                    +" but nothing to be concerned with, since it has already timed out",e);
+        }
+    }
+
+    /*
+     * Keeps alive a single transaction; used for transactions that a heartbeat was unable to reach
+     */
+    private class KeepAlive implements Runnable{
+        private final Txn txn;
+        private volatile long lastKeepAliveTime;
+
+        public KeepAlive(Txn txn){
+            this.txn=txn;
+            this.lastKeepAliveTime=System.currentTimeMillis();
+        }
+
+        @Override
+        public void run(){
+            if(txn.getEffectiveState()!=Txn.State.ACTIVE){
+                activeTxns.remove(txn.getTxnId());
+                return;
+            }
+            try{
+                if(txnStore.keepAlive(txn.getTxnId())){
+                    lastKeepAliveTime=System.currentTimeMillis();
+                    txnsKeptAlive.incrementAndGet();
+                }else
+                    activeTxns.remove(txn.getTxnId());
+            }catch(HTransactionTimeout tte){
+                LOG.error("Transaction "+txn.getTxnId()+" has timed out");
+                timedOut(this);
+            }catch(IOException e){
+                /*
+                 * This could be a real problem, but we don't have anything that we can really do about this,
+                 * so we just log the error and let the next heartbeat try again.
+                 */
+                LOG.error("Unable to keep transaction "+txn.getTxnId()+" alive. Will try again in a bit",e);
+            }
+        }
+    }
+}
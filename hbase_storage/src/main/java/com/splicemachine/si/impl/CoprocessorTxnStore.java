@@ -15,6 +15,7 @@
 
 package com.splicemachine.si.impl;
 
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.ipc.ServerRpcController;
 import org.spark_project.guava.collect.Iterators;
 import org.spark_project.guava.collect.Lists;
@@ -35,6 +36,7 @@ import com.splicemachine.si.impl.txn.InheritingTxnView;
 import com.splicemachine.timestamp.api.TimestampSource;
 import com.splicemachine.utils.ByteSlice;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -51,6 +53,7 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 @ThreadSafe
 public class CoprocessorTxnStore implements TxnStore {
+    private static final Logger LOG=Logger.getLogger(CoprocessorTxnStore.class);
     private final TxnNetworkLayerFactory tableFactory;
     private TxnSupplier cache; //a transaction store which uses a global cache for us
     @ThreadSafe
@@ -144,6 +147,58 @@ public class CoprocessorTxnStore implements TxnStore {
         }
     }
 
+    /**
+     * Keep alive many transactions at once. The transactions are grouped by the region of the transaction table
+     * which owns their rows, and each of those regions receives a single request holding only its own transactions,
+     * so the cost is proportional to the number of regions rather than the number of transactions.
+     *
+     * @param txnIds the transactions to keep alive
+     * @return the combined responses of each region. Transactions which do not appear in any list in the
+     * response could not be kept alive (e.g. because their region was unavailable), and should be retried.
+     * @throws IOException if the regions of the transaction table could not be found
+     */
+    public TxnMessage.KeepAliveResponse keepAlive(long[] txnIds) throws IOException{
+        TxnMessage.KeepAliveResponse.Builder merged=TxnMessage.KeepAliveResponse.newBuilder();
+        try(TxnNetworkLayer table = tableFactory.accessTxnNetwork()){
+            byte[][] startKeys=table.getStartKeys();
+            if(startKeys.length==0)
+                startKeys=new byte[][]{HConstants.EMPTY_START_ROW};
+            TxnMessage.KeepAliveRequest.Builder[] requests=new TxnMessage.KeepAliveRequest.Builder[startKeys.length];
+            byte[][] firstRows=new byte[startKeys.length][];
+            byte[][] lastRows=new byte[startKeys.length][];
+            //noinspection ForLoopReplaceableByForEach
+            for(int i=0;i<txnIds.length;i++){
+                byte[] rowKey=getTransactionRowKey(txnIds[i]);
+                int region=regionIndex(startKeys,rowKey);
+                if(requests[region]==null){
+                    requests[region]=TxnMessage.KeepAliveRequest.newBuilder();
+                    firstRows[region]=rowKey;
+                    lastRows[region]=rowKey;
+                }else if(Bytes.compareTo(rowKey,firstRows[region])<0)
+                    firstRows[region]=rowKey;
+                else if(Bytes.compareTo(rowKey,lastRows[region])>0)
+                    lastRows[region]=rowKey;
+                requests[region].addTxnIds(txnIds[i]);
+            }
+            for(int i=0;i<requests.length;i++){
+                if(requests[i]==null) continue; //no transactions in this region
+                /*
+                 * Send the request to the rows it holds rather than to the region's bounds, so that if the region
+                 * has split since we looked up the start keys, only the regions now owning these rows receive it
+                 */
+                try{
+                    for(TxnMessage.KeepAliveResponse response:table.keepAlive(firstRows[i],lastRows[i],requests[i].build())){
+                        merged.mergeFrom(response);
+                    }
+                }catch(IOException ioe){
+                    //leave this region's transactions out of the response, so that they are retried individually
+                    LOG.warn("Unable to perform keep alive against a transaction region",ioe);
+                }
+            }
+        }
+        return merged.build();
+    }
+
     @Override
     public void elevateTransaction(Txn txn,byte[] newDestinationTable) throws IOException{
         byte[] rowKey=getTransactionRowKey(txn.getTxnId());
@@ -403,6 +458,22 @@ public class CoprocessorTxnStore implements TxnStore {
         return TxnUtils.getRowKey(txnId);
     }
 
+    /*
+     * The index of the region owning rowKey, i.e. of the last start key which is not after it
+     */
+    static int regionIndex(byte[][] startKeys,byte[] rowKey){
+        int low=0;
+        int high=startKeys.length-1;
+        while(low<high){
+            int mid=(low+high+1)>>>1;
+            if(Bytes.compareTo(startKeys[mid],rowKey)<=0)
+                low=mid;
+            else
+                high=mid-1;
+        }
+        return low;
+    }
+
     private void dealWithError(ServerRpcController controller) throws IOException{
         if(!controller.failed()) return; //nothing to worry about
         throw controller.getFailedOn();
@@ -117,6 +117,31 @@ public abstract class SkeletonTxnNetworkLayer implements TxnNetworkLayer{
         return done.get();
     }
 
+    @Override
+    public Collection<TxnMessage.KeepAliveResponse> keepAlive(byte[] startRow,byte[] endRow,final TxnMessage.KeepAliveRequest request) throws IOException{
+        Map<byte[], TxnMessage.KeepAliveResponse> data=coprocessorService(TxnMessage.TxnLifecycleService.class,
+                startRow,endRow,new Batch.Call<TxnMessage.TxnLifecycleService, TxnMessage.KeepAliveResponse>(){
+                    @Override
+                    public TxnMessage.KeepAliveResponse call(TxnMessage.TxnLifecycleService instance) throws IOException{
+                        ServerRpcController controller=new ServerRpcController();
+                        BlockingRpcCallback<TxnMessage.KeepAliveResponse> response=new BlockingRpcCallback<>();
+
+                        instance.keepAlive(controller,request,response);
+                        if(controller.failed()){
+                            /*
+                             * Don't fail the other regions because this one is unavailable; the caller
+                             * will notice that this region's transactions are missing from the responses
+                             */
+                            LOG.warn("Unable to perform keep alive against a transaction region",controller.getFailedOn());
+                            return TxnMessage.KeepAliveResponse.getDefaultInstance();
+                        }
+                        TxnMessage.KeepAliveResponse r=response.get();
+                        return r==null?TxnMessage.KeepAliveResponse.getDefaultInstance():r;
+                    }
+                });
+        return data.values();
+    }
+
     protected abstract TxnMessage.TxnLifecycleService getLifecycleService(byte[] rowKey) throws IOException;
 
     protected abstract <C> Map<byte[],C> coprocessorService(Class<TxnMessage.TxnLifecycleService> txnLifecycleServiceClass,
@@ -38,5 +38,18 @@ public interface TxnNetworkLayer extends AutoCloseable{
 
     TxnMessage.Txn getTxn(byte[] rowKey,TxnMessage.TxnRequest request) throws IOException;
 
+    /**
+     * Send the keep alive request to every region of the transaction table which holds rows between
+     * {@code startRow} and {@code endRow} (inclusive).
+     *
+     * @return one response for each region. Regions which could not be reached contribute an empty response.
+     */
+    Collection<TxnMessage.KeepAliveResponse> keepAlive(byte[] startRow,byte[] endRow,TxnMessage.KeepAliveRequest request) throws IOException;
+
+    /**
+     * @return the start keys of the regions of the transaction table, in order
+     */
+    byte[][] getStartKeys() throws IOException;
+
     void close() throws IOException;
 }
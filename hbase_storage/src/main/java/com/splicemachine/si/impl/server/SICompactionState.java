@@ -15,6 +15,9 @@
 
 package com.splicemachine.si.impl.server;
 
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongObjectOpenHashMap;
+import com.carrotsearch.hppc.LongOpenHashSet;
 import com.splicemachine.hbase.CellUtils;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.api.readresolve.RollForward;
@@ -33,27 +36,80 @@ import org.apache.hadoop.hbase.KeyValue;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 /**
  * Captures the SI logic to perform when a data table is compacted (without explicit HBase dependencies). Provides the
  * guts for SICompactionScanner.
  * <p/>
  * It is handed key-values and can change them.
+ * <p/>
+ * Compactions rewrite every cell of the store, so this is written to stream: the input of a row arrives sorted,
+ * and the output is produced in the same order, with the new commit timestamps merged into the commit timestamp
+ * column rather than re-sorting the whole row. Commit timestamp cells are carved out of shared slabs instead of
+ * allocating an array per cell, and the transactions of a batch of rows can be resolved together
+ * (see {@link #resolve(List)}) so that each distinct transaction is looked up once per batch.
+ * <p/>
+ * When given a transaction low watermark, it also garbage collects versions. A version is <em>settled</em> when
+ * its transaction committed (all the way to the user level) before the low watermark; every transaction which can
+ * still read the row sees all of the settled versions. Updates only write the columns they change, so readers merge
+ * data across versions, but they never look past a visible tombstone or anti-tombstone. Every settled version older
+ * than the newest settled (anti-)tombstone can therefore never be read again, and is dropped along with its commit
+ * timestamp. When that tombstone is the newest settled version and nothing unsettled lies beneath it, the row is
+ * deleted for every reader, and if the compaction covers all files of the store the tombstone itself is dropped
+ * as well.
  */
 public class SICompactionState {
     private static final Logger LOG = Logger.getLogger(SICompactionState.class);
+    /*
+     * The HFile writer holds on to some of the cells it has been handed (to check ordering and to build the block
+     * index), so a slab is never rewritten; a new one is started once it fills up.
+     */
+    private static final int SLAB_SIZE = 64*1024;
+    private static final int COMMIT_TIMESTAMP_LENGTH = 8;
+
     private final TxnSupplier transactionStore;
-    private SortedSet<Cell> dataToReturn;
     private final RollForward rollForward;
     private ByteSlice rowSlice = new ByteSlice();
 
+    /*the transactions of the current batch*/
+    private final LongObjectOpenHashMap<TxnView> resolved = new LongObjectOpenHashMap<>();
+
+    /*per row fields*/
+    private final List<Cell> kept = new ArrayList<>();
+    private CellType[] keptTypes = new CellType[16];
+    private final LongOpenHashSet committedTimestamps = new LongOpenHashSet();
+    private final LongArrayList pendingTimestamps = new LongArrayList();
+    private final LongArrayList pendingCommitTimestamps = new LongArrayList();
+
+    private byte[] slab;
+    private int slabPosition;
+
+    private final long lowWatermark;
+    private final boolean purgeDeletedRows;
+    /*per row fields, only maintained when purging versions*/
+    private final LongOpenHashSet settledTimestamps = new LongOpenHashSet();
+    private long newestSettled;
+    private long newestSettledTombstone;
+    private long newestSettledAntiTombstone;
+    private long oldestUnsettled;
+
     public SICompactionState(TxnSupplier transactionStore,RollForward rollForward,int activeTransactionCacheSize) {
+        this(transactionStore,rollForward,activeTransactionCacheSize,0L,false);
+    }
+
+    /**
+     * @param lowWatermark the transaction low watermark, or 0 if no versions are to be purged
+     * @param allFiles whether this compaction covers every file of the store, so that rows which are deleted for
+     *                 every reader can be removed completely
+     */
+    public SICompactionState(TxnSupplier transactionStore,RollForward rollForward,int activeTransactionCacheSize,
+                             long lowWatermark,boolean allFiles) {
         this.rollForward = rollForward;
         this.transactionStore = new ActiveTxnCacheSupplier(transactionStore,activeTransactionCacheSize);
-        this.dataToReturn  =new TreeSet<>(KeyValue.COMPARATOR);
+        this.lowWatermark = lowWatermark;
+        this.purgeDeletedRows = allFiles;
     }
 
     /**
@@ -63,15 +119,65 @@ public class SICompactionState {
      * @param results - the output key values
      */
     public void mutate(List<Cell> rawList, List<Cell> results) throws IOException {
-        dataToReturn.clear();
-        for (Cell aRawList : rawList) {
-            mutate(aRawList);
+        resolve(rawList);
+        mutate(rawList,0,rawList.size(),results);
+    }
+
+    /**
+     * Resolve the transactions of a batch of (sorted) rows in one go. Commit timestamps which are already
+     * recorded anywhere in the batch are used first, and every remaining transaction is looked up exactly once.
+     * This replaces whatever was resolved for the previous batch.
+     *
+     * @param batch the cells of one or more complete rows, which will subsequently be passed to
+     *              {@link #mutate(List, int, int, List)}
+     */
+    public void resolve(List<Cell> batch) throws IOException {
+        resolved.clear();
+        for (Cell cell : batch) {
+            if(getKeyValueType(cell)==CellType.COMMIT_TIMESTAMP)
+                cacheCommitTimestamp(cell.getTimestamp(),cell);
+        }
+        for (Cell cell : batch) {
+            switch(getKeyValueType(cell)){
+                case TOMBSTONE:
+                case ANTI_TOMBSTONE:
+                case USER_DATA:
+                    long timestamp = cell.getTimestamp();
+                    if(!resolved.containsKey(timestamp))
+                        resolved.put(timestamp,transactionStore.getTransaction(timestamp));
+                    break;
+                default:
+            }
         }
-        results.addAll(dataToReturn);
     }
 
     /**
-     * Apply SI mutation logic to an individual key-value. Return the "new" key-value.
+     * Process a single row out of a batch, populating the results list with possibly mutated values.
+     *
+     * @param batch the batch holding the row, in sorted order
+     * @param from the position of the first cell of the row
+     * @param to the position after the last cell of the row
+     * @param results - the output key values
+     */
+    public void mutate(List<Cell> batch, int from, int to, List<Cell> results) throws IOException {
+        if(from>=to) return;
+        kept.clear();
+        committedTimestamps.clear();
+        pendingTimestamps.clear();
+        pendingCommitTimestamps.clear();
+        settledTimestamps.clear();
+        newestSettled = -1L;
+        newestSettledTombstone = -1L;
+        newestSettledAntiTombstone = -1L;
+        oldestUnsettled = Long.MAX_VALUE;
+        for (int i=from;i<to;i++) {
+            mutate(batch.get(i));
+        }
+        emit(batch.get(from),results);
+    }
+
+    /**
+     * Apply SI mutation logic to an individual key-value.
      */
     private void mutate(Cell element) throws IOException {
         final CellType cellType= getKeyValueType(element);
@@ -84,14 +190,15 @@ public class SICompactionState {
                  * we still need to deal with entries which are in the old form. As time goes on, this should
                  * be less and less frequent, but you still have to check
                  */
-                ensureTransactionCached(timestamp,element);
-                dataToReturn.add(element);
+                cacheCommitTimestamp(timestamp,element);
+                committedTimestamps.add(timestamp);
+                keep(element,cellType);
                 return;
             case TOMBSTONE:
             case ANTI_TOMBSTONE:
             case USER_DATA:
-                if(mutateCommitTimestamp(timestamp,element))
-                    dataToReturn.add(element);
+                if(mutateCommitTimestamp(timestamp,element,cellType))
+                    keep(element,cellType);
                 return;
             default:
                 if(LOG.isDebugEnabled()){
@@ -100,26 +207,35 @@ public class SICompactionState {
                        SpliceLogUtils.debug(LOG,"KeyValue with family %s and column %s are not SI-managed, ignoring",
                                famString,qualString);
                 }
-                dataToReturn.add(element);
+                keep(element,cellType);
         }
     }
 
-    private void ensureTransactionCached(long timestamp,Cell element) {
-        if(!transactionStore.transactionCached(timestamp)){
+    private void cacheCommitTimestamp(long timestamp,Cell element) {
+        if(!resolved.containsKey(timestamp)){
             if(isFailedCommitTimestamp(element)){
-                transactionStore.cache(new RolledBackTxn(timestamp));
+                resolved.put(timestamp,new RolledBackTxn(timestamp));
             }else if (element.getValueLength()>0){ //shouldn't happen, but you never know
                 long commitTs = Bytes.toLong(element.getValueArray(),element.getValueOffset(),element.getValueLength());
-                transactionStore.cache(new CommittedTxn(timestamp,commitTs));
+                resolved.put(timestamp,new CommittedTxn(timestamp,commitTs));
             }
         }
     }
 
+    private TxnView getTransaction(long timestamp) throws IOException {
+        TxnView transaction = resolved.get(timestamp);
+        if(transaction==null){
+            transaction = transactionStore.getTransaction(timestamp);
+            resolved.put(timestamp,transaction);
+        }
+        return transaction;
+    }
+
     /**
      * Replace unknown commit timestamps with actual commit times.
      */
-    private boolean mutateCommitTimestamp(long timestamp,Cell element) throws IOException {
-        TxnView transaction = transactionStore.getTransaction(timestamp);
+    private boolean mutateCommitTimestamp(long timestamp,Cell element,CellType cellType) throws IOException {
+        TxnView transaction = getTransaction(timestamp);
         if(transaction.getEffectiveState()== Txn.State.ROLLEDBACK){
             /*
              * This transaction has been rolled back, so just remove the data
@@ -135,31 +251,159 @@ public class SICompactionState {
         if(t==Txn.ROOT_TRANSACTION){
             /*
              * This element has been committed all the way to the user level, so a
-             * commit timestamp can be placed on it.
+             * commit timestamp can be placed on it (unless the row already has one).
              */
             long globalCommitTimestamp = transaction.getEffectiveCommitTimestamp();
-            dataToReturn.add(newTransactionTimeStampKeyValue(element, Bytes.toBytes(globalCommitTimestamp)));
+            if(committedTimestamps.add(timestamp)){
+                pendingTimestamps.add(timestamp);
+                pendingCommitTimestamps.add(globalCommitTimestamp);
+            }
             recordResolved(element, transaction);
-        }
+            trackVersion(cellType,timestamp,globalCommitTimestamp);
+        }else
+            trackVersion(cellType,timestamp,-1L);
         return true;
     }
 
+    private void keep(Cell element,CellType cellType){
+        int pos = kept.size();
+        if(pos==keptTypes.length){
+            CellType[] newTypes = new CellType[2*keptTypes.length];
+            System.arraycopy(keptTypes,0,newTypes,0,keptTypes.length);
+            keptTypes = newTypes;
+        }
+        keptTypes[pos] = cellType;
+        kept.add(element);
+    }
+
+    private void trackVersion(CellType cellType,long timestamp,long globalCommitTimestamp){
+        if(lowWatermark<=0) return;
+        if(globalCommitTimestamp>=0 && globalCommitTimestamp<lowWatermark){
+            settledTimestamps.add(timestamp);
+            if(timestamp>newestSettled)
+                newestSettled = timestamp;
+            if(cellType==CellType.TOMBSTONE && timestamp>newestSettledTombstone)
+                newestSettledTombstone = timestamp;
+            else if(cellType==CellType.ANTI_TOMBSTONE && timestamp>newestSettledAntiTombstone)
+                newestSettledAntiTombstone = timestamp;
+        }else if(timestamp<oldestUnsettled)
+            oldestUnsettled = timestamp;
+    }
+
+    /**
+     * Write out the kept cells of the row in their original order, merging the new commit timestamps into the
+     * commit timestamp column (which sorts first) by descending timestamp, and leaving out purged versions.
+     */
+    private void emit(Cell rowCell,List<Cell> results){
+        sortPendingDescending();
+        long purgeBelow = Math.max(newestSettledTombstone,newestSettledAntiTombstone);
+        boolean rowDeleted = purgeDeletedRows
+                && newestSettledTombstone==newestSettled
+                && oldestUnsettled>newestSettled;
+        long purgeThrough = rowDeleted ? purgeBelow : purgeBelow-1;
+
+        int pending = 0;
+        int size = kept.size();
+        for(int i=0;i<size;i++){
+            Cell cell = kept.get(i);
+            CellType cellType = keptTypes[i];
+            long timestamp = cell.getTimestamp();
+            long emitPendingAbove = cellType==CellType.COMMIT_TIMESTAMP ? timestamp : Long.MIN_VALUE;
+            pending = emitPending(pending,emitPendingAbove,rowCell,purgeThrough,results);
+            if(!isPurged(cellType,timestamp,purgeThrough))
+                results.add(cell);
+        }
+        emitPending(pending,Long.MIN_VALUE,rowCell,purgeThrough,results);
+    }
+
+    private int emitPending(int pending,long aboveTimestamp,Cell rowCell,long purgeThrough,List<Cell> results){
+        int size = pendingTimestamps.size();
+        while(pending<size && pendingTimestamps.get(pending)>aboveTimestamp){
+            long timestamp = pendingTimestamps.get(pending);
+            if(!isPurged(CellType.COMMIT_TIMESTAMP,timestamp,purgeThrough))
+                results.add(newCommitTimestampCell(rowCell,timestamp,pendingCommitTimestamps.get(pending)));
+            pending++;
+        }
+        return pending;
+    }
+
+    private boolean isPurged(CellType cellType,long timestamp,long purgeThrough){
+        if(timestamp>purgeThrough || !settledTimestamps.contains(timestamp))
+            return false;
+        switch(cellType){
+            case COMMIT_TIMESTAMP:
+            case TOMBSTONE:
+            case ANTI_TOMBSTONE:
+            case USER_DATA:
+                return true;
+            default:
+                //foreign key counters and non-SI columns are never purged
+                return false;
+        }
+    }
+
+    private void sortPendingDescending(){
+        /*
+         * Each column arrives in descending timestamp order, so this is at most a merge of a few sorted runs
+         */
+        long[] timestamps = pendingTimestamps.buffer;
+        long[] commitTimestamps = pendingCommitTimestamps.buffer;
+        int size = pendingTimestamps.size();
+        for(int i=1;i<size;i++){
+            long timestamp = timestamps[i];
+            long commitTimestamp = commitTimestamps[i];
+            int j = i-1;
+            while(j>=0 && timestamps[j]<timestamp){
+                timestamps[j+1] = timestamps[j];
+                commitTimestamps[j+1] = commitTimestamps[j];
+                j--;
+            }
+            timestamps[j+1] = timestamp;
+            commitTimestamps[j+1] = commitTimestamp;
+        }
+    }
+
     private void recordResolved(Cell element, TxnView transaction) {
         rowSlice.set(element.getRowArray(),element.getRowOffset(),element.getRowLength());
         rollForward.recordResolved(rowSlice,transaction.getTxnId());
     }
 
-    public Cell newTransactionTimeStampKeyValue(Cell element, byte[] value) {
-        return new KeyValue(element.getRowArray(),
-                element.getRowOffset(),
-                element.getRowLength(),
-                SIConstants.DEFAULT_FAMILY_BYTES,0,1,
-                SIConstants.SNAPSHOT_ISOLATION_COMMIT_TIMESTAMP_COLUMN_BYTES,0,1,
-                element.getTimestamp(),KeyValue.Type.Put,
-                value,0,value==null?0:value.length);
+    /**
+     * Build a commit timestamp cell for the row of {@code rowCell}, laid out as a KeyValue in the current slab.
+     */
+    private Cell newCommitTimestampCell(Cell rowCell,long timestamp,long globalCommitTimestamp){
+        byte[] family = SIConstants.DEFAULT_FAMILY_BYTES;
+        byte[] qualifier = SIConstants.SNAPSHOT_ISOLATION_COMMIT_TIMESTAMP_COLUMN_BYTES;
+        int rowLength = rowCell.getRowLength();
+        int keyLength = KeyValue.KEY_INFRASTRUCTURE_SIZE+rowLength+family.length+qualifier.length;
+        int length = KeyValue.KEYVALUE_INFRASTRUCTURE_SIZE+keyLength+COMMIT_TIMESTAMP_LENGTH;
+        if(slab==null || slab.length-slabPosition<length){
+            slab = new byte[Math.max(SLAB_SIZE,length)];
+            slabPosition = 0;
+        }
+        int offset = slabPosition;
+        int pos = offset;
+        Bytes.toBytes(keyLength,slab,pos);
+        pos+=4;
+        Bytes.toBytes(COMMIT_TIMESTAMP_LENGTH,slab,pos);
+        pos+=4;
+        slab[pos++] = (byte)(rowLength>>8);
+        slab[pos++] = (byte)rowLength;
+        System.arraycopy(rowCell.getRowArray(),rowCell.getRowOffset(),slab,pos,rowLength);
+        pos+=rowLength;
+        slab[pos++] = (byte)family.length;
+        System.arraycopy(family,0,slab,pos,family.length);
+        pos+=family.length;
+        System.arraycopy(qualifier,0,slab,pos,qualifier.length);
+        pos+=qualifier.length;
+        Bytes.toBytes(timestamp,slab,pos);
+        pos+=8;
+        slab[pos++] = KeyValue.Type.Put.getCode();
+        Bytes.toBytes(globalCommitTimestamp,slab,pos);
+        slabPosition = offset+length;
+        return new KeyValue(slab,offset,length);
     }
 
-
     public boolean isFailedCommitTimestamp(Cell element) {
         return element.getValueLength()==1 && element.getValueArray()[element.getValueOffset()]==SIConstants.SNAPSHOT_ISOLATION_FAILED_TIMESTAMP[0];
     }
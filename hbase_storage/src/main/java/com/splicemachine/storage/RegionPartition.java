@@ -27,7 +27,7 @@ import com.splicemachine.si.constants.SIConstants;
 import com.splicemachine.si.impl.HNotServingRegion;
 import com.splicemachine.si.impl.HWrongRegion;
 import com.splicemachine.storage.util.MeasuredListScanner;
-import com.splicemachine.utils.Pair;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.NotServingRegionException;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.regionserver.*;
@@ -189,6 +189,58 @@ public class RegionPartition implements Partition{
         }
     }
 
+    @Override
+    public Iterator<DataResult> batchGetLatest(List<byte[]> sortedKeys) throws IOException{
+        if(sortedKeys.isEmpty()) return Collections.emptyIterator();
+        if(sortedKeys.size()==1) return Iterators.singletonIterator(getLatest(sortedKeys.get(0),null));
+
+        /*
+         * Rather than performing a Get (and therefore opening a scanner) for every row, we open a single scanner
+         * over the whole range and reseek it forward to each key in turn.
+         */
+        byte[] lastKey=sortedKeys.get(sortedKeys.size()-1);
+        Scan scan=new Scan(sortedKeys.get(0),Arrays.copyOf(lastKey,lastKey.length+1));
+        scan.setMaxVersions(1);
+
+        List<DataResult> results=new ArrayList<>(sortedKeys.size());
+        List<Cell> cells=new ArrayList<>();
+        try{
+            region.startRegionOperation();
+            try(RegionScanner scanner=region.getScanner(scan)){
+                Result current=null; //the row the scanner most recently returned
+                boolean exhausted=false;
+                for(byte[] key : sortedKeys){
+                    /*
+                     * Reseeking can only move the scanner forward, so if we have already read up to (or past) this
+                     * key, the row we last read is either this one or proof that this one does not exist.
+                     */
+                    if(!exhausted && (current==null || Bytes.compareTo(current.getRow(),key)<0)){
+                        cells.clear();
+                        if(scanner.reseek(key)){
+                            scanner.nextRaw(cells);
+                        }
+                        if(cells.isEmpty()){
+                            exhausted=true;
+                            current=null;
+                        }else
+                            current=Result.create(cells);
+                    }
+                    if(current!=null && Bytes.equals(current.getRow(),key))
+                        results.add(new HResult(current));
+                    else
+                        results.add(new HResult(Result.EMPTY_RESULT));
+                }
+            }finally{
+                region.closeRegionOperation();
+            }
+        }catch(NotServingRegionException nsre){
+            throw new HNotServingRegion(nsre.getMessage());
+        }catch(WrongRegionException wre){
+            throw new HWrongRegion(wre.getMessage());
+        }
+        return results.iterator();
+    }
+
     @Override
     public DataResult getLatest(byte[] rowKey,byte[] family,DataResult previous) throws IOException{
         Get g=new Get(rowKey);
@@ -468,7 +520,7 @@ public class RegionPartition implements Partition{
     }
 
     @Override
-    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker,Pair<KVPair, Lock>[] dataAndLocks) throws IOException {
-        return HRegionUtil.keyExists(hasConstraintChecker,region.getStore(SIConstants.DEFAULT_FAMILY_BYTES),dataAndLocks);
+    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker,KVPair[] mutations) throws IOException {
+        return HRegionUtil.keyExists(hasConstraintChecker,region.getStore(SIConstants.DEFAULT_FAMILY_BYTES),mutations);
     }
 }
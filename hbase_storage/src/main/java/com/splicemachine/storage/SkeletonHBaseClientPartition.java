@@ -82,6 +82,15 @@ public abstract class SkeletonHBaseClientPartition implements Partition{
         return previous;
     }
 
+    @Override
+    public Iterator<DataResult> batchGetLatest(List<byte[]> sortedKeys) throws IOException{
+        List<DataResult> results=new ArrayList<>(sortedKeys.size());
+        for(byte[] key : sortedKeys){
+            results.add(getLatest(key,null));
+        }
+        return results.iterator();
+    }
+
     @Override
     public DataResult getLatest(byte[] rowKey,byte[] family,DataResult previous) throws IOException{
         Get g = new Get(rowKey);
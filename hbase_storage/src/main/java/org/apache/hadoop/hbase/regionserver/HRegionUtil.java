@@ -25,7 +25,6 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.NoSuchElementException;
-import java.util.concurrent.locks.Lock;
 
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.impl.HMissedSplitException;
@@ -261,8 +260,8 @@ public class HRegionUtil extends BaseHRegionUtil{
     }
 
 
-    public static BitSet keyExists(boolean hasConstraintChecker, Store store, Pair<KVPair, Lock>[] dataAndLocks) throws IOException {
-        BitSet bitSet = new BitSet(dataAndLocks.length);
+    public static BitSet keyExists(boolean hasConstraintChecker, Store store, KVPair[] mutations) throws IOException {
+        BitSet bitSet = new BitSet(mutations.length);
             if (! (store instanceof HStore)) {
                 return null;
             }
@@ -293,13 +292,13 @@ public class HRegionUtil extends BaseHRegionUtil{
 
                 // Check Store Files
 
-                byte[][] keys = new byte[dataAndLocks.length][];
-                int[] keyOffset = new int[dataAndLocks.length];
-                int[] keyLength = new int[dataAndLocks.length];
-                for (int i =0; i<dataAndLocks.length;i++) {
-                    if(dataAndLocks[i]==null) continue;
-                    if(hasConstraintChecker || !KVPair.Type.INSERT.equals(dataAndLocks[i].getFirst().getType())) {
-                        keys[i] = dataAndLocks[i].getFirst().getRowKey(); // Remove Array Copy (Is this buffered?)...
+                byte[][] keys = new byte[mutations.length][];
+                int[] keyOffset = new int[mutations.length];
+                int[] keyLength = new int[mutations.length];
+                for (int i =0; i<mutations.length;i++) {
+                    if(mutations[i]==null) continue;
+                    if(hasConstraintChecker || !KVPair.Type.INSERT.equals(mutations[i].getType())) {
+                        keys[i] = mutations[i].getRowKey(); // Remove Array Copy (Is this buffered?)...
                         keyOffset[i] = 0;
                         keyLength[i] = keys[i].length;
                     }
@@ -310,10 +309,10 @@ public class HRegionUtil extends BaseHRegionUtil{
                         fileReader = file.createReader();
                         BloomFilter bloomFilter = fileReader.generalBloomFilter;
                         if (bloomFilter == null)
-                            bitSet.set(0,dataAndLocks.length); // Low level race condition, need to go to scan
+                            bitSet.set(0,mutations.length); // Low level race condition, need to go to scan
                         else {
                             for (int j = 0; j<keys.length; j++) {
-                                if (bloomFilter.contains(keys[j],keyOffset[j],keyLength[j],(ByteBuffer) null))
+                                if (keys[j]!=null && bloomFilter.contains(keys[j],keyOffset[j],keyLength[j],(ByteBuffer) null))
                                     bitSet.set(j);
                             }
                         }
@@ -321,10 +320,10 @@ public class HRegionUtil extends BaseHRegionUtil{
                 }
                 NavigableSet<Cell> memstore = getKvset(hstore);
                 NavigableSet<Cell> snapshot = getSnapshot(hstore);
-                for (int i =0; i<dataAndLocks.length;i++) {
-                    if(dataAndLocks[i]==null) continue;
-                    byte[] key = dataAndLocks[i].getFirst().getRowKey();
-                    if(hasConstraintChecker || !KVPair.Type.INSERT.equals(dataAndLocks[i].getFirst().getType())) {
+                for (int i =0; i<mutations.length;i++) {
+                    if(mutations[i]==null) continue;
+                    byte[] key = mutations[i].getRowKey();
+                    if(hasConstraintChecker || !KVPair.Type.INSERT.equals(mutations[i].getType())) {
                         if (!bitSet.get(i)) {
                             Cell kv = new KeyValue(key,
                                                    SIConstants.DEFAULT_FAMILY_BYTES,
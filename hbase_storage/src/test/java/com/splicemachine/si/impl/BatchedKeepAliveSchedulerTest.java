@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl;
+
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.coprocessor.TxnMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchedKeepAliveSchedulerTest{
+    private static final long INTERVAL=TimeUnit.HOURS.toMillis(1); //long enough that only our explicit heartbeats run
+
+    private CoprocessorTxnStore txnStore;
+    private BatchedKeepAliveScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception{
+        txnStore=mock(CoprocessorTxnStore.class);
+        scheduler=new BatchedKeepAliveScheduler(INTERVAL,10*INTERVAL,2,txnStore);
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        scheduler.stop();
+    }
+
+    @Test
+    public void keepsAliveAllTransactionsWithOneRequest() throws Exception{
+        for(long i=1;i<=100;i++){
+            scheduler.scheduleKeepAlive(activeTxn(i));
+        }
+        when(txnStore.keepAlive(any(long[].class))).thenAnswer(new Answer<TxnMessage.KeepAliveResponse>(){
+            @Override
+            public TxnMessage.KeepAliveResponse answer(InvocationOnMock invocation) throws Throwable{
+                long[] txnIds=(long[])invocation.getArguments()[0];
+                TxnMessage.KeepAliveResponse.Builder response=TxnMessage.KeepAliveResponse.newBuilder();
+                for(long txnId:txnIds){
+                    response.addActiveTxnIds(txnId);
+                }
+                return response.build();
+            }
+        });
+
+        scheduler.heartbeat();
+        scheduler.heartbeat();
+
+        verify(txnStore,times(2)).keepAlive(any(long[].class));
+        verify(txnStore,never()).keepAlive(anyLong());
+        Assert.assertEquals("Incorrect active count!",100,scheduler.getActiveTransactionCount());
+        Assert.assertEquals("Incorrect heartbeat count!",2l,scheduler.getTotalHeartbeats());
+        Assert.assertEquals("Incorrect keep alive count!",200l,scheduler.getTotalTransactionsKeptAlive());
+        Assert.assertEquals("Incorrect failure count!",0l,scheduler.getTotalFailedHeartbeats());
+    }
+
+    @Test
+    public void stopsKeepingAliveFinishedTransactions() throws Exception{
+        Txn active=activeTxn(1);
+        Txn inactive=activeTxn(2);
+        Txn timedOut=activeTxn(3);
+        Txn committed=activeTxn(4);
+        scheduler.scheduleKeepAlive(active);
+        scheduler.scheduleKeepAlive(inactive);
+        scheduler.scheduleKeepAlive(timedOut);
+        scheduler.scheduleKeepAlive(committed);
+        when(committed.getEffectiveState()).thenReturn(Txn.State.COMMITTED);
+
+        when(txnStore.keepAlive(any(long[].class))).thenReturn(TxnMessage.KeepAliveResponse.newBuilder()
+                .addActiveTxnIds(1l)
+                .addInactiveTxnIds(2l)
+                .addTimedOutTxnIds(3l).build());
+
+        scheduler.heartbeat();
+
+        Assert.assertEquals("Incorrect active count!",1,scheduler.getActiveTransactionCount());
+        verify(timedOut).rollback();
+        verify(inactive,never()).rollback();
+        verify(txnStore,never()).keepAlive(anyLong());
+    }
+
+    @Test
+    public void keepsAliveMissingTransactionsIndividually() throws Exception{
+        scheduler.scheduleKeepAlive(activeTxn(1));
+        scheduler.scheduleKeepAlive(activeTxn(2));
+        //region owning transaction 2 was unavailable
+        when(txnStore.keepAlive(any(long[].class))).thenReturn(TxnMessage.KeepAliveResponse.newBuilder()
+                .addActiveTxnIds(1l).build());
+        when(txnStore.keepAlive(2l)).thenReturn(true);
+
+        scheduler.heartbeat();
+
+        verify(txnStore,timeout(10000)).keepAlive(2l);
+        verify(txnStore,never()).keepAlive(1l);
+        Assert.assertEquals("Incorrect individual keep alive count!",1l,scheduler.getTotalIndividualKeepAlives());
+        Assert.assertEquals("Incorrect active count!",2,scheduler.getActiveTransactionCount());
+    }
+
+    @Test
+    public void fallsBackToIndividualKeepAlivesWhenHeartbeatFails() throws Exception{
+        scheduler.scheduleKeepAlive(activeTxn(1));
+        when(txnStore.keepAlive(any(long[].class))).thenThrow(new IOException("unsupported"));
+        when(txnStore.keepAlive(1l)).thenReturn(true);
+
+        scheduler.heartbeat();
+
+        verify(txnStore,timeout(10000)).keepAlive(1l);
+        Assert.assertEquals("Incorrect failure count!",1l,scheduler.getTotalFailedHeartbeats());
+        Assert.assertEquals("Incorrect active count!",1,scheduler.getActiveTransactionCount());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private Txn activeTxn(long txnId){
+        Txn txn=mock(Txn.class);
+        when(txn.getTxnId()).thenReturn(txnId);
+        when(txn.getEffectiveState()).thenReturn(Txn.State.ACTIVE);
+        return txn;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl;
+
+import com.splicemachine.si.coprocessor.TxnMessage;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoprocessorTxnStoreTest{
+    /*four regions, each owning four of the transaction table's buckets*/
+    private static final byte[][] START_KEYS={HConstants.EMPTY_START_ROW,new byte[]{4},new byte[]{8},new byte[]{12}};
+
+    private TxnNetworkLayer network;
+    private CoprocessorTxnStore txnStore;
+
+    @Before
+    public void setUp() throws Exception{
+        network=mock(TxnNetworkLayer.class);
+        when(network.getStartKeys()).thenReturn(START_KEYS);
+        TxnNetworkLayerFactory factory=mock(TxnNetworkLayerFactory.class);
+        when(factory.accessTxnNetwork()).thenReturn(network);
+        txnStore=new CoprocessorTxnStore(factory,null,null);
+    }
+
+    @Test
+    public void sendsEachRegionOnlyItsOwnTransactions() throws Exception{
+        when(network.keepAlive(any(byte[].class),any(byte[].class),any(TxnMessage.KeepAliveRequest.class)))
+                .thenAnswer(new Answer<Collection<TxnMessage.KeepAliveResponse>>(){
+                    @Override
+                    public Collection<TxnMessage.KeepAliveResponse> answer(InvocationOnMock invocation) throws Throwable{
+                        TxnMessage.KeepAliveRequest request=(TxnMessage.KeepAliveRequest)invocation.getArguments()[2];
+                        return Collections.singleton(TxnMessage.KeepAliveResponse.newBuilder()
+                                .addAllActiveTxnIds(request.getTxnIdsList()).build());
+                    }
+                });
+
+        //buckets 1, 5, 6, 5 and 13
+        TxnMessage.KeepAliveResponse response=txnStore.keepAlive(new long[]{0x11,0x15,0x06,0x25,0x0d});
+
+        ArgumentCaptor<byte[]> startRows=ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<byte[]> endRows=ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<TxnMessage.KeepAliveRequest> requests=ArgumentCaptor.forClass(TxnMessage.KeepAliveRequest.class);
+        verify(network,times(3)).keepAlive(startRows.capture(),endRows.capture(),requests.capture());
+        List<TxnMessage.KeepAliveRequest> sent=requests.getAllValues();
+        Assert.assertEquals("Incorrect first region transactions!",Collections.singletonList(0x11l),sent.get(0).getTxnIdsList());
+        Assert.assertEquals("Incorrect second region transactions!",Arrays.asList(0x15l,0x06l,0x25l),sent.get(1).getTxnIdsList());
+        Assert.assertEquals("Incorrect fourth region transactions!",Collections.singletonList(0x0dl),sent.get(2).getTxnIdsList());
+
+        //each request only covers the rows of its own transactions
+        Assert.assertArrayEquals(TxnUtils.getRowKey(0x15),startRows.getAllValues().get(1));
+        Assert.assertArrayEquals(TxnUtils.getRowKey(0x06),endRows.getAllValues().get(1));
+        for(int i=0;i<sent.size();i++){
+            byte[] start=startRows.getAllValues().get(i);
+            byte[] end=endRows.getAllValues().get(i);
+            for(long txnId:sent.get(i).getTxnIdsList()){
+                byte[] rowKey=TxnUtils.getRowKey(txnId);
+                Assert.assertTrue("Row before the start of the request!",Bytes.compareTo(start,rowKey)<=0);
+                Assert.assertTrue("Row after the end of the request!",Bytes.compareTo(rowKey,end)<=0);
+            }
+        }
+
+        Assert.assertEquals("Incorrect active count!",5,response.getActiveTxnIdsCount());
+    }
+
+    @Test
+    public void unavailableRegionDoesNotFailOtherRegions() throws Exception{
+        when(network.keepAlive(any(byte[].class),any(byte[].class),any(TxnMessage.KeepAliveRequest.class)))
+                .thenAnswer(new Answer<Collection<TxnMessage.KeepAliveResponse>>(){
+                    @Override
+                    public Collection<TxnMessage.KeepAliveResponse> answer(InvocationOnMock invocation) throws Throwable{
+                        TxnMessage.KeepAliveRequest request=(TxnMessage.KeepAliveRequest)invocation.getArguments()[2];
+                        if(request.getTxnIds(0)==0x0dl)
+                            throw new IOException("region unavailable");
+                        return Collections.singleton(TxnMessage.KeepAliveResponse.newBuilder()
+                                .addAllActiveTxnIds(request.getTxnIdsList()).build());
+                    }
+                });
+
+        TxnMessage.KeepAliveResponse response=txnStore.keepAlive(new long[]{0x11,0x0d});
+
+        Assert.assertEquals("Incorrect active transactions!",Collections.singletonList(0x11l),response.getActiveTxnIdsList());
+    }
+
+    @Test
+    public void findsOwningRegion() throws Exception{
+        Assert.assertEquals(0,CoprocessorTxnStore.regionIndex(START_KEYS,TxnUtils.getRowKey(0)));
+        Assert.assertEquals(0,CoprocessorTxnStore.regionIndex(START_KEYS,TxnUtils.getRowKey(3)));
+        Assert.assertEquals(1,CoprocessorTxnStore.regionIndex(START_KEYS,TxnUtils.getRowKey(4)));
+        Assert.assertEquals(2,CoprocessorTxnStore.regionIndex(START_KEYS,TxnUtils.getRowKey(11)));
+        Assert.assertEquals(3,CoprocessorTxnStore.regionIndex(START_KEYS,TxnUtils.getRowKey(15)));
+        Assert.assertEquals(0,CoprocessorTxnStore.regionIndex(new byte[][]{HConstants.EMPTY_START_ROW},TxnUtils.getRowKey(15)));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.server;
+
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.encoding.Encoding;
+import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.si.api.server.Transactor;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnLifecycleManager;
+import com.splicemachine.si.api.txn.TxnStore;
+import com.splicemachine.si.constants.SIConstants;
+import com.splicemachine.si.data.HExceptionFactory;
+import com.splicemachine.si.data.hbase.HOperationStatusFactory;
+import com.splicemachine.si.impl.HOperationFactory;
+import com.splicemachine.si.impl.SimpleTxnOperationFactory;
+import com.splicemachine.si.impl.store.TestingTimestampSource;
+import com.splicemachine.si.impl.store.TestingTxnStore;
+import com.splicemachine.si.impl.txn.WritableTxn;
+import com.splicemachine.si.testsetup.HBaseSITestEnv;
+import com.splicemachine.storage.DataResult;
+import com.splicemachine.storage.MutationStatus;
+import com.splicemachine.storage.RegionPartition;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the SITransactor writing batches directly against a region, which
+ * reads the existing versions of the batch with a single forward scan.
+ */
+public class RegionBatchWriteTest{
+    private static final byte[] A=Encoding.encode("a");
+    private static final byte[] B=Encoding.encode("b");
+    private static final byte[] C=Encoding.encode("c");
+    private static final byte[] D=Encoding.encode("d");
+    private static final byte[] E=Encoding.encode("e");
+    private static final byte[] VALUE=Encoding.encode("value");
+
+    private HBaseTestingUtility testUtility;
+    private HRegion region;
+    private RegionPartition table;
+    private TxnStore txnStore;
+    private Transactor transactor;
+
+    @Before
+    public void setUp() throws Exception{
+        testUtility=new HBaseTestingUtility();
+        HTableDescriptor desc=new HTableDescriptor(TableName.valueOf("unsorted"));
+        desc.addFamily(HBaseSITestEnv.createDataFamily());
+        region=testUtility.createLocalHRegion(desc,HConstants.EMPTY_START_ROW,HConstants.EMPTY_END_ROW);
+        table=new RegionPartition(region);
+
+        txnStore=new TestingTxnStore(new IncrementingClock(),new TestingTimestampSource(),HExceptionFactory.INSTANCE,Long.MAX_VALUE);
+        transactor=new SITransactor(txnStore,
+                new SimpleTxnOperationFactory(HExceptionFactory.INSTANCE,HOperationFactory.INSTANCE),
+                HOperationFactory.INSTANCE,
+                HOperationStatusFactory.INSTANCE,
+                HExceptionFactory.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        HRegion.closeHRegion(region);
+        testUtility.cleanupTestDir();
+    }
+
+    @Test
+    public void unsortedBatchDetectsWriteConflictsInCallerOrder() throws Exception{
+        Txn writer=newTxn(1L);
+        MutationStatus[] status=write(writer,KVPair.Type.INSERT,D,B);
+        Assert.assertTrue("Insert of d failed!",status[0].isSuccess());
+        Assert.assertTrue("Insert of b failed!",status[1].isSuccess());
+
+        //the first writer is still active, so any row it wrote is a write/write conflict for this one
+        Txn other=newTxn(2L);
+        status=write(other,KVPair.Type.UPDATE,D,A,C,B);
+        Assert.assertFalse("Update of d did not conflict!",status[0].isSuccess());
+        Assert.assertTrue("Update of a failed!",status[1].isSuccess());
+        Assert.assertTrue("Update of c failed!",status[2].isSuccess());
+        Assert.assertFalse("Update of b did not conflict!",status[3].isSuccess());
+    }
+
+    @Test
+    public void batchGetLatestFindsUnsortedWrites() throws Exception{
+        MutationStatus[] status=write(newTxn(1L),KVPair.Type.INSERT,D,A,C);
+        for(MutationStatus s : status){
+            Assert.assertTrue("Insert failed!",s.isSuccess());
+        }
+
+        Iterator<DataResult> results=table.batchGetLatest(Arrays.asList(A,B,C,D,E));
+        assertRow(A,results.next());
+        Assert.assertEquals("Found a row for b!",0,results.next().size());
+        assertRow(C,results.next());
+        assertRow(D,results.next());
+        Assert.assertEquals("Found a row for e!",0,results.next().size());
+        Assert.assertFalse("Too many results!",results.hasNext());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private Txn newTxn(long txnId) throws Exception{
+        Txn txn=new WritableTxn(txnId,txnId,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.ROOT_TRANSACTION,
+                mock(TxnLifecycleManager.class),false,HExceptionFactory.INSTANCE);
+        txnStore.recordNewTransaction(txn);
+        return txn;
+    }
+
+    private MutationStatus[] write(Txn txn,KVPair.Type type,byte[]... rowKeys) throws Exception{
+        KVPair[] rows=new KVPair[rowKeys.length];
+        for(int i=0;i<rowKeys.length;i++){
+            rows[i]=new KVPair(rowKeys[i],VALUE,type);
+        }
+        return transactor.processKvBatch(table,null,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.PACKED_COLUMN_BYTES,
+                Arrays.asList(rows),txn,null);
+    }
+
+    private static void assertRow(byte[] expectedKey,DataResult result){
+        Assert.assertTrue("Missing row "+Bytes.toStringBinary(expectedKey),result.size()>0);
+        Assert.assertArrayEquals("Incorrect row!",expectedKey,result.key());
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.server;
+
+import com.carrotsearch.hppc.LongObjectOpenHashMap;
+import com.splicemachine.si.api.readresolve.RollForward;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnLifecycleManager;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.constants.SIConstants;
+import com.splicemachine.si.data.HExceptionFactory;
+import com.splicemachine.si.impl.txn.CommittedTxn;
+import com.splicemachine.si.impl.txn.RolledBackTxn;
+import com.splicemachine.si.impl.txn.WritableTxn;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the SI logic applied during compactions.
+ */
+public class SICompactionStateTest{
+    private static final byte[] ROW=Bytes.toBytes("row");
+
+    private final TestSupplier txns=new TestSupplier();
+
+    @Test
+    public void testCommitTimestampsAreMergedInSortedOrder() throws Exception{
+        txns.committed(5L,6L);
+        txns.committed(7L,8L);
+        txns.committed(10L,11L);
+
+        List<Cell> results=compact(0L,false,data(10L),tombstone(7L),data(5L));
+
+        assertSorted(results);
+        assertCells(results,commit(10L,11L),commit(7L,8L),commit(5L,6L),tombstone(7L),data(10L),data(5L));
+    }
+
+    @Test
+    public void testExistingCommitTimestampIsNotDuplicated() throws Exception{
+        txns.committed(10L,11L);
+
+        List<Cell> results=compact(0L,false,commit(5L,6L),data(10L),data(5L));
+
+        assertCells(results,commit(10L,11L),commit(5L,6L),data(10L),data(5L));
+    }
+
+    @Test
+    public void testRolledBackDataIsRemoved() throws Exception{
+        txns.committed(5L,6L);
+        txns.rolledBack(8L);
+
+        List<Cell> results=compact(0L,false,data(8L),data(5L));
+
+        assertCells(results,commit(5L,6L),data(5L));
+    }
+
+    @Test
+    public void testActiveDataHasNoCommitTimestamp() throws Exception{
+        txns.active(8L);
+        txns.committed(5L,6L);
+
+        List<Cell> results=compact(0L,false,data(8L),data(5L));
+
+        assertCells(results,commit(5L,6L),data(8L),data(5L));
+    }
+
+    @Test
+    public void testSettledVersionsBelowAntiTombstoneArePurged() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,5L);
+        txns.committed(6L,7L);
+        txns.committed(8L,9L);
+
+        List<Cell> results=compact(100L,true,antiTombstone(6L),tombstone(4L),data(8L),data(6L),data(2L));
+
+        assertCells(results,commit(8L,9L),commit(6L,7L),antiTombstone(6L),data(8L),data(6L));
+    }
+
+    @Test
+    public void testUpdatesAreNotPurgedWithoutTombstone() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,5L);
+
+        List<Cell> results=compact(100L,true,data(4L),data(2L));
+
+        assertCells(results,commit(4L,5L),commit(2L,3L),data(4L),data(2L));
+    }
+
+    @Test
+    public void testDeletedRowIsRemovedOnlyWhenCompactingAllFiles() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,5L);
+
+        List<Cell> results=compact(100L,false,tombstone(4L),data(2L));
+        assertCells(results,commit(4L,5L),tombstone(4L));
+
+        results=compact(100L,true,tombstone(4L),data(2L));
+        Assert.assertTrue("Deleted row should have been removed!",results.isEmpty());
+    }
+
+    @Test
+    public void testVersionsCommittedAfterWatermarkAreKept() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,50L);
+
+        List<Cell> results=compact(10L,true,tombstone(4L),data(2L));
+
+        assertCells(results,commit(4L,50L),commit(2L,3L),tombstone(4L),data(2L));
+    }
+
+    @Test
+    public void testTombstoneCommittedAtWatermarkIsNotSettled() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,10L);
+
+        List<Cell> results=compact(10L,true,tombstone(4L),data(2L));
+
+        assertCells(results,commit(4L,10L),commit(2L,3L),tombstone(4L),data(2L));
+    }
+
+    @Test
+    public void testTombstoneCommittedBelowWatermarkIsSettled() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,9L);
+
+        List<Cell> results=compact(10L,true,tombstone(4L),data(2L));
+
+        Assert.assertTrue("Deleted row should have been removed!",results.isEmpty());
+    }
+
+    @Test
+    public void testRowDeletedBeneathAntiTombstoneCommittedAtWatermark() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,5L);
+        txns.committed(6L,10L);
+
+        List<Cell> results=compact(10L,true,antiTombstone(6L),tombstone(4L),data(6L),data(2L));
+
+        assertCells(results,commit(6L,10L),antiTombstone(6L),data(6L));
+    }
+
+    @Test
+    public void testAntiTombstoneCommittedBelowWatermarkIsKept() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,5L);
+        txns.committed(6L,9L);
+        txns.active(8L);
+
+        List<Cell> results=compact(10L,true,antiTombstone(6L),tombstone(4L),data(8L),data(6L),data(2L));
+
+        assertCells(results,commit(6L,9L),antiTombstone(6L),data(8L),data(6L));
+    }
+
+    @Test
+    public void testTombstoneAboveWatermarkKeepsSettledAntiTombstone() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,5L);
+        txns.committed(6L,12L);
+
+        List<Cell> results=compact(10L,true,tombstone(6L),antiTombstone(4L),data(2L));
+
+        assertCells(results,commit(6L,12L),commit(4L,5L),tombstone(6L),antiTombstone(4L));
+    }
+
+    @Test
+    public void testVersionsAboveWatermarkSurviveDeletedRow() throws Exception{
+        txns.committed(2L,3L);
+        txns.committed(4L,5L);
+        txns.committed(8L,20L);
+
+        List<Cell> results=compact(10L,false,tombstone(4L),data(8L),data(2L));
+        assertCells(results,commit(8L,20L),commit(4L,5L),tombstone(4L),data(8L));
+
+        results=compact(10L,true,tombstone(4L),data(8L),data(2L));
+        assertCells(results,commit(8L,20L),data(8L));
+    }
+
+    @Test
+    public void testBatchOfRowsIsResolvedTogether() throws Exception{
+        txns.committed(5L,6L);
+        byte[] otherRow=Bytes.toBytes("row2");
+        List<Cell> batch=new ArrayList<>();
+        batch.add(data(5L));
+        batch.add(new KeyValue(otherRow,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.PACKED_COLUMN_BYTES,5L,Bytes.toBytes("v5")));
+
+        SICompactionState state=new SICompactionState(txns,mock(RollForward.class),16);
+        state.resolve(batch);
+        Assert.assertEquals("Each transaction should be looked up once per batch",1,txns.lookups);
+
+        List<Cell> results=new ArrayList<>();
+        state.mutate(batch,0,1,results);
+        state.mutate(batch,1,2,results);
+        assertCells(results,commit(5L,6L),data(5L),
+                new KeyValue(otherRow,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_COMMIT_TIMESTAMP_COLUMN_BYTES,5L,Bytes.toBytes(6L)),
+                batch.get(1));
+        Assert.assertEquals("Each transaction should be looked up once per batch",1,txns.lookups);
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private List<Cell> compact(long lowWatermark,boolean allFiles,Cell... cells) throws IOException{
+        List<Cell> input=new ArrayList<>(Arrays.asList(cells));
+        Collections.sort(input,KeyValue.COMPARATOR);
+        SICompactionState state=new SICompactionState(txns,mock(RollForward.class),16,lowWatermark,allFiles);
+        List<Cell> results=new ArrayList<>();
+        state.mutate(input,results);
+        return results;
+    }
+
+    private static void assertSorted(List<Cell> cells){
+        for(int i=1;i<cells.size();i++){
+            Assert.assertTrue("Cells out of order at position "+i,KeyValue.COMPARATOR.compare(cells.get(i-1),cells.get(i))<0);
+        }
+    }
+
+    private static void assertCells(List<Cell> actual,Cell... expected){
+        Assert.assertEquals("Incorrect number of cells",expected.length,actual.size());
+        for(int i=0;i<expected.length;i++){
+            Assert.assertEquals("Incorrect cell at position "+i,0,KeyValue.COMPARATOR.compare(expected[i],actual.get(i)));
+            Assert.assertTrue("Incorrect value at position "+i,CellUtil.matchingValue(expected[i],actual.get(i)));
+        }
+    }
+
+    private static Cell data(long timestamp){
+        return new KeyValue(ROW,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.PACKED_COLUMN_BYTES,timestamp,Bytes.toBytes("v"+timestamp));
+    }
+
+    private static Cell tombstone(long timestamp){
+        return new KeyValue(ROW,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_TOMBSTONE_COLUMN_BYTES,timestamp,SIConstants.EMPTY_BYTE_ARRAY);
+    }
+
+    private static Cell antiTombstone(long timestamp){
+        return new KeyValue(ROW,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_TOMBSTONE_COLUMN_BYTES,timestamp,SIConstants.SNAPSHOT_ISOLATION_ANTI_TOMBSTONE_VALUE_BYTES);
+    }
+
+    private static Cell commit(long timestamp,long commitTimestamp){
+        return new KeyValue(ROW,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_COMMIT_TIMESTAMP_COLUMN_BYTES,timestamp,Bytes.toBytes(commitTimestamp));
+    }
+
+    private static class TestSupplier implements TxnSupplier{
+        private final LongObjectOpenHashMap<TxnView> txnMap=new LongObjectOpenHashMap<>();
+        private int lookups;
+
+        void committed(long beginTs,long commitTs){
+            txnMap.put(beginTs,new CommittedTxn(beginTs,commitTs));
+        }
+
+        void rolledBack(long beginTs){
+            txnMap.put(beginTs,new RolledBackTxn(beginTs));
+        }
+
+        void active(long beginTs){
+            txnMap.put(beginTs,new WritableTxn(beginTs,beginTs,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.ROOT_TRANSACTION,
+                    mock(TxnLifecycleManager.class),false,HExceptionFactory.INSTANCE));
+        }
+
+        @Override
+        public TxnView getTransaction(long txnId) throws IOException{
+            return getTransaction(txnId,false);
+        }
+
+        @Override
+        public TxnView getTransaction(long txnId,boolean getDestinationTables) throws IOException{
+            lookups++;
+            return txnMap.get(txnId);
+        }
+
+        @Override
+        public boolean transactionCached(long txnId){
+            return false;
+        }
+
+        @Override
+        public void cache(TxnView toCache){
+        }
+
+        @Override
+        public TxnView getTransactionFromCache(long txnId){
+            return null;
+        }
+    }
+}
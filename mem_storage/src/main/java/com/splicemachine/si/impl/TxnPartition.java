@@ -28,7 +28,6 @@ import com.splicemachine.si.api.server.Transactor;
 import com.splicemachine.si.api.txn.TxnView;
 import com.splicemachine.si.constants.SIConstants;
 import com.splicemachine.storage.*;
-import com.splicemachine.utils.Pair;
 
 import java.io.IOException;
 import java.util.*;
@@ -173,6 +172,11 @@ public class TxnPartition implements Partition{
         return basePartition.getLatest(key,previous);
     }
 
+    @Override
+    public Iterator<DataResult> batchGetLatest(List<byte[]> sortedKeys) throws IOException{
+        return basePartition.batchGetLatest(sortedKeys);
+    }
+
     @Override
     public Lock getRowLock(byte[] key,int keyOff,int keyLen) throws IOException{
         return basePartition.getRowLock(key,keyOff,keyLen);
@@ -341,7 +345,7 @@ public class TxnPartition implements Partition{
     }
 
     @Override
-    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker,Pair<KVPair, Lock>[] dataAndLocks) throws IOException {
+    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker,KVPair[] mutations) throws IOException {
         return null;
     }
 }
@@ -16,29 +16,30 @@
 package com.splicemachine.storage;
 
 import com.splicemachine.access.util.ByteComparisons;
-import org.spark_project.guava.base.Predicate;
-import org.spark_project.guava.collect.BiMap;
-import org.spark_project.guava.collect.HashBiMap;
-import org.spark_project.guava.collect.Sets;
-import com.splicemachine.collections.EmptyNavigableSet;
+import org.spark_project.guava.collect.Iterators;
 import com.splicemachine.kvpair.KVPair;
 import com.splicemachine.metrics.MetricFactory;
 import com.splicemachine.metrics.Metrics;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.constants.SIConstants;
 import com.splicemachine.storage.util.MappedDataResultScanner;
-import com.splicemachine.utils.Pair;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author Scott Fines
@@ -50,16 +51,38 @@ public class MPartition implements Partition{
     private final String tableName;
     private final PartitionServer owner;
 
-    private final ConcurrentSkipListSet<DataCell> memstore=new ConcurrentSkipListSet<>();
-    private final BiMap<ByteBuffer, Lock> lockMap=HashBiMap.create();
+    /*
+     * Default number of cells above which a shard is split in two
+     */
+    public static final int DEFAULT_SPLIT_THRESHOLD=1<<16;
+
+    /*
+     * The table is stored as shards covering contiguous ranges of row keys, keyed by the first row key of their
+     * range (the first shard starts at the empty key). A shard is split once it holds more than splitThreshold
+     * cells, so writers and readers are spread over several smaller skip lists.
+     *
+     * Writes hold the read lock of shardLock while they update a shard, splits hold the write lock. Splits copy
+     * the cells into two new shards rather than modifying the old one, so scanners and readers which picked
+     * the old shard keep a consistent view.
+     */
+    private final ConcurrentSkipListMap<byte[],Shard> shards=new ConcurrentSkipListMap<>(ByteComparisons.comparator());
+    private final ReadWriteLock shardLock=new ReentrantReadWriteLock();
+    private final int splitThreshold;
+    private final ConcurrentMap<ByteBuffer,RowLock> rowLocks=new ConcurrentHashMap<>();
     private AtomicLong writes=new AtomicLong(0l);
     private AtomicLong reads=new AtomicLong(0l);
     private AtomicLong sequenceGen = new AtomicLong(0l);
 
     public MPartition(String tableName,String partitionName){
+        this(tableName,partitionName,DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    public MPartition(String tableName,String partitionName,int splitThreshold){
         this.partitionName=partitionName;
         this.tableName=tableName;
         this.owner=new MPartitionServer();
+        this.splitThreshold=splitThreshold;
+        this.shards.put(SIConstants.EMPTY_BYTE_ARRAY,new Shard());
     }
 
     @Override
@@ -86,15 +109,12 @@ public class MPartition implements Partition{
 
     @Override
     public DataResult get(final DataGet get,DataResult previous) throws IOException{
-        DataCell start=new MCell(get.key(),new byte[]{},new byte[]{},get.highTimestamp(),new byte[]{},CellType.USER_DATA);
+        byte[] key=get.key();
+        DataCell start=new MCell(key,new byte[]{},new byte[]{},get.highTimestamp(),new byte[]{},CellType.USER_DATA);
+        // every cell of the row sorts before the cells of the next possible row key, which is the key followed by 0
+        DataCell end=new MCell(Arrays.copyOf(key,key.length+1),new byte[]{},new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
 
-        Set<DataCell> data=Sets.filter(memstore.tailSet(start,true),new Predicate<DataCell>(){
-            @Override
-            public boolean apply(DataCell dataCell){
-                byte[] key=get.key();
-                return Bytes.equals(dataCell.keyArray(),dataCell.keyOffset(),dataCell.keyLength(),key,0,key.length);
-            }
-        });
+        Set<DataCell> data=shardFor(key).cells.subSet(start,true,end,false);
         long curSeq = sequenceGen.get();
         try(SetScanner ss=new SetScanner(curSeq,data.iterator(),get.lowTimestamp(),get.highTimestamp(),get.filter(),this,Metrics.noOpMetricFactory())){
             List<DataCell> toReturn=ss.next(-1);
@@ -122,7 +142,7 @@ public class MPartition implements Partition{
         DataCell start=new MCell(rowKey,family,new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
         DataCell end=new MCell(rowKey,family,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,0l,new byte[]{},CellType.USER_DATA);
 
-        Set<DataCell> data=memstore.subSet(start,true,end,true);
+        Set<DataCell> data=shardFor(rowKey).cells.subSet(start,true,end,true);
         List<DataCell> toReturn=new ArrayList<>(data.size());
         DataCell last=null;
         for(DataCell d : data){
@@ -149,8 +169,7 @@ public class MPartition implements Partition{
 
     @Override
     public DataScanner openScanner(DataScan scan,MetricFactory metricFactory) throws IOException{
-        NavigableSet<DataCell> dataCells=getAscendingScanSet(scan);
-        Iterator<DataCell> iter = scan.isDescendingScan()? dataCells.descendingIterator(): dataCells.iterator();
+        Iterator<DataCell> iter=scanIterator(scan);
 
         long curSeq = sequenceGen.get();
         return new SetScanner(curSeq,iter,scan.lowVersion(),scan.highVersion(),scan.getFilter(),this,metricFactory);
@@ -249,7 +268,7 @@ public class MPartition implements Partition{
         DataCell s=new MCell(key,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,Long.MAX_VALUE,new byte[]{},CellType.FOREIGN_KEY_COUNTER);
         DataCell e=new MCell(key,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,0l,new byte[]{},CellType.FOREIGN_KEY_COUNTER);
 
-        NavigableSet<DataCell> dataCells=memstore.subSet(s,true,e,true);
+        NavigableSet<DataCell> dataCells=shardFor(key).cells.subSet(s,true,e,true);
         List<DataCell> results=new ArrayList<>(dataCells.size());
         DataCell lastResult=null;
         for(DataCell dc : dataCells){
@@ -271,7 +290,7 @@ public class MPartition implements Partition{
         DataCell s=new MCell(key,new byte[]{},new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
         DataCell e=new MCell(key,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,0l,new byte[]{},CellType.USER_DATA);
 
-        NavigableSet<DataCell> dataCells=memstore.subSet(s,true,e,true);
+        NavigableSet<DataCell> dataCells=shardFor(key).cells.subSet(s,true,e,true);
         List<DataCell> results=new ArrayList<>(dataCells.size());
         DataCell lastResult=null;
         for(DataCell dc : dataCells){
@@ -287,17 +306,17 @@ public class MPartition implements Partition{
     }
 
     @Override
-    public Lock getRowLock(byte[] key,int keyOff,int keyLen) throws IOException{
-        final ByteBuffer wrap=ByteBuffer.wrap(key,keyOff,keyLen);
-        Lock lock;
-        synchronized(lockMap){
-            lock=lockMap.get(wrap);
-            if(lock==null){
-                lock=new MemLock(wrap);
-                lockMap.put(wrap,lock);
-            }
+    public Iterator<DataResult> batchGetLatest(List<byte[]> sortedKeys) throws IOException{
+        List<DataResult> results=new ArrayList<>(sortedKeys.size());
+        for(byte[] key : sortedKeys){
+            results.add(getLatest(key,null));
         }
-        return lock;
+        return results.iterator();
+    }
+
+    @Override
+    public Lock getRowLock(byte[] key,int keyOff,int keyLen) throws IOException{
+        return new RowLockHandle(ByteBuffer.wrap(Arrays.copyOfRange(key,keyOff,keyOff+keyLen)));
     }
 
     @Override
@@ -407,51 +426,88 @@ public class MPartition implements Partition{
 
     /* ****************************************************************************************************************/
     /*private helper methods*/
-    private class MemLock implements Lock{
-        private ByteBuffer key;
-        private final Lock lock;
-        private int lockCount=0;
+    /**
+     * Cells of a range of row keys.
+     */
+    private static class Shard{
+        private final ConcurrentSkipListSet<DataCell> cells=new ConcurrentSkipListSet<>();
+        private final AtomicInteger size=new AtomicInteger();
+
+        void add(DataCell cell){
+            if(cells.add(cell))
+                size.incrementAndGet();
+        }
 
-        public MemLock(ByteBuffer key){
+        void remove(DataCell cell){
+            if(cells.remove(cell))
+                size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Lock of a single row, which is dropped from the lock table once nobody holds or waits for it.
+     */
+    private static class RowLock extends ReentrantLock{
+        // set while holding the lock, by the last holder as it drops the lock from the lock table
+        private boolean retired;
+    }
+
+    /**
+     * Handle on the lock of a row. The lock is looked up in the lock table every time the handle is locked, and
+     * looked up again if it was retired in the meantime, so concurrent writers to different rows never contend.
+     */
+    private class RowLockHandle implements Lock{
+        private final ByteBuffer key;
+        private RowLock acquired;
+
+        RowLockHandle(ByteBuffer key){
             this.key=key;
-            this.lock=new ReentrantLock();
         }
 
         @Override
         public void lock(){
-            lock.lock();
-            lockCount++;
+            for(;;){
+                RowLock lock=rowLock(key);
+                lock.lock();
+                if(acquired(lock)) return;
+            }
         }
 
         @Override
         public void lockInterruptibly() throws InterruptedException{
-            lock.lockInterruptibly();
-            lockCount++;
+            for(;;){
+                RowLock lock=rowLock(key);
+                lock.lockInterruptibly();
+                if(acquired(lock)) return;
+            }
         }
 
         @Override
         public boolean tryLock(){
-            if(lock.tryLock()){
-                lockCount++;
-                return true;
-            }else return false;
+            for(;;){
+                RowLock lock=rowLock(key);
+                if(!lock.tryLock()) return false;
+                if(acquired(lock)) return true;
+            }
         }
 
         @Override
         public boolean tryLock(long time,@Nonnull TimeUnit unit) throws InterruptedException{
-            if(lock.tryLock(time,unit)){
-                lockCount++;
-                return true;
-            }else return false;
+            long deadline=System.nanoTime()+unit.toNanos(time);
+            for(;;){
+                RowLock lock=rowLock(key);
+                if(!lock.tryLock(deadline-System.nanoTime(),TimeUnit.NANOSECONDS)) return false;
+                if(acquired(lock)) return true;
+            }
         }
 
         @Override
         public void unlock(){
-            lockCount--;
-            if(lockCount==0){
-                synchronized(lockMap){
-                    lockMap.remove(key);
-                }
+            RowLock lock=acquired;
+            if(lock.getHoldCount()==1 && !lock.hasQueuedThreads()){
+                // threads which looked the lock up but aren't queued yet will see it retired and look again
+                lock.retired=true;
+                rowLocks.remove(key,lock);
             }
             lock.unlock();
         }
@@ -459,7 +515,70 @@ public class MPartition implements Partition{
         @Override
         @Nonnull
         public Condition newCondition(){
-            return lock.newCondition();
+            throw new UnsupportedOperationException("Row locks do not support conditions");
+        }
+
+        private boolean acquired(RowLock lock){
+            if(lock.retired){
+                lock.unlock();
+                return false;
+            }
+            acquired=lock;
+            return true;
+        }
+    }
+
+    private RowLock rowLock(ByteBuffer key){
+        RowLock lock=rowLocks.get(key);
+        if(lock==null){
+            RowLock newLock=new RowLock();
+            lock=rowLocks.putIfAbsent(key,newLock);
+            if(lock==null)
+                lock=newLock;
+        }
+        return lock;
+    }
+
+    private Shard shardFor(byte[] key){
+        return shards.floorEntry(key).getValue();
+    }
+
+    /**
+     * Split the shard in two halves holding about as many cells, unless it has been split already.
+     */
+    private void maybeSplit(byte[] key){
+        Shard shard=shardFor(key);
+        if(shard.size.get()<=splitThreshold) return;
+        shardLock.writeLock().lock();
+        try{
+            Map.Entry<byte[],Shard> entry=shards.floorEntry(key);
+            shard=entry.getValue();
+            if(shard.size.get()<=splitThreshold) return;
+
+            // split on a row boundary, at the row holding the middle cell
+            Iterator<DataCell> cells=shard.cells.iterator();
+            DataCell middle=null;
+            for(int i=shard.size.get()/2;i>=0 && cells.hasNext();i--){
+                middle=cells.next();
+            }
+            if(middle==null) return;
+            byte[] splitKey=middle.key();
+            if(ByteComparisons.comparator().compare(splitKey,entry.getKey())<=0) return; //a single huge row
+
+            DataCell splitCell=new MCell(splitKey,new byte[]{},new byte[]{},Long.MAX_VALUE,new byte[]{},CellType.USER_DATA);
+            Shard left=new Shard();
+            Shard right=new Shard();
+            for(DataCell dc : shard.cells.headSet(splitCell,false)){
+                left.add(dc);
+            }
+            for(DataCell dc : shard.cells.tailSet(splitCell,true)){
+                right.add(dc);
+            }
+            // publish the upper half first, so a reader never finds a key in a shard which doesn't hold it
+            shards.put(splitKey,right);
+            shards.put(entry.getKey(),left);
+        }finally{
+            shardLock.writeLock().unlock();
         }
     }
 
@@ -469,17 +588,22 @@ public class MPartition implements Partition{
         lock.lock();
         try{
             Iterable<DataCell> cells=mPut.cells();
-            for(DataCell dc : cells){
-                if(memstore.contains(dc)){
-                    memstore.remove(dc);
+            shardLock.readLock().lock();
+            try{
+                Shard shard=shardFor(mPut.key());
+                for(DataCell dc : cells){
+                    shard.remove(dc);
+                    DataCell clone=dc.getClone();
+                    ((MCell)clone).sequence(seq);
+                    shard.add(clone);
                 }
-                DataCell clone=dc.getClone();
-                ((MCell)clone).sequence(seq);
-                memstore.add(clone);
+            }finally{
+                shardLock.readLock().unlock();
             }
         }finally{
             lock.unlock();
         }
+        maybeSplit(mPut.key());
     }
 
     private void delete(MDelete mDelete,Lock rowLock) throws IOException{
@@ -487,8 +611,14 @@ public class MPartition implements Partition{
         rowLock.lock();
         try{
             Iterable<DataCell> exactCellsToDelete=mDelete.cells();
-            for(DataCell dc : exactCellsToDelete){
-                memstore.remove(dc);
+            shardLock.readLock().lock();
+            try{
+                Shard shard=shardFor(mDelete.key());
+                for(DataCell dc : exactCellsToDelete){
+                    shard.remove(dc);
+                }
+            }finally{
+                shardLock.readLock().unlock();
             }
             //TODO -sf- make this also remove entire families and columns
         }finally{
@@ -496,38 +626,44 @@ public class MPartition implements Partition{
         }
     }
 
-    private NavigableSet<DataCell> getAscendingScanSet(DataScan scan){
-        NavigableSet<DataCell> dataCells;
-        if(memstore.size()<=0)
-            dataCells = EmptyNavigableSet.instance();
-        else{
-            byte[] startKey=scan.getStartKey();
-            byte[] stopKey=scan.getStopKey();
-            DataCell start;
-            DataCell stop;
-            if(startKey==null|| startKey.length==0) {
-                if(stopKey==null||stopKey.length==0){
-                    return memstore;
-                }else{
-                    start = memstore.first();
-                }
-            }else
-                start=new MCell(startKey,new byte[]{},new byte[]{},scan.highVersion(),new byte[]{},CellType.COMMIT_TIMESTAMP);
-
-            if(stopKey==null||stopKey.length==0){
-                return memstore.tailSet(start,true);
-            }else
-                stop=new MCell(stopKey,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,scan.lowVersion(),new byte[]{},CellType.FOREIGN_KEY_COUNTER);
-
-            /*
-             * It is possible (particularly if the start key is null) that the stop value compares to less than
-             * the start key, and that is a reasonable situation. In that case, we know that the end results
-             * are empty, so bypass creating a new Set object in this case.
-             */
-            if(stop.compareTo(start)<0) return EmptyNavigableSet.instance();
-            dataCells=memstore.subSet(start,true,stop,false);
+    private Iterator<DataCell> scanIterator(DataScan scan){
+        byte[] startKey=scan.getStartKey();
+        byte[] stopKey=scan.getStopKey();
+        boolean hasStart=startKey!=null && startKey.length>0;
+        boolean hasStop=stopKey!=null && stopKey.length>0;
+        DataCell start=hasStart?new MCell(startKey,new byte[]{},new byte[]{},scan.highVersion(),new byte[]{},CellType.COMMIT_TIMESTAMP):null;
+        DataCell stop=hasStop?new MCell(stopKey,SIConstants.DEFAULT_FAMILY_BYTES,SIConstants.SNAPSHOT_ISOLATION_FK_COUNTER_COLUMN_BYTES,scan.lowVersion(),new byte[]{},CellType.FOREIGN_KEY_COUNTER):null;
+
+        /*
+         * It is possible (particularly if the start key is null) that the stop value compares to less than
+         * the start key, and that is a reasonable situation. In that case, we know that the end results
+         * are empty, so bypass creating a new Set object in this case.
+         */
+        if(start!=null && stop!=null && stop.compareTo(start)<0) return Collections.emptyIterator();
+
+        List<Shard> scanned;
+        // the shards are listed while no split is running, so each key range is covered exactly once
+        shardLock.readLock().lock();
+        try{
+            byte[] first=hasStart?shards.floorKey(startKey):shards.firstKey();
+            byte[] last=hasStop?shards.floorKey(stopKey):shards.lastKey();
+            scanned=new ArrayList<>(shards.subMap(first,true,last,true).values());
+        }finally{
+            shardLock.readLock().unlock();
+        }
+
+        List<Iterator<DataCell>> iterators=new ArrayList<>(scanned.size());
+        for(Shard shard : scanned){
+            NavigableSet<DataCell> dataCells=shard.cells;
+            if(start!=null)
+                dataCells=dataCells.tailSet(start,true);
+            if(stop!=null)
+                dataCells=dataCells.headSet(stop,false);
+            iterators.add(scan.isDescendingScan()?dataCells.descendingIterator():dataCells.iterator());
         }
-        return dataCells;
+        if(scan.isDescendingScan())
+            Collections.reverse(iterators);
+        return Iterators.concat(iterators.iterator());
     }
 
 
@@ -562,7 +698,7 @@ public class MPartition implements Partition{
     }
 
     @Override
-    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker, Pair<KVPair, Lock>[] dataAndLocks) throws IOException {
+    public BitSet getBloomInMemoryCheck(boolean hasConstraintChecker, KVPair[] mutations) throws IOException {
         return null;
     }
 }
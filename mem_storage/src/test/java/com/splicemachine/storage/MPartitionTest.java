@@ -0,0 +1,256 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.storage;
+
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.constants.SIConstants;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Concurrency tests of the range-sharded storage and row locks of {@link MPartition}.
+ */
+public class MPartitionTest{
+    private static final byte[] FAMILY=SIConstants.DEFAULT_FAMILY_BYTES;
+    private static final byte[] QUALIFIER=SIConstants.PACKED_COLUMN_BYTES;
+    private static final int THREADS=8;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp(){
+        executor=Executors.newFixedThreadPool(THREADS+1);
+    }
+
+    @After
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentPutsAndGetsAcrossSplits() throws Exception{
+        final MPartition partition=new MPartition("test","test",64);
+        final int rowsPerThread=500;
+        final CyclicBarrier start=new CyclicBarrier(THREADS+1);
+        final AtomicBoolean writing=new AtomicBoolean(true);
+        List<Future<Void>> writers=new ArrayList<>(THREADS);
+        for(int t=0;t<THREADS;t++){
+            final int thread=t;
+            writers.add(executor.submit(new Callable<Void>(){
+                @Override
+                public Void call() throws Exception{
+                    start.await();
+                    for(int i=0;i<rowsPerThread;i++){
+                        // threads write interleaved keys, so they keep hitting the same shards as those split
+                        int row=i*THREADS+thread;
+                        partition.put(put(row));
+                        DataResult result=partition.get(get(row),null);
+                        Assert.assertNotNull("Row "+row+" missing after its put",result);
+                        Assert.assertEquals("Incorrect value of row "+row,row,Bytes.toInt(result.latestCell(FAMILY,QUALIFIER).value()));
+                    }
+                    return null;
+                }
+            }));
+        }
+        Future<Integer> reader=executor.submit(new Callable<Integer>(){
+            @Override
+            public Integer call() throws Exception{
+                start.await();
+                int scans=0;
+                do{
+                    // a scan racing with splits must still see each row once, in order
+                    assertAscending(scan(partition,new MScan()));
+                    scans++;
+                }while(writing.get());
+                return scans;
+            }
+        });
+        try{
+            for(Future<Void> writer : writers){
+                writer.get(60,TimeUnit.SECONDS);
+            }
+        }finally{
+            writing.set(false);
+        }
+        Assert.assertTrue(reader.get(60,TimeUnit.SECONDS)>0);
+
+        int rows=THREADS*rowsPerThread;
+        List<Integer> all=scan(partition,new MScan());
+        Assert.assertEquals("Incorrect row count!",rows,all.size());
+        for(int i=0;i<rows;i++){
+            Assert.assertEquals(i,(int)all.get(i));
+        }
+
+        List<Integer> descending=scan(partition,new MScan().reverseOrder());
+        Assert.assertEquals("Incorrect descending row count!",rows,descending.size());
+        for(int i=0;i<rows;i++){
+            Assert.assertEquals(rows-1-i,(int)descending.get(i));
+        }
+
+        // the stop key 0x00000B sorts right before row 0x00000B00 (2816), and is no row itself
+        List<Integer> range=scan(partition,new MScan().startKey(Bytes.toBytes(1000)).stopKey(new byte[]{0,0,0x0B}));
+        Assert.assertEquals("Incorrect range row count!",2816-1000,range.size());
+        Assert.assertEquals(1000,(int)range.get(0));
+        Assert.assertEquals(2815,(int)range.get(range.size()-1));
+    }
+
+    @Test
+    public void testIncrementsAreSerializedByRowLock() throws Exception{
+        final MPartition partition=new MPartition("test","test",64);
+        final byte[] shared=Bytes.toBytes("shared");
+        final int increments=1000;
+        final CyclicBarrier start=new CyclicBarrier(THREADS);
+        List<Future<Void>> futures=new ArrayList<>(THREADS);
+        for(int t=0;t<THREADS;t++){
+            final byte[] own=Bytes.toBytes("own"+t);
+            futures.add(executor.submit(new Callable<Void>(){
+                @Override
+                public Void call() throws Exception{
+                    start.await();
+                    for(int i=0;i<increments;i++){
+                        partition.increment(shared,FAMILY,QUALIFIER,1L);
+                        partition.increment(own,FAMILY,QUALIFIER,1L);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for(Future<Void> future : futures){
+            future.get(60,TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals("Lost increments on the shared row!",(long)THREADS*increments,counter(partition,shared));
+        for(int t=0;t<THREADS;t++){
+            Assert.assertEquals("Lost increments on own row!",increments,counter(partition,Bytes.toBytes("own"+t)));
+        }
+    }
+
+    @Test
+    public void testRowLockExcludesOtherHandlesOfTheSameRow() throws Exception{
+        MPartition partition=new MPartition("test","test");
+        byte[] row=Bytes.toBytes("row");
+        Lock held=partition.getRowLock(row,0,row.length);
+        held.lock();
+        try{
+            Assert.assertFalse("Lock of a held row acquired by another thread",tryLockElsewhere(partition,row));
+            Assert.assertTrue("Lock of another row is contended",tryLockElsewhere(partition,Bytes.toBytes("other")));
+
+            // locks are reentrant, the row stays locked until the last unlock
+            held.lock();
+            held.unlock();
+            Assert.assertFalse("Lock released by a nested unlock",tryLockElsewhere(partition,row));
+        }finally{
+            held.unlock();
+        }
+        Assert.assertTrue("Released lock cannot be acquired",tryLockElsewhere(partition,row));
+        // a handle can be locked again once released
+        held.lock();
+        held.unlock();
+    }
+
+    @Test
+    public void testWaiterAcquiresRowLockOnRelease() throws Exception{
+        final MPartition partition=new MPartition("test","test");
+        final byte[] row=Bytes.toBytes("row");
+        Lock held=partition.getRowLock(row,0,row.length);
+        held.lock();
+        final CountDownLatch waiting=new CountDownLatch(1);
+        Future<Boolean> waiter;
+        try{
+            waiter=executor.submit(new Callable<Boolean>(){
+                @Override
+                public Boolean call() throws Exception{
+                    Lock lock=partition.getRowLock(row,0,row.length);
+                    waiting.countDown();
+                    if(!lock.tryLock(30,TimeUnit.SECONDS))
+                        return false;
+                    lock.unlock();
+                    return true;
+                }
+            });
+            Assert.assertTrue(waiting.await(10,TimeUnit.SECONDS));
+            // give the waiter time to queue on the lock, it must be handed the lock rather than see it retired
+            Thread.sleep(100);
+        }finally{
+            held.unlock();
+        }
+        Assert.assertTrue("Waiter never acquired the released lock",waiter.get(60,TimeUnit.SECONDS));
+        Assert.assertTrue("Lock still held after the waiter released it",tryLockElsewhere(partition,row));
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static MPut put(int row){
+        MPut put=new MPut(Bytes.toBytes(row));
+        put.addCell(FAMILY,QUALIFIER,1L,Bytes.toBytes(row));
+        return put;
+    }
+
+    private static MGet get(int row){
+        MGet get=new MGet(Bytes.toBytes(row));
+        get.returnAllVersions();
+        return get;
+    }
+
+    private static List<Integer> scan(MPartition partition,DataScan scan) throws IOException{
+        List<Integer> rows=new ArrayList<>();
+        try(DataScanner scanner=partition.openScanner(scan)){
+            List<DataCell> cells;
+            while((cells=scanner.next(-1)).size()>0){
+                rows.add(Bytes.toInt(cells.get(0).key()));
+            }
+        }
+        return rows;
+    }
+
+    private static void assertAscending(List<Integer> rows){
+        for(int i=1;i<rows.size();i++){
+            Assert.assertTrue("Rows out of order or duplicated: "+rows.get(i-1)+", "+rows.get(i),rows.get(i-1)<rows.get(i));
+        }
+    }
+
+    private static long counter(MPartition partition,byte[] row) throws IOException{
+        return Bytes.toLong(partition.getLatest(row,FAMILY,null).latestCell(FAMILY,QUALIFIER).value());
+    }
+
+    private boolean tryLockElsewhere(final MPartition partition,final byte[] row) throws Exception{
+        return executor.submit(new Callable<Boolean>(){
+            @Override
+            public Boolean call() throws Exception{
+                Lock lock=partition.getRowLock(row,0,row.length);
+                if(!lock.tryLock())
+                    return false;
+                lock.unlock();
+                return true;
+            }
+        }).get(10,TimeUnit.SECONDS);
+    }
+}
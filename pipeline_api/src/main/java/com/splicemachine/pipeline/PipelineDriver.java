@@ -34,8 +34,10 @@ import com.splicemachine.pipeline.api.PipelineExceptionFactory;
 import com.splicemachine.pipeline.api.PipelineMeter;
 import com.splicemachine.pipeline.api.WritePipelineFactory;
 import com.splicemachine.pipeline.client.WriteCoordinator;
+import com.splicemachine.pipeline.constraint.ForeignKeyParentKeyCache;
 import com.splicemachine.pipeline.contextfactory.ContextFactoryDriver;
 import com.splicemachine.pipeline.contextfactory.ContextFactoryLoader;
+import com.splicemachine.pipeline.traffic.AdaptiveSpliceWriteControl;
 import com.splicemachine.pipeline.traffic.SpliceWriteControl;
 import com.splicemachine.pipeline.traffic.SynchronousWriteControl;
 import com.splicemachine.pipeline.utils.PipelineCompressor;
@@ -57,6 +59,7 @@ public class PipelineDriver{
     private final WriteCoordinator writeCoordinator;
     private final PipelineExceptionFactory pef;
     private final ContextFactoryDriver ctxFactoryDriver;
+    private final ForeignKeyParentKeyCache fkParentKeyCache;
     private final AtomicBoolean jmxRegistered = new AtomicBoolean(false);
 
     public static void loadDriver(PipelineEnvironment env){
@@ -89,12 +92,16 @@ public class PipelineDriver{
         this.compressor = compressor;
         this.pipelineMeter= meter;
         this.writePipelineFactory = writePipelineFactory;
+        this.fkParentKeyCache = new ForeignKeyParentKeyCache(config.getForeignKeyParentKeyCacheSize(),config.getForeignKeyParentKeyCacheExpiration());
 
         int ipcThreads = config.getIpcThreads();
         int maxIndependentWrites = config.getMaxIndependentWrites();
         int maxDependentWrites = config.getMaxDependentWrites();
 
-        this.writeControl= new SynchronousWriteControl(ipcThreads/2,ipcThreads/2,maxDependentWrites,maxIndependentWrites);
+        if(config.getAdaptiveWriteControl())
+            this.writeControl= new AdaptiveSpliceWriteControl(ipcThreads/2,ipcThreads/2,maxDependentWrites,maxIndependentWrites);
+        else
+            this.writeControl= new SynchronousWriteControl(ipcThreads/2,ipcThreads/2,maxDependentWrites,maxIndependentWrites);
         this.pipelineWriter = new PipelineWriter(pef, writePipelineFactory,writeControl,pipelineMeter);
         channelFactory.setWriter(pipelineWriter);
         channelFactory.setPipeline(writePipelineFactory);
@@ -126,6 +133,10 @@ public class PipelineDriver{
         return pef;
     }
 
+    public ForeignKeyParentKeyCache foreignKeyParentKeyCache(){
+        return fkParentKeyCache;
+    }
+
     public ContextFactoryLoader getContextFactoryLoader(long conglomId){
         return ctxFactoryDriver.getLoader(conglomId);
     }
@@ -89,14 +89,14 @@ public class PipelineWriter{
             if(pwp==null){
                 if(LOG.isTraceEnabled())
                     LOG.trace("Rejecting "+bulkWrites.numEntries()+" rows in "+ bws.size()+"writes because we aren't serving any of those regions");
-                rejectAll(bws,result,Code.NOT_SERVING_REGION,"No WritePipeline found in registry for BulkWrites "+ bulkWrites);
+                rejectAll(bws,result,Code.NOT_SERVING_REGION,"No WritePipeline found in registry for BulkWrites "+ bulkWrites,0l);
                 return new BulkWritesResult(result);
             }
             dependent = pwp.isDependent(bulkWrites.getTxn());
         } catch (InterruptedException e1) {
             throw new IOException(e1);
         } catch (IndexNotSetUpException e1) {
-            rejectAll(bws,result,Code.INDEX_NOT_SETUP_EXCEPTION,null);
+            rejectAll(bws,result,Code.INDEX_NOT_SETUP_EXCEPTION,null,0l);
             return new BulkWritesResult(result);
         }
 
@@ -108,13 +108,16 @@ public class PipelineWriter{
         if (status.equals(SpliceWriteControl.Status.REJECTED)) {
             if(LOG.isTraceEnabled())
                 LOG.trace("Rejecting "+numBulkWrites+" rows in "+ bws.size()+"writes because the pipeline is too busy");
-            rejectAll(bws,result, Code.PIPELINE_TOO_BUSY,null);
+            //tell the client how long it should take for capacity to free up, so that it doesn't retry too eagerly
+            rejectAll(bws,result, Code.PIPELINE_TOO_BUSY,null,writeControl.getRetryDelay(dependent));
             rejectedCount.addAndGet(numBulkWrites);
             return new BulkWritesResult(result);
         }
+        long start = System.nanoTime();
         try {
             return performWrite(bulkWrites,bws,result,indexWriteBufferFactory);
         } finally {
+            writeControl.recordWriteLatency(status,numKVPairs,System.nanoTime()-start);
             switch (status) {
                 case REJECTED:
                     break;
@@ -213,7 +216,7 @@ public class PipelineWriter{
     }
     /* ****************************************************************************************************************/
     /*private helper methods*/
-    private void rejectAll(Collection<BulkWrite> writes, Collection<BulkWriteResult> result, Code status,String msg) {
+    private void rejectAll(Collection<BulkWrite> writes, Collection<BulkWriteResult> result, Code status,String msg,long retryDelay) {
         for(BulkWrite write:writes){
             pipelineMeter.mark(0,write.getSize());
             switch (status) {
@@ -221,7 +224,7 @@ public class PipelineWriter{
                     result.add(new BulkWriteResult(WriteResult.notServingRegion(msg)));
                     break;
                 case PIPELINE_TOO_BUSY:
-                    result.add(new BulkWriteResult(WriteResult.pipelineTooBusy(write.getEncodedStringName())));
+                    result.add(new BulkWriteResult(WriteResult.pipelineTooBusy(write.getEncodedStringName(),retryDelay)));
                     break;
                 case INDEX_NOT_SETUP_EXCEPTION:
                     if(LOG.isTraceEnabled())
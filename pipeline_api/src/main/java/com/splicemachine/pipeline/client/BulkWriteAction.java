@@ -228,7 +228,8 @@ public class BulkWriteAction implements Callable<WriteStats>{
              * simply because we were told to wait a bit by the write pipeline (i.e. we were rejected).
              */
             if(ctx.shouldSleep()){
-                clock.sleep(PipelineUtils.getPauseTime(ctx.attemptCount,10),TimeUnit.MILLISECONDS);
+                long pause = ctx.retryDelay>0? ctx.retryDelay : PipelineUtils.getPauseTime(ctx.attemptCount,10);
+                clock.sleep(pause,TimeUnit.MILLISECONDS);
             }if(ctx.directRetry)
                 writesToPerform.add(nextWrite);
             else if(ctx.nextWriteSet!=null &&ctx.nextWriteSet.size()>0){
@@ -291,6 +292,8 @@ public class BulkWriteAction implements Callable<WriteStats>{
                         ctx.addBulkWrites(currentBulkWrite.getMutations());
                         ctx.refreshCache = ctx.refreshCache || bulkWriteResult.getGlobalResult().refreshCache();
                         ctx.sleep=true; //always sleep due to rejection, even if we don't need to refresh the cache
+                        //if the server told us how long it expects to be busy, wait that long instead of guessing
+                        ctx.retryDelay = Math.max(ctx.retryDelay,bulkWriteResult.getGlobalResult().getRetryDelay());
                         break;
                     case PARTIAL:
                         partialRows.add(currentBulkWrite.getSize());
@@ -490,6 +493,7 @@ public class BulkWriteAction implements Callable<WriteStats>{
         Collection<KVPair> nextWriteSet;
         boolean directRetry;
         int attemptCount = 0;
+        long retryDelay;
 
         int rejectedCount;
         int failedCount;
@@ -505,6 +509,7 @@ public class BulkWriteAction implements Callable<WriteStats>{
             nextWriteSet = null;
             directRetry = false;
             rejected=false;
+            retryDelay = 0l;
         }
 
         void addBulkWrites(Collection<KVPair> writes){
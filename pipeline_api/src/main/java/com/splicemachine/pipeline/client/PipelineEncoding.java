@@ -33,10 +33,33 @@ import java.util.*;
  *         Date: 1/19/15
  */
 public class PipelineEncoding {
+    /*
+     * The first byte of the original (unversioned) encoding is the length of the encoded transaction, which is always
+     * a positive scalar and thus always has its high bit set. Versioned encodings start with a version byte
+     * which never has its high bit set, so that we can continue to decode the original format.
+     */
+    static final byte COMPACT_VERSION = 0x01;
 
     public static byte[] encode(TxnOperationFactory operationFactory,BulkWrites bulkWrites){
+        return encode(operationFactory,bulkWrites,false);
+    }
+
+    /**
+     * Encode the BulkWrites.
+     *
+     * @param operationFactory the factory to use when encoding the transaction
+     * @param bulkWrites the writes to encode
+     * @param compact whether to use the compact encoding. Servers from releases which predate it can only
+     *                decode the original encoding, so this should only be set once the whole cluster can decode it
+     *                (see {@code splice.client.write.compactEncoding}).
+     * @return the encoded BulkWrites
+     */
+    public static byte[] encode(TxnOperationFactory operationFactory,
+                                BulkWrites bulkWrites,
+                                boolean compact){
         /*
          * The encoding for a BulkWrites is as follows:
+         * Version (1 byte, compact encoding only)
          * Txn (1-N bytes)
          * # of BulkWrites (1-N bytes)
          * for 1...# of BulkWrites:
@@ -51,11 +74,28 @@ public class PipelineEncoding {
          * sequence of KVPairs. This means that we can decode the necessary metadata eagerly,
          * but deserialize the KVPairs on an as-needed basis.
          *
+         * In the original encoding, the KVPairs of a single BulkWrite are encoded row by row:
+         * # of KVPairs
+         * for each KVPair:
+         *  type, row key, value
+         *
+         * In the compact encoding, they are encoded column-wise instead:
+         * # of KVPairs
+         * # of type runs, followed by (type,run length) for each run
+         * total length of the row keys
+         * for each row key:
+         *  length of the prefix shared with the previous row key, followed by the remaining bytes
+         * each value
+         *
+         * Writes within a BulkWrite are usually sorted (or nearly so), and index row keys in particular
+         * tend to share long prefixes, so the row key section is much smaller than the raw keys.
          */
         byte[] txnBytes = operationFactory.encode(bulkWrites.getTxn());
 
         int heapSize = bulkWrites.getBufferHeapSize();
-        ExpandingEncoder buffer = new ExpandingEncoder(heapSize+txnBytes.length);
+        ExpandingEncoder buffer = new ExpandingEncoder(heapSize+txnBytes.length+1);
+        if(compact)
+            buffer.rawEncode(COMPACT_VERSION);
         buffer.rawEncode(txnBytes);
 
         //encode BulkWrite metadata
@@ -70,21 +110,26 @@ public class PipelineEncoding {
         }
 
         for(BulkWrite bw:bws){
-            Collection<KVPair> mutations = bw.getMutations();
-            buffer.encode(mutations.size());
-            for(KVPair kvPair:mutations){
-                //TODO -sf- use a run-length encoding for type information here?
-                buffer.rawEncode(kvPair.getType().asByte());
-                buffer.rawEncode(kvPair.rowKeySlice());
-                buffer.rawEncode(kvPair.valueSlice());
-            }
+            if(compact)
+                encodeMutations(buffer,bw.getMutations());
+            else
+                encodeMutationsLegacy(buffer,bw.getMutations());
         }
         return buffer.getBuffer();
     }
 
-
+    /**
+     * Decode the BulkWrites, in either encoding. The KVPairs of each BulkWrite are decoded lazily, and refer
+     * directly to {@code data} rather than copying it (except for the row keys of the compact encoding, which
+     * are rebuilt into a single buffer per BulkWrite).
+     *
+     * @param operationFactory the factory to use when decoding the transaction
+     * @param data the encoded BulkWrites
+     * @return the decoded BulkWrites
+     */
     public static BulkWrites decode(TxnOperationFactory operationFactory,byte[] data){
-        ExpandedDecoder decoder = new ExpandedDecoder(data);
+        boolean compact = data.length>0 && data[0]==COMPACT_VERSION;
+        ExpandedDecoder decoder = new ExpandedDecoder(data,compact?1:0);
         byte[] txnBytes = decoder.rawBytes();
         TxnView txn = operationFactory.decode(txnBytes,0,txnBytes.length);
         int bwSize = decoder.decodeInt();
@@ -97,9 +142,81 @@ public class PipelineEncoding {
             skipIndexWrites[i] = decoder.decodeByte();
         }
 
-        return new BulkWrites(new BulkWriteCol(skipIndexWrites,data,decoder.currentOffset(),stringNames),txn);
+        return new BulkWrites(new BulkWriteCol(skipIndexWrites,data,decoder.currentOffset(),stringNames,compact),txn);
     }
 
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static void encodeMutationsLegacy(ExpandingEncoder buffer,Collection<KVPair> mutations){
+        buffer.encode(mutations.size());
+        for(KVPair kvPair:mutations){
+            buffer.rawEncode(kvPair.getType().asByte());
+            buffer.rawEncode(kvPair.rowKeySlice());
+            buffer.rawEncode(kvPair.valueSlice());
+        }
+    }
+
+    private static void encodeMutations(ExpandingEncoder buffer,Collection<KVPair> mutations){
+        buffer.encode(mutations.size());
+
+        int numRuns = 0;
+        int keyLength = 0;
+        KVPair.Type prevType = null;
+        for(KVPair kvPair:mutations){
+            if(kvPair.getType()!=prevType){
+                numRuns++;
+                prevType = kvPair.getType();
+            }
+            keyLength+=kvPair.rowKeySlice().length();
+        }
+
+        //run-length encode the types, since most BulkWrites are all inserts or all deletes
+        buffer.encode(numRuns);
+        prevType = null;
+        int runLength = 0;
+        for(KVPair kvPair:mutations){
+            if(kvPair.getType()!=prevType){
+                if(prevType!=null){
+                    buffer.rawEncode(prevType.asByte());
+                    buffer.encode(runLength);
+                }
+                prevType = kvPair.getType();
+                runLength = 0;
+            }
+            runLength++;
+        }
+        if(prevType!=null){
+            buffer.rawEncode(prevType.asByte());
+            buffer.encode(runLength);
+        }
+
+        //prefix-compress each row key against its predecessor
+        buffer.encode(keyLength);
+        ByteSlice prevKey = null;
+        for(KVPair kvPair:mutations){
+            ByteSlice key = kvPair.rowKeySlice();
+            int prefix = prevKey==null? 0 : commonPrefix(prevKey,key);
+            buffer.encode(prefix);
+            buffer.rawEncode(key.array(),key.offset()+prefix,key.length()-prefix);
+            prevKey = key;
+        }
+
+        for(KVPair kvPair:mutations){
+            buffer.rawEncode(kvPair.valueSlice());
+        }
+    }
+
+    private static int commonPrefix(ByteSlice left,ByteSlice right){
+        byte[] l = left.array();
+        byte[] r = right.array();
+        int lOff = left.offset();
+        int rOff = right.offset();
+        int max = Math.min(left.length(),right.length());
+        int i=0;
+        while(i<max && l[lOff+i]==r[rOff+i])
+            i++;
+        return i;
+    }
 
     /***********************************************************************************************************/
     /*private helper classes*/
@@ -108,6 +225,7 @@ public class PipelineEncoding {
         private final List<String> encodedStringNames;
         private final byte[] skipIndexWrites;
         private final byte[] buffer;
+        private final boolean compact;
         /*
          * we keep a cache of previously created BulkWrites, so that we can have
          * deterministic iteration (i.e. returning the same objects instead of
@@ -117,11 +235,16 @@ public class PipelineEncoding {
         private transient ExpandedDecoder decoder;
         private transient int lastIndex = 0;
 
-        public BulkWriteCol(byte[] skipIndexWrites, byte[] buffer,int kvOffset, List<String> encodedStringNames) {
+        public BulkWriteCol(byte[] skipIndexWrites,
+                            byte[] buffer,
+                            int kvOffset,
+                            List<String> encodedStringNames,
+                            boolean compact) {
             this.kvOffset = kvOffset;
             this.encodedStringNames = encodedStringNames;
             this.buffer = buffer;
             this.skipIndexWrites = skipIndexWrites;
+            this.compact = compact;
         }
 
         @Override
@@ -145,6 +268,67 @@ public class PipelineEncoding {
 
         @Override public int size() { return encodedStringNames.size(); }
 
+        private Collection<KVPair> decodeLegacy(int size){
+            Collection<KVPair> kvPairs = new ArrayList<>(size);
+            KVPair template = new KVPair();
+            ByteSlice rowKeySlice = template.rowKeySlice();
+            ByteSlice valueSlice = template.valueSlice();
+            for(int i=0;i<size;i++){
+                template.setType(KVPair.Type.decode(decoder.rawByte()));
+                decoder.sliceNext(rowKeySlice);
+                decoder.sliceNext(valueSlice);
+                kvPairs.add(template.shallowClone());
+            }
+            return kvPairs;
+        }
+
+        private Collection<KVPair> decodeCompact(int size){
+            int numRuns = decoder.decodeInt();
+            byte[] runTypes = new byte[numRuns];
+            int[] runLengths = new int[numRuns];
+            for(int i=0;i<numRuns;i++){
+                runTypes[i] = decoder.rawByte();
+                runLengths[i] = decoder.decodeInt();
+            }
+
+            /*
+             * Rebuild all the row keys into a single array, so that we only allocate once regardless
+             * of how many rows there are.
+             */
+            byte[] keys = new byte[decoder.decodeInt()];
+            int[] keyOffsets = new int[size];
+            int[] keyLengths = new int[size];
+            ByteSlice suffix = ByteSlice.empty();
+            int pos = 0;
+            for(int i=0;i<size;i++){
+                int prefix = decoder.decodeInt();
+                decoder.sliceNext(suffix);
+                if(prefix>0)
+                    System.arraycopy(keys,keyOffsets[i-1],keys,pos,prefix);
+                suffix.get(keys,pos+prefix);
+                keyOffsets[i] = pos;
+                keyLengths[i] = prefix+suffix.length();
+                pos+=keyLengths[i];
+            }
+
+            Collection<KVPair> kvPairs = new ArrayList<>(size);
+            int run = 0;
+            int remainingInRun = numRuns>0? runLengths[0] : 0;
+            KVPair.Type type = numRuns>0? KVPair.Type.decode(runTypes[0]) : null;
+            for(int i=0;i<size;i++){
+                if(remainingInRun==0){
+                    run++;
+                    remainingInRun = runLengths[run];
+                    type = KVPair.Type.decode(runTypes[run]);
+                }
+                remainingInRun--;
+                ByteSlice value = ByteSlice.cachedEmpty();
+                decoder.sliceNext(value);
+                kvPairs.add(new KVPair(ByteSlice.cachedWrap(keys,keyOffsets[i],keyLengths[i]),value,type));
+            }
+            return kvPairs;
+        }
+
         private class BulkIter implements Iterator<BulkWrite> {
             final Iterator<String> encodedStrings;
             int index;
@@ -165,17 +349,7 @@ public class PipelineEncoding {
                 String esN = encodedStrings.next();
                 byte skipIndexWrite = skipIndexWrites[index++];
                 int size = decoder.decodeInt();
-                Collection<KVPair> kvPairs = new ArrayList<>(size);
-                KVPair template = new KVPair();
-                ByteSlice rowKeySlice = template.rowKeySlice();
-                ByteSlice valueSlice = template.valueSlice();
-                for(int i=0;i<size;i++){
-                    template.setType(KVPair.Type.decode(decoder.rawByte()));
-                    decoder.sliceNext(rowKeySlice);
-                    decoder.sliceNext(valueSlice);
-                    kvPairs.add(template.shallowClone());
-                }
-
+                Collection<KVPair> kvPairs = compact? decodeCompact(size) : decodeLegacy(size);
 
                 BulkWrite bulkWrite = new BulkWrite(kvPairs, esN, skipIndexWrite);
                 cache.add(bulkWrite);
@@ -34,6 +34,14 @@ public class WriteResult implements Externalizable {
 
     private static final long serialVersionUID = 1l;
 
+    /*
+     * Written in place of the code name when the result carries a retry delay, followed by the delay and then
+     * the original encoding. A delay is only ever set by the adaptive write control, so unless
+     * splice.client.write.adaptiveControl is enabled results are encoded exactly as older releases expect.
+     * It is never a valid Code name.
+     */
+    private static final String RETRY_DELAY_MARKER = "#RETRY_DELAY";
+
     private static final WriteResult NOT_RUN_RESULT = new WriteResult(Code.NOT_RUN);
     private static final WriteResult SUCCESS_RESULT = new WriteResult(Code.SUCCESS);
     private static final WriteResult PARTIAL_RESULT = new WriteResult(Code.PARTIAL);
@@ -46,6 +54,10 @@ public class WriteResult implements Externalizable {
     private Code code;
     private String errorMessage;
     private ConstraintContext constraintContext;
+    /*
+     * How long (in milliseconds) the server suggests waiting before retrying, or 0 if it has no suggestion
+     */
+    private long retryDelay;
 
     public WriteResult() {
     }
@@ -82,6 +94,14 @@ public class WriteResult implements Externalizable {
         return constraintContext;
     }
 
+    /**
+     * @return the number of milliseconds the server suggests waiting before retrying this write, or 0 if
+     * the server made no suggestion
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
     public boolean shouldCancel() {
         return code.shouldCancel();
     }
@@ -110,7 +130,13 @@ public class WriteResult implements Externalizable {
     }
 
     public static WriteResult pipelineTooBusy(String regionNameAsString) {
-        return new WriteResult(Code.PIPELINE_TOO_BUSY, "pipeline for regionserver owning region " + regionNameAsString + " is too busy");
+        return pipelineTooBusy(regionNameAsString,0l);
+    }
+
+    public static WriteResult pipelineTooBusy(String regionNameAsString,long retryDelay) {
+        WriteResult result = new WriteResult(Code.PIPELINE_TOO_BUSY, "pipeline for regionserver owning region " + regionNameAsString + " is too busy");
+        result.retryDelay = retryDelay;
+        return result;
     }
 
     public static WriteResult notRun() {
@@ -170,11 +196,16 @@ public class WriteResult implements Externalizable {
         return "WriteResult{ " +
                 "code=" + code +
                 ", errorMessage=" + errorMessage +
+                (retryDelay>0?", retryDelay=" + retryDelay:"") +
                 " }";
     }
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
+        if (retryDelay > 0) {
+            out.writeUTF(RETRY_DELAY_MARKER);
+            out.writeLong(retryDelay);
+        }
         out.writeUTF(code.name());
         out.writeBoolean(errorMessage != null);
         if (errorMessage != null) {
@@ -188,7 +219,12 @@ public class WriteResult implements Externalizable {
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        code = Code.valueOf(in.readUTF());
+        String codeName = in.readUTF();
+        if (RETRY_DELAY_MARKER.equals(codeName)) {
+            retryDelay = in.readLong();
+            codeName = in.readUTF();
+        }
+        code = Code.valueOf(codeName);
         if (in.readBoolean())
             errorMessage = in.readUTF();
         if (in.readBoolean())
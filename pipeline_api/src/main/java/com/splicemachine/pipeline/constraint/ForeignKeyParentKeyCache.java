@@ -0,0 +1,268 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.constraint;
+
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import org.spark_project.guava.cache.Cache;
+import org.spark_project.guava.cache.CacheBuilder;
+import org.spark_project.guava.cache.RemovalListener;
+import org.spark_project.guava.cache.RemovalNotification;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Region-server wide cache of parent keys which have recently passed a foreign key check.
+ *
+ * Entries are keyed by the FK backing index which performed the check and the parent row key, so that the
+ * parent side can evict them without knowing which conglomerate the child referenced: when a parent row is
+ * deleted, the parent intercept scans every referencing index for the key, and the scan carries
+ * {@link #INVALIDATE_ATTRIBUTE} so that whichever region server hosts that part of the index drops its entry.
+ *
+ * Evicting the entry is not enough on its own, as a child check could re-read the parent row after the eviction
+ * but before the delete has been written. Instead the eviction leaves a fence naming the deleting transaction,
+ * and a key is only cached again by a check which started after that transaction had finished. Fences are held
+ * apart from the verified keys, so they neither expire nor get pushed out by size: a fence is only removed by
+ * the first check which finds its transaction finished (or by a sweep once there are more fences than the cache
+ * holds keys).
+ *
+ * The eviction only reaches the region server which hosts the index region at the time of the delete. A server
+ * keeps its entries when the region moves away, so they are dropped whenever a region of the index opens or
+ * closes on it (see {@link #invalidateAll(long)}); otherwise they would be trusted again if the region came back
+ * within the expiration. The number of verified keys held for each index is tracked, so that this is free for
+ * the indexes which have none.
+ */
+public class ForeignKeyParentKeyCache{
+    /**
+     * Scan attribute holding the deleting transaction id followed by the parent row key.
+     */
+    public static final String INVALIDATE_ATTRIBUTE="fk_parent_key_invalidate";
+
+    private static final Object ABSENT=new Object();
+    private static final Object FENCED=new Object();
+
+    private final Cache<Key,Entry> cache;
+    /*
+     * The transaction deleting each fenced key
+     */
+    private final ConcurrentMap<Key,Long> fences=new ConcurrentHashMap<>();
+    /*
+     * An upper bound on the number of verified keys held for each index conglomerate: the count is raised
+     * before a key is cached, and lowered once it has been removed
+     */
+    private final ConcurrentMap<Long,AtomicLong> verifiedCounts=new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final AtomicBoolean sweeping=new AtomicBoolean(false);
+    private volatile int sweepThreshold;
+
+    public ForeignKeyParentKeyCache(int maxSize,long expirationMillis){
+        this.maxSize=maxSize;
+        this.sweepThreshold=maxSize;
+        if(maxSize<=0)
+            this.cache=null;
+        else
+            this.cache=CacheBuilder.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(expirationMillis,TimeUnit.MILLISECONDS)
+                    .removalListener(new RemovalListener<Key, Entry>(){
+                        @Override
+                        public void onRemoval(RemovalNotification<Key, Entry> notification){
+                            AtomicLong count=verifiedCounts.get(notification.getKey().conglomerateId);
+                            if(count!=null)
+                                count.decrementAndGet();
+                        }
+                    })
+                    .build();
+    }
+
+    public boolean isEnabled(){
+        return cache!=null;
+    }
+
+    /**
+     * @return true if {@code parentKey} passed a check against {@code referencedConglomerateId} made from
+     * {@code indexConglomerateId}, and has not been deleted since.
+     */
+    public boolean isVerified(long indexConglomerateId,long referencedConglomerateId,byte[] parentKey){
+        if(cache==null) return false;
+        Entry e=cache.getIfPresent(new Key(indexConglomerateId,parentKey));
+        return e!=null && e.referencedConglomerateId==referencedConglomerateId;
+    }
+
+    /**
+     * Capture the state of {@code parentKey} before reading it from the parent table. The returned token must
+     * be handed to {@link #verified} once the read has passed.
+     */
+    public Object prepare(long indexConglomerateId,byte[] parentKey,TxnSupplier txnSupplier) throws IOException{
+        if(cache==null) return FENCED;
+        Key key=new Key(indexConglomerateId,parentKey);
+        Long fence=fences.get(key);
+        if(fence!=null){
+            if(!txnSupplier.getTransaction(fence).getEffectiveState().isFinal())
+                return FENCED; //the delete may not be written yet, so what we are about to read can't be trusted
+            fences.remove(key,fence);
+        }
+        if(fences.size()>sweepThreshold)
+            sweepFences(txnSupplier);
+        Entry e=cache.getIfPresent(key);
+        return e==null?ABSENT:e;
+    }
+
+    /**
+     * Remember that {@code parentKey} passed a check, unless it has been invalidated since {@code token} was
+     * taken.
+     */
+    public void verified(long indexConglomerateId,long referencedConglomerateId,byte[] parentKey,Object token){
+        if(cache==null || token==FENCED) return;
+        ConcurrentMap<Key,Entry> map=cache.asMap();
+        Key key=new Key(indexConglomerateId,parentKey);
+        Entry e=new Entry(referencedConglomerateId);
+        AtomicLong count=verifiedCounts.get(indexConglomerateId);
+        if(count==null){
+            AtomicLong other=verifiedCounts.putIfAbsent(indexConglomerateId,count=new AtomicLong());
+            if(other!=null) count=other;
+        }
+        count.incrementAndGet();
+        boolean cached=token==ABSENT?map.putIfAbsent(key,e)==null:map.replace(key,(Entry)token,e);
+        if(!cached){
+            count.decrementAndGet();
+            return;
+        }
+        /*
+         * invalidate() fences the key before it evicts it, so either it evicted what we just cached, or
+         * we see its fence here
+         */
+        if(fences.containsKey(key))
+            map.remove(key,e);
+    }
+
+    /**
+     * Fence off {@code parentKey} for all checks made from {@code indexConglomerateId} until the transaction
+     * deleting it has finished.
+     */
+    public void invalidate(long indexConglomerateId,byte[] parentKey,long txnId){
+        if(cache==null) return;
+        Key key=new Key(indexConglomerateId,parentKey);
+        fences.put(key,txnId);
+        cache.invalidate(key);
+    }
+
+    /**
+     * Drop every key verified from {@code indexConglomerateId}, as this server may miss the invalidations of
+     * any region of that index which it doesn't host. Fences are kept, as the deletes they guard may still be
+     * in flight.
+     */
+    public void invalidateAll(long indexConglomerateId){
+        if(cache==null) return;
+        AtomicLong count=verifiedCounts.get(indexConglomerateId);
+        if(count==null || count.get()<=0) return; //nothing cached for this index
+        ConcurrentMap<Key,Entry> map=cache.asMap();
+        for(Map.Entry<Key,Entry> e:map.entrySet()){
+            if(e.getKey().conglomerateId==indexConglomerateId)
+                map.remove(e.getKey(),e.getValue());
+        }
+    }
+
+    /**
+     * Invalidate using the contents of an {@link #INVALIDATE_ATTRIBUTE} scan attribute.
+     */
+    public void invalidate(long indexConglomerateId,byte[] attribute){
+        if(cache==null || attribute.length<Bytes.SIZEOF_LONG) return;
+        long txnId=Bytes.toLong(attribute,0);
+        byte[] parentKey=Arrays.copyOfRange(attribute,Bytes.SIZEOF_LONG,attribute.length);
+        invalidate(indexConglomerateId,parentKey,txnId);
+    }
+
+    public static byte[] invalidateAttribute(long txnId,byte[] parentKey){
+        byte[] attribute=new byte[Bytes.SIZEOF_LONG+parentKey.length];
+        Bytes.toBytes(txnId,attribute,0);
+        System.arraycopy(parentKey,0,attribute,Bytes.SIZEOF_LONG,parentKey.length);
+        return attribute;
+    }
+
+    int getFenceCount(){
+        return fences.size();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * Drop the fences of finished transactions. Fences are normally removed by the next check of their key, but
+     * a key which is never checked again would keep its fence forever, so once there are more fences than the
+     * cache may hold verified keys, sweep them all.
+     */
+    private void sweepFences(TxnSupplier txnSupplier) throws IOException{
+        if(!sweeping.compareAndSet(false,true)) return;
+        try{
+            Iterator<Map.Entry<Key,Long>> it=fences.entrySet().iterator();
+            while(it.hasNext()){
+                if(txnSupplier.getTransaction(it.next().getValue()).getEffectiveState().isFinal())
+                    it.remove();
+            }
+            //fences of active transactions stay, so don't sweep again until they have grown as much again
+            sweepThreshold=Math.max(maxSize,2*fences.size());
+        }finally{
+            sweeping.set(false);
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper classes*/
+
+    private static final class Key{
+        private final long conglomerateId;
+        private final byte[] parentKey;
+        private final int hashCode;
+
+        Key(long conglomerateId,byte[] parentKey){
+            this.conglomerateId=conglomerateId;
+            this.parentKey=parentKey;
+            this.hashCode=31*Long.valueOf(conglomerateId).hashCode()+Arrays.hashCode(parentKey);
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(this==o) return true;
+            if(!(o instanceof Key)) return false;
+            Key key=(Key)o;
+            return conglomerateId==key.conglomerateId && Bytes.equals(parentKey,key.parentKey);
+        }
+
+        @Override
+        public int hashCode(){
+            return hashCode;
+        }
+    }
+
+    /*
+     * Entries compare by identity, so that a verification only replaces the exact entry it observed.
+     */
+    private static final class Entry{
+        private final long referencedConglomerateId;
+
+        Entry(long referencedConglomerateId){
+            this.referencedConglomerateId=referencedConglomerateId;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.traffic;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A SpliceWriteControl which tunes its limits on the number of in-flight rows according to the write latency
+ * it observes.
+ * <p/>
+ * The configured write counts act as ceilings. Each class of write (dependent and independent) has its own limit,
+ * which is adjusted additively-increase/multiplicatively-decrease:
+ * <ul>
+ *     <li>The control keeps a smoothed average of the write latency <em>per row</em> (so that a large batch is not
+ *     mistaken for a slow server), and a baseline which tracks the lowest recent per-row latency (i.e. the
+ *     latency of a write on an unloaded server).</li>
+ *     <li>When the smoothed latency rises beyond {@link #LATENCY_TOLERANCE} times the baseline, the server is
+ *     queueing work rather than doing it, so the limit is cut by {@link #BACKOFF_RATIO}. To keep a single slow spell
+ *     from collapsing the limit, it is cut at most once per window of in-flight work.</li>
+ *     <li>Otherwise, if the limit is actually being used, it grows by roughly one write per window.</li>
+ * </ul>
+ * Thread limits are applied exactly as in {@link SynchronousWriteControl}, and independent writes which exceed
+ * their own limit may still steal capacity from the dependent limit.
+ * <p/>
+ * When a write is rejected, the smoothed latency of a write is the suggested retry delay, since that is
+ * roughly how long it takes for capacity to free up.
+ * <p/>
+ * Admission takes no lock: the write status is swapped by compare-and-set. Latency samples are folded in by one
+ * thread at a time; a sample which arrives while another is being processed is dropped, which costs the
+ * estimate nothing but keeps writers from queueing on each other.
+ */
+public class AdaptiveSpliceWriteControl implements SpliceWriteControl{
+    private static final Logger LOG=Logger.getLogger(AdaptiveSpliceWriteControl.class);
+
+    /*
+     * The weight of the newest sample in the smoothed latency
+     */
+    static final double SMOOTHING=0.2;
+    /*
+     * The fraction by which the baseline forgets its minimum with each sample, so that a permanently
+     * slower server (e.g. after a compaction storm starts) eventually establishes a new baseline
+     */
+    static final double BASELINE_DRIFT=0.01;
+    static final double LATENCY_TOLERANCE=2.0d;
+    static final double BACKOFF_RATIO=0.8d;
+    /*
+     * The limit never falls below this fraction of the ceiling
+     */
+    static final int FLOOR_DIVISOR=20;
+    static final long MAX_RETRY_DELAY=TimeUnit.SECONDS.toMillis(1);
+
+    private final AtomicReference<WriteStatus> currStatus = new AtomicReference<>(new WriteStatus(0,0,0,0));
+
+    private volatile int maxDependentWriteThreads;
+    private volatile int maxIndependentWriteThreads;
+    private final Limit dependentLimit;
+    private final Limit independentLimit;
+
+    public AdaptiveSpliceWriteControl(int maxDependentWriteThreads,
+                                      int maxIndependentWriteThreads,int maxDependentWriteCount,int maxIndependentWriteCount) {
+        assert (maxDependentWriteThreads >= 0 &&
+                maxIndependentWriteThreads >= 0 &&
+                maxDependentWriteCount >= 0 &&
+                maxIndependentWriteCount >= 0);
+        this.maxIndependentWriteThreads = maxIndependentWriteThreads;
+        this.maxDependentWriteThreads = maxDependentWriteThreads;
+        this.dependentLimit = new Limit(maxDependentWriteCount);
+        this.independentLimit = new Limit(maxIndependentWriteCount);
+    }
+
+    @Override
+    public Status performDependentWrite(int writes){
+        while(true){
+            WriteStatus ws = currStatus.get();
+            if(ws.dependentWriteThreads>maxDependentWriteThreads ||
+                    ws.dependentWriteCount>dependentLimit.current()){
+                if(LOG.isTraceEnabled())
+                    LOG.trace(String.format("Rejected dependent write: status=%s, limit=%d, requestedWriteCount=%d",
+                            ws,dependentLimit.current(),writes));
+                return Status.REJECTED;
+            }
+            if(currStatus.compareAndSet(ws,WriteStatus.incrementDependentWriteStatus(ws,writes)))
+                return Status.DEPENDENT;
+        }
+    }
+
+    @Override
+    public boolean finishDependentWrite(int writes){
+        while(true){
+            WriteStatus ws = currStatus.get();
+            if(currStatus.compareAndSet(ws,WriteStatus.decrementDependentWriteStatus(ws,writes)))
+                return true;
+        }
+    }
+
+    @Override
+    public Status performIndependentWrite(int writes){
+        while(true){
+            WriteStatus ws = currStatus.get();
+            if(ws.independentWriteThreads>maxIndependentWriteThreads
+                    ||ws.independentWriteCount>independentLimit.current()){
+                return performDependentWrite(writes); // Attempt to steal
+            }
+            if(currStatus.compareAndSet(ws,WriteStatus.incrementIndependentWriteStatus(ws,writes)))
+                return Status.INDEPENDENT;
+        }
+    }
+
+    @Override
+    public boolean finishIndependentWrite(int writes){
+        while(true){
+            WriteStatus ws = currStatus.get();
+            if(currStatus.compareAndSet(ws,WriteStatus.decrementIndependentWriteStatus(ws,writes)))
+                return true;
+        }
+    }
+
+    @Override
+    public void recordWriteLatency(Status status,int writes,long latencyNanos){
+        WriteStatus ws = currStatus.get();
+        switch(status){
+            case DEPENDENT:
+                dependentLimit.sample(latencyNanos,writes,ws.dependentWriteCount+writes);
+                break;
+            case INDEPENDENT:
+                independentLimit.sample(latencyNanos,writes,ws.independentWriteCount+writes);
+                break;
+            default:
+                //rejected writes were never performed, so there is nothing to learn from them
+        }
+    }
+
+    @Override
+    public long getRetryDelay(boolean dependent){
+        //independent writes which are rejected were rejected by the dependent limit as well
+        return dependentLimit.retryDelay();
+    }
+
+    @Override
+    public WriteStatus getWriteStatus(){
+        return currStatus.get();
+    }
+
+    @Override
+    public int maxDependendentWriteThreads(){
+        return maxDependentWriteThreads;
+    }
+
+    @Override
+    public int maxIndependentWriteThreads(){
+        return maxIndependentWriteThreads;
+    }
+
+    @Override
+    public int maxDependentWriteCount(){
+        return dependentLimit.ceiling;
+    }
+
+    @Override
+    public int maxIndependentWriteCount(){
+        return independentLimit.ceiling;
+    }
+
+    /**
+     * @return the number of in-flight dependent rows currently permitted
+     */
+    public int currentDependentWriteLimit(){
+        return dependentLimit.current();
+    }
+
+    /**
+     * @return the number of in-flight independent rows currently permitted
+     */
+    public int currentIndependentWriteLimit(){
+        return independentLimit.current();
+    }
+
+    @Override
+    public void setMaxIndependentWriteThreads(int newMaxIndependentWriteThreads){
+        this.maxIndependentWriteThreads = newMaxIndependentWriteThreads;
+    }
+
+    @Override
+    public void setMaxDependentWriteThreads(int newMaxDependentWriteThreads){
+        this.maxDependentWriteThreads = newMaxDependentWriteThreads;
+    }
+
+    @Override
+    public void setMaxIndependentWriteCount(int newMaxIndependentWriteCount){
+        independentLimit.ceiling = newMaxIndependentWriteCount;
+    }
+
+    @Override
+    public void setMaxDependentWriteCount(int newMaxDependentWriteCount){
+        dependentLimit.ceiling = newMaxDependentWriteCount;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper classes*/
+
+    /*
+     * The adaptive limit for one class of writes. The estimates are only touched by the thread which holds
+     * the sampling flag; everything else reads the published limit and retry delay.
+     */
+    private static final class Limit{
+        private final AtomicBoolean sampling=new AtomicBoolean(false);
+        private volatile int ceiling;
+        private volatile double limit;
+        private volatile long retryDelay;
+
+        private double smoothedLatency=-1d;
+        private double smoothedRowLatency=-1d;
+        private double baselineRowLatency=Double.MAX_VALUE;
+        private long rowsSinceDecrease;
+
+        Limit(int ceiling){
+            this.ceiling=ceiling;
+            this.limit=ceiling;
+        }
+
+        int current(){
+            int c=ceiling;
+            return (int)Math.max(floor(c),Math.min(limit,c));
+        }
+
+        void sample(long latencyNanos,int writes,int inFlight){
+            if(!sampling.compareAndSet(false,true)) return;
+            try{
+                double rowLatency=(double)latencyNanos/Math.max(1,writes);
+                if(smoothedLatency<0){
+                    smoothedLatency=latencyNanos;
+                    smoothedRowLatency=rowLatency;
+                }else{
+                    smoothedLatency+=SMOOTHING*(latencyNanos-smoothedLatency);
+                    smoothedRowLatency+=SMOOTHING*(rowLatency-smoothedRowLatency);
+                }
+                baselineRowLatency=Math.min(baselineRowLatency*(1+BASELINE_DRIFT),rowLatency);
+                rowsSinceDecrease+=writes;
+
+                int c=ceiling;
+                double l=Math.min(limit,c);
+                if(smoothedRowLatency>LATENCY_TOLERANCE*baselineRowLatency){
+                    if(rowsSinceDecrease>=l){
+                        l=Math.max(floor(c),l*BACKOFF_RATIO);
+                        rowsSinceDecrease=0;
+                        if(LOG.isDebugEnabled())
+                            LOG.debug(String.format("Write latency %.0fns/row exceeds baseline %.0fns/row, reducing limit to %d",
+                                    smoothedRowLatency,baselineRowLatency,(int)l));
+                    }
+                }else if(inFlight>=l/2){
+                    //grow by about one write's worth of rows per window of in-flight work
+                    l=Math.min(c,l+Math.max(1d,(double)writes*writes/l));
+                }
+                limit=l;
+                retryDelay=Math.max(1l,Math.min(MAX_RETRY_DELAY,TimeUnit.NANOSECONDS.toMillis((long)smoothedLatency)));
+            }finally{
+                sampling.set(false);
+            }
+        }
+
+        long retryDelay(){
+            return retryDelay;
+        }
+
+        private static int floor(int ceiling){
+            return Math.max(1,ceiling/FLOOR_DIVISOR);
+        }
+    }
+}
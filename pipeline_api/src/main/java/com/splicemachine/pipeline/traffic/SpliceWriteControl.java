@@ -32,6 +32,22 @@ public interface SpliceWriteControl{
 
     boolean finishIndependentWrite(int writes);
 
+    /**
+     * Record how long a write which was admitted with the specified status took to perform.
+     *
+     * @param status the status returned when the write was admitted
+     * @param writes the number of rows in the write
+     * @param latencyNanos the time taken to perform the write
+     */
+    void recordWriteLatency(Status status,int writes,long latencyNanos);
+
+    /**
+     * @param dependent whether the rejected write was dependent or independent
+     * @return the number of milliseconds a writer should wait before retrying a rejected write, or 0 if
+     * this control has no opinion (in which case the writer should fall back to its own backoff)
+     */
+    long getRetryDelay(boolean dependent);
+
     WriteStatus getWriteStatus();
 
     int maxDependendentWriteThreads();
@@ -87,6 +87,16 @@ public class SynchronousWriteControl implements SpliceWriteControl{
         }
     }
 
+    @Override
+    public void recordWriteLatency(Status status,int writes,long latencyNanos){
+        //fixed limits do not depend on latency
+    }
+
+    @Override
+    public long getRetryDelay(boolean dependent){
+        return 0l;
+    }
+
     @Override
     public WriteStatus getWriteStatus(){
         return currStatus;
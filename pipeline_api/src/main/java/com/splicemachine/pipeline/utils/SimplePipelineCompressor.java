@@ -35,10 +35,20 @@ import java.io.OutputStream;
 public class SimplePipelineCompressor implements PipelineCompressor{
     private final TxnOperationFactory txnOperationFactory;
     private final KryoPool kp;
+    private final boolean compactEncoding;
 
     public SimplePipelineCompressor(KryoPool kp,TxnOperationFactory txnOperationFactory){
+        this(kp,txnOperationFactory,false);
+    }
+
+    /**
+     * @param compactEncoding whether to send BulkWrites in the compact encoding. BulkWrites are received in
+     *                        either encoding regardless.
+     */
+    public SimplePipelineCompressor(KryoPool kp,TxnOperationFactory txnOperationFactory,boolean compactEncoding){
         this.txnOperationFactory = txnOperationFactory;
         this.kp = kp;
+        this.compactEncoding = compactEncoding;
     }
 
     @Override
@@ -55,7 +65,7 @@ public class SimplePipelineCompressor implements PipelineCompressor{
     public byte[] compress(Object o) throws IOException{
         if(o instanceof BulkWrites){
             BulkWrites bw = (BulkWrites)o;
-            return PipelineEncoding.encode(txnOperationFactory,bw);
+            return PipelineEncoding.encode(txnOperationFactory,bw,compactEncoding);
         }else {
             Output out = new Output(128,-1);
             Kryo kryo = kp.get();
@@ -1,83 +1,169 @@
-//package com.splicemachine.pipeline.client;
-//
-//import com.splicemachine.kvpair.KVPair;
-//import com.splicemachine.primitives.Bytes;
-//import com.splicemachine.si.api.txn.TxnView;
-//import com.splicemachine.si.impl.txn.ActiveWriteTxn;
-//import org.junit.Assert;
-//import org.junit.Test;
-//
-//import java.util.ArrayList;
-//import java.util.Arrays;
-//import java.util.Collection;
-//import java.util.Iterator;
-//
-//TODO -sf- move this to hbase_pipeline
-//public class PipelineEncodingTest {
-//
-//    @Test
-//    public void testCanEncodeAndDecodeASingleBulkWrite() throws Exception {
-//        TxnView txnView = new ActiveWriteTxn(1l,1l);
-//
-//        Collection<BulkWrite> bws = generateBulkWrites(1);
-//        BulkWrites toEncode = new BulkWrites(bws,txnView);
-//
-//        byte[] bytes = PipelineEncoding.encode(toEncode);
-//        BulkWrites decoded = PipelineEncoding.decode(bytes);
-//        assertMatches("Incorrect BulkWrites",toEncode,decoded);
-//    }
-//
-//    @Test
-//    public void testCanEncodeAndDecodeMultipleBulkWrites() throws Exception {
-//        TxnView txnView = new ActiveWriteTxn(1l,1l);
-//
-//        Collection<BulkWrite> bws = generateBulkWrites(10);
-//        BulkWrites toEncode = new BulkWrites(bws,txnView);
-//
-//        byte[] bytes = PipelineEncoding.encode(toEncode);
-//        BulkWrites decoded = PipelineEncoding.decode(bytes);
-//        assertMatches("Incorrect BulkWrites",toEncode,decoded);
-//    }
-//
-//    private void assertMatches(String errorMsgPrefix, BulkWrites correct, BulkWrites actual) {
-//        Assert.assertEquals(errorMsgPrefix+": transaction ids don't match!",correct.getTxn().getTxnId(),actual.getTxn().getTxnId());
-//        Assert.assertEquals(errorMsgPrefix+": transaction write permission doesn't match!",correct.getTxn().allowsWrites(),actual.getTxn().allowsWrites());
-//        Collection<BulkWrite> correctBws = correct.getBulkWrites();
-//        Collection<BulkWrite> actualBws = actual.getBulkWrites();
-//        Assert.assertEquals(errorMsgPrefix+": bulk write size does not match!",correctBws.size(),actualBws.size());
-//        Iterator<BulkWrite> correctIter = correctBws.iterator();
-//        Iterator<BulkWrite> actualIter = actualBws.iterator();
-//        int pos =0;
-//        while(correctIter.hasNext()){
-//            BulkWrite cbw = correctIter.next();
-//            BulkWrite abw = actualIter.next();
-//            Assert.assertEquals(errorMsgPrefix+": Incorrect encodedStringName at pos "+ pos,cbw.getEncodedStringName(),abw.getEncodedStringName());
-//
-//            Collection<KVPair> cKvs = cbw.getMutations();
-//            Collection<KVPair> aKvs = abw.getMutations();
-//            Assert.assertEquals(errorMsgPrefix+": Incorrect kvPair size at pos "+ pos,cKvs.size(),aKvs.size());
-//            Iterator<KVPair> cKvIter = cKvs.iterator();
-//            Iterator<KVPair> aKvIter = aKvs.iterator();
-//            while(cKvIter.hasNext()){
-//                KVPair cKv = cKvIter.next();
-//                KVPair aKv = aKvIter.next();
-//                Assert.assertEquals(errorMsgPrefix+": KVPair row not correct",cKv.rowKeySlice(),aKv.rowKeySlice());
-//                Assert.assertEquals(errorMsgPrefix+": KVPair value not correct",cKv.valueSlice(),aKv.valueSlice());
-//                Assert.assertEquals(errorMsgPrefix+": KVPair type not correct",cKv.getType(),aKv.getType());
-//            }
-//        }
-//    }
-//
-//    private Collection<BulkWrite> generateBulkWrites(int size) {
-//        Collection<BulkWrite> bws = new ArrayList<>(size);
-//        for(int i=0;i<size;i++){
-//            Collection<KVPair> kvPairs = new ArrayList<>(Arrays.asList(
-//                new KVPair(Bytes.toBytes(i), Bytes.toBytes(i + 2),KVPair.Type.INSERT),
-//                new KVPair(Bytes.toBytes(i+1), Bytes.toBytes(Integer.toString(2*i)),KVPair.Type.DELETE),
-//                    new KVPair(Bytes.toBytes(i+2), Bytes.toBytes(i/.2f),KVPair.Type.UPDATE)
-//            ));
-//            bws.add(new BulkWrite(kvPairs,Integer.toString(i)));
-//        }
-//        return bws;
-//    }
-//}
\ No newline at end of file
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.client;
+
+import com.splicemachine.encoding.ExpandingEncoder;
+import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.data.TxnOperationFactory;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.txn.ActiveWriteTxn;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Category(ArchitectureIndependent.class)
+public class PipelineEncodingTest {
+    private static final byte[] TXN_BYTES = new byte[]{0x01,0x02,0x03};
+
+    private TxnView txn;
+    private TxnOperationFactory operationFactory;
+
+    @Before
+    public void setUp() throws Exception{
+        txn = new ActiveWriteTxn(1l,1l,Txn.ROOT_TRANSACTION,true,Txn.IsolationLevel.SNAPSHOT_ISOLATION);
+        operationFactory = mock(TxnOperationFactory.class);
+        when(operationFactory.encode(any(TxnView.class))).thenReturn(TXN_BYTES);
+        when(operationFactory.decode(any(byte[].class),anyInt(),anyInt())).thenReturn(txn);
+    }
+
+    @Test
+    public void testCanEncodeAndDecodeASingleBulkWrite() throws Exception {
+        BulkWrites toEncode = new BulkWrites(generateBulkWrites(1),txn);
+
+        assertRoundTrip(toEncode);
+    }
+
+    @Test
+    public void testCanEncodeAndDecodeMultipleBulkWrites() throws Exception {
+        BulkWrites toEncode = new BulkWrites(generateBulkWrites(10),txn);
+
+        assertRoundTrip(toEncode);
+    }
+
+    @Test
+    public void testCanEncodeAndDecodeEmptyBulkWrite() throws Exception {
+        Collection<BulkWrite> bws = Collections.singletonList(new BulkWrite(new ArrayList<KVPair>(),"empty"));
+        BulkWrites toEncode = new BulkWrites(bws,txn);
+
+        assertRoundTrip(toEncode);
+    }
+
+    @Test
+    public void testSharedPrefixesAreCompressed() throws Exception {
+        Collection<KVPair> kvPairs = new ArrayList<>();
+        byte[] prefix = new byte[64];
+        Arrays.fill(prefix,(byte)0x7F);
+        for(int i=0;i<100;i++){
+            kvPairs.add(new KVPair(Bytes.concat(Arrays.asList(prefix,Bytes.toBytes(i))),new byte[0],KVPair.Type.INSERT));
+        }
+        BulkWrites toEncode = new BulkWrites(Collections.singletonList(new BulkWrite(kvPairs,"index")),txn);
+
+        byte[] bytes = PipelineEncoding.encode(operationFactory,toEncode,true);
+        Assert.assertTrue("Row keys were not prefix compressed: "+bytes.length,bytes.length<100*(prefix.length+4)/4);
+        assertMatches("Incorrect BulkWrites",toEncode,PipelineEncoding.decode(operationFactory,bytes));
+    }
+
+    @Test
+    public void testCanDecodeUnversionedEncoding() throws Exception {
+        BulkWrites toEncode = new BulkWrites(generateBulkWrites(3),txn);
+
+        ExpandingEncoder buffer = new ExpandingEncoder(128);
+        buffer.rawEncode(TXN_BYTES);
+        buffer.encode(toEncode.getBulkWrites().size());
+        for(BulkWrite bw:toEncode.getBulkWrites()){
+            buffer.encode(bw.getEncodedStringName());
+        }
+        for(BulkWrite bw:toEncode.getBulkWrites()){
+            buffer.encode(bw.getSkipIndexWrite());
+        }
+        for(BulkWrite bw:toEncode.getBulkWrites()){
+            buffer.encode(bw.getSize());
+            for(KVPair kvPair:bw.getMutations()){
+                buffer.rawEncode(kvPair.getType().asByte());
+                buffer.rawEncode(kvPair.rowKeySlice());
+                buffer.rawEncode(kvPair.valueSlice());
+            }
+        }
+
+        assertMatches("Incorrect BulkWrites",toEncode,PipelineEncoding.decode(operationFactory,buffer.getBuffer()));
+        //older servers can only decode this encoding, so it must remain the default
+        Assert.assertArrayEquals("Default encoding has changed!",buffer.getBuffer(),PipelineEncoding.encode(operationFactory,toEncode));
+    }
+
+    private void assertRoundTrip(BulkWrites toEncode){
+        assertMatches("Incorrect BulkWrites",toEncode,PipelineEncoding.decode(operationFactory,PipelineEncoding.encode(operationFactory,toEncode,false)));
+        assertMatches("Incorrect compact BulkWrites",toEncode,PipelineEncoding.decode(operationFactory,PipelineEncoding.encode(operationFactory,toEncode,true)));
+    }
+
+    private void assertMatches(String errorMsgPrefix, BulkWrites correct, BulkWrites actual) {
+        Assert.assertSame(errorMsgPrefix+": transaction doesn't match!",correct.getTxn(),actual.getTxn());
+        Collection<BulkWrite> correctBws = correct.getBulkWrites();
+        Collection<BulkWrite> actualBws = actual.getBulkWrites();
+        Assert.assertEquals(errorMsgPrefix+": bulk write size does not match!",correctBws.size(),actualBws.size());
+        Iterator<BulkWrite> correctIter = correctBws.iterator();
+        Iterator<BulkWrite> actualIter = actualBws.iterator();
+        int pos =0;
+        while(correctIter.hasNext()){
+            BulkWrite cbw = correctIter.next();
+            BulkWrite abw = actualIter.next();
+            Assert.assertEquals(errorMsgPrefix+": Incorrect encodedStringName at pos "+ pos,cbw.getEncodedStringName(),abw.getEncodedStringName());
+            Assert.assertEquals(errorMsgPrefix+": Incorrect skipIndexWrite at pos "+ pos,cbw.getSkipIndexWrite(),abw.getSkipIndexWrite());
+
+            Collection<KVPair> cKvs = cbw.getMutations();
+            Collection<KVPair> aKvs = abw.getMutations();
+            Assert.assertEquals(errorMsgPrefix+": Incorrect kvPair size at pos "+ pos,cKvs.size(),aKvs.size());
+            Iterator<KVPair> cKvIter = cKvs.iterator();
+            Iterator<KVPair> aKvIter = aKvs.iterator();
+            while(cKvIter.hasNext()){
+                KVPair cKv = cKvIter.next();
+                KVPair aKv = aKvIter.next();
+                Assert.assertArrayEquals(errorMsgPrefix+": KVPair row not correct",cKv.getRowKey(),aKv.getRowKey());
+                Assert.assertArrayEquals(errorMsgPrefix+": KVPair value not correct",cKv.getValue(),aKv.getValue());
+                Assert.assertEquals(errorMsgPrefix+": KVPair type not correct",cKv.getType(),aKv.getType());
+            }
+            pos++;
+        }
+    }
+
+    private Collection<BulkWrite> generateBulkWrites(int size) {
+        Collection<BulkWrite> bws = new ArrayList<>(size);
+        for(int i=0;i<size;i++){
+            Collection<KVPair> kvPairs = new ArrayList<>(Arrays.asList(
+                    new KVPair(Bytes.toBytes(i), Bytes.toBytes(i + 2),KVPair.Type.INSERT),
+                    new KVPair(Bytes.toBytes(i+1), Bytes.toBytes(Integer.toString(2*i)),KVPair.Type.DELETE),
+                    new KVPair(Bytes.toBytes(i+2), Bytes.toBytes(i/.2f),KVPair.Type.UPDATE),
+                    new KVPair(Bytes.toBytes(i+3), Bytes.toBytes(i/.2f),KVPair.Type.UPDATE)
+            ));
+            bws.add(new BulkWrite(kvPairs,Integer.toString(i),(byte)(i%2)));
+        }
+        return bws;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.client;
+
+import com.splicemachine.pipeline.api.Code;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+@Category(ArchitectureIndependent.class)
+public class WriteResultTest {
+
+    @Test
+    public void testResultWithoutRetryDelayUsesTheOriginalEncoding() throws Exception {
+        WriteResult result = WriteResult.pipelineTooBusy("region");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(expected)) {
+            //the encoding of releases which predate the retry delay
+            out.writeUTF(Code.PIPELINE_TOO_BUSY.name());
+            out.writeBoolean(true);
+            out.writeUTF(result.getErrorMessage());
+            out.writeBoolean(false);
+        }
+        Assert.assertArrayEquals("Encoding changed without a retry delay!", expected.toByteArray(), encode(result));
+
+        WriteResult decoded = decode(encode(result));
+        Assert.assertEquals("Incorrect code!", Code.PIPELINE_TOO_BUSY, decoded.getCode());
+        Assert.assertEquals("Incorrect error message!", result.getErrorMessage(), decoded.getErrorMessage());
+        Assert.assertEquals("Incorrect retry delay!", 0l, decoded.getRetryDelay());
+    }
+
+    @Test
+    public void testRetryDelayRoundTrips() throws Exception {
+        WriteResult result = WriteResult.pipelineTooBusy("region", 250l);
+        WriteResult decoded = decode(encode(result));
+        Assert.assertEquals("Incorrect code!", Code.PIPELINE_TOO_BUSY, decoded.getCode());
+        Assert.assertEquals("Incorrect error message!", result.getErrorMessage(), decoded.getErrorMessage());
+        Assert.assertEquals("Incorrect retry delay!", 250l, decoded.getRetryDelay());
+    }
+
+    private static byte[] encode(WriteResult result) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            result.writeExternal(out);
+        }
+        return baos.toByteArray();
+    }
+
+    private static WriteResult decode(byte[] bytes) throws Exception {
+        WriteResult result = new WriteResult();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            result.readExternal(in);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.constraint;
+
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Category(ArchitectureIndependent.class)
+public class ForeignKeyParentKeyCacheTest {
+
+    private static final long INDEX = 1L;
+    private static final long PARENT = 2L;
+
+    @Test
+    public void verifiedKeysCompareByValue() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(10, 60000L);
+        TxnSupplier supplier = supplier(Txn.State.ACTIVE);
+
+        cache.verified(INDEX, PARENT, new byte[]{1, 2}, cache.prepare(INDEX, new byte[]{1, 2}, supplier));
+
+        assertTrue(cache.isVerified(INDEX, PARENT, new byte[]{1, 2}));
+        assertFalse(cache.isVerified(INDEX, PARENT, new byte[]{1, 3}));
+        assertFalse(cache.isVerified(INDEX, PARENT + 1, new byte[]{1, 2}));
+        assertFalse(cache.isVerified(INDEX + 1, PARENT, new byte[]{1, 2}));
+    }
+
+    @Test
+    public void invalidateWhileDeleteIsActiveBlocksCaching() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(10, 60000L);
+        byte[] key = {1, 2};
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, supplier(Txn.State.ACTIVE)));
+
+        cache.invalidate(INDEX, ForeignKeyParentKeyCache.invalidateAttribute(100L, key));
+        assertFalse(cache.isVerified(INDEX, PARENT, key));
+
+        // the delete has not finished, so a read made now can't be cached
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, supplier(Txn.State.ACTIVE)));
+        assertFalse(cache.isVerified(INDEX, PARENT, key));
+
+        // once it has, a fresh read can be
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, supplier(Txn.State.ROLLEDBACK)));
+        assertTrue(cache.isVerified(INDEX, PARENT, key));
+    }
+
+    @Test
+    public void invalidateDuringReadWins() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(10, 60000L);
+        byte[] key = {1, 2};
+        Object token = cache.prepare(INDEX, key, supplier(Txn.State.ACTIVE));
+
+        cache.invalidate(INDEX, key, 100L);
+        cache.verified(INDEX, PARENT, key, token);
+
+        assertFalse(cache.isVerified(INDEX, PARENT, key));
+    }
+
+    @Test
+    public void fencesAreNotEvictedBySize() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(1, 60000L);
+        TxnSupplier active = supplier(Txn.State.ACTIVE);
+        byte[] key = {1, 2};
+        cache.invalidate(INDEX, key, 100L);
+
+        for (byte b = 10; b < 50; b++) {
+            byte[] other = {b};
+            cache.verified(INDEX, PARENT, other, cache.prepare(INDEX, other, active));
+        }
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, active));
+
+        assertFalse(cache.isVerified(INDEX, PARENT, key));
+    }
+
+    @Test
+    public void fencesDoNotExpire() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(10, 1L);
+        byte[] key = {1, 2};
+        cache.invalidate(INDEX, key, 100L);
+        Thread.sleep(10L);
+
+        // the verified keys have long expired, but the delete is still running
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, supplier(Txn.State.ACTIVE)));
+        assertFalse(cache.isVerified(INDEX, PARENT, key));
+        assertEquals(1, cache.getFenceCount());
+    }
+
+    @Test
+    public void finishedFencesAreRemovedWhenChecked() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(10, 60000L);
+        byte[] key = {1, 2};
+        cache.invalidate(INDEX, key, 100L);
+
+        cache.prepare(INDEX, key, supplier(Txn.State.ACTIVE));
+        assertEquals(1, cache.getFenceCount());
+
+        cache.prepare(INDEX, key, supplier(Txn.State.COMMITTED));
+        assertEquals(0, cache.getFenceCount());
+    }
+
+    @Test
+    public void finishedFencesAreSweptOnceTheyOutnumberTheCache() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(2, 60000L);
+        for (byte b = 0; b < 3; b++) {
+            cache.invalidate(INDEX, new byte[]{b}, 100L);
+        }
+        cache.prepare(INDEX, new byte[]{10}, supplier(Txn.State.ACTIVE));
+        assertEquals("Fences of active transactions must stay", 3, cache.getFenceCount());
+
+        cache.invalidate(INDEX, new byte[]{3}, 100L);
+        cache.invalidate(INDEX, new byte[]{4}, 100L);
+        cache.invalidate(INDEX, new byte[]{5}, 100L);
+        cache.invalidate(INDEX, new byte[]{6}, 100L);
+        cache.prepare(INDEX, new byte[]{10}, supplier(Txn.State.COMMITTED));
+        assertEquals(0, cache.getFenceCount());
+    }
+
+    @Test
+    public void invalidateAllDropsVerifiedKeysOfIndexOnly() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(10, 60000L);
+        TxnSupplier active = supplier(Txn.State.ACTIVE);
+        byte[] key = {1, 2};
+        byte[] deleted = {1, 3};
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, active));
+        cache.verified(INDEX + 1, PARENT, key, cache.prepare(INDEX + 1, key, active));
+        cache.invalidate(INDEX, deleted, 100L);
+
+        // a region of the index opened or closed on this server
+        cache.invalidateAll(INDEX);
+
+        assertFalse(cache.isVerified(INDEX, PARENT, key));
+        assertTrue(cache.isVerified(INDEX + 1, PARENT, key));
+
+        // the fence of the delete still in flight survives
+        cache.verified(INDEX, PARENT, deleted, cache.prepare(INDEX, deleted, active));
+        assertFalse(cache.isVerified(INDEX, PARENT, deleted));
+
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, active));
+        assertTrue(cache.isVerified(INDEX, PARENT, key));
+    }
+
+    @Test
+    public void disabledCacheNeverVerifies() throws Exception {
+        ForeignKeyParentKeyCache cache = new ForeignKeyParentKeyCache(0, 60000L);
+        byte[] key = {1, 2};
+        cache.verified(INDEX, PARENT, key, cache.prepare(INDEX, key, supplier(Txn.State.ACTIVE)));
+
+        assertFalse(cache.isEnabled());
+        assertFalse(cache.isVerified(INDEX, PARENT, key));
+    }
+
+    private static TxnSupplier supplier(Txn.State state) throws Exception {
+        TxnView txn = mock(TxnView.class);
+        when(txn.getEffectiveState()).thenReturn(state);
+        TxnSupplier supplier = mock(TxnSupplier.class);
+        when(supplier.getTransaction(100L)).thenReturn(txn);
+        return supplier;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.pipeline.traffic;
+
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(ArchitectureIndependent.class)
+public class AdaptiveSpliceWriteControlTest{
+    private static final long FAST=TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW=TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void rejectsWritesOverTheLimit() throws Exception{
+        SpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(10,10,100,100);
+
+        assertEquals("Incorrect status!",SpliceWriteControl.Status.DEPENDENT,writeControl.performDependentWrite(150));
+        assertEquals("Incorrect status!",SpliceWriteControl.Status.REJECTED,writeControl.performDependentWrite(10));
+        writeControl.finishDependentWrite(150);
+        assertEquals("Incorrect status!",SpliceWriteControl.Status.DEPENDENT,writeControl.performDependentWrite(10));
+    }
+
+    @Test
+    public void independentWritesStealFromDependentLimit() throws Exception{
+        SpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(10,10,100,100);
+
+        assertEquals("Incorrect status!",SpliceWriteControl.Status.INDEPENDENT,writeControl.performIndependentWrite(150));
+        assertEquals("Incorrect status!",SpliceWriteControl.Status.DEPENDENT,writeControl.performIndependentWrite(150));
+        assertEquals("Incorrect status!",SpliceWriteControl.Status.REJECTED,writeControl.performIndependentWrite(10));
+    }
+
+    @Test
+    public void limitShrinksWhenLatencyRises() throws Exception{
+        AdaptiveSpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(10,10,1000,1000);
+        for(int i=0;i<10;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,100,FAST);
+        }
+        assertEquals("Incorrect limit with steady latency!",1000,writeControl.currentDependentWriteLimit());
+
+        for(int i=0;i<50;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,100,SLOW);
+        }
+        int limit = writeControl.currentDependentWriteLimit();
+        assertTrue("Limit did not shrink: "+limit,limit<1000);
+        assertTrue("Limit fell below the floor: "+limit,limit>=1000/AdaptiveSpliceWriteControl.FLOOR_DIVISOR);
+        assertEquals("Independent limit should not be affected!",1000,writeControl.currentIndependentWriteLimit());
+        assertEquals("Incorrect configured maximum!",1000,writeControl.maxDependentWriteCount());
+    }
+
+    @Test
+    public void largerBatchesAreNotMistakenForSlowWrites() throws Exception{
+        AdaptiveSpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(10,10,1000,1000);
+        for(int i=0;i<10;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,10,FAST);
+        }
+        //ten times the rows in ten times the time is the same per-row latency
+        for(int i=0;i<50;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,100,SLOW);
+        }
+        assertEquals("Limit should not shrink!",1000,writeControl.currentDependentWriteLimit());
+    }
+
+    @Test
+    public void concurrentWritesBalance() throws Exception{
+        final SpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(1000,1000,1000000,1000000);
+        int threads=8;
+        ExecutorService executor=Executors.newFixedThreadPool(threads);
+        try{
+            final CountDownLatch start=new CountDownLatch(1);
+            List<Future<Void>> futures=new ArrayList<>(threads);
+            for(int i=0;i<threads;i++){
+                futures.add(executor.submit(new Callable<Void>(){
+                    @Override
+                    public Void call() throws Exception{
+                        start.await();
+                        for(int n=0;n<10000;n++){
+                            SpliceWriteControl.Status status=writeControl.performIndependentWrite(10);
+                            writeControl.recordWriteLatency(status,10,FAST);
+                            if(status==SpliceWriteControl.Status.INDEPENDENT)
+                                writeControl.finishIndependentWrite(10);
+                            else if(status==SpliceWriteControl.Status.DEPENDENT)
+                                writeControl.finishDependentWrite(10);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for(Future<Void> future:futures){
+                future.get();
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+        WriteStatus status=writeControl.getWriteStatus();
+        assertEquals("Dependent writes left over!",0,status.dependentWriteCount);
+        assertEquals("Independent writes left over!",0,status.independentWriteCount);
+        assertEquals("Dependent threads left over!",0,status.dependentWriteThreads);
+        assertEquals("Independent threads left over!",0,status.independentWriteThreads);
+    }
+
+    @Test
+    public void limitRecoversWhenLatencyFalls() throws Exception{
+        AdaptiveSpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(10,10,1000,1000);
+        for(int i=0;i<10;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,100,FAST);
+        }
+        for(int i=0;i<50;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,100,SLOW);
+        }
+        assertTrue("Limit did not shrink!",writeControl.currentDependentWriteLimit()<1000);
+
+        //the limit only grows when it is actually being used
+        assertEquals("Incorrect status!",SpliceWriteControl.Status.DEPENDENT,writeControl.performDependentWrite(600));
+        for(int i=0;i<50;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,600,FAST);
+        }
+        assertEquals("Limit did not recover!",1000,writeControl.currentDependentWriteLimit());
+    }
+
+    @Test
+    public void reportsRetryDelay() throws Exception{
+        AdaptiveSpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(10,10,1000,1000);
+        assertEquals("Incorrect delay without samples!",0l,writeControl.getRetryDelay(true));
+
+        for(int i=0;i<20;i++){
+            writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,100,SLOW);
+        }
+        assertEquals("Incorrect delay!",10l,writeControl.getRetryDelay(true));
+
+        writeControl.recordWriteLatency(SpliceWriteControl.Status.DEPENDENT,100,TimeUnit.MINUTES.toNanos(10));
+        assertEquals("Delay should be capped!",AdaptiveSpliceWriteControl.MAX_RETRY_DELAY,writeControl.getRetryDelay(true));
+    }
+
+    @Test
+    public void rejectedWritesAreNotSampled() throws Exception{
+        AdaptiveSpliceWriteControl writeControl = new AdaptiveSpliceWriteControl(10,10,1000,1000);
+        writeControl.recordWriteLatency(SpliceWriteControl.Status.REJECTED,100,SLOW);
+        assertEquals("Incorrect delay!",0l,writeControl.getRetryDelay(true));
+    }
+}
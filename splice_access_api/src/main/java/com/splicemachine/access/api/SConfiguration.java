@@ -101,6 +101,14 @@ public interface SConfiguration {
     // OperationConfiguration
     int getSequenceBlockSize();
 
+    int getScanFilterBatchSize();
+
+    long getControlSpillMemoryBudget();
+
+    String getControlSpillDirectory();
+
+    long getBroadcastJoinCacheSize();
+
     // PipelineConfiguration
     int getCoreWriterThreads();
 
@@ -112,6 +120,14 @@ public interface SConfiguration {
 
     int getMaxIndependentWrites();
 
+    boolean getAdaptiveWriteControl();
+
+    boolean getCompactPipelineEncoding();
+
+    int getForeignKeyParentKeyCacheSize();
+
+    long getForeignKeyParentKeyCacheExpiration();
+
     int getMaxRetries();
 
     int getMaxWriterThreads();
@@ -132,6 +148,9 @@ public interface SConfiguration {
 
     int getSparkResultStreamingBatches();
     int getSparkResultStreamingBatchSize();
+    boolean getSparkResultStreamingInterleaved();
+    boolean getSparkResultStreamingFramed();
+    boolean getSparkResultStreamingFrameCompression();
 
     // SIConfigurations
     int getActiveTransactionCacheSize();
@@ -140,6 +159,8 @@ public interface SConfiguration {
 
     int getCompletedTxnConcurrency();
 
+    boolean getCompletedTxnCacheOffHeap();
+
     int getReadResolverQueueSize();
 
     int getReadResolverThreads();
@@ -164,6 +185,12 @@ public interface SConfiguration {
 
     long getTransactionTimeout();
 
+    boolean getCompactionPurgeVersions();
+
+    long getTxnLowWatermarkRefreshInterval();
+
+    long getTxnLowWatermarkReadOnlyGracePeriod();
+
     // SQLConfiguration
     boolean debugDumpBindTree();
 
@@ -209,6 +236,8 @@ public interface SConfiguration {
 
     int getNestedLoopJoinBatchSize();
 
+    int getIndexLookupThreads();
+
     // StatsConfiguration
     double getFallbackNullFraction();
 
@@ -259,4 +288,6 @@ public interface SConfiguration {
     int getReservedSlotsTimeout();
 
     int getOlapServerTickLimit();
+
+    String getOlapServerResourcePools();
 }
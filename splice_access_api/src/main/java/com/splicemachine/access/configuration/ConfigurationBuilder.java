@@ -29,6 +29,7 @@ public class ConfigurationBuilder {
     public int activeTransactionCacheSize;
     public int completedTxnCacheSize;
     public int completedTxnConcurrency;
+    public boolean completedTxnCacheOffHeap;
     public int readResolverQueueSize;
     public int readResolverThreads;
     public int timestampClientWaitTime;
@@ -37,9 +38,16 @@ public class ConfigurationBuilder {
     public int transactionLockStripes;
     public long transactionKeepAliveInterval;
     public long transactionTimeout;
+    public boolean compactionPurgeVersions;
+    public long txnLowWatermarkRefreshInterval;
+    public long txnLowWatermarkReadOnlyGracePeriod;
 
     // OperationConfiguration
     public int sequenceBlockSize;
+    public int scanFilterBatchSize;
+    public long controlSpillMemoryBudget;
+    public String controlSpillDirectory;
+    public long broadcastJoinCacheSize;
 
     // DDLConfiguration
     public long ddlDrainingInitialWait;
@@ -107,6 +115,7 @@ public class ConfigurationBuilder {
     public int olapServerBindPort;
     public int olapServerThreads;
     public int olapServerTickLimit;
+    public String olapServerResourcePools;
     public int partitionserverJmxPort;
     public int partitionserverPort;
     public long broadcastRegionMbThreshold;
@@ -117,6 +126,7 @@ public class ConfigurationBuilder {
     public String upgradeForcedFrom;
     public String storageFactoryHome;
     public int nestedLoopJoinBatchSize;
+    public int indexLookupThreads;
 
     // PipelineConfiguration
     public int coreWriterThreads;
@@ -124,6 +134,10 @@ public class ConfigurationBuilder {
     public int maxBufferEntries;
     public int maxDependentWrites;
     public int maxIndependentWrites;
+    public boolean adaptiveWriteControl;
+    public boolean compactPipelineEncoding;
+    public int foreignKeyParentKeyCacheSize;
+    public long foreignKeyParentKeyCacheExpiration;
     public int maxRetries;
     public int maxWriterThreads;
     public int pipelineKryoPoolSize;
@@ -135,6 +149,9 @@ public class ConfigurationBuilder {
     public String sparkIoCompressionCodec;
     public int sparkResultStreamingBatchSize;
     public int sparkResultStreamingBatches;
+    public boolean sparkResultStreamingInterleaved;
+    public boolean sparkResultStreamingFramed;
+    public boolean sparkResultStreamingFrameCompression;
     public int compactionReservedSlots;
     public int reservedSlotsTimeout;
     public int olapCompactionMaximumWait;
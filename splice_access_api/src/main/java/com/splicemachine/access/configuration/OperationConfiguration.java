@@ -48,8 +48,63 @@ public class OperationConfiguration implements ConfigurationDefault {
     public static final String SEQUENCE_BLOCK_SIZE = "splice.sequence.allocationBlockSize";
     private static final int DEFAULT_SEQUENCE_BLOCK_SIZE = 1000;
 
+    /**
+     * The number of rows a table scanner reads ahead before applying transactional filtering.
+     *
+     * When set to a value greater than 1, the scanner buffers that many rows from the underlying
+     * region scanner, resolves every distinct transaction referenced by the batch at once, and
+     * skips decoding any row which contains no visible data. This amortizes transaction lookups across
+     * rows on scans over tables with few writers, at the cost of reading ahead of the consumer (which
+     * can waste work on scans with a small limit).
+     *
+     * Defaults to 0 (row-at-a-time filtering)
+     */
+    public static final String SCAN_FILTER_BATCH_SIZE = "splice.scan.filterBatchSize";
+    private static final int DEFAULT_SCAN_FILTER_BATCH_SIZE = 0;
+
+    /**
+     * The approximate number of bytes of heap which a single control-side aggregation or sort may hold
+     * before spilling to local disk.
+     *
+     * Control-side (i.e. non-Spark) aggregations fold rows into an in-memory hash table. When the
+     * estimated size of that table exceeds this budget, it is hash-partitioned into files under
+     * {@link #CONTROL_SPILL_DIRECTORY}, and each partition is aggregated separately once the input
+     * is exhausted. Control-side sorts likewise write sorted runs to that directory whenever their
+     * buffer exceeds the budget, and merge the runs as the results are read. Turning this up keeps
+     * more operations entirely in memory, at the risk of greater heap pressure on the RegionServer.
+     *
+     * Defaults to 64 MB
+     */
+    public static final String CONTROL_SPILL_MEMORY_BUDGET = "splice.control.spillMemoryBudget";
+    private static final long DEFAULT_CONTROL_SPILL_MEMORY_BUDGET = 64*1024*1024L;
+
+    /**
+     * The local directory in which control-side operations write spill files.
+     *
+     * Defaults to the value of java.io.tmpdir
+     */
+    public static final String CONTROL_SPILL_DIRECTORY = "splice.control.spillDirectory";
+    private static final String DEFAULT_CONTROL_SPILL_DIRECTORY = System.getProperty("java.io.tmpdir");
+
+    /**
+     * The approximate number of bytes of heap which may be held by cached broadcast join tables.
+     *
+     * The inner side of a broadcast join is loaded into memory once per server and shared by every task
+     * (and, when the inner side is a plain table scan at the same snapshot, every query) which joins against it.
+     * Tables which are in use are never evicted; when the cache exceeds this budget, the least recently used
+     * tables which are not in use are dropped.
+     *
+     * Defaults to 256 MB
+     */
+    public static final String BROADCAST_JOIN_CACHE_SIZE = "splice.broadcast.joinCacheSize";
+    public static final long DEFAULT_BROADCAST_JOIN_CACHE_SIZE = 256*1024*1024L;
+
     @Override
     public void setDefaults(ConfigurationBuilder builder, ConfigurationSource configurationSource) {
         builder.sequenceBlockSize = configurationSource.getInt(SEQUENCE_BLOCK_SIZE, DEFAULT_SEQUENCE_BLOCK_SIZE);
+        builder.scanFilterBatchSize = configurationSource.getInt(SCAN_FILTER_BATCH_SIZE, DEFAULT_SCAN_FILTER_BATCH_SIZE);
+        builder.controlSpillMemoryBudget = configurationSource.getLong(CONTROL_SPILL_MEMORY_BUDGET, DEFAULT_CONTROL_SPILL_MEMORY_BUDGET);
+        builder.controlSpillDirectory = configurationSource.getString(CONTROL_SPILL_DIRECTORY, DEFAULT_CONTROL_SPILL_DIRECTORY);
+        builder.broadcastJoinCacheSize = configurationSource.getLong(BROADCAST_JOIN_CACHE_SIZE, DEFAULT_BROADCAST_JOIN_CACHE_SIZE);
     }
 }
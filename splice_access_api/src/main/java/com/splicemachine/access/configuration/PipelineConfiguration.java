@@ -39,6 +39,35 @@ public class PipelineConfiguration implements ConfigurationDefault {
     public static final String SPARK_RESULT_STREAMING_BATCH_SIZE = "spark.result.streaming.batch.size";
     public static final int DEFAULT_SPARK_RESULT_STREAMING_BATCH_SIZE = 1024;
 
+    /**
+     * When true, results of queries whose plan does not depend on the order of its rows are consumed from
+     * whichever Spark partition has data ready, rather than strictly one partition after another. Plans which
+     * sort, or which return the rows of a scan in scan order (which may stand in for an ORDER BY), are always
+     * streamed in partition order.
+     *
+     * Defaults to false
+     */
+    public static final String SPARK_RESULT_STREAMING_INTERLEAVED = "spark.result.streaming.interleaved";
+    public static final boolean DEFAULT_SPARK_RESULT_STREAMING_INTERLEAVED = false;
+
+    /**
+     * When true, Spark tasks pack the rows of each streaming batch into a single frame, rather than sending every
+     * row to the client as a message of its own.
+     *
+     * Defaults to true
+     */
+    public static final String SPARK_RESULT_STREAMING_FRAMED = "spark.result.streaming.framed";
+    public static final boolean DEFAULT_SPARK_RESULT_STREAMING_FRAMED = true;
+
+    /**
+     * When true, result frames are compressed before being sent to the client. This trades CPU on both ends
+     * for network bandwidth, so it's only worth it when the client is on a slow link.
+     *
+     * Defaults to false
+     */
+    public static final String SPARK_RESULT_STREAMING_FRAME_COMPRESSION = "spark.result.streaming.frame.compression";
+    public static final boolean DEFAULT_SPARK_RESULT_STREAMING_FRAME_COMPRESSION = false;
+
     public static final String SPARK_COMPACTION_RESERVED_SLOTS = "spark.compaction.reserved.slots";
     public static final int DEFAULT_SPARK_COMPACTION_RESERVED_SLOTS = 1;
 
@@ -151,6 +180,54 @@ public class PipelineConfiguration implements ConfigurationDefault {
     public static final String MAX_DEPENDENT_WRITES = "splice.client.write.maxDependentWrites";
     public static final int DEFAULT_MAX_DEPENDENT_WRITES = 40000;
 
+    /**
+     * When enabled, the limits on the number of in-flight rows (splice.client.write.maxIndependentWrites and
+     * splice.client.write.maxDependentWrites) become ceilings, and the region server tunes the actual limit
+     * up and down according to the write latency it observes. Rejected writers are told how long to wait
+     * before retrying. When disabled, the configured limits are applied as fixed limits.
+     *
+     * The retry delay is an addition to the write result sent back to clients, which releases that predate it
+     * cannot decode, so only enable this once every server and client in the cluster has been upgraded.
+     *
+     * Defaults to false
+     */
+    public static final String ADAPTIVE_WRITE_CONTROL = "splice.client.write.adaptiveControl";
+    public static final boolean DEFAULT_ADAPTIVE_WRITE_CONTROL = false;
+
+    /**
+     * When enabled, writes are sent to region servers in the compact encoding, which run-length encodes the
+     * type of each row and prefix-compresses row keys. Region servers decode both encodings regardless of this
+     * setting, but releases which predate the compact encoding cannot decode it, so only enable this once every
+     * server in the cluster has been upgraded.
+     *
+     * Defaults to false
+     */
+    public static final String COMPACT_PIPELINE_ENCODING = "splice.client.write.compactEncoding";
+    public static final boolean DEFAULT_COMPACT_PIPELINE_ENCODING = false;
+
+    /**
+     * The maximum number of parent keys which each region server remembers as having passed a foreign key
+     * check. Child writes which reference a remembered key skip the lookup against the parent table. Deleting
+     * or updating a parent row evicts its key from the cache of every region server holding a referencing index.
+     *
+     * Set to 0 to check every child write against the parent table.
+     *
+     * Defaults to 100000
+     */
+    public static final String FK_PARENT_KEY_CACHE_SIZE = "splice.fk.parentKeyCache.size";
+    public static final int DEFAULT_FK_PARENT_KEY_CACHE_SIZE = 100000;
+
+    /**
+     * The length of time (in milliseconds) that a verified parent key stays in the foreign key cache. Keys are
+     * evicted before then when the parent row is deleted, and when a region of the FK backing index opens or
+     * closes on the region server, so this only bounds the memory held for keys which are no longer checked.
+     * The fences left by deletes do not expire; they are dropped once the deleting transaction has finished.
+     *
+     * Defaults to 60000 ms (1 minute)
+     */
+    public static final String FK_PARENT_KEY_CACHE_EXPIRATION = "splice.fk.parentKeyCache.expiration";
+    public static final long DEFAULT_FK_PARENT_KEY_CACHE_EXPIRATION = 60000;
+
     public static final String IPC_THREADS="hbase.regionserver.handler.count";
     public static final int DEFAULT_IPC_THREADS = 200;
 
@@ -162,6 +239,9 @@ public class PipelineConfiguration implements ConfigurationDefault {
         builder.ipcThreads = configurationSource.getInt(IPC_THREADS, DEFAULT_IPC_THREADS);
         builder.maxIndependentWrites = configurationSource.getInt(MAX_INDEPENDENT_WRITES, DEFAULT_MAX_INDEPENDENT_WRITES);
         builder.maxDependentWrites = configurationSource.getInt(MAX_DEPENDENT_WRITES, DEFAULT_MAX_DEPENDENT_WRITES);
+        builder.adaptiveWriteControl = configurationSource.getBoolean(ADAPTIVE_WRITE_CONTROL, DEFAULT_ADAPTIVE_WRITE_CONTROL);
+        builder.compactPipelineEncoding = configurationSource.getBoolean(COMPACT_PIPELINE_ENCODING, DEFAULT_COMPACT_PIPELINE_ENCODING);
+        builder.foreignKeyParentKeyCacheSize = configurationSource.getInt(FK_PARENT_KEY_CACHE_SIZE, DEFAULT_FK_PARENT_KEY_CACHE_SIZE);
         builder.coreWriterThreads = configurationSource.getInt(CORE_WRITER_THREADS, DEFAULT_WRITE_THREADS_CORE);
         builder.maxWriterThreads = configurationSource.getInt(MAX_WRITER_THREADS, DEFAULT_MAX_WRITER_THREADS);
         builder.writeMaxFlushesPerRegion = configurationSource.getInt(WRITE_MAX_FLUSHES_PER_REGION, WRITE_DEFAULT_MAX_FLUSHES_PER_REGION);
@@ -173,10 +253,14 @@ public class PipelineConfiguration implements ConfigurationDefault {
         builder.clientPause = configurationSource.getLong(CLIENT_PAUSE, DEFAULT_CLIENT_PAUSE);
         builder.maxBufferHeapSize = configurationSource.getLong(MAX_BUFFER_HEAP_SIZE, DEFAULT_WRITE_BUFFER_SIZE);
         builder.startupLockWaitPeriod = configurationSource.getLong(STARTUP_LOCK_WAIT_PERIOD, DEFAULT_STARTUP_LOCK_PERIOD);
+        builder.foreignKeyParentKeyCacheExpiration = configurationSource.getLong(FK_PARENT_KEY_CACHE_EXPIRATION, DEFAULT_FK_PARENT_KEY_CACHE_EXPIRATION);
 
         builder.sparkIoCompressionCodec = configurationSource.getString(SPARK_IO_COMPRESSION_CODEC, DEFAULT_SPARK_IO_COMPRESSION_CODEC);
         builder.sparkResultStreamingBatches = configurationSource.getInt(SPARK_RESULT_STREAMING_BATCHES, DEFAULT_SPARK_RESULT_STREAMING_BATCHES);
         builder.sparkResultStreamingBatchSize = configurationSource.getInt(SPARK_RESULT_STREAMING_BATCH_SIZE, DEFAULT_SPARK_RESULT_STREAMING_BATCH_SIZE);
+        builder.sparkResultStreamingInterleaved = configurationSource.getBoolean(SPARK_RESULT_STREAMING_INTERLEAVED, DEFAULT_SPARK_RESULT_STREAMING_INTERLEAVED);
+        builder.sparkResultStreamingFramed = configurationSource.getBoolean(SPARK_RESULT_STREAMING_FRAMED, DEFAULT_SPARK_RESULT_STREAMING_FRAMED);
+        builder.sparkResultStreamingFrameCompression = configurationSource.getBoolean(SPARK_RESULT_STREAMING_FRAME_COMPRESSION, DEFAULT_SPARK_RESULT_STREAMING_FRAME_COMPRESSION);
         builder.compactionReservedSlots = configurationSource.getInt(SPARK_COMPACTION_RESERVED_SLOTS, DEFAULT_SPARK_COMPACTION_RESERVED_SLOTS);
         builder.olapCompactionMaximumWait = configurationSource.getInt(SPARK_COMPACTION_MAXIMUM_WAIT, DEFAULT_SPARK_COMPACTION_MAXIMUM_WAIT);
         builder.reservedSlotsTimeout = configurationSource.getInt(SPARK_RESERVED_SLOTS_TIMEOUT, DEFAULT_SPARK_RESERVED_SLOTS_TIMEOUT);
@@ -78,6 +78,10 @@ public final class SConfigurationImpl implements SConfiguration {
 
     // OperationConfiguration
     private final  int sequenceBlockSize;
+    private final  int scanFilterBatchSize;
+    private final  long controlSpillMemoryBudget;
+    private final  String controlSpillDirectory;
+    private final  long broadcastJoinCacheSize;
 
     // PipelineConfiguration
     private final  int coreWriterThreads;
@@ -85,6 +89,10 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  int maxBufferEntries;
     private final  int maxDependentWrites;
     private final  int maxIndependentWrites;
+    private final  boolean adaptiveWriteControl;
+    private final  boolean compactPipelineEncoding;
+    private final  int foreignKeyParentKeyCacheSize;
+    private final  long foreignKeyParentKeyCacheExpiration;
     private final  int maxRetries;
     private final  int maxWriterThreads;
     private final  int pipelineKryoPoolSize;
@@ -96,6 +104,9 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  String sparkIoCompressionCodec;
     private final int sparkResultStreamingBatches;
     private final int sparkResultStreamingBatchSize;
+    private final boolean sparkResultStreamingInterleaved;
+    private final boolean sparkResultStreamingFramed;
+    private final boolean sparkResultStreamingFrameCompression;
     private final int compactionReservedSlots;
     private final int olapCompactionMaximumWait;
     private final int reservedSlotsTimeout;
@@ -104,11 +115,13 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  int activeTransactionCacheSize;
     private final  int completedTxnCacheSize;
     private final  int completedTxnConcurrency;
+    private final  boolean completedTxnCacheOffHeap;
     private final int olapClientWaitTime;
     private final int olapClientTickTime;
     private final int olapServerBindPort;
     private final int olapServerThreads;
     private final int olapServerTickLimit;
+    private final String olapServerResourcePools;
     private final  int readResolverQueueSize;
     private final  int readResolverThreads;
     private final  int timestampClientWaitTime;
@@ -117,6 +130,9 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  int transactionLockStripes;
     private final  long transactionKeepAliveInterval;
     private final  long transactionTimeout;
+    private final  boolean compactionPurgeVersions;
+    private final  long txnLowWatermarkRefreshInterval;
+    private final  long txnLowWatermarkReadOnlyGracePeriod;
 
     // SQLConfiguration
     private final  boolean debugDumpBindTree;
@@ -141,6 +157,7 @@ public final class SConfigurationImpl implements SConfiguration {
     private final  String upgradeForcedFrom;
     private final String storageFactoryHome;
     private final int nestedLoopJoinBatchSize;
+    private final int indexLookupThreads;
 
     // StatsConfiguration
     private final  double fallbackNullFraction;
@@ -283,6 +300,22 @@ public final class SConfigurationImpl implements SConfiguration {
     public int getSequenceBlockSize() {
         return sequenceBlockSize;
     }
+    @Override
+    public int getScanFilterBatchSize() {
+        return scanFilterBatchSize;
+    }
+    @Override
+    public long getControlSpillMemoryBudget() {
+        return controlSpillMemoryBudget;
+    }
+    @Override
+    public String getControlSpillDirectory() {
+        return controlSpillDirectory;
+    }
+    @Override
+    public long getBroadcastJoinCacheSize() {
+        return broadcastJoinCacheSize;
+    }
 
     // PipelineConfiguration
     @Override
@@ -306,6 +339,22 @@ public final class SConfigurationImpl implements SConfiguration {
         return maxIndependentWrites;
     }
     @Override
+    public boolean getAdaptiveWriteControl() {
+        return adaptiveWriteControl;
+    }
+    @Override
+    public boolean getCompactPipelineEncoding() {
+        return compactPipelineEncoding;
+    }
+    @Override
+    public int getForeignKeyParentKeyCacheSize() {
+        return foreignKeyParentKeyCacheSize;
+    }
+    @Override
+    public long getForeignKeyParentKeyCacheExpiration() {
+        return foreignKeyParentKeyCacheExpiration;
+    }
+    @Override
     public int getMaxRetries() {
         return maxRetries;
     }
@@ -352,6 +401,21 @@ public final class SConfigurationImpl implements SConfiguration {
         return sparkResultStreamingBatchSize;
     }
 
+    @Override
+    public boolean getSparkResultStreamingInterleaved() {
+        return sparkResultStreamingInterleaved;
+    }
+
+    @Override
+    public boolean getSparkResultStreamingFramed() {
+        return sparkResultStreamingFramed;
+    }
+
+    @Override
+    public boolean getSparkResultStreamingFrameCompression() {
+        return sparkResultStreamingFrameCompression;
+    }
+
     // SIConfigurations
     @Override
     public int getActiveTransactionCacheSize() {
@@ -366,6 +430,10 @@ public final class SConfigurationImpl implements SConfiguration {
         return completedTxnConcurrency;
     }
     @Override
+    public boolean getCompletedTxnCacheOffHeap() {
+        return completedTxnCacheOffHeap;
+    }
+    @Override
     public int getReadResolverQueueSize() {
         return readResolverQueueSize;
     }
@@ -413,6 +481,18 @@ public final class SConfigurationImpl implements SConfiguration {
     public long getTransactionTimeout() {
         return transactionTimeout;
     }
+    @Override
+    public boolean getCompactionPurgeVersions() {
+        return compactionPurgeVersions;
+    }
+    @Override
+    public long getTxnLowWatermarkRefreshInterval() {
+        return txnLowWatermarkRefreshInterval;
+    }
+    @Override
+    public long getTxnLowWatermarkReadOnlyGracePeriod() {
+        return txnLowWatermarkReadOnlyGracePeriod;
+    }
 
     // SQLConfiguration
     @Override
@@ -499,6 +579,10 @@ public final class SConfigurationImpl implements SConfiguration {
     public int getNestedLoopJoinBatchSize() {
         return nestedLoopJoinBatchSize;
     }
+    @Override
+    public int getIndexLookupThreads() {
+        return indexLookupThreads;
+    }
 
     // StatsConfiguration
     @Override
@@ -585,6 +669,7 @@ public final class SConfigurationImpl implements SConfiguration {
         activeTransactionCacheSize = builder.activeTransactionCacheSize;
         completedTxnCacheSize = builder.completedTxnCacheSize;
         completedTxnConcurrency = builder.completedTxnConcurrency;
+        completedTxnCacheOffHeap = builder.completedTxnCacheOffHeap;
         readResolverQueueSize = builder.readResolverQueueSize;
         readResolverThreads = builder.readResolverThreads;
         timestampClientWaitTime = builder.timestampClientWaitTime;
@@ -593,7 +678,14 @@ public final class SConfigurationImpl implements SConfiguration {
         transactionLockStripes = builder.transactionLockStripes;
         transactionKeepAliveInterval = builder.transactionKeepAliveInterval;
         transactionTimeout = builder.transactionTimeout;
+        compactionPurgeVersions = builder.compactionPurgeVersions;
+        txnLowWatermarkRefreshInterval = builder.txnLowWatermarkRefreshInterval;
+        txnLowWatermarkReadOnlyGracePeriod = builder.txnLowWatermarkReadOnlyGracePeriod;
         sequenceBlockSize = builder.sequenceBlockSize;
+        scanFilterBatchSize = builder.scanFilterBatchSize;
+        controlSpillMemoryBudget = builder.controlSpillMemoryBudget;
+        controlSpillDirectory = builder.controlSpillDirectory;
+        broadcastJoinCacheSize = builder.broadcastJoinCacheSize;
         ddlDrainingInitialWait = builder.ddlDrainingInitialWait;
         ddlDrainingMaximumWait = builder.ddlDrainingMaximumWait;
         ddlRefreshInterval = builder.ddlRefreshInterval;
@@ -655,6 +747,10 @@ public final class SConfigurationImpl implements SConfiguration {
         maxBufferEntries = builder.maxBufferEntries;
         maxDependentWrites = builder.maxDependentWrites;
         maxIndependentWrites = builder.maxIndependentWrites;
+        adaptiveWriteControl = builder.adaptiveWriteControl;
+        compactPipelineEncoding = builder.compactPipelineEncoding;
+        foreignKeyParentKeyCacheSize = builder.foreignKeyParentKeyCacheSize;
+        foreignKeyParentKeyCacheExpiration = builder.foreignKeyParentKeyCacheExpiration;
         maxRetries = builder.maxRetries;
         maxWriterThreads = builder.maxWriterThreads;
         pipelineKryoPoolSize = builder.pipelineKryoPoolSize;
@@ -671,13 +767,18 @@ public final class SConfigurationImpl implements SConfiguration {
         olapServerBindPort = builder.olapServerBindPort;
         olapServerThreads = builder.olapServerThreads;
         olapServerTickLimit = builder.olapServerTickLimit;
+        olapServerResourcePools = builder.olapServerResourcePools;
         sparkResultStreamingBatches = builder.sparkResultStreamingBatches;
         sparkResultStreamingBatchSize = builder.sparkResultStreamingBatchSize;
+        sparkResultStreamingInterleaved = builder.sparkResultStreamingInterleaved;
+        sparkResultStreamingFramed = builder.sparkResultStreamingFramed;
+        sparkResultStreamingFrameCompression = builder.sparkResultStreamingFrameCompression;
         compactionReservedSlots = builder.compactionReservedSlots;
         olapCompactionMaximumWait = builder.olapCompactionMaximumWait;
         reservedSlotsTimeout = builder.reservedSlotsTimeout;
         storageFactoryHome = builder.storageFactoryHome;
         nestedLoopJoinBatchSize = builder.nestedLoopJoinBatchSize;
+        indexLookupThreads = builder.indexLookupThreads;
 
     }
 
@@ -729,4 +830,9 @@ public final class SConfigurationImpl implements SConfiguration {
         return olapServerTickLimit;
     }
 
+    @Override
+    public String getOlapServerResourcePools(){
+        return olapServerResourcePools;
+    }
+
 }
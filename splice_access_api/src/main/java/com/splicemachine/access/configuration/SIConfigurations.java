@@ -36,6 +36,16 @@ public class SIConfigurations implements ConfigurationDefault {
     public static final String completedTxnConcurrency="splice.txn.completedTxns.concurrency";
     private static final int DEFAULT_COMPLETED_TRANSACTION_CONCURRENCY=64;
 
+    /*
+     * When true, the completed transaction cache keeps its packed entries in direct memory rather than
+     * on the Java heap. Since the cache is sized in the hundreds of thousands of entries, this keeps
+     * a large, long-lived structure out of the old generation.
+     *
+     * Defaults to false
+     */
+    public static final String completedTxnCacheOffHeap="splice.txn.completedTxns.offHeap";
+    private static final boolean DEFAULT_COMPLETED_TRANSACTION_CACHE_OFF_HEAP=false;
+
     public static final String TRANSACTION_KEEP_ALIVE_INTERVAL="splice.txn.keepAliveIntervalMs";
     public static final long DEFAULT_TRANSACTION_KEEP_ALIVE_INTERVAL=15000L;
 
@@ -135,8 +145,9 @@ public class SIConfigurations implements ConfigurationDefault {
     private static final int DEFAULT_OLAP_SERVER_BIND_PORT = 60014;
 
     /**
-     * Number of threads used by the Olap server, determines the maximum number of concurrent
-     * Olap jobs
+     * The maximum number of concurrent user Olap jobs, when resource pools are configured (see
+     * {@link #OLAP_SERVER_RESOURCE_POOLS}). Without resource pools user jobs are not limited, and internal jobs
+     * (compactions, index population, statistics collection) never are.
      *
      * Defaults to 16
      */
@@ -146,13 +157,57 @@ public class SIConfigurations implements ConfigurationDefault {
     public static final String OLAP_SERVER_TICK_LIMIT = "splice.olap_server.tickLimit";
     private static final int DEFAULT_OLAP_SERVER_TICK_LIMIT = 120;
 
+    /**
+     * The resource pools which Olap jobs are admitted through, as a list of pools separated by ';', each of
+     * the form name:key=value,key=value (with keys weight, maxJobs, maxMemory, jobMemory and members). Jobs
+     * of users and roles which are not members of any pool run in the "default" pool. The name "internal" is
+     * reserved.
+     *
+     * Defaults to "" (no admission control)
+     */
+    public static final String OLAP_SERVER_RESOURCE_POOLS = "splice.olap_server.resourcePools";
+    private static final String DEFAULT_OLAP_SERVER_RESOURCE_POOLS = "";
+
     public static final String ACTIVE_TRANSACTION_CACHE_SIZE="splice.txn.activeCacheSize";
     private static final int DEFAULT_ACTIVE_TRANSACTION_CACHE_SIZE = 1<<12;
 
+    /**
+     * When true, compactions physically remove committed versions (and tombstones) which have been
+     * superseded before the transaction low watermark, since no active or future transaction can read them.
+     * Snapshot isolation reads by transactions which began below the watermark then fail as "snapshot too old"
+     * (see {@link #TXN_LOW_WATERMARK_READ_ONLY_GRACE_PERIOD}).
+     *
+     * Defaults to false
+     */
+    public static final String COMPACTION_PURGE_VERSIONS = "splice.compaction.purgeVersions";
+    private static final boolean DEFAULT_COMPACTION_PURGE_VERSIONS = false;
+
+    /**
+     * How often (in milliseconds) a server recomputes the transaction low watermark from the transaction
+     * table, and re-reads the watermark published by the other servers. A new watermark is only used by
+     * compactions two intervals after it was published.
+     *
+     * Defaults to 60000 (1 minute)
+     */
+    public static final String TXN_LOW_WATERMARK_REFRESH_INTERVAL = "splice.txn.lowWatermark.refreshInterval";
+    private static final long DEFAULT_TXN_LOW_WATERMARK_REFRESH_INTERVAL = 60000L;
+
+    /**
+     * Read-only transactions are never recorded in the transaction table, so the low watermark is held
+     * back to the timestamp which was current this many milliseconds ago. A read-only transaction which
+     * runs for longer than this may need versions which have been purged by a compaction, so its reads
+     * fail with a "snapshot too old" error instead.
+     *
+     * Defaults to 3600000 (1 hour)
+     */
+    public static final String TXN_LOW_WATERMARK_READ_ONLY_GRACE_PERIOD = "splice.txn.lowWatermark.readOnlyGracePeriod";
+    private static final long DEFAULT_TXN_LOW_WATERMARK_READ_ONLY_GRACE_PERIOD = 3600000L;
+
     @Override
     public void setDefaults(ConfigurationBuilder builder, ConfigurationSource configurationSource) {
         builder.completedTxnConcurrency  = configurationSource.getInt(completedTxnConcurrency, DEFAULT_COMPLETED_TRANSACTION_CONCURRENCY);
         builder.completedTxnCacheSize  = configurationSource.getInt(completedTxnCacheSize, DEFAULT_COMPLETED_TRANSACTION_CACHE_SIZE);
+        builder.completedTxnCacheOffHeap  = configurationSource.getBoolean(completedTxnCacheOffHeap, DEFAULT_COMPLETED_TRANSACTION_CACHE_OFF_HEAP);
         builder.transactionKeepAliveThreads  = configurationSource.getInt(TRANSACTION_KEEP_ALIVE_THREADS, DEFAULT_KEEP_ALIVE_THREADS);
         builder.readResolverThreads  = configurationSource.getInt(READ_RESOLVER_THREADS, DEFAULT_READ_RESOLVER_THREADS);
         builder.readResolverQueueSize  = configurationSource.getInt(READ_RESOLVER_QUEUE_SIZE, -1); //TODO -sf- reset to DEFAULT once ReadResolution works
@@ -165,9 +220,13 @@ public class SIConfigurations implements ConfigurationDefault {
         builder.olapClientTickTime  = configurationSource.getInt(OLAP_CLIENT_TICK_TIME, DEFAULT_OLAP_CLIENT_TICK_TIME);
         builder.olapServerThreads = configurationSource.getInt(OLAP_SERVER_THREADS, DEFAULT_OLAP_SERVER_THREADS);
         builder.olapServerTickLimit = configurationSource.getInt(OLAP_SERVER_TICK_LIMIT,DEFAULT_OLAP_SERVER_TICK_LIMIT);
+        builder.olapServerResourcePools = configurationSource.getString(OLAP_SERVER_RESOURCE_POOLS,DEFAULT_OLAP_SERVER_RESOURCE_POOLS);
 
         builder.transactionTimeout = configurationSource.getLong(TRANSACTION_TIMEOUT, DEFAULT_TRANSACTION_TIMEOUT);
         builder.transactionKeepAliveInterval = configurationSource.getLong(TRANSACTION_KEEP_ALIVE_INTERVAL, DEFAULT_TRANSACTION_KEEP_ALIVE_INTERVAL);
+        builder.compactionPurgeVersions = configurationSource.getBoolean(COMPACTION_PURGE_VERSIONS, DEFAULT_COMPACTION_PURGE_VERSIONS);
+        builder.txnLowWatermarkRefreshInterval = configurationSource.getLong(TXN_LOW_WATERMARK_REFRESH_INTERVAL, DEFAULT_TXN_LOW_WATERMARK_REFRESH_INTERVAL);
+        builder.txnLowWatermarkReadOnlyGracePeriod = configurationSource.getLong(TXN_LOW_WATERMARK_READ_ONLY_GRACE_PERIOD, DEFAULT_TXN_LOW_WATERMARK_READ_ONLY_GRACE_PERIOD);
 
     }
 }
@@ -197,6 +197,15 @@ public class SQLConfiguration implements ConfigurationDefault {
     public static final String INDEX_LOOKUP_BLOCKS = "splice.index.numConcurrentLookups";
     private static final int DEFAULT_INDEX_LOOKUP_BLOCKS = 5;
 
+    /**
+     * The maximum number of threads of the server-wide pool which fetches base rows for index lookups. Lookups are
+     * run on the thread of the index operation itself when all of them are busy.
+     *
+     * Defaults to 32
+     */
+    public static final String INDEX_LOOKUP_THREADS = "splice.index.lookupThreads";
+    private static final int DEFAULT_INDEX_LOOKUP_THREADS = 32;
+
     public static final String PARTITIONSERVER_JMX_PORT = "hbase.regionserver.jmx.port";
     private static final int DEFAULT_PARTITIONSERVER_JMX_PORT = 10102;
 
@@ -211,6 +220,7 @@ public class SQLConfiguration implements ConfigurationDefault {
         builder.kryoPoolSize = configurationSource.getInt(KRYO_POOL_SIZE, DEFAULT_KRYO_POOL_SIZE);
         builder.indexBatchSize = configurationSource.getInt(INDEX_BATCH_SIZE, DEFAULT_INDEX_BATCH_SIZE);
         builder.indexLookupBlocks = configurationSource.getInt(INDEX_LOOKUP_BLOCKS, DEFAULT_INDEX_LOOKUP_BLOCKS);
+        builder.indexLookupThreads = configurationSource.getInt(INDEX_LOOKUP_THREADS, DEFAULT_INDEX_LOOKUP_THREADS);
         builder.importMaxQuotedColumnLines = configurationSource.getInt(IMPORT_MAX_QUOTED_COLUMN_LINES, DEFAULT_IMPORT_MAX_QUOTED_COLUMN_LINES);
         builder.batchOnceBatchSize = configurationSource.getInt(BATCH_ONCE_BATCH_SIZE, DEFAULT_BATCH_ONCE_BATCH_SIZE);
         builder.partitionserverJmxPort = configurationSource.getInt(PARTITIONSERVER_JMX_PORT, DEFAULT_PARTITIONSERVER_JMX_PORT);
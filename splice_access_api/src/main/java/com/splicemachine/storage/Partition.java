@@ -17,7 +17,6 @@ package com.splicemachine.storage;
 
 import com.splicemachine.kvpair.KVPair;
 import com.splicemachine.metrics.MetricFactory;
-import com.splicemachine.utils.Pair;
 import java.io.IOException;
 import java.util.BitSet;
 import java.util.Iterator;
@@ -104,6 +103,17 @@ public interface Partition extends AutoCloseable{
      */
     DataResult getLatest(byte[] key,DataResult previous) throws IOException;
 
+    /**
+     * Get the latest version of every cell in each of the specified rows, as {@link #getLatest(byte[], DataResult)}
+     * would, but in a single forward pass over the partition rather than with a separate lookup per row.
+     *
+     * @param sortedKeys the row keys to fetch, in ascending order. Duplicate keys are permitted.
+     * @return the latest values for each key, in the same order as {@code sortedKeys}. A row which does not exist
+     * produces an empty result.
+     * @throws IOException if something goes wrong
+     */
+    Iterator<DataResult> batchGetLatest(List<byte[]> sortedKeys) throws IOException;
+
     Lock getRowLock(byte[] key,int keyOff,int keyLen) throws IOException;
 
     DataResultScanner openResultScanner(DataScan scan,MetricFactory metricFactory) throws IOException;
@@ -162,9 +172,10 @@ public interface Partition extends AutoCloseable{
      *
      * Return BitSet representing items possibly found in Bloom Filter/In Memory Structure
      *
-     * @return
+     * @param mutations the rows to check. {@code null} entries are skipped
+     * @return the positions in {@code mutations} which may exist, or {@code null} if every row must be read
      * @throws IOException
      */
-    BitSet getBloomInMemoryCheck(boolean hasConstraintChecker, Pair<KVPair, Lock>[] dataAndLocks) throws IOException;
+    BitSet getBloomInMemoryCheck(boolean hasConstraintChecker, KVPair[] mutations) throws IOException;
 
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files (written with {@code -rf csv}) and reports the change in each benchmark.
+ *
+ * A benchmark is reported as a regression when its score got worse by more than the threshold percentage
+ * <em>and</em> by more than the sum of the two error margins, so that run-to-run noise is not flagged.
+ * The process exits with status 1 if any regression was found, so this can gate a release build.
+ *
+ * Usage: {@code BaselineComparison <baseline.csv> <current.csv> [thresholdPercent]}
+ */
+public class BaselineComparison{
+    private static final double DEFAULT_THRESHOLD=5d;
+    private static final String PACKAGE_PREFIX=BaselineComparison.class.getPackage().getName()+".";
+
+    public static void main(String... args) throws IOException{
+        if(args.length<2){
+            System.err.println("Usage: BaselineComparison <baseline.csv> <current.csv> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold=args.length>2?Double.parseDouble(args[2]):DEFAULT_THRESHOLD;
+        Map<String,Result> baseline=read(args[0]);
+        Map<String,Result> current=read(args[1]);
+        int regressions=report(baseline,current,threshold,System.out);
+        System.exit(regressions>0?1:0);
+    }
+
+    /**
+     * Print the comparison table.
+     *
+     * @return the number of regressions found
+     */
+    static int report(Map<String,Result> baseline,Map<String,Result> current,double threshold,PrintStream out){
+        int regressions=0;
+        out.printf("%-64s %14s %14s %9s %s%n","Benchmark","Baseline","Current","Change","");
+        for(Map.Entry<String,Result> entry:current.entrySet()){
+            Result now=entry.getValue();
+            Result then=baseline.get(entry.getKey());
+            if(then==null){
+                out.printf("%-64s %14s %14.3f %9s %s%n",entry.getKey(),"-",now.score,"","new");
+                continue;
+            }
+            /* positive is always an improvement, whichever direction the mode scores in */
+            double change=(now.score-then.score)/then.score*100d;
+            if(!now.higherIsBetter())
+                change=-change;
+            String verdict="";
+            if(-change>threshold && Math.abs(now.score-then.score)>now.error+then.error){
+                verdict="REGRESSION";
+                regressions++;
+            }else if(change>threshold && Math.abs(now.score-then.score)>now.error+then.error)
+                verdict="improved";
+            out.printf("%-64s %14.3f %14.3f %+8.1f%% %s%n",entry.getKey(),then.score,now.score,change,verdict);
+        }
+        for(String missing:baseline.keySet()){
+            if(!current.containsKey(missing))
+                out.printf("%-64s %14.3f %14s %9s %s%n",missing,baseline.get(missing).score,"-","","missing");
+        }
+        out.printf("%d regression(s) beyond %.1f%%%n",regressions,threshold);
+        return regressions;
+    }
+
+    static Map<String,Result> read(String file) throws IOException{
+        Map<String,Result> results=new LinkedHashMap<>();
+        try(BufferedReader reader=Files.newBufferedReader(Paths.get(file),StandardCharsets.UTF_8)){
+            String line=reader.readLine();
+            if(line==null) return results;
+            List<String> header=split(line);
+            int benchmark=header.indexOf("Benchmark");
+            int mode=header.indexOf("Mode");
+            int score=header.indexOf("Score");
+            int error=header.indexOf("Score Error (99.9%)");
+            int unit=header.indexOf("Unit");
+            if(benchmark<0 || mode<0 || score<0)
+                throw new IOException(file+" is not a JMH csv result file");
+            while((line=reader.readLine())!=null){
+                if(line.isEmpty()) continue;
+                List<String> fields=split(line);
+                String name=fields.get(benchmark);
+                if(name.startsWith(PACKAGE_PREFIX))
+                    name=name.substring(PACKAGE_PREFIX.length());
+                StringBuilder key=new StringBuilder(name);
+                for(int i=0;i<header.size();i++){
+                    if(header.get(i).startsWith("Param: "))
+                        key.append(':').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+                key.append(" (").append(fields.get(mode));
+                if(unit>=0)
+                    key.append(", ").append(fields.get(unit));
+                key.append(')');
+                results.put(key.toString(),new Result(fields.get(mode),
+                        parse(fields.get(score)),
+                        error<0?0d:parse(fields.get(error))));
+            }
+        }
+        return results;
+    }
+
+    static List<String> split(String line){
+        List<String> fields=new ArrayList<>();
+        StringBuilder field=new StringBuilder();
+        boolean quoted=false;
+        for(int i=0;i<line.length();i++){
+            char c=line.charAt(i);
+            if(c=='"'){
+                if(quoted && i+1<line.length() && line.charAt(i+1)=='"'){
+                    field.append('"');
+                    i++;
+                }else
+                    quoted=!quoted;
+            }else if(c==',' && !quoted){
+                fields.add(field.toString());
+                field.setLength(0);
+            }else
+                field.append(c);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static double parse(String value){
+        try{
+            return Double.parseDouble(value);
+        }catch(NumberFormatException nfe){
+            return Double.NaN;
+        }
+    }
+
+    static final class Result{
+        final String mode;
+        final double score;
+        final double error;
+
+        Result(String mode,double score,double error){
+            this.mode=mode;
+            this.score=score;
+            this.error=Double.isNaN(error)?0d:error;
+        }
+
+        boolean higherIsBetter(){
+            return "thrpt".equals(mode);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark;
+
+import com.carrotsearch.hppc.BitSet;
+import com.splicemachine.encoding.MultiFieldDecoder;
+import com.splicemachine.encoding.MultiFieldEncoder;
+import com.splicemachine.storage.EntryEncoder;
+import com.splicemachine.utils.kryo.KryoPool;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Random;
+
+/**
+ * Deterministic test data shaped like a TPC-H LINEITEM row, which is the shape most of our
+ * performance work is measured against: a mix of scalar keys, a double, a DECIMAL(15,2), a
+ * date and two short strings.
+ *
+ * All benchmarks share this shape, so that results across the encoding, SI and pipeline
+ * suites describe the same unit of work.
+ */
+public final class LineItemRows{
+    public static final int NUM_COLUMNS=8;
+
+    private static final int ORDER_KEY=0;
+    private static final int LINE_NUMBER=1;
+    private static final int EXTENDED_PRICE=3;
+    private static final int SHIP_DATE=5;
+
+    private static final String[] SHIP_MODES={"AIR","FOB","MAIL","RAIL","REG AIR","SHIP","TRUCK"};
+    private static final String COMMENT_CHARS="abcdefghijklmnopqrstuvwxyz ,.";
+    private static final long BASE_DATE=694224000000L; //1992-01-01
+
+    private LineItemRows(){}
+
+    public static final class LineItem{
+        public final long orderKey;
+        public final int lineNumber;
+        public final BigDecimal quantity;
+        public final double extendedPrice;
+        public final BigDecimal discount;
+        public final long shipDate;
+        public final String shipMode;
+        public final String comment;
+
+        LineItem(long orderKey,int lineNumber,BigDecimal quantity,double extendedPrice,
+                 BigDecimal discount,long shipDate,String shipMode,String comment){
+            this.orderKey=orderKey;
+            this.lineNumber=lineNumber;
+            this.quantity=quantity;
+            this.extendedPrice=extendedPrice;
+            this.discount=discount;
+            this.shipDate=shipDate;
+            this.shipMode=shipMode;
+            this.comment=comment;
+        }
+    }
+
+    /**
+     * Generate {@code count} rows in ascending order key order. The same seed always yields the same rows.
+     */
+    public static LineItem[] generate(int count,long seed){
+        Random random=new Random(seed);
+        LineItem[] rows=new LineItem[count];
+        long orderKey=1;
+        int lineNumber=1;
+        for(int i=0;i<count;i++){
+            if(lineNumber>1+random.nextInt(7)){
+                orderKey+=1+random.nextInt(4);
+                lineNumber=1;
+            }
+            BigDecimal quantity=BigDecimal.valueOf(1+random.nextInt(50),0).setScale(2);
+            double price=quantity.doubleValue()*(900+random.nextInt(100000)/100d);
+            BigDecimal discount=BigDecimal.valueOf(random.nextInt(11),2);
+            long shipDate=BASE_DATE+random.nextInt(2526)*86400000L;
+            String shipMode=SHIP_MODES[random.nextInt(SHIP_MODES.length)];
+            rows[i]=new LineItem(orderKey,lineNumber,quantity,price,discount,shipDate,shipMode,comment(random));
+            lineNumber++;
+        }
+        return rows;
+    }
+
+    /**
+     * @return the sort-order row key for the row (order key, line number).
+     */
+    public static byte[] rowKey(LineItem row){
+        MultiFieldEncoder encoder=MultiFieldEncoder.create(2);
+        encoder.encodeNext(row.orderKey).encodeNext(row.lineNumber);
+        return encoder.build();
+    }
+
+    public static void encode(LineItem row,MultiFieldEncoder encoder){
+        encoder.encodeNext(row.orderKey)
+                .encodeNext(row.lineNumber)
+                .encodeNext(row.quantity)
+                .encodeNext(row.extendedPrice)
+                .encodeNext(row.discount)
+                .encodeNext(row.shipDate)
+                .encodeNext(row.shipMode)
+                .encodeNext(row.comment);
+    }
+
+    /**
+     * Decode every column of a row previously written with {@link #encode(LineItem,MultiFieldEncoder)}.
+     *
+     * @return a value depending on every decoded column, so the decode cannot be eliminated
+     */
+    public static long decode(MultiFieldDecoder decoder){
+        long h=decoder.decodeNextLong();
+        h=31*h+decoder.decodeNextInt();
+        h=31*h+decoder.decodeNextBigDecimal().hashCode();
+        h=31*h+Double.doubleToLongBits(decoder.decodeNextDouble());
+        h=31*h+decoder.decodeNextBigDecimal().hashCode();
+        h=31*h+decoder.decodeNextLong();
+        h=31*h+decoder.decodeNextString().length();
+        h=31*h+decoder.decodeNextString().length();
+        return h;
+    }
+
+    public static EntryEncoder newEntryEncoder(KryoPool kryoPool){
+        BitSet columns=new BitSet(NUM_COLUMNS);
+        columns.set(0,NUM_COLUMNS);
+        BitSet scalarFields=new BitSet(NUM_COLUMNS);
+        scalarFields.set(ORDER_KEY);
+        scalarFields.set(LINE_NUMBER);
+        scalarFields.set(SHIP_DATE);
+        BitSet floatFields=new BitSet(NUM_COLUMNS);
+        BitSet doubleFields=new BitSet(NUM_COLUMNS);
+        doubleFields.set(EXTENDED_PRICE);
+        return EntryEncoder.create(kryoPool,NUM_COLUMNS,columns,scalarFields,floatFields,doubleFields);
+    }
+
+    /**
+     * @return the packed (EntryEncoder) value of the row, as it is stored in the user data column.
+     */
+    public static byte[] entryValue(EntryEncoder entryEncoder,LineItem row) throws IOException{
+        MultiFieldEncoder encoder=entryEncoder.getEntryEncoder();
+        encoder.reset();
+        encode(row,encoder);
+        return entryEncoder.encode();
+    }
+
+    private static String comment(Random random){
+        int length=10+random.nextInt(34);
+        char[] chars=new char[length];
+        for(int i=0;i<length;i++){
+            chars[i]=COMMENT_CHARS.charAt(random.nextInt(COMMENT_CHARS.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark.encoding;
+
+import com.splicemachine.benchmark.LineItemRows;
+import com.splicemachine.encoding.MultiFieldDecoder;
+import com.splicemachine.encoding.MultiFieldEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-row encoding through {@link MultiFieldEncoder} and {@link MultiFieldDecoder}, using
+ * {@link LineItemRows}. Reported times are per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(2)
+public class MultiFieldEncodingBenchmark{
+    static final int BATCH=1024;
+
+    private LineItemRows.LineItem[] rows;
+    private byte[][] encodedRows;
+    private MultiFieldEncoder encoder;
+    private MultiFieldDecoder decoder;
+
+    @Setup
+    public void setUp(){
+        rows=LineItemRows.generate(BATCH,0x5EED);
+        encodedRows=new byte[BATCH][];
+        encoder=MultiFieldEncoder.create(LineItemRows.NUM_COLUMNS);
+        for(int i=0;i<BATCH;i++){
+            encoder.reset();
+            LineItemRows.encode(rows[i],encoder);
+            encodedRows[i]=encoder.build();
+        }
+        decoder=MultiFieldDecoder.create();
+    }
+
+    /**
+     * The common write path: one encoder per writer, reset for each row.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long encodeReusingEncoder(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            encoder.reset();
+            LineItemRows.encode(rows[i],encoder);
+            sum+=encoder.build().length;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long encodeNewEncoder(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            MultiFieldEncoder e=MultiFieldEncoder.create(LineItemRows.NUM_COLUMNS);
+            LineItemRows.encode(rows[i],e);
+            sum+=e.build().length;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long decode(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            decoder.set(encodedRows[i]);
+            sum+=LineItemRows.decode(decoder);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark.encoding;
+
+import com.splicemachine.encoding.Encoding;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-value encoders for longs, doubles and decimals, through {@link Encoding}.
+ *
+ * Each invocation handles a batch of {@link #BATCH} values, so that the reported time is per value. The
+ * value distributions mimic what ends up in our row keys and values: mostly small
+ * counters and surrogate keys, plus epoch timestamps; prices with two decimal places.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(2)
+public class PrimitiveEncodingBenchmark{
+    static final int BATCH=1024;
+
+    @Param({"false","true"})
+    public boolean desc;
+
+    private long[] longs;
+    private byte[][] encodedLongs;
+    private double[] doubles;
+    private byte[][] encodedDoubles;
+    private BigDecimal[] decimals;
+    private byte[][] encodedDecimals;
+
+    @Setup
+    public void setUp(){
+        Random random=new Random(0x5EED);
+        longs=new long[BATCH];
+        encodedLongs=new byte[BATCH][];
+        doubles=new double[BATCH];
+        encodedDoubles=new byte[BATCH][];
+        decimals=new BigDecimal[BATCH];
+        encodedDecimals=new byte[BATCH][];
+        for(int i=0;i<BATCH;i++){
+            switch(i%3){
+                case 0: longs[i]=random.nextInt(1<<10); break;
+                case 1: longs[i]=random.nextInt(1<<24); break;
+                default: longs[i]=1400000000000L+(random.nextLong()>>>24);
+            }
+            encodedLongs[i]=Encoding.encode(longs[i],desc);
+            doubles[i]=random.nextInt(10000000)/100d;
+            encodedDoubles[i]=Encoding.encode(doubles[i],desc);
+            decimals[i]=BigDecimal.valueOf(random.nextInt(100000000),2);
+            encodedDecimals[i]=Encoding.encode(decimals[i],desc);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long writeLong(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            sum+=Encoding.encode(longs[i],desc).length;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long readLong(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            sum+=Encoding.decodeLong(encodedLongs[i],desc);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long writeDouble(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            sum+=Encoding.encode(doubles[i],desc)[1];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double readDouble(){
+        double sum=0;
+        for(int i=0;i<BATCH;i++){
+            sum+=Encoding.decodeDouble(encodedDoubles[i],desc);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long writeBigDecimal(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            sum+=Encoding.encode(decimals[i],desc).length;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long readBigDecimal(){
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            sum+=Encoding.decodeBigDecimal(encodedDecimals[i],desc).scale();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark.pipeline;
+
+import com.splicemachine.benchmark.LineItemRows;
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.pipeline.client.BulkWrite;
+import com.splicemachine.pipeline.client.BulkWrites;
+import com.splicemachine.pipeline.client.PipelineEncoding;
+import com.splicemachine.si.api.data.TxnOperationFactory;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.MOperationFactory;
+import com.splicemachine.si.impl.SimpleTxnOperationFactory;
+import com.splicemachine.si.impl.data.MExceptionFactory;
+import com.splicemachine.si.impl.txn.ActiveWriteTxn;
+import com.splicemachine.storage.EntryEncoder;
+import com.splicemachine.utils.kryo.KryoPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The wire format of the write pipeline: {@link PipelineEncoding#encode(TxnOperationFactory,BulkWrites,boolean)}
+ * on the client, in the original or the compact encoding, {@link PipelineEncoding#decode(TxnOperationFactory,byte[])} on the server. A batch of
+ * {@link #BATCH} inserted rows is split evenly across {@code regions} BulkWrites, as the client
+ * would after partitioning a buffer. Reported times are per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(2)
+public class PipelineEncodingBenchmark{
+    static final int BATCH=1024;
+
+    @Param({"1","16"})
+    public int regions;
+
+    @Param({"false","true"})
+    public boolean compact;
+
+    private TxnOperationFactory operationFactory;
+    private BulkWrites bulkWrites;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException{
+        operationFactory=new SimpleTxnOperationFactory(MExceptionFactory.INSTANCE,new MOperationFactory(new IncrementingClock()));
+        EntryEncoder entryEncoder=LineItemRows.newEntryEncoder(new KryoPool(1));
+        LineItemRows.LineItem[] rows=LineItemRows.generate(BATCH,0x5EED);
+        int rowsPerRegion=BATCH/regions;
+        List<BulkWrite> writes=new ArrayList<>(regions);
+        for(int r=0;r<regions;r++){
+            Collection<KVPair> mutations=new ArrayList<>(rowsPerRegion);
+            for(int i=r*rowsPerRegion;i<(r+1)*rowsPerRegion;i++){
+                mutations.add(new KVPair(LineItemRows.rowKey(rows[i]),LineItemRows.entryValue(entryEncoder,rows[i]),KVPair.Type.INSERT));
+            }
+            writes.add(new BulkWrite(mutations,"region"+r));
+        }
+        TxnView txn=new ActiveWriteTxn(1L,1L,Txn.ROOT_TRANSACTION,true,Txn.IsolationLevel.SNAPSHOT_ISOLATION);
+        bulkWrites=new BulkWrites(writes,txn);
+        encoded=PipelineEncoding.encode(operationFactory,bulkWrites,compact);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int encode(){
+        return PipelineEncoding.encode(operationFactory,bulkWrites,compact).length;
+    }
+
+    /**
+     * Decode, then touch every mutation: decoding is lazy, so the decode alone would measure almost nothing.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long decode(){
+        BulkWrites decoded=PipelineEncoding.decode(operationFactory,encoded);
+        long sum=0;
+        for(BulkWrite bw:decoded.getBulkWrites()){
+            for(KVPair kvPair:bw.getMutations()){
+                sum+=kvPair.rowKeySlice().length()+kvPair.valueSlice().length();
+            }
+        }
+        return sum;
+    }
+}
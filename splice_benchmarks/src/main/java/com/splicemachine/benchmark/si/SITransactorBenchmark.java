@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark.si;
+
+import com.splicemachine.benchmark.LineItemRows;
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.data.OperationFactory;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnSupplier;
+import com.splicemachine.si.constants.SIConstants;
+import com.splicemachine.si.impl.ClientTxnLifecycleManager;
+import com.splicemachine.si.impl.MOpStatusFactory;
+import com.splicemachine.si.impl.MOperationFactory;
+import com.splicemachine.si.impl.ManualKeepAliveScheduler;
+import com.splicemachine.si.impl.MemTimestampSource;
+import com.splicemachine.si.impl.MemTxnStore;
+import com.splicemachine.si.impl.SimpleTxnOperationFactory;
+import com.splicemachine.si.impl.data.MExceptionFactory;
+import com.splicemachine.si.impl.rollforward.NoopRollForward;
+import com.splicemachine.si.impl.server.SITransactor;
+import com.splicemachine.si.impl.store.CompletedTxnCacheSupplier;
+import com.splicemachine.storage.EntryEncoder;
+import com.splicemachine.storage.MPartition;
+import com.splicemachine.storage.MutationStatus;
+import com.splicemachine.storage.Partition;
+import com.splicemachine.timestamp.api.TimestampSource;
+import com.splicemachine.utils.kryo.KryoPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The server side of a pipeline write: {@link SITransactor#processKvBatch} applying a batch of
+ * {@link #BATCH} rows to an in-memory partition.
+ *
+ * Each invocation writes into a fresh partition, so that every invocation does the same amount of work.
+ * For {@code UPDATE}, the partition is first loaded with a committed copy of the rows, so that the
+ * write-write conflict checks have existing versions to examine. Reported times are per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(2)
+public class SITransactorBenchmark{
+    static final int BATCH=1024;
+    private static final String TABLE_NAME="lineitem";
+    private static final byte[] FAMILY=SIConstants.DEFAULT_FAMILY_BYTES;
+    private static final byte[] QUALIFIER=SIConstants.PACKED_COLUMN_BYTES;
+
+    @Param({"INSERT","UPDATE"})
+    public KVPair.Type type;
+
+    private ClientTxnLifecycleManager lifecycleManager;
+    private SITransactor transactor;
+    private List<KVPair> inserts;
+    private List<KVPair> writes;
+
+    private Partition partition;
+    private Txn txn;
+
+    @Setup
+    public void setUp() throws IOException{
+        Clock clock=new IncrementingClock();
+        TimestampSource timestampSource=new MemTimestampSource();
+        MemTxnStore txnStore=new MemTxnStore(clock,timestampSource,MExceptionFactory.INSTANCE,Long.MAX_VALUE);
+        lifecycleManager=new ClientTxnLifecycleManager(timestampSource,MExceptionFactory.INSTANCE);
+        lifecycleManager.setTxnStore(txnStore);
+        lifecycleManager.setKeepAliveScheduler(new ManualKeepAliveScheduler(txnStore));
+
+        OperationFactory opFactory=new MOperationFactory(clock);
+        TxnSupplier txnSupplier=new CompletedTxnCacheSupplier(txnStore,100,16);
+        transactor=new SITransactor(txnSupplier,
+                new SimpleTxnOperationFactory(MExceptionFactory.INSTANCE,opFactory),
+                opFactory,
+                MOpStatusFactory.INSTANCE,
+                MExceptionFactory.INSTANCE);
+
+        EntryEncoder entryEncoder=LineItemRows.newEntryEncoder(new KryoPool(1));
+        LineItemRows.LineItem[] rows=LineItemRows.generate(BATCH,0x5EED);
+        inserts=new ArrayList<>(BATCH);
+        writes=new ArrayList<>(BATCH);
+        for(LineItemRows.LineItem row:rows){
+            byte[] key=LineItemRows.rowKey(row);
+            byte[] value=LineItemRows.entryValue(entryEncoder,row);
+            inserts.add(new KVPair(key,value,KVPair.Type.INSERT));
+            writes.add(new KVPair(key,value,type));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newPartition() throws IOException{
+        partition=new MPartition(TABLE_NAME,TABLE_NAME);
+        if(type!=KVPair.Type.INSERT){
+            Txn loadTxn=lifecycleManager.beginTransaction(Bytes.toBytes(TABLE_NAME));
+            process(inserts,loadTxn);
+            loadTxn.commit();
+        }
+        txn=lifecycleManager.beginTransaction(Bytes.toBytes(TABLE_NAME));
+    }
+
+    @TearDown(Level.Invocation)
+    public void commit() throws IOException{
+        txn.commit();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int processKvBatch() throws IOException{
+        return process(writes,txn);
+    }
+
+    private int process(List<KVPair> batch,Txn writeTxn) throws IOException{
+        MutationStatus[] statuses=transactor.processKvBatch(partition,NoopRollForward.INSTANCE,FAMILY,QUALIFIER,batch,writeTxn,
+                MOpStatusFactory.INSTANCE.getNoOpConstraintChecker());
+        int failed=0;
+        for(MutationStatus status:statuses){
+            if(!status.isSuccess())
+                failed++;
+        }
+        if(failed>0)
+            throw new IllegalStateException(failed+" of "+statuses.length+" writes failed");
+        return statuses.length;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark.si;
+
+import com.splicemachine.benchmark.LineItemRows;
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.constants.SIConstants;
+import com.splicemachine.si.impl.ClientTxnLifecycleManager;
+import com.splicemachine.si.impl.ManualKeepAliveScheduler;
+import com.splicemachine.si.impl.MemTimestampSource;
+import com.splicemachine.si.impl.MemTxnStore;
+import com.splicemachine.si.impl.SimpleTxnFilter;
+import com.splicemachine.si.impl.data.MExceptionFactory;
+import com.splicemachine.si.impl.readresolve.NoOpReadResolver;
+import com.splicemachine.storage.CellType;
+import com.splicemachine.storage.DataCell;
+import com.splicemachine.storage.DataFilter;
+import com.splicemachine.storage.EntryEncoder;
+import com.splicemachine.storage.MCell;
+import com.splicemachine.timestamp.api.TimestampSource;
+import com.splicemachine.utils.kryo.KryoPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot isolation visibility checks through {@link SimpleTxnFilter}, over rows written by
+ * committed transactions in the in-memory transaction store.
+ *
+ * Rows are laid out the way storage returns them: commit timestamp cells first (when the row has
+ * been rolled forward), then tombstones, then user data, each in descending version order. One row
+ * in 16 has been deleted by a later transaction. Reported times are per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(2)
+public class TxnFilterBenchmark{
+    static final int BATCH=1024;
+    private static final String TABLE_NAME="lineitem";
+    private static final byte[] FAMILY=SIConstants.DEFAULT_FAMILY_BYTES;
+    private static final byte[] EMPTY=new byte[0];
+
+    /**
+     * Whether commit timestamps have been written next to the data, or must be looked up in the
+     * transaction store.
+     */
+    @Param({"true","false"})
+    public boolean rolledForward;
+
+    /**
+     * The number of distinct transactions which wrote the batch: 1 for a bulk load, more for OLTP traffic.
+     */
+    @Param({"1","256"})
+    public int writers;
+
+    private MemTxnStore txnStore;
+    private TxnView readTxn;
+    private List<List<DataCell>> rows;
+    private final BitSet visibleRows=new BitSet(BATCH);
+
+    @Setup
+    public void setUp() throws IOException{
+        TimestampSource timestampSource=new MemTimestampSource();
+        txnStore=new MemTxnStore(new IncrementingClock(),timestampSource,MExceptionFactory.INSTANCE,Long.MAX_VALUE);
+        ClientTxnLifecycleManager lifecycleManager=new ClientTxnLifecycleManager(timestampSource,MExceptionFactory.INSTANCE);
+        lifecycleManager.setTxnStore(txnStore);
+        lifecycleManager.setKeepAliveScheduler(new ManualKeepAliveScheduler(txnStore));
+
+        byte[] table=Bytes.toBytes(TABLE_NAME);
+        Txn[] writeTxns=new Txn[writers];
+        for(int i=0;i<writers;i++){
+            writeTxns[i]=lifecycleManager.beginTransaction(table);
+            writeTxns[i].commit();
+        }
+        Txn deleteTxn=lifecycleManager.beginTransaction(table);
+        deleteTxn.commit();
+        readTxn=lifecycleManager.beginTransaction();
+
+        EntryEncoder entryEncoder=LineItemRows.newEntryEncoder(new KryoPool(1));
+        LineItemRows.LineItem[] data=LineItemRows.generate(BATCH,0x5EED);
+        rows=new ArrayList<>(BATCH);
+        for(int i=0;i<BATCH;i++){
+            byte[] key=LineItemRows.rowKey(data[i]);
+            Txn writer=writeTxns[i%writers];
+            boolean deleted=i%16==0;
+            List<DataCell> row=new ArrayList<>(4);
+            if(rolledForward){
+                if(deleted)
+                    row.add(commitTimestamp(key,deleteTxn));
+                row.add(commitTimestamp(key,writer));
+            }
+            if(deleted)
+                row.add(new MCell(key,FAMILY,SIConstants.SNAPSHOT_ISOLATION_TOMBSTONE_COLUMN_BYTES,deleteTxn.getTxnId(),EMPTY,CellType.TOMBSTONE));
+            row.add(new MCell(key,FAMILY,SIConstants.PACKED_COLUMN_BYTES,writer.getTxnId(),
+                    LineItemRows.entryValue(entryEncoder,data[i]),CellType.USER_DATA));
+            rows.add(row);
+        }
+    }
+
+    /**
+     * Cell-at-a-time filtering, as done by the scan filter for each row.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int filterCell() throws IOException{
+        SimpleTxnFilter filter=newFilter();
+        int visible=0;
+        for(int i=0;i<rows.size();i++){
+            List<DataCell> row=rows.get(i);
+            for(int j=0;j<row.size();j++){
+                if(filter.filterCell(row.get(j))==DataFilter.ReturnCode.INCLUDE)
+                    visible++;
+            }
+            filter.nextRow();
+        }
+        return visible;
+    }
+
+    /**
+     * Batch filtering: resolve the batch's transactions once, then filter only the rows which can be visible.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int filterBatch() throws IOException{
+        SimpleTxnFilter filter=newFilter();
+        filter.filterBatch(rows,visibleRows);
+        int visible=0;
+        for(int i=visibleRows.nextSetBit(0);i>=0;i=visibleRows.nextSetBit(i+1)){
+            List<DataCell> row=rows.get(i);
+            for(int j=0;j<row.size();j++){
+                if(filter.filterCell(row.get(j))==DataFilter.ReturnCode.INCLUDE)
+                    visible++;
+            }
+            filter.nextRow();
+        }
+        return visible;
+    }
+
+    private SimpleTxnFilter newFilter(){
+        return new SimpleTxnFilter(TABLE_NAME,readTxn,NoOpReadResolver.INSTANCE,txnStore);
+    }
+
+    private static DataCell commitTimestamp(byte[] key,TxnView txn){
+        return new MCell(key,FAMILY,SIConstants.SNAPSHOT_ISOLATION_COMMIT_TIMESTAMP_COLUMN_BYTES,txn.getTxnId(),
+                Bytes.toBytes(txn.getCommitTimestamp()),CellType.COMMIT_TIMESTAMP);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.benchmark.storage;
+
+import com.splicemachine.benchmark.LineItemRows;
+import com.splicemachine.encoding.MultiFieldDecoder;
+import com.splicemachine.storage.EntryDecoder;
+import com.splicemachine.storage.EntryEncoder;
+import com.splicemachine.utils.kryo.KryoPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The packed row format stored in the user data column: {@link EntryEncoder} on the write
+ * side, {@link EntryDecoder} on the read side. Reported times are per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=10,time=1)
+@Fork(2)
+public class EntryEncodingBenchmark{
+    static final int BATCH=1024;
+    /* the comment column, the last and most expensive one to reach */
+    private static final int PROJECTED_COLUMN=LineItemRows.NUM_COLUMNS-1;
+
+    private LineItemRows.LineItem[] rows;
+    private byte[][] values;
+    private EntryEncoder entryEncoder;
+    private EntryDecoder entryDecoder;
+
+    @Setup
+    public void setUp() throws IOException{
+        rows=LineItemRows.generate(BATCH,0x5EED);
+        entryEncoder=LineItemRows.newEntryEncoder(new KryoPool(1));
+        values=new byte[BATCH][];
+        for(int i=0;i<BATCH;i++){
+            values[i]=LineItemRows.entryValue(entryEncoder,rows[i]);
+        }
+        entryDecoder=new EntryDecoder();
+    }
+
+    @TearDown
+    public void tearDown(){
+        entryEncoder.close();
+        entryDecoder.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long encode() throws IOException{
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            sum+=LineItemRows.entryValue(entryEncoder,rows[i]).length;
+        }
+        return sum;
+    }
+
+    /**
+     * Walk every column of the row through the index, as a full-row scan does.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long seekAllColumns() throws IOException{
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            entryDecoder.set(values[i]);
+            MultiFieldDecoder decoder=entryDecoder.getEntryDecoder();
+            for(int c=0;c<LineItemRows.NUM_COLUMNS;c++){
+                if(!entryDecoder.seekForward(decoder,c))
+                    sum+=decoder.offset();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long decodeAllColumns() throws IOException{
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            entryDecoder.set(values[i]);
+            sum+=LineItemRows.decode(entryDecoder.getEntryDecoder());
+        }
+        return sum;
+    }
+
+    /**
+     * Fetch a single projected column, skipping everything before it.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long projectColumn() throws IOException{
+        long sum=0;
+        for(int i=0;i<BATCH;i++){
+            entryDecoder.set(values[i]);
+            sum+=entryDecoder.getData(PROJECTED_COLUMN).length;
+        }
+        return sum;
+    }
+}
@@ -849,6 +849,8 @@ public class SpliceKryoRegistry implements KryoPool.KryoRegistry{
         instance.register(ColumnStatisticsImpl.class,EXTERNALIZABLE_SERIALIZER,276);
         instance.register(StatisticsFlatMapFunction.class,EXTERNALIZABLE_SERIALIZER,277);
         instance.register(ColumnStatisticsMerge.class,EXTERNALIZABLE_SERIALIZER,278);
+        //LocatedRow is only written to transient spill files, so it is safe to change how it is serialized
+        instance.register(LocatedRow.class,EXTERNALIZABLE_SERIALIZER,279);
 
     }
 }
@@ -45,6 +45,7 @@ import com.splicemachine.ddl.DDLMessage;
 import com.splicemachine.derby.DerbyMessage;
 import com.splicemachine.derby.impl.sql.execute.actions.ActiveTransactionReader;
 import com.splicemachine.derby.impl.sql.execute.actions.DropAliasConstantOperation;
+import com.splicemachine.derby.impl.stats.TableStatisticsCache;
 import com.splicemachine.derby.impl.store.access.SpliceTransactionManager;
 import com.splicemachine.derby.jdbc.SpliceTransactionResourceImpl;
 import com.splicemachine.pipeline.ErrorState;
@@ -368,6 +369,7 @@ public class DDLUtils {
                     if(td==null) // Table Descriptor transaction never committed
                         return;
                     dm.invalidateFor(td,DependencyManager.DROP_STATISTICS,transactionResource.getLcc());
+                    TableStatisticsCache.instance().invalidate(td.getBaseConglomerateDescriptor().getConglomerateNumber());
                 }
             }finally{
                 if(prepared)
@@ -46,6 +46,30 @@ public abstract class DistributedJob implements Serializable{
         return getName() + "-" + uuid.toString();
     }
 
+    /**
+     * @return true for the internal maintenance work of the database (compactions, index population, table
+     * transformations and statistics collection), which the distributed server runs straight away rather than
+     * queueing it behind user queries.
+     */
+    public boolean isInternal() {
+        return true;
+    }
+
+    /**
+     * @return the user this job runs on behalf of, or {@code null} for internal jobs. Used by the
+     * distributed server to choose the resource pool the job is admitted through.
+     */
+    public String getUserId() {
+        return null;
+    }
+
+    /**
+     * @return the current role of the user this job runs on behalf of, or {@code null} if there is none
+     */
+    public String getRoleId() {
+        return null;
+    }
+
     public final void markSubmitted() {
         if (submitted) {
             throw new IllegalStateException("Job already submitted: " + toString());
@@ -194,6 +194,7 @@ public class HdfsImport {
                  charset,
                  true,
                  false,
+                 null,
                  results);
     }
 
@@ -274,6 +275,58 @@ public class HdfsImport {
                  charset,
                  false,
                  false,
+                 null,
+                 results);
+    }
+
+    /**
+     * The SYSCS_UTIL.BULK_IMPORT_HFILE system procedure imports data like {@link #IMPORT_DATA}, but rather than
+     * writing the rows through the write pipeline, it encodes the rows of the table and of its indexes in Spark, writes
+     * them into HFiles under <code>bulkImportDirectory</code> and loads those into the table's regions.
+     * <p/>
+     * The imported rows become visible atomically once all of the HFiles have been loaded. Primary key and unique
+     * constraints can only be checked among the imported rows, so tables having any of them are bulk imported only
+     * while they are empty. Those tables once they hold data, tables with triggers or foreign keys, and any import
+     * that doesn't run in Spark are imported through the write pipeline.
+     *
+     * @param bulkImportDirectory a directory, on the file system of the cluster, in which HFiles are staged before
+     *                            being loaded. It must be writable by the server, and is cleaned up after the import.
+     *                            If <code>null</code>, the rows are imported through the write pipeline.
+     * @see #IMPORT_DATA for the other parameters
+     * @throws SQLException
+     */
+    public static void BULK_IMPORT_HFILE(String schemaName,
+                                         String tableName,
+                                         String insertColumnList,
+                                         String fileName,
+                                         String columnDelimiter,
+                                         String characterDelimiter,
+                                         String timestampFormat,
+                                         String dateFormat,
+                                         String timeFormat,
+                                         long badRecordsAllowed,
+                                         String badRecordDirectory,
+                                         String oneLineRecords,
+                                         String charset,
+                                         String bulkImportDirectory,
+                                         ResultSet[] results
+    ) throws SQLException {
+        doImport(schemaName,
+                 tableName,
+                 insertColumnList,
+                 fileName,
+                 columnDelimiter,
+                 characterDelimiter,
+                 timestampFormat,
+                 dateFormat,
+                 timeFormat,
+                 badRecordsAllowed,
+                 badRecordDirectory,
+                 oneLineRecords,
+                 charset,
+                 false,
+                 false,
+                 bulkImportDirectory,
                  results);
     }
 
@@ -293,15 +346,16 @@ public class HdfsImport {
                                  String charset,
                                  boolean isUpsert,
                                  boolean isCheckScan,
+                                 String bulkImportDirectory,
                                  ResultSet[] results) throws SQLException {
         if (LOG.isTraceEnabled())
             SpliceLogUtils.trace(LOG, "doImport {schemaName=%s, tableName=%s, insertColumnList=%s, fileName=%s, " +
                                      "columnDelimiter=%s, characterDelimiter=%s, timestampFormat=%s, dateFormat=%s, " +
                 "timeFormat=%s, badRecordsAllowed=%d, badRecordDirectory=%s, oneLineRecords=%s, charset=%s, " +
-                "isUpsert=%s, isCheckScan=%s}",
+                "isUpsert=%s, isCheckScan=%s, bulkImportDirectory=%s}",
                                  schemaName, tableName, insertColumnListString, fileName, columnDelimiter, characterDelimiter,
                                  timestampFormat, dateFormat, timeFormat, badRecordsAllowed, badRecordDirectory,
-                                 oneLineRecords, charset, isUpsert, isCheckScan);
+                                 oneLineRecords, charset, isUpsert, isCheckScan, bulkImportDirectory);
 
         if (charset == null) {
             charset = StandardCharsets.UTF_8.name();
@@ -381,7 +435,8 @@ public class HdfsImport {
             ColumnInfo columnInfo = new ColumnInfo(conn, schemaName, tableName, insertColumnList);
             String insertSql = "INSERT INTO " + entityName + "(" + columnInfo.getInsertColumnNames() + ") " +
                 "--splice-properties insertMode=" + (isUpsert ? "UPSERT" : "INSERT") + ", statusDirectory=" +
-                badRecordDirectory + ", badRecordsAllowed=" + badRecordsAllowed + "\n" +
+                badRecordDirectory + ", badRecordsAllowed=" + badRecordsAllowed +
+                (bulkImportDirectory != null ? ", bulkImportDirectory=" + bulkImportDirectory : "") + "\n" +
                 " SELECT "+
                     generateColumnList(((EmbedConnection)conn).getLanguageConnection(),schemaName,tableName,insertColumnList) +
                     " from " +
@@ -29,10 +29,24 @@ public interface JoinTable extends AutoCloseable{
 
     interface Factory{
         JoinTable newTable();
+
+        /**
+         * @return the number of bytes of heap held by the table(s) this factory creates
+         */
+        long getMemorySize();
     }
 
+    /**
+     * @return the inner rows which join with the outer row. The rows may be shared with other lookups on the
+     * same table, and must not be modified.
+     */
     Iterator<ExecRow> fetchInner(ExecRow outer) throws IOException, StandardException;
 
+    /**
+     * @return true if at least one inner row joins with the outer row
+     */
+    boolean hasInner(ExecRow outer) throws IOException, StandardException;
+
     @Override
     void close();
 }
@@ -15,31 +15,57 @@
 
 package com.splicemachine.derby.impl.sql.execute.operations;
 
-import org.spark_project.guava.cache.Cache;
-import org.spark_project.guava.cache.CacheBuilder;
+import com.splicemachine.EngineDriver;
+import com.splicemachine.access.configuration.OperationConfiguration;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.derby.impl.sql.JoinTable;
 import com.splicemachine.pipeline.Exceptions;
-import com.splicemachine.primitives.Bytes;
 import com.splicemachine.stream.Stream;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a Cache of records for use in a Broadcast Join.
+ * <p/>
+ * The cache is bounded by the measured size of its tables (as reported by {@link JoinTable.Factory#getMemorySize()})
+ * rather than by their number. A table is pinned from the moment it is requested until the {@link JoinTable} made from
+ * it is closed, and pinned tables are never evicted; when the cache is over budget, the least recently used unpinned
+ * tables are dropped, as are tables which have gone unused for a short while.
+ * <p/>
+ * Concurrent requests for the same key share a single load, and the resulting table.
  *
  * @author Scott Fines
  *         Date: 10/27/15
  */
 public class BroadcastJoinCache{
-    private final Cache<Long,ReferenceCountingFactory> cache;
+    private static final long DEFAULT_IDLE_EXPIRATION=TimeUnit.SECONDS.toNanos(2);
+
+    private final ConcurrentMap<Object,Entry> cache=new ConcurrentHashMap<>();
     private final JoinTableLoader tableLoader;
+    private final long maxMemory;
+    private final long idleExpirationNanos;
+
+    private final AtomicLong memoryUsed=new AtomicLong(0L);
+    private final AtomicLong lastExpiration=new AtomicLong(System.nanoTime());
+    private final AtomicLong hits=new AtomicLong(0L);
+    private final AtomicLong loads=new AtomicLong(0L);
+    private final AtomicLong evictions=new AtomicLong(0L);
 
     interface JoinTableLoader{
         JoinTable.Factory load(Callable<Stream<ExecRow>> streamLoader,
@@ -49,29 +75,44 @@ public class BroadcastJoinCache{
     }
 
     public BroadcastJoinCache(){
-       this(ByteBufferMapTableLoader.INSTANCE);
+       this(CompactJoinTableLoader.INSTANCE);
     }
 
     public BroadcastJoinCache(JoinTableLoader tableLoader){
+        this(tableLoader,configuredCacheSize(),DEFAULT_IDLE_EXPIRATION);
+    }
+
+    BroadcastJoinCache(JoinTableLoader tableLoader,long maxMemory,long idleExpirationNanos){
         this.tableLoader = tableLoader;
-        this.cache =CacheBuilder.newBuilder()
-                .maximumSize(1000)
-                .expireAfterAccess(2,TimeUnit.SECONDS)
-                .softValues()
-                .build();
+        this.maxMemory=maxMemory;
+        this.idleExpirationNanos=idleExpirationNanos;
     }
 
-    public JoinTable.Factory get(Long operationId,
+    /**
+     * Get the join table for the specified key, loading it if it is not already cached.
+     *
+     * @param tableKey identifies the inner table. Requests with equal keys must produce identical tables,
+     *                 including the encoding of the outer key (see {@link BroadcastJoinTableKey})
+     * @return a factory for the table. The table is pinned in the cache until the {@link JoinTable} created
+     * from the factory is closed.
+     */
+    public JoinTable.Factory get(Object tableKey,
                          Callable<Stream<ExecRow>> loader,
                          int[] rightHashKeys,
                          int[] leftHashKeys,
                          ExecRow leftTemplateRow) throws IOException, StandardException{
+        expireIdleTables();
+        Entry entry=pin(tableKey,new Loader(tableLoader,rightHashKeys,leftHashKeys,leftTemplateRow,loader));
         try{
-            Loader callable=new Loader(operationId,tableLoader,rightHashKeys,leftHashKeys,leftTemplateRow,loader);
-            ReferenceCountingFactory joinTable=cache.get(operationId,callable);
-            joinTable.refCount.incrementAndGet();
-            return joinTable;
+            return new ReferenceCountingFactory(entry.await(),entry);
+        }catch(InterruptedException e){
+            entry.unpin();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
         }catch(ExecutionException e){
+            entry.unpin();
+            //don't cache the failure; the next request will try again
+            cache.remove(tableKey,entry);
             Throwable c = e.getCause();
             if(c instanceof StandardException)
                 throw (StandardException)c;
@@ -81,23 +122,166 @@ public class BroadcastJoinCache{
         }
     }
 
-    private class Loader implements Callable<ReferenceCountingFactory>{
+    /**
+     * @return the total number of bytes of heap held by the cached join tables
+     */
+    public long getMemorySize(){
+        return memoryUsed.get();
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getLoads(){
+        return loads.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private Entry pin(Object tableKey,Loader loader){
+        while(true){
+            Entry entry=cache.get(tableKey);
+            boolean created=false;
+            if(entry==null){
+                Entry newEntry=new Entry(tableKey,loader);
+                entry=cache.putIfAbsent(tableKey,newEntry);
+                if(entry==null){
+                    entry=newEntry;
+                    created=true;
+                }
+            }
+            if(entry.pin()){
+                if(created){
+                    loads.incrementAndGet();
+                    entry.load();
+                }else
+                    hits.incrementAndGet();
+                return entry;
+            }
+            //we lost a race with eviction, so the entry is no longer in the cache. Try again
+        }
+    }
+
+    private void expireIdleTables(){
+        long now=System.nanoTime();
+        long last=lastExpiration.get();
+        if(now-last<idleExpirationNanos || !lastExpiration.compareAndSet(last,now)) return;
+        for(Entry entry : cache.values()){
+            if(now-entry.lastAccess>idleExpirationNanos)
+                evict(entry);
+        }
+    }
+
+    private synchronized void evictIfNecessary(){
+        if(memoryUsed.get()<=maxMemory) return;
+        List<Entry> candidates=new ArrayList<>();
+        for(Entry entry : cache.values()){
+            if(entry.isEvictable()){
+                //take a stable copy for sorting, since the access time can change underneath us
+                entry.sortTime=entry.lastAccess;
+                candidates.add(entry);
+            }
+        }
+        Collections.sort(candidates,new Comparator<Entry>(){
+            @Override
+            public int compare(Entry o1,Entry o2){
+                return Long.compare(o1.sortTime,o2.sortTime);
+            }
+        });
+        Iterator<Entry> iter=candidates.iterator();
+        while(memoryUsed.get()>maxMemory && iter.hasNext()){
+            evict(iter.next());
+        }
+    }
+
+    private void evict(Entry entry){
+        if(!entry.isEvictable() || !entry.pins.compareAndSet(0,-1)) return;
+        cache.remove(entry.key,entry);
+        memoryUsed.addAndGet(-entry.size);
+        evictions.incrementAndGet();
+    }
+
+    private static long configuredCacheSize(){
+        EngineDriver driver=EngineDriver.driver();
+        return driver==null?OperationConfiguration.DEFAULT_BROADCAST_JOIN_CACHE_SIZE:driver.getConfiguration().getBroadcastJoinCacheSize();
+    }
+
+    private class Entry{
+        private final Object key;
+        private final FutureTask<JoinTable.Factory> loadTask;
+        /*
+         * The number of outstanding references to the table, or -1 once the table has been evicted
+         * (after which it can no longer be pinned).
+         */
+        private final AtomicInteger pins=new AtomicInteger(0);
+        private volatile long lastAccess=System.nanoTime();
+        private volatile boolean loaded;
+        private long size;
+        private long sortTime;
+
+        Entry(Object key,Loader loader){
+            this.key=key;
+            this.loadTask=new FutureTask<>(loader);
+        }
+
+        boolean pin(){
+            int p;
+            do{
+                p=pins.get();
+                if(p<0) return false;
+            }while(!pins.compareAndSet(p,p+1));
+            lastAccess=System.nanoTime();
+            return true;
+        }
+
+        void unpin(){
+            lastAccess=System.nanoTime();
+            pins.decrementAndGet();
+            if(memoryUsed.get()>maxMemory)
+                evictIfNecessary();
+        }
+
+        void load(){
+            loadTask.run();
+            try{
+                JoinTable.Factory factory=loadTask.get();
+                size=factory.getMemorySize();
+                loaded=true;
+                memoryUsed.addAndGet(size);
+                evictIfNecessary();
+            }catch(InterruptedException|ExecutionException ignored){
+                //the failure is reported to everyone waiting on the table by await()
+            }
+        }
+
+        JoinTable.Factory await() throws InterruptedException, ExecutionException{
+            return loadTask.get();
+        }
+
+        boolean isEvictable(){
+            return loaded && pins.get()==0;
+        }
+    }
+
+    private class Loader implements Callable<JoinTable.Factory>{
         private final JoinTableLoader loader;
         private final int[] innerHashKeys;
         private final int[] outerHashKeys;
         private final ExecRow outerTemplateRow;
         private final Callable<Stream<ExecRow>> streamLoader;
 
-        private final Long operationId;
-
-        public Loader(Long operationId,
-                      JoinTableLoader loader,
+        public Loader(JoinTableLoader loader,
                       int[] innerHashKeys,
                       int[] outerHashKeys,
                       ExecRow outerTemplateRow,
                       Callable<Stream<ExecRow>> streamLoader){
             this.loader=loader;
-            this.operationId=operationId;
             this.innerHashKeys=innerHashKeys;
             this.outerHashKeys=outerHashKeys;
             this.outerTemplateRow=outerTemplateRow;
@@ -105,9 +289,8 @@ public class BroadcastJoinCache{
         }
 
         @Override
-        public ReferenceCountingFactory call() throws Exception{
-            JoinTable.Factory load=loader.load(streamLoader,innerHashKeys,outerHashKeys,outerTemplateRow);
-            return new ReferenceCountingFactory(load,operationId);
+        public JoinTable.Factory call() throws Exception{
+            return loader.load(streamLoader,innerHashKeys,outerHashKeys,outerTemplateRow);
         }
     }
 
@@ -126,6 +309,11 @@ public class BroadcastJoinCache{
             return delegate.fetchInner(outer);
         }
 
+        @Override
+        public boolean hasInner(ExecRow outer) throws IOException, StandardException{
+            return delegate.hasInner(outer);
+        }
+
         @Override
         public void close(){
             refFactory.markClosed();
@@ -135,12 +323,12 @@ public class BroadcastJoinCache{
 
     private class ReferenceCountingFactory implements JoinTable.Factory{
         private final JoinTable.Factory delegate;
-        private final Long id;
-        private AtomicInteger refCount = new AtomicInteger(0);
+        private final Entry entry;
+        private final AtomicBoolean closed=new AtomicBoolean(false);
 
-        public ReferenceCountingFactory(JoinTable.Factory delegate,Long id){
+        public ReferenceCountingFactory(JoinTable.Factory delegate,Entry entry){
             this.delegate=delegate;
-            this.id=id;
+            this.entry=entry;
         }
 
         @Override
@@ -148,10 +336,15 @@ public class BroadcastJoinCache{
             return new ReferenceCountedJoinTable(delegate.newTable(),this);
         }
 
+        @Override
+        public long getMemorySize(){
+            return delegate.getMemorySize();
+        }
+
         public void markClosed(){
-            int refC=refCount.decrementAndGet();
-            if(refC<=0)
-                cache.invalidate(id);
+            //each request holds a single pin, no matter how many tables it creates
+            if(closed.compareAndSet(false,true))
+                entry.unpin();
         }
     }
 }
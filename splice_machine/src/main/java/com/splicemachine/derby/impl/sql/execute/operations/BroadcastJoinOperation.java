@@ -150,10 +150,21 @@ public class BroadcastJoinOperation extends JoinOperation{
         sequenceId = in.readLong();
     }
 
+    /**
+     * @return an id for this join which is shared by every task of a single execution of the statement, and
+     * which changes with each execution, so that the inner table cached for one execution is not served to
+     * the next.
+     */
     public long getSequenceId() {
         return sequenceId;
     }
 
+    @Override
+    protected void beginExecution(){
+        this.sequenceId = Bytes.toLong(operationInformation.getUUIDGenerator().nextBytes());
+        super.beginExecution();
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException{
         super.writeExternal(out);
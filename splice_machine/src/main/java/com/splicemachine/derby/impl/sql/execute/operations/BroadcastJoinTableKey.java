@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.store.access.Qualifier;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.stream.output.WriteReadUtils;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.storage.DataScan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Identifies the inner table of a Broadcast Join in the {@link BroadcastJoinCache}.
+ * <p/>
+ * When the right side of the join is a plain table scan read at a fixed snapshot (a read-only, snapshot isolation
+ * transaction), the rows it returns are determined entirely by the conglomerate, the transaction, and the shape of
+ * the scan. In that case the key is built from those things, so that every join which would load the same rows into
+ * the same table shares a single copy--across tasks, and across separate operations in the same transaction.
+ * <p/>
+ * In every other case (a writable or read-committed transaction, or a right side which is anything other than a
+ * base table scan) there is no cheap way to prove that two loads would be identical, so the table is keyed by the
+ * operation's sequence id, which is renewed on every execution of the statement; the table is then shared only by
+ * the tasks (and nested loop re-opens) of a single execution.
+ */
+public final class BroadcastJoinTableKey{
+    private final long conglomerateId;
+    private final long txnId;
+    private final byte[] fingerprint;
+    private final int hashCode;
+
+    private BroadcastJoinTableKey(long conglomerateId,long txnId,byte[] fingerprint){
+        this.conglomerateId=conglomerateId;
+        this.txnId=txnId;
+        this.fingerprint=fingerprint;
+        int h=Long.hashCode(conglomerateId);
+        h=31*h+Long.hashCode(txnId);
+        h=31*h+Arrays.hashCode(fingerprint);
+        this.hashCode=h;
+    }
+
+    /**
+     * @return the key under which the inner table of the specified join should be cached.
+     */
+    public static Object forOperation(JoinOperation op) throws StandardException{
+        SpliceOperation right=op.getRightOperation();
+        if(right.getClass()!=TableScanOperation.class)
+            return op.getSequenceId();
+        TableScanOperation scan=(TableScanOperation)right;
+        TxnView txn=scan.getCurrentTransaction();
+        if(txn==null || txn.allowsWrites() || txn.getIsolationLevel()!=Txn.IsolationLevel.SNAPSHOT_ISOLATION)
+            return op.getSequenceId();
+
+        try{
+            return new BroadcastJoinTableKey(scan.getScanInformation().getConglomerateId(),
+                    txn.getTxnId(),
+                    fingerprint(op,scan));
+        }catch(IOException e){
+            //we are writing to memory, so this can't actually happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(this==o) return true;
+        if(!(o instanceof BroadcastJoinTableKey)) return false;
+        BroadcastJoinTableKey that=(BroadcastJoinTableKey)o;
+        return conglomerateId==that.conglomerateId
+                && txnId==that.txnId
+                && hashCode==that.hashCode
+                && Arrays.equals(fingerprint,that.fingerprint);
+    }
+
+    @Override
+    public int hashCode(){
+        return hashCode;
+    }
+
+    @Override
+    public String toString(){
+        return "BroadcastJoinTableKey{conglomerateId="+conglomerateId+", txnId="+txnId+"}";
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * Everything (other than the conglomerate and transaction) which determines which rows are loaded, how they
+     * are decoded, and how the join keys on both sides are encoded.
+     */
+    private static byte[] fingerprint(JoinOperation op,TableScanOperation scan) throws StandardException, IOException{
+        ByteArrayOutputStream baos=new ByteArrayOutputStream();
+        DataOutputStream out=new DataOutputStream(baos);
+
+        DataScan dataScan=scan.getNonSIScan();
+        writeBytes(out,dataScan.getStartKey());
+        writeBytes(out,dataScan.getStopKey());
+        out.writeBoolean(dataScan.isDescendingScan());
+        //sort the attributes so that equal scans always produce equal fingerprints
+        Map<String,byte[]> attributes=dataScan.allAttributes();
+        if(attributes==null){
+            out.writeInt(-1);
+        }else{
+            out.writeInt(attributes.size());
+            for(Map.Entry<String,byte[]> attribute : new TreeMap<>(attributes).entrySet()){
+                out.writeUTF(attribute.getKey());
+                writeBytes(out,attribute.getValue());
+            }
+        }
+        writeQualifiers(out,scan.getScanInformation().getScanQualifiers());
+
+        String tableVersion=scan.getTableVersion();
+        out.writeBoolean(tableVersion!=null);
+        if(tableVersion!=null)
+            out.writeUTF(tableVersion);
+        writeInts(out,scan.getKeyDecodingMap());
+        writeInts(out,scan.getRowDecodingMap());
+        writeInts(out,scan.getRootAccessedCols(scan.getScanInformation().getConglomerateId()));
+        writeInts(out,WriteReadUtils.getExecRowTypeFormatIds(scan.getExecRowDefinition()));
+
+        writeInts(out,op.getRightHashKeys());
+        writeInts(out,op.getLeftHashKeys());
+        ExecRow leftTemplate=op.getLeftOperation().getExecRowDefinition();
+        writeInts(out,WriteReadUtils.getExecRowTypeFormatIds(leftTemplate));
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    /*
+     * Qualifiers are evaluated against each row as it is read, and may depend on parameter values, so the
+     * values they compare against are part of the fingerprint.
+     */
+    private static void writeQualifiers(DataOutputStream out,Qualifier[][] qualifiers) throws StandardException, IOException{
+        if(qualifiers==null){
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(qualifiers.length);
+        for(Qualifier[] clause : qualifiers){
+            if(clause==null){
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(clause.length);
+            for(Qualifier qualifier : clause){
+                out.writeInt(qualifier.getColumnId());
+                out.writeInt(qualifier.getOperator());
+                out.writeBoolean(qualifier.negateCompareResult());
+                out.writeBoolean(qualifier.getOrderedNulls());
+                out.writeBoolean(qualifier.getUnknownRV());
+                DataValueDescriptor orderable=qualifier.getOrderable();
+                if(orderable==null || orderable.isNull()){
+                    out.writeInt(-1);
+                }else{
+                    out.writeInt(orderable.getTypeFormatId());
+                    out.writeUTF(orderable.getString());
+                }
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out,byte[] bytes) throws IOException{
+        if(bytes==null){
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInts(DataOutputStream out,int[] ints) throws IOException{
+        if(ints==null){
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(ints.length);
+        for(int i : ints){
+            out.writeInt(i);
+        }
+    }
+}
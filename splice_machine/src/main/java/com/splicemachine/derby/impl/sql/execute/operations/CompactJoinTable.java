@@ -0,0 +1,394 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.utils.marshall.BareKeyHash;
+import com.splicemachine.derby.utils.marshall.DataHash;
+import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
+import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
+import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
+import com.splicemachine.hash.Hash64;
+import com.splicemachine.hash.HashFunctions;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A broadcast join table which holds the inner rows in encoded form.
+ * <p/>
+ * Each inner row is encoded (join key first, then the full row) into a single shared byte arena, and indexed
+ * by an open-addressing hash table over the 64-bit hash of its encoded join key. Rows which share a join key
+ * are chained through an {@code int[]}, in the order in which they were loaded. So the whole table is a handful
+ * of primitive arrays, regardless of the number of rows or keys, and its size is known exactly.
+ * <p/>
+ * Looking up an outer row encodes its join key once, and walks the index and arena directly; matching rows are
+ * decoded lazily as the returned iterator advances.
+ * <p/>
+ * Decoded rows are kept in a small direct-mapped cache (indexed by row id) private to each {@link JoinTable}, so
+ * an inner row which matches many outer rows is decoded, and allocated, once rather than once per match. As with
+ * the map of pre-built rows this table replaced, a row may therefore be handed out by more than one lookup, and
+ * callers must not modify the rows they are given (the broadcast join functions only ever merge them by reference
+ * into new output rows). The cache is bounded, so the heap held on top of the arena stays small no matter how
+ * large the inner table is. A lookup still allocates its outer key ({@link DataHash} only encodes into a new
+ * array) and, when there are matches, the iterator over them; {@link #hasInner(ExecRow)} allocates no iterator.
+ * <p/>
+ * The arrays are shared (read-only) by every {@link JoinTable} created from the same {@link Factory}, while the
+ * encoders and decoders, which are not thread safe, are private to each table.
+ */
+class CompactJoinTable implements JoinTable{
+    private static final Hash64 HASH=HashFunctions.murmur2_64(0);
+    private static final int EMPTY=-1;
+    private static final int MAX_DECODED_ROWS=1024;
+
+    private final Data data;
+    private final DataHash<ExecRow> outerKeyEncoder;
+    private final KeyHashDecoder rowDecoder;
+    private final int[] decodedIds;
+    private final ExecRow[] decodedRows;
+
+    private CompactJoinTable(Data data,int[] outerHashKeys,ExecRow outerTemplateRow){
+        this.data=data;
+        DescriptorSerializer[] outerSerializers=VersionedSerializers.latestVersion(false).getSerializers(outerTemplateRow);
+        this.outerKeyEncoder=BareKeyHash.encoder(outerHashKeys,null,outerSerializers);
+        if(data.innerTemplate!=null){
+            DescriptorSerializer[] innerSerializers=VersionedSerializers.latestVersion(false).getSerializers(data.innerTemplate);
+            this.rowDecoder=BareKeyHash.decoder(allColumns(data.innerTemplate),null,innerSerializers);
+        }else
+            this.rowDecoder=null;
+        int cacheSize=1;
+        while(cacheSize<data.numRows && cacheSize<MAX_DECODED_ROWS)
+            cacheSize<<=1;
+        this.decodedIds=newSlots(cacheSize);
+        this.decodedRows=new ExecRow[cacheSize];
+    }
+
+    @Override
+    public Iterator<ExecRow> fetchInner(ExecRow outer) throws IOException, StandardException{
+        int first=findFirst(outer);
+        if(first==EMPTY)
+            return Collections.emptyIterator();
+        return new Matches(first);
+    }
+
+    @Override
+    public boolean hasInner(ExecRow outer) throws IOException, StandardException{
+        return findFirst(outer)!=EMPTY;
+    }
+
+    @Override
+    public void close(){
+        try{
+            outerKeyEncoder.close();
+            if(rowDecoder!=null)
+                rowDecoder.close();
+        }catch(IOException ignored){
+            //encoders hold no external resources
+        }
+    }
+
+    static class Factory implements JoinTable.Factory{
+        private final Data data;
+        private final int[] outerHashKeys;
+        private final ExecRow outerTemplateRow;
+
+        private Factory(Data data,int[] outerHashKeys,ExecRow outerTemplateRow){
+            this.data=data;
+            this.outerHashKeys=outerHashKeys;
+            this.outerTemplateRow=outerTemplateRow;
+        }
+
+        @Override
+        public JoinTable newTable(){
+            return new CompactJoinTable(data,outerHashKeys,outerTemplateRow);
+        }
+
+        @Override
+        public long getMemorySize(){
+            return data.memorySize();
+        }
+    }
+
+    /**
+     * Accumulates inner rows into a table. Not thread safe.
+     */
+    static class Builder{
+        private static final float LOAD_FACTOR=0.5f;
+
+        private final int[] innerHashKeys;
+
+        private ExecRow innerTemplate;
+        private DataHash<ExecRow> keyEncoder;
+        private DataHash<ExecRow> rowEncoder;
+
+        private byte[] arena=new byte[1024];
+        private int arenaSize;
+
+        private int numRows;
+        private int[] rowOffsets=new int[16];
+        private int[] keyLengths=new int[16];
+        private int[] rowLengths=new int[16];
+        private int[] nextRow=new int[16];
+
+        private int numKeys;
+        private long[] slotHashes=new long[16];
+        private int[] slotHeads=newSlots(16);
+        private int[] slotTails=new int[16];
+
+        Builder(int[] innerHashKeys){
+            this.innerHashKeys=innerHashKeys;
+        }
+
+        void add(ExecRow row) throws StandardException, IOException{
+            if(innerTemplate==null){
+                innerTemplate=row.getNewNullRow();
+                DescriptorSerializer[] serializers=VersionedSerializers.latestVersion(false).getSerializers(row);
+                keyEncoder=BareKeyHash.encoder(innerHashKeys,null,serializers);
+                rowEncoder=BareKeyHash.encoder(allColumns(row),null,serializers);
+            }
+            keyEncoder.setRow(row);
+            byte[] key=keyEncoder.encode();
+            rowEncoder.setRow(row);
+            byte[] encodedRow=rowEncoder.encode();
+
+            int rowId=appendRow(key,encodedRow);
+            long hash=HASH.hash(key,0,key.length);
+            int slot=findSlot(hash,key);
+            if(slotHeads[slot]==EMPTY){
+                slotHashes[slot]=hash;
+                slotHeads[slot]=rowId;
+                slotTails[slot]=rowId;
+                numKeys++;
+                if(numKeys>slotHeads.length*LOAD_FACTOR)
+                    resizeIndex();
+            }else{
+                nextRow[slotTails[slot]]=rowId;
+                slotTails[slot]=rowId;
+            }
+        }
+
+        Factory build(int[] outerHashKeys,ExecRow outerTemplateRow){
+            Data data=new Data(innerTemplate,
+                    Arrays.copyOf(arena,arenaSize),
+                    numRows,
+                    Arrays.copyOf(rowOffsets,numRows),
+                    Arrays.copyOf(keyLengths,numRows),
+                    Arrays.copyOf(rowLengths,numRows),
+                    Arrays.copyOf(nextRow,numRows),
+                    slotHashes,
+                    slotHeads);
+            return new Factory(data,outerHashKeys,outerTemplateRow);
+        }
+
+        private int appendRow(byte[] key,byte[] encodedRow) throws IOException{
+            long newSize=(long)arenaSize+key.length+encodedRow.length;
+            if(newSize>Integer.MAX_VALUE-8)
+                throw new IOException("Broadcast join inner table exceeds the maximum size of 2GB");
+            if(newSize>arena.length)
+                arena=Arrays.copyOf(arena,(int)Math.min(Integer.MAX_VALUE-8,Math.max(newSize,2L*arena.length)));
+            if(numRows==rowOffsets.length){
+                int newLength=2*numRows;
+                rowOffsets=Arrays.copyOf(rowOffsets,newLength);
+                keyLengths=Arrays.copyOf(keyLengths,newLength);
+                rowLengths=Arrays.copyOf(rowLengths,newLength);
+                nextRow=Arrays.copyOf(nextRow,newLength);
+            }
+            int rowId=numRows++;
+            rowOffsets[rowId]=arenaSize;
+            keyLengths[rowId]=key.length;
+            rowLengths[rowId]=encodedRow.length;
+            nextRow[rowId]=EMPTY;
+            System.arraycopy(key,0,arena,arenaSize,key.length);
+            System.arraycopy(encodedRow,0,arena,arenaSize+key.length,encodedRow.length);
+            arenaSize=(int)newSize;
+            return rowId;
+        }
+
+        private void resizeIndex(){
+            int newLength=2*slotHeads.length;
+            long[] newHashes=new long[newLength];
+            int[] newHeads=newSlots(newLength);
+            int[] newTails=new int[newLength];
+            int mask=newLength-1;
+            for(int i=0;i<slotHeads.length;i++){
+                if(slotHeads[i]==EMPTY) continue;
+                //keys in the old index are distinct, so we only need an empty slot
+                int slot=(int)slotHashes[i]&mask;
+                while(newHeads[slot]!=EMPTY)
+                    slot=(slot+1)&mask;
+                newHashes[slot]=slotHashes[i];
+                newHeads[slot]=slotHeads[i];
+                newTails[slot]=slotTails[i];
+            }
+            slotHashes=newHashes;
+            slotHeads=newHeads;
+            slotTails=newTails;
+        }
+
+        /*
+         * Linear probe for the slot holding the key, or for the empty slot where it belongs.
+         */
+        private int findSlot(long hash,byte[] key){
+            int mask=slotHeads.length-1;
+            int slot=(int)hash&mask;
+            int head;
+            while((head=slotHeads[slot])!=EMPTY){
+                if(slotHashes[slot]==hash && keyEquals(arena,rowOffsets[head],keyLengths[head],key,0,key.length))
+                    return slot;
+                slot=(slot+1)&mask;
+            }
+            return slot;
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods and classes*/
+
+    private int findFirst(ExecRow outer) throws IOException, StandardException{
+        if(data.numRows==0)
+            return EMPTY;
+        outerKeyEncoder.setRow(outer);
+        byte[] outerKey=outerKeyEncoder.encode();
+        assert outerKey!=null: "Programmer error: outer row does not have row key";
+        return data.find(outerKey);
+    }
+
+    private ExecRow decode(int rowId) throws StandardException{
+        int slot=rowId&(decodedIds.length-1);
+        if(decodedIds[slot]==rowId)
+            return decodedRows[slot];
+        //rows which have been handed out are never modified, so a replaced row is simply dropped
+        ExecRow row=data.innerTemplate.getNewNullRow();
+        rowDecoder.set(data.arena,data.rowOffsets[rowId]+data.keyLengths[rowId],data.rowLengths[rowId]);
+        rowDecoder.decode(row);
+        decodedIds[slot]=rowId;
+        decodedRows[slot]=row;
+        return row;
+    }
+
+    private class Matches implements Iterator<ExecRow>{
+        private int next;
+
+        Matches(int first){
+            this.next=first;
+        }
+
+        @Override
+        public boolean hasNext(){
+            return next!=EMPTY;
+        }
+
+        @Override
+        public ExecRow next(){
+            if(next==EMPTY) throw new NoSuchElementException();
+            int rowId=next;
+            next=data.nextRow[rowId];
+            try{
+                return decode(rowId);
+            }catch(StandardException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void remove(){
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * The immutable contents of a table, shared by every JoinTable created from it.
+     */
+    private static class Data{
+        private final ExecRow innerTemplate;
+        private final byte[] arena;
+        private final int numRows;
+        private final int[] rowOffsets;
+        private final int[] keyLengths;
+        private final int[] rowLengths;
+        private final int[] nextRow;
+        private final long[] slotHashes;
+        private final int[] slotHeads;
+
+        Data(ExecRow innerTemplate,
+             byte[] arena,
+             int numRows,
+             int[] rowOffsets,
+             int[] keyLengths,
+             int[] rowLengths,
+             int[] nextRow,
+             long[] slotHashes,
+             int[] slotHeads){
+            this.innerTemplate=innerTemplate;
+            this.arena=arena;
+            this.numRows=numRows;
+            this.rowOffsets=rowOffsets;
+            this.keyLengths=keyLengths;
+            this.rowLengths=rowLengths;
+            this.nextRow=nextRow;
+            this.slotHashes=slotHashes;
+            this.slotHeads=slotHeads;
+        }
+
+        int find(byte[] key){
+            long hash=HASH.hash(key,0,key.length);
+            int mask=slotHeads.length-1;
+            int slot=(int)hash&mask;
+            int head;
+            while((head=slotHeads[slot])!=EMPTY){
+                if(slotHashes[slot]==hash && keyEquals(arena,rowOffsets[head],keyLengths[head],key,0,key.length))
+                    return head;
+                slot=(slot+1)&mask;
+            }
+            return EMPTY;
+        }
+
+        long memorySize(){
+            //array headers are 16 bytes; the template row is small and fixed, so we don't count it
+            return 16L+arena.length
+                    +4*(16L+4L*numRows)
+                    +16L+8L*slotHashes.length
+                    +16L+4L*slotHeads.length;
+        }
+    }
+
+    private static int[] newSlots(int size){
+        int[] slots=new int[size];
+        Arrays.fill(slots,EMPTY);
+        return slots;
+    }
+
+    private static int[] allColumns(ExecRow template){
+        int[] columns=new int[template.nColumns()];
+        for(int i=0;i<columns.length;i++){
+            columns[i]=i;
+        }
+        return columns;
+    }
+
+    private static boolean keyEquals(byte[] arena,int offset,int length,byte[] key,int keyOffset,int keyLength){
+        if(length!=keyLength) return false;
+        for(int i=0;i<length;i++){
+            if(arena[offset+i]!=key[keyOffset+i]) return false;
+        }
+        return true;
+    }
+}
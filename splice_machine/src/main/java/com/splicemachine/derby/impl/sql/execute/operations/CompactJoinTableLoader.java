@@ -17,56 +17,32 @@ package com.splicemachine.derby.impl.sql.execute.operations;
 
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.derby.impl.sql.JoinTable;
-import com.splicemachine.derby.utils.marshall.BareKeyHash;
-import com.splicemachine.derby.utils.marshall.KeyEncoder;
-import com.splicemachine.derby.utils.marshall.NoOpPostfix;
-import com.splicemachine.derby.utils.marshall.NoOpPrefix;
-import com.splicemachine.derby.utils.marshall.dvd.DescriptorSerializer;
-import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
 import com.splicemachine.stream.Stream;
 import com.splicemachine.stream.StreamException;
 import javax.annotation.concurrent.ThreadSafe;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 /**
+ * Loads broadcast join inner sides into {@link CompactJoinTable}s.
+ *
  * @author Scott Fines
  *         Date: 10/27/15
  */
 @ThreadSafe
-class ByteBufferMapTableLoader implements BroadcastJoinCache.JoinTableLoader{
-    public static BroadcastJoinCache.JoinTableLoader INSTANCE = new ByteBufferMapTableLoader();
+class CompactJoinTableLoader implements BroadcastJoinCache.JoinTableLoader{
+    public static BroadcastJoinCache.JoinTableLoader INSTANCE = new CompactJoinTableLoader();
 
-    private ByteBufferMapTableLoader(){} //singleton class
+    private CompactJoinTableLoader(){} //singleton class
 
     @Override
     public JoinTable.Factory load(Callable<Stream<ExecRow>> streamLoader,int[] innerHashKeys,int[] outerHashKeys, ExecRow outerTemplateRow) throws ExecutionException{
-        Map<ByteBuffer, List<ExecRow>> table=new HashMap<>();
-
-        DescriptorSerializer[] innerSerializers=null;
-        KeyEncoder innerKeyEncoder=null;
+        CompactJoinTable.Builder builder=new CompactJoinTable.Builder(innerHashKeys);
 
         try(Stream<ExecRow> innerRows=streamLoader.call()){
             ExecRow right;
             while((right=innerRows.next())!=null){
-                if(innerSerializers==null){
-                    innerSerializers=VersionedSerializers.latestVersion(false).getSerializers(right);
-                    innerKeyEncoder=new KeyEncoder(NoOpPrefix.INSTANCE,
-                            BareKeyHash.encoder(innerHashKeys,null,innerSerializers),NoOpPostfix.INSTANCE);
-                }
-
-                ByteBuffer key=ByteBuffer.wrap(innerKeyEncoder.getKey(right));
-                List<ExecRow> rows=table.get(key);
-                if(rows==null){
-                    rows=new ArrayList<>(1);
-                    table.put(key,rows);
-                }
-                rows.add(right.getClone());
+                builder.add(right);
             }
         }catch(StreamException e){
            throw new ExecutionException(e.getCause());
@@ -75,6 +51,6 @@ class ByteBufferMapTableLoader implements BroadcastJoinCache.JoinTableLoader{
             else throw new ExecutionException(e);
         }
 
-        return new ByteBufferMappedJoinTable.Factory(table,outerHashKeys,outerTemplateRow);
+        return builder.build(outerHashKeys,outerTemplateRow);
     }
 }
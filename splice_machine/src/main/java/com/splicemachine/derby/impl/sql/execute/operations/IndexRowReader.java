@@ -24,6 +24,7 @@ import com.splicemachine.derby.impl.store.access.hbase.HBaseRowLocation;
 import com.splicemachine.derby.utils.marshall.KeyDecoder;
 import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
 import com.splicemachine.pipeline.Exceptions;
+import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.api.data.TxnOperationFactory;
 import com.splicemachine.si.api.txn.TxnView;
 import com.splicemachine.si.constants.SIConstants;
@@ -35,6 +36,8 @@ import org.apache.log4j.Logger;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -72,6 +75,8 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
 
     private LocatedRow heapRowToReturn=new LocatedRow();
     private LocatedRow indexRowToReturn;
+    /*the sorted start keys of the regions of the main table, shared by the lookups of this reader*/
+    private volatile RegionStartKeys regionStartKeys;
 
     IndexRowReader(ExecutorService lookupService,
                    Iterator<LocatedRow> sourceIterator,
@@ -107,7 +112,11 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
         keyDecoder.close();
         if(entryDecoder!=null)
             entryDecoder.close();
-        lookupService.shutdownNow();
+        // the lookup service is shared, only give up on the lookups of this reader
+        for(Future<List<Pair<LocatedRow, DataResult>>> future : resultFutures){
+            future.cancel(true);
+        }
+        resultFutures.clear();
     }
 
     @Override
@@ -199,6 +208,12 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
         }
     }
 
+    /**
+     * Fetches the base rows of a batch of index rows.
+     * <p>
+     * The row locations are sorted and grouped by the region which owns them, and each group is fetched with
+     * its own multi-get, in parallel on the lookup service. The results are returned in the order of the index rows.
+     */
     public class Lookup implements Callable<List<Pair<LocatedRow, DataResult>>>{
         private final List<LocatedRow> sourceRows;
 
@@ -208,25 +223,153 @@ public class IndexRowReader implements Iterator<LocatedRow>, Iterable<LocatedRow
 
         @Override
         public List<Pair<LocatedRow, DataResult>> call() throws Exception{
-            List<byte[]> rowKeys = new ArrayList<>(sourceRows.size());
-            for(LocatedRow sourceRow : sourceRows){
-                byte[] row=sourceRow.getRowLocation().getBytes();
-                rowKeys.add(row);
+            int size=sourceRows.size();
+            final byte[][] rowKeys=new byte[size][];
+            Integer[] order=new Integer[size];
+            for(int i=0;i<size;i++){
+                rowKeys[i]=sourceRows.get(i).getRowLocation().getBytes();
+                order[i]=i;
             }
+            Arrays.sort(order,new Comparator<Integer>(){
+                @Override
+                public int compare(Integer o1,Integer o2){
+                    return Bytes.BASE_COMPARATOR.compare(rowKeys[o1],rowKeys[o2]);
+                }
+            });
+
             Attributable attributable = new MapAttributes();
             attributable.addAttribute(SIConstants.ENTRY_PREDICATE_LABEL,predicateFilterBytes);
             operationFactory.encodeForReads(attributable,txn,false);
 
+            DataResult[] results=new DataResult[size];
+            List<RegionLookup> regionLookups;
+            try(Partition table = tableFactory.getTable(Long.toString(mainTableConglomId))){
+                regionLookups=groupByRegion(table.subPartitions(),order,rowKeys,attributable,results);
+            }
+            // the first region is fetched on this thread while the others are in flight
+            List<Future<Void>> pending=new ArrayList<>(regionLookups.size()-1);
+            try{
+                for(int i=1;i<regionLookups.size();i++){
+                    pending.add(lookupService.submit(regionLookups.get(i)));
+                }
+                regionLookups.get(0).call();
+                for(Future<Void> future : pending){
+                    future.get();
+                }
+            }finally{
+                for(Future<Void> future : pending){
+                    future.cancel(true);
+                }
+            }
+
+            List<Pair<LocatedRow, DataResult>> locations=Lists.newArrayListWithCapacity(size);
+            for(int i=0;i<size;i++){
+                locations.add(Pair.newPair(sourceRows.get(i),results[i]));
+            }
+            return locations;
+        }
+    }
+
+    private List<RegionLookup> groupByRegion(List<Partition> regions,
+                                             Integer[] order,
+                                             byte[][] rowKeys,
+                                             Attributable attributes,
+                                             DataResult[] results){
+        byte[][] startKeys=getStartKeys(regions);
+        List<RegionLookup> lookups=new ArrayList<>();
+        int region=-1;
+        RegionLookup current=null;
+        for(Integer position : order){
+            byte[] rowKey=rowKeys[position];
+            /*
+             * If the cached region boundaries are out of date, the row is grouped with the region
+             * before it, and the multi-get will still locate it
+             */
+            int owner=regionIndex(startKeys,rowKey);
+            if(owner!=region){
+                current=new RegionLookup(attributes,results);
+                lookups.add(current);
+                region=owner;
+            }
+            current.add(position,rowKey);
+        }
+        return lookups;
+    }
+
+    /*
+     * The region list is cached by the table, so the same list is returned until the
+     * region boundaries are refreshed; only sort the start keys when it changes
+     */
+    private byte[][] getStartKeys(List<Partition> regions){
+        RegionStartKeys cached=regionStartKeys;
+        if(cached==null || cached.regions!=regions){
+            byte[][] startKeys=new byte[regions.size()][];
+            for(int i=0;i<startKeys.length;i++){
+                startKeys[i]=regions.get(i).getStartKey();
+            }
+            Arrays.sort(startKeys,Bytes.startComparator);
+            cached=new RegionStartKeys(regions,startKeys);
+            regionStartKeys=cached;
+        }
+        return cached.startKeys;
+    }
+
+    /*
+     * The index of the region owning rowKey, i.e. of the last start key which is not after it
+     */
+    static int regionIndex(byte[][] startKeys,byte[] rowKey){
+        int low=0;
+        int high=startKeys.length-1;
+        while(low<high){
+            int mid=(low+high+1)>>>1;
+            if(Bytes.startComparator.compare(startKeys[mid],rowKey)<=0)
+                low=mid;
+            else
+                high=mid-1;
+        }
+        return low;
+    }
+
+    private static class RegionStartKeys{
+        private final List<Partition> regions;
+        private final byte[][] startKeys;
+
+        RegionStartKeys(List<Partition> regions,byte[][] startKeys){
+            this.regions=regions;
+            this.startKeys=startKeys;
+        }
+    }
+
+    /**
+     * Sorted multi-get of the rows of a single region.
+     */
+    private class RegionLookup implements Callable<Void>{
+        private final Attributable attributes;
+        private final DataResult[] results;
+        private final List<Integer> positions=new ArrayList<>();
+        private final List<byte[]> rowKeys=new ArrayList<>();
+
+        RegionLookup(Attributable attributes,DataResult[] results){
+            this.attributes=attributes;
+            this.results=results;
+        }
+
+        void add(int position,byte[] rowKey){
+            positions.add(position);
+            rowKeys.add(rowKey);
+        }
+
+        @Override
+        public Void call() throws Exception{
             try(Partition table = tableFactory.getTable(Long.toString(mainTableConglomId))){
-                Iterator<DataResult> results=table.batchGet(attributable,rowKeys);
-                List<Pair<LocatedRow, DataResult>> locations=Lists.newArrayListWithCapacity(sourceRows.size());
-                for(LocatedRow sourceRow : sourceRows){
-                    if(!results.hasNext())
+                Iterator<DataResult> fetched=table.batchGet(attributes,rowKeys);
+                for(Integer position : positions){
+                    if(!fetched.hasNext())
                         throw new IllegalStateException("Programmer error: incompatible iterator sizes!");
-                    locations.add(Pair.newPair(sourceRow,results.next().getClone()));
+                    results[position]=fetched.next().getClone();
                 }
-                return locations;
             }
+            return null;
         }
     }
 
@@ -68,6 +68,12 @@ public class IndexRowReaderBuilder implements Externalizable{
     private int[] mainTableKeyColumnTypes;
     private TxnView txn;
 
+    /*
+     * Server-wide pool which runs the index lookups of all the readers, so readers don't create and tear
+     * down threads of their own. Once all its threads are busy, lookups run on the thread which submits them.
+     */
+    private static volatile ExecutorService lookupPool;
+
     @SuppressFBWarnings(value = "EI_EXPOSE_REP2",justification = "Intentional")
     public IndexRowReaderBuilder indexColumns(int[] indexCols){
         this.indexCols=indexCols;
@@ -166,23 +172,8 @@ public class IndexRowReaderBuilder implements Externalizable{
         ExecutorService lookupService;
         if(numConcurrentLookups<0)
             lookupService=SameThreadExecutorService.instance();
-        else{
-            ThreadFactory factory=new ThreadFactoryBuilder()
-                    .setNameFormat("index-lookup-%d")
-                    .setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler(){
-                        @Override
-                        public void uncaughtException(Thread t,Throwable e){
-                            e.printStackTrace();
-                        }
-                    })
-                    .build();
-            ThreadPoolExecutor tpe=new ThreadPoolExecutor(1,numConcurrentLookups,
-                    60,TimeUnit.SECONDS,new SynchronousQueue<Runnable>(),factory,
-                    new ThreadPoolExecutor.CallerRunsPolicy());
-            tpe.allowCoreThreadTimeOut(false);
-            tpe.prestartAllCoreThreads();
-            lookupService=tpe;
-        }
+        else
+            lookupService=sharedLookupService();
 
         BitSet rowFieldsToReturn=new BitSet(mainTableAccessedRowColumns.getNumBitsSet());
         for(int i=mainTableAccessedRowColumns.anySetBit();i>=0;i=mainTableAccessedRowColumns.anySetBit(i)){
@@ -225,6 +216,33 @@ public class IndexRowReaderBuilder implements Externalizable{
                 tableFactory);
     }
 
+    private static ExecutorService sharedLookupService(){
+        ExecutorService pool=lookupPool;
+        if(pool==null){
+            synchronized(IndexRowReaderBuilder.class){
+                pool=lookupPool;
+                if(pool==null){
+                    int maxThreads=SIDriver.driver().getConfiguration().getIndexLookupThreads();
+                    ThreadFactory factory=new ThreadFactoryBuilder()
+                            .setNameFormat("index-lookup-%d")
+                            .setDaemon(true)
+                            .setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler(){
+                                @Override
+                                public void uncaughtException(Thread t,Throwable e){
+                                    e.printStackTrace();
+                                }
+                            })
+                            .build();
+                    ThreadPoolExecutor tpe=new ThreadPoolExecutor(0,maxThreads,
+                            60,TimeUnit.SECONDS,new SynchronousQueue<Runnable>(),factory,
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+                    pool=lookupPool=tpe;
+                }
+            }
+        }
+        return pool;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException{
         SIDriver driver=SIDriver.driver();
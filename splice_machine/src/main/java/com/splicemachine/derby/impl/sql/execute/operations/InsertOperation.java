@@ -70,6 +70,7 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
     public InsertNode.InsertMode insertMode;
     public String statusDirectory;
     private int failBadRecordCount;
+    public String bulkImportDirectory;
 
 
     @Override
@@ -88,6 +89,7 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
                            String insertMode,
                            String statusDirectory,
                            int failBadRecordCount,
+                           String bulkImportDirectory,
                            double optimizerEstimatedRowCount,
                            double optimizerEstimatedCost,
                            String tableVersion) throws StandardException{
@@ -95,6 +97,7 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
         this.insertMode=InsertNode.InsertMode.valueOf(insertMode);
         this.statusDirectory=statusDirectory;
         this.failBadRecordCount = (failBadRecordCount >= 0 ? failBadRecordCount : -1);
+        this.bulkImportDirectory=bulkImportDirectory;
         init();
     }
 
@@ -214,6 +217,8 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
         if(in.readBoolean())
             statusDirectory=in.readUTF();
         failBadRecordCount=in.readInt();
+        if(in.readBoolean())
+            bulkImportDirectory=in.readUTF();
     }
 
     @Override
@@ -229,6 +234,9 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
         if(statusDirectory!=null)
             out.writeUTF(statusDirectory);
         out.writeInt(failBadRecordCount);
+        out.writeBoolean(bulkImportDirectory!=null);
+        if(bulkImportDirectory!=null)
+            out.writeUTF(bulkImportDirectory);
     }
 
     @SuppressWarnings({ "unchecked" })
@@ -244,6 +252,12 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
         int[] execRowTypeFormatIds=WriteReadUtils.getExecRowTypeFormatIds(execRow);
         if(insertMode.equals(InsertNode.InsertMode.UPSERT) && pkCols==null)
             throw ErrorState.UPSERT_NO_PRIMARY_KEYS.newException(""+heapConglom+"");
+        String bulkImportDirectory=this.bulkImportDirectory;
+        if(bulkImportDirectory!=null && insertMode.equals(InsertNode.InsertMode.UPSERT)){
+            // an upsert has to read the rows it replaces, so it can't bypass the write pipeline
+            LOG.warn("Bulk import is not supported for upserts, writing through the pipeline instead");
+            bulkImportDirectory=null;
+        }
         TxnView txn=getCurrentTransaction();
 
         operationContext.pushScope();
@@ -259,6 +273,7 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
                     .isUpsert(insertMode.equals(InsertNode.InsertMode.UPSERT))
                     .pkCols(pkCols)
                     .tableVersion(tableVersion)
+                    .bulkImportDirectory(bulkImportDirectory)
                     .destConglomerate(heapConglom)
                     .operationContext(operationContext)
                     .txn(txn)
@@ -278,7 +293,7 @@ public class InsertOperation extends DMLWriteOperation implements HasIncrement{
 
     @Override
     public void openCore() throws StandardException{
-
+        beginExecution();
         DataSetProcessor dsp = EngineDriver.driver().processorFactory().chooseProcessor(activation,this);
         if (statusDirectory != null || dsp.getType() == DataSetProcessor.Type.SPARK) {
             remoteQueryClient = EngineDriver.driver().processorFactory().getRemoteQueryClient(this);
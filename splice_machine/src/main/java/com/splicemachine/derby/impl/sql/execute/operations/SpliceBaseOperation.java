@@ -411,12 +411,26 @@ public abstract class SpliceBaseOperation implements SpliceOperation, ScopeNamed
         }
     }
 
+    /**
+     * Called on the root of a statement (or subquery) each time it is executed, and from there on every
+     * operation beneath it. Operations which identify state shared between the tasks of one execution
+     * (see {@link BroadcastJoinOperation#getSequenceId()}) renew that identity here, so that a later
+     * execution does not pick up state left over from an earlier one.
+     */
+    protected void beginExecution(){
+        for(SpliceOperation op : getSubOperations()){
+            if(op instanceof SpliceBaseOperation)
+                ((SpliceBaseOperation)op).beginExecution();
+        }
+    }
+
     protected boolean isOlapServer() {
         return Thread.currentThread().currentThread().getName().startsWith("olap-worker");
     }
 
     @Override
     public void openCore() throws StandardException{
+        beginExecution();
         DataSetProcessor dsp = EngineDriver.driver().processorFactory().chooseProcessor(activation,this);
         if (dsp.getType() == DataSetProcessor.Type.SPARK && !isOlapServer()) {
             remoteQueryClient = EngineDriver.driver().processorFactory().getRemoteQueryClient(this);
@@ -39,6 +39,7 @@ import com.splicemachine.si.impl.filter.HRowAccumulator;
 import com.splicemachine.si.impl.txn.DDLTxnView;
 import com.splicemachine.si.impl.filter.PackedTxnFilter;
 import com.splicemachine.si.api.filter.TxnFilter;
+import com.splicemachine.si.impl.driver.SIDriver;
 import com.splicemachine.storage.*;
 import com.splicemachine.storage.EntryDecoder;
 import com.splicemachine.utils.ByteSlice;
@@ -46,6 +47,8 @@ import com.splicemachine.utils.SpliceLogUtils;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.log4j.Logger;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -90,6 +93,17 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
     private long demarcationPoint;
     private DataValueDescriptor optionalProbeValue;
 
+    /*
+     * Batch filtering state. When filterBatchSize>1, we read that many rows ahead
+     * of the consumer and resolve their transactions together, rather than one row at a time.
+     */
+    private final int filterBatchSize;
+    private final List<List<DataCell>> rowBatch;
+    private final BitSet visibleBatchRows;
+    private int batchRowCount;
+    private int batchPosition;
+    private boolean scannerExhausted;
+
     protected SITableScanner(DataScanner scanner,
                              final TransactionalRegion region,
                              final ExecRow template,
@@ -128,6 +142,15 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
         }
         else
             this.filterFactory = filterFactory;
+        SIDriver driver = SIDriver.driver();
+        this.filterBatchSize = driver==null?0:driver.getConfiguration().getScanFilterBatchSize();
+        if(filterBatchSize>1){
+            this.rowBatch = new ArrayList<>(filterBatchSize);
+            this.visibleBatchRows = new BitSet(filterBatchSize);
+        }else{
+            this.rowBatch = null;
+            this.visibleBatchRows = null;
+        }
     }
 
     protected SITableScanner(DataScanner scanner,
@@ -185,6 +208,8 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
     @Override
     public ExecRow next() throws StandardException, IOException {
         SIFilter filter = getSIFilter();
+        if(filterBatchSize>1 && filter instanceof TxnFilter)
+            return nextBatched(filter);
         do{
             template.resetRowArray(); //necessary to deal with null entries--maybe make the underlying call faster?
             List<DataCell> keyValues=regionScanner.next(-1);
@@ -192,25 +217,7 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
             if(keyValues.size()<=0){
                 currentRowLocation = null;
                 return null;
-            }else{
-                DataCell currentKeyValue = keyValues.get(0);
-                if(template.nColumns()>0){
-                    if(!filterRowKey(currentKeyValue)||!filterRow(filter,keyValues)){
-                        //filter the row first, then filter the row key
-                        filterCounter.increment();
-                        continue;
-                    }
-                }else if(!filterRow(filter,keyValues)){
-                    //still need to filter rows to deal with transactional issues
-                    filterCounter.increment();
-                    continue;
-                } else {
-                    if (LOG.isTraceEnabled())
-                        SpliceLogUtils.trace(LOG,"miss columns=%d",template.nColumns());
-                }
-                measureOutputSize(keyValues);
-                currentKeyValue = keyValues.get(0);
-                setRowLocation(currentKeyValue);
+            }else if(acceptRow(filter,keyValues)){
                 return template;
             }
         }while(true); //TODO -sf- this doesn't seem quite right
@@ -275,6 +282,7 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
 
     public void setRegionScanner(DataScanner scanner){
         this.regionScanner = scanner;
+        this.scannerExhausted = false;
     }
 
     public long getBytesVisited() {
@@ -287,6 +295,93 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
 
     /*********************************************************************************************************************/
 		/*Private helper methods*/
+    private ExecRow nextBatched(SIFilter filter) throws StandardException, IOException{
+        do{
+            List<DataCell> keyValues = nextVisibleBufferedRow((TxnFilter)filter);
+            if(keyValues==null){
+                currentRowLocation = null;
+                return null;
+            }
+            template.resetRowArray();
+            if(acceptRow(filter,keyValues))
+                return template;
+        }while(true);
+    }
+
+    /**
+     * @return the next buffered row which the batch filter could not rule out, or {@code null} if
+     * the underlying scanner is exhausted.
+     */
+    private List<DataCell> nextVisibleBufferedRow(TxnFilter filter) throws IOException{
+        while(true){
+            if(batchPosition>=batchRowCount){
+                if(!fillBatch(filter)) return null;
+            }
+            int pos = batchPosition++;
+            if(visibleBatchRows.get(pos))
+                return rowBatch.get(pos);
+            //no visible data in this row, so don't bother decoding it
+            filterCounter.increment();
+        }
+    }
+
+    private boolean fillBatch(TxnFilter filter) throws IOException{
+        batchRowCount = 0;
+        batchPosition = 0;
+        while(!scannerExhausted && batchRowCount<filterBatchSize){
+            List<DataCell> next = regionScanner.next(-1);
+            if(next.size()<=0){
+                scannerExhausted = true;
+                break;
+            }
+            /*
+             * The scanner is free to reuse its row list, so copy the cells into a buffer
+             * that we own. The cells themselves are not reused.
+             */
+            List<DataCell> buffer;
+            if(batchRowCount<rowBatch.size())
+                buffer = rowBatch.get(batchRowCount);
+            else{
+                buffer = new ArrayList<>(next.size());
+                rowBatch.add(buffer);
+            }
+            buffer.clear();
+            buffer.addAll(next);
+            batchRowCount++;
+        }
+        if(batchRowCount<=0) return false;
+        filter.filterBatch(rowBatch.subList(0,batchRowCount),visibleBatchRows);
+        return true;
+    }
+
+    /**
+     * Apply the key and row filters to a single row, and populate the template (and row location) if
+     * it passes.
+     *
+     * @return true if the row passed all filters.
+     */
+    private boolean acceptRow(SIFilter filter,List<DataCell> keyValues) throws StandardException, IOException{
+        DataCell currentKeyValue = keyValues.get(0);
+        if(template.nColumns()>0){
+            if(!filterRowKey(currentKeyValue)||!filterRow(filter,keyValues)){
+                //filter the row first, then filter the row key
+                filterCounter.increment();
+                return false;
+            }
+        }else if(!filterRow(filter,keyValues)){
+            //still need to filter rows to deal with transactional issues
+            filterCounter.increment();
+            return false;
+        } else {
+            if (LOG.isTraceEnabled())
+                SpliceLogUtils.trace(LOG,"miss columns=%d",template.nColumns());
+        }
+        measureOutputSize(keyValues);
+        currentKeyValue = keyValues.get(0);
+        setRowLocation(currentKeyValue);
+        return true;
+    }
+
     private SIFilterFactory createFilterFactory(TxnView txn, long demarcationPoint) {
         TxnView txnView = txn;
         if (demarcationPoint > 0) {
@@ -295,6 +390,9 @@ public class SITableScanner<Data> implements StandardIterator<ExecRow>,AutoClose
 
         SIFilterFactory siFilterFactory;
         try {
+            SIDriver driver = SIDriver.driver();
+            if (driver != null && driver.getConfiguration().getCompactionPurgeVersions())
+                driver.getTxnLowWatermark().checkSnapshot(txnView, driver.getExceptionFactory());
             final TxnFilter txnFilter = region.unpackedFilter(txnView);
 
             siFilterFactory = new SIFilterFactory<Data>() {
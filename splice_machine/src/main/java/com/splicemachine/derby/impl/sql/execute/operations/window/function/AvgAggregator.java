@@ -28,6 +28,9 @@ import com.splicemachine.db.iapi.types.NumberDataValue;
  * Created by jyuan on 7/31/14.
  */
 public class AvgAggregator extends SpliceGenericWindowFunction {
+    // running sum and count of the non null values in the frame
+    private NumberDataValue sum;
+    private long count;
 
     @Override
     public WindowFunction setup( ClassFactory cf, String aggregateName, DataTypeDescriptor returnType,
@@ -43,46 +46,44 @@ public class AvgAggregator extends SpliceGenericWindowFunction {
 
     @Override
     protected void calculateOnAdd(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException{
-        DataValueDescriptor result = chunk.getResult();
-        if (result == null || result.isNull()) {
-            chunk.setResult(dvds[0].cloneValue(false));
+        NumberDataValue input = (NumberDataValue)dvds[0];
+        if (input == null || input.isNull())
+            return;
+        if (count++ == 0) {
+            sum = (NumberDataValue) input.cloneValue(false);
         } else {
-            NumberDataValue input = (NumberDataValue)dvds[0];
-            if (input != null && ! input.isNull()) {
-                NumberDataValue nv = (NumberDataValue) result.cloneValue(false);
-                nv.plus(input, nv, nv);
-                chunk.setResult(nv);
-            }
+            sum.plus(sum, input, sum);
         }
     }
 
     @Override
     protected void calculateOnRemove(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException {
-        DataValueDescriptor result = chunk.getResult();
         NumberDataValue input = (NumberDataValue)dvds[0];
-        if (input != null && ! input.isNull()) {
-            NumberDataValue nv = (NumberDataValue) result.cloneValue(false);
-            nv.minus(nv, input, nv);
-            chunk.setResult(nv);
+        if (input == null || input.isNull())
+            return;
+        if (--count == 0) {
+            // start over from an exact value once the frame is empty
+            sum = null;
+        } else {
+            sum.minus(sum, input, sum);
         }
     }
 
     public DataValueDescriptor getResult() throws StandardException {
-        // Iterate through each chunk, compute the max/min of each chunk
-        WindowChunk first = chunks.get(0);
-        long count = first.last - first.first;
-        NumberDataValue result = (NumberDataValue)first.getResult().cloneValue(false);
-        long r = result.getLong();
-        for (int i = 1; i < chunks.size(); ++i) {
-            WindowChunk chunk = chunks.get(i);
-            NumberDataValue dvd = (NumberDataValue)chunk.getResult();
-            r += dvd.getLong();
-            count += chunk.last - chunk.first;
-        }
-        result.setValue((r*1.0)/count);
+        if (count == 0)
+            return nullResult();
+        NumberDataValue result = (NumberDataValue)sum.cloneValue(false);
+        result.setValue(sum.getDouble()/count);
         return result;
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        sum = null;
+        count = 0;
+    }
+
     public WindowFunction newWindowFunction() {
         return new AvgAggregator();
     }
@@ -88,6 +88,11 @@ public class LeadLagFunction extends SpliceGenericWindowFunction {
         return leadLag;
     }
 
+    @Override
+    public boolean requiresFinishFrame() {
+        return true;
+    }
+
     @Override
     public DataValueDescriptor getResult() throws StandardException {
         return chunks.get(0).getResult();
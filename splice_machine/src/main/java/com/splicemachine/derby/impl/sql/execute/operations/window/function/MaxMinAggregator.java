@@ -18,6 +18,7 @@ package com.splicemachine.derby.impl.sql.execute.operations.window.function;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayDeque;
 
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.services.io.FormatableHashtable;
@@ -32,6 +33,14 @@ import com.splicemachine.db.iapi.types.DataValueDescriptor;
  */
 public class MaxMinAggregator extends SpliceGenericWindowFunction {
     private boolean isMax;
+    /*
+     * Monotonic queue of the values of the frame which may still become its max (or min): each candidate is
+     * better than all the candidates added after it, so the result is always the first one. Every value is
+     * added and removed at most once, so sliding the frame costs O(1) amortized.
+     */
+    private ArrayDeque<Candidate> candidates;
+    private long added;
+    private long removed;
 
     @Override
     public WindowFunction setup( ClassFactory cf, String aggregateName, DataTypeDescriptor returnType,
@@ -48,63 +57,44 @@ public class MaxMinAggregator extends SpliceGenericWindowFunction {
 
     @Override
     protected void calculateOnAdd(WindowChunk chunk, DataValueDescriptor[] dvd) throws StandardException{
-        DataValueDescriptor result = chunk.getResult();
-        if (result == null || result.isNull()) {
-            chunk.setResult(dvd[0]);
-        }
-        else if(isMax && dvd[0].compare(result) > 0) {
-            chunk.setResult(dvd[0]);
-        }
-        else if (!isMax && dvd[0].compare(result) < 0) {
-            chunk.setResult(dvd[0]);
+        long position = added++;
+        DataValueDescriptor value = dvd[0];
+        if (value == null || value.isNull())
+            return;
+        // a candidate which isn't better than the new value can never be the result again,
+        // since it leaves the frame first
+        while (!candidates.isEmpty() && !isBetter(candidates.peekLast().value, value)) {
+            candidates.pollLast();
         }
+        candidates.addLast(new Candidate(position, value));
     }
 
     @Override
     protected void calculateOnRemove(WindowChunk chunk, DataValueDescriptor[] dvds) throws StandardException {
-        DataValueDescriptor result = chunk.getResult();
-        if (dvds[0].compare(result) == 0) {
-            recalculate(chunk);
+        // values leave the frame in the order they entered it
+        long position = removed++;
+        if (!candidates.isEmpty() && candidates.peekFirst().position == position) {
+            candidates.pollFirst();
         }
     }
 
-    private void recalculate(WindowChunk chunk) throws StandardException{
-        DataValueDescriptor result = chunk.get(chunk.first)[0];
-
-        for (int i = chunk.first+1; i < chunk.last; ++i) {
-            DataValueDescriptor dvd = chunk.get(i)[0];
-            if (isMax) {
-                if (dvd.compare(result) > 0) {
-                    result = dvd;
-                }
-            }
-            else {
-                if (dvd.compare(result) < 0) {
-                    result = dvd;
-                }
-            }
-        }
-        chunk.setResult(result);
+    private boolean isBetter(DataValueDescriptor candidate, DataValueDescriptor value) throws StandardException {
+        int c = candidate.compare(value);
+        return isMax ? c > 0 : c < 0;
     }
 
     public DataValueDescriptor getResult() throws StandardException {
-        // Iterate through each chunk, compute the max/min of each chunk
-        WindowChunk first = chunks.get(0);
-        DataValueDescriptor result = first.getResult();
-        for (int i = 1; i < chunks.size(); ++i) {
-            DataValueDescriptor dvd = chunks.get(i).getResult();
-            if (isMax) {
-                if (dvd.compare(result) > 0) {
-                    result = dvd;
-                }
-            }
-            else {
-                if (dvd.compare(result) < 0) {
-                    result = dvd;
-                }
-            }
-        }
-        return result;
+        return candidates.isEmpty() ? nullResult() : candidates.peekFirst().value;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        if (candidates == null)
+            candidates = new ArrayDeque<>();
+        else
+            candidates.clear();
+        added = removed = 0;
     }
 
     @Override
@@ -123,4 +113,14 @@ public class MaxMinAggregator extends SpliceGenericWindowFunction {
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         isMax = in.readBoolean();
     }
+
+    private static class Candidate {
+        final long position;
+        final DataValueDescriptor value;
+
+        Candidate(long position, DataValueDescriptor value) {
+            this.position = position;
+            this.value = value;
+        }
+    }
 }
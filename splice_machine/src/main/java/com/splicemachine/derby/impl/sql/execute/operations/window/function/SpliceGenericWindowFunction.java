@@ -78,17 +78,17 @@ public abstract class SpliceGenericWindowFunction implements WindowFunction {
     public DataValueDescriptor[] remove() throws StandardException{
 
         DataValueDescriptor[] dvd = first.remove();
+        // functions which keep a running result need to see every value leaving the frame,
+        // including the last one of a chunk
+        calculateOnRemove(first, dvd);
         if (first.consumed()) {
-            chunks.remove(first);
+            chunks.remove(0);
             if (chunks.size() == 0) {
                 first = last = null;
                 return null;
             }
             first = chunks.get(0);
         }
-        else {
-            calculateOnRemove(first, dvd);
-        }
         return dvd;
     }
 
@@ -249,4 +249,21 @@ public abstract class SpliceGenericWindowFunction implements WindowFunction {
         // override/implement if function needs the entire frame
         return null;
     }
+
+    /**
+     * @return true if the results of this function are only known once the whole partition has been read, and are
+     * returned by {@link #finishFrame()}. Otherwise, results can be returned as soon as each row is evaluated.
+     */
+    public boolean requiresFinishFrame() {
+        return false;
+    }
+
+    /**
+     * @return a NULL value of the result type, for functions evaluated over a frame without (non null) values
+     */
+    protected DataValueDescriptor nullResult() {
+        DataValueDescriptor result = resultType.cloneValue(false);
+        result.setToNull();
+        return result;
+    }
 }
@@ -17,9 +17,7 @@ package com.splicemachine.derby.impl.stats;
 import com.splicemachine.EngineDriver;
 import com.splicemachine.access.api.SConfiguration;
 import com.splicemachine.db.iapi.error.StandardException;
-import com.splicemachine.db.iapi.services.context.ContextService;
 import com.splicemachine.db.iapi.sql.compile.CostEstimate;
-import com.splicemachine.db.iapi.sql.conn.LanguageConnectionContext;
 import com.splicemachine.db.iapi.sql.dictionary.ConglomerateDescriptor;
 import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
 import com.splicemachine.db.iapi.sql.dictionary.TableDescriptor;
@@ -87,19 +85,34 @@ public class StoreCostControllerImpl implements StoreCostController {
         extraQualifierMultiplier = config.getOptimizerExtraQualifierMultiplier();
         fallbackLocalLatency =config.getFallbackLocalLatency();
         fallbackRemoteLatencyRatio =config.getFallbackRemoteLatencyRatio();
-        String tableId = Long.toString(td.getBaseConglomerateDescriptor().getConglomerateNumber());
+        long conglomerateId = td.getBaseConglomerateDescriptor().getConglomerateNumber();
         baseTableRow = td.getEmptyExecRow();
         if (conglomerateDescriptor.getIndexDescriptor() != null && conglomerateDescriptor.getIndexDescriptor().getIndexDescriptor() != null) {
             conglomerateColumns = conglomerateDescriptor.getIndexDescriptor().numberOfOrderedColumns();
         } else {
             conglomerateColumns = (conglomerateDescriptor.getColumnNames() == null) ? 2 : conglomerateDescriptor.getColumnNames().length;
         }
+        TableStatisticsCache cache = TableStatisticsCache.instance();
+        TableStatisticsCache.Entry statistics = cache.get(conglomerateId, partitionStatistics);
+        if (statistics == null) {
+            statistics = mergeStatistics(conglomerateId, partitionStatistics, fallbackNullFraction, extraQualifierMultiplier);
+            cache.put(conglomerateId, statistics);
+        }
+        tableStatistics = statistics.tableStatistics;
+        missingPartitions = statistics.missingPartitions;
+        noStats = statistics.noStats;
+    }
+
+    private static TableStatisticsCache.Entry mergeStatistics(long conglomerateId,
+                                                              List<PartitionStatisticsDescriptor> partitionStatistics,
+                                                              double fallbackNullFraction,
+                                                              double extraQualifierMultiplier) throws StandardException {
+        String tableId = Long.toString(conglomerateId);
         byte[] table = Bytes.toBytes(tableId);
         List<Partition> partitions = new ArrayList<>();
         getPartitions(table, partitions, false);
         assert partitions !=null && !partitions.isEmpty():"No Partitions returned";
         List<String> partitionNames = Lists.transform(partitions,partitionNameTransform);
-        LanguageConnectionContext lcc = (LanguageConnectionContext) ContextService.getContext(LanguageConnectionContext.CONTEXT_ID);
         Map<String,PartitionStatisticsDescriptor> partitionMap = Maps.uniqueIndex(partitionStatistics,partitionStatisticsTransform);
         if (partitions.size() < partitionStatistics.size()) {
             // reload if partition cache contains outdated data for this table
@@ -108,7 +121,7 @@ public class StoreCostControllerImpl implements StoreCostController {
         }
         List<PartitionStatistics> partitionStats = new ArrayList<>(partitions.size());
         PartitionStatisticsDescriptor tStats;
-
+        int missingPartitions = 0;
 
         for(String partitionName : partitionNames){
             tStats = partitionMap.get(partitionName);
@@ -124,6 +137,8 @@ public class StoreCostControllerImpl implements StoreCostController {
          * we have no table information either, so just return an empty list and let the caller figure out
          * what to do
          */
+        TableStatistics tableStatistics;
+        boolean noStats = false;
         if (partitionStats.size() == 0) {
             missingPartitions = 0;
             noStats = true;
@@ -131,6 +146,9 @@ public class StoreCostControllerImpl implements StoreCostController {
         } else {
             tableStatistics = new TableStatisticsImpl(tableId, partitionStats,fallbackNullFraction,extraQualifierMultiplier);
         }
+        // the merge is done lazily and isn't thread safe, do it before the statistics are shared
+        tableStatistics.getEffectivePartitionStatistics();
+        return new TableStatisticsCache.Entry(partitionStatistics, tableStatistics, missingPartitions, noStats);
     }
 
     @Override
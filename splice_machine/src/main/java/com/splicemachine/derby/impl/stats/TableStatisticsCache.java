@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.EngineDriver;
+import com.splicemachine.access.configuration.StatsConfiguration;
+import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
+import com.splicemachine.db.iapi.stats.TableStatistics;
+import com.splicemachine.hbase.jmx.JMXUtils;
+import org.spark_project.guava.cache.Cache;
+import org.spark_project.guava.cache.CacheBuilder;
+
+import javax.management.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-wide cache of merged table statistics, keyed by base conglomerate id.
+ * <p>
+ * Merging the statistics of every partition of a table is done once per compilation otherwise. Each entry
+ * remembers the partition statistics descriptors it was merged from, which are the ones held by the data dictionary
+ * cache: statistics collection and DDL invalidate those, so an entry built from a different list is out of date.
+ * Entries also expire after {@link StatsConfiguration#PARTITION_CACHE_EXPIRATION}, so that region splits and
+ * merges (and the region load used when a table has no statistics) are eventually picked up.
+ */
+public class TableStatisticsCache implements TableStatisticsCacheStatistics{
+
+    // Registered instance of the JMX MBean.
+    private static final TableStatisticsCache mBean=new TableStatisticsCache();
+
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong misses=new AtomicLong();
+    private volatile Cache<Long,Entry> cache;
+
+    private TableStatisticsCache(){
+    }
+
+    TableStatisticsCache(Cache<Long,Entry> cache){
+        this.cache=cache;
+    }
+
+    public static TableStatisticsCache instance(){
+        return mBean;
+    }
+
+    /**
+     * Register this implementation under JMX.
+     *
+     * @param mbs the MBeanServer to use
+     */
+    public static void registerJMX(MBeanServer mbs)
+            throws MalformedObjectNameException,
+            NotCompliantMBeanException,
+            InstanceAlreadyExistsException,
+            MBeanRegistrationException{
+        mbs.registerMBean(mBean,new ObjectName(JMXUtils.TABLE_STATISTICS_CACHE));
+    }
+
+    /**
+     * @param conglomerateId the base conglomerate of the table
+     * @param partitionStatistics the current partition statistics of the table
+     * @return the cached statistics of the table, or null if they are missing or were merged from
+     * other partition statistics
+     */
+    Entry get(long conglomerateId,List<PartitionStatisticsDescriptor> partitionStatistics){
+        Entry entry=cache().getIfPresent(conglomerateId);
+        if(entry==null || entry.source!=partitionStatistics){
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    void put(long conglomerateId,Entry entry){
+        cache().put(conglomerateId,entry);
+    }
+
+    public void invalidate(long conglomerateId){
+        Cache<Long,Entry> c=cache;
+        if(c!=null)
+            c.invalidate(conglomerateId);
+    }
+
+    @Override
+    public void invalidateAll(){
+        Cache<Long,Entry> c=cache;
+        if(c!=null)
+            c.invalidateAll();
+    }
+
+    @Override
+    public long getHitCount(){
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount(){
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictionCount(){
+        Cache<Long,Entry> c=cache;
+        return c==null?0:c.stats().evictionCount();
+    }
+
+    @Override
+    public long getSize(){
+        Cache<Long,Entry> c=cache;
+        return c==null?0:c.size();
+    }
+
+    private Cache<Long,Entry> cache(){
+        Cache<Long,Entry> c=cache;
+        if(c==null){
+            // built on first use, the configuration isn't available yet when the MBean is created
+            synchronized(this){
+                c=cache;
+                if(c==null){
+                    long expiration=EngineDriver.driver().getConfiguration().getPartitionCacheExpiration();
+                    c=cache=CacheBuilder.newBuilder()
+                            .maximumSize(StatsConfiguration.DEFAULT_PARTITION_CACHE_SIZE)
+                            .expireAfterWrite(expiration,TimeUnit.MILLISECONDS)
+                            .recordStats()
+                            .build();
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Statistics of a table merged over all its partitions. Immutable once cached, so it can be shared
+     * by concurrent compilations.
+     */
+    static final class Entry{
+        final List<PartitionStatisticsDescriptor> source;
+        final TableStatistics tableStatistics;
+        final int missingPartitions;
+        final boolean noStats;
+
+        Entry(List<PartitionStatisticsDescriptor> source,TableStatistics tableStatistics,int missingPartitions,boolean noStats){
+            this.source=source;
+            this.tableStatistics=tableStatistics;
+            this.missingPartitions=missingPartitions;
+            this.noStats=noStats;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the server-wide cache of merged table statistics used by the cost model.
+ * All counts are cumulative since the server started.
+ */
+@MXBean
+public interface TableStatisticsCacheStatistics{
+
+    /**
+     * @return the number of cost controllers which reused cached table statistics
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of cost controllers which had to merge the partition statistics of their table,
+     * either because nothing was cached or because the cached statistics were out of date
+     */
+    long getMissCount();
+
+    /**
+     * @return the number of entries evicted because of the size limit or their expiration
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the number of tables currently cached
+     */
+    long getSize();
+
+    /**
+     * Drop all the cached table statistics, forcing them to be merged again on next use.
+     */
+    void invalidateAll();
+}
@@ -16,6 +16,8 @@
 package com.splicemachine.derby.lifecycle;
 
 import com.splicemachine.access.api.SConfiguration;
+import com.splicemachine.derby.impl.stats.TableStatisticsCache;
+import com.splicemachine.derby.stream.control.ControlSpillStatisticsImpl;
 import com.splicemachine.derby.utils.DatabasePropertyManagementImpl;
 import com.yammer.metrics.core.MetricsRegistry;
 import com.yammer.metrics.reporting.JmxReporter;
@@ -43,6 +45,8 @@ public class MonitoredLifecycleService extends EngineLifecycleService{
         metricsReporter.start();
 
         DatabasePropertyManagementImpl.registerJMX(mbs);
+        ControlSpillStatisticsImpl.registerJMX(mbs);
+        TableStatisticsCache.registerJMX(mbs);
     }
 
 
@@ -375,7 +375,7 @@ public class ControlDataSet<V> implements DataSet<V> {
         operationContext.popScope();
 
         operationContext.pushScopeForOp(OperationContext.Scope.GROUP_AGGREGATE_KEYER);
-        pair = pair.groupByKey("Group Values For Each Key");
+        pair = ((ControlPairDataSet) pair).groupByKey(operationContext);
         operationContext.popScope();
 
         operationContext.pushScopeForOp(OperationContext.Scope.EXECUTE);
@@ -300,6 +300,11 @@ public class ControlOperationContext<Op extends SpliceOperation> implements Oper
         return txn;
     }
 
+    @Override
+    public void registerCloseable(AutoCloseable closeable) throws StandardException{
+        op.registerCloseable(closeable);
+    }
+
     @Override
     public void recordBadRecord(String badRecord, Exception e) {
         if (! failed) {
@@ -17,6 +17,7 @@ package com.splicemachine.derby.stream.control;
 
 import org.apache.spark.api.java.Optional;
 import org.spark_project.guava.base.Function;
+import com.splicemachine.collections.CloseableIterator;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
@@ -43,9 +44,9 @@ import org.spark_project.guava.base.Predicate;
 import org.spark_project.guava.collect.*;
 import scala.Tuple2;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Stream;
-import static com.splicemachine.derby.stream.control.ControlUtils.entryToTuple;
 import static com.splicemachine.derby.stream.control.ControlUtils.multimapFromIterator;
 import static org.spark_project.guava.collect.Maps.*;
 
@@ -100,22 +101,13 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
 
     @Override
     public <Op extends SpliceOperation> PairDataSet<K, V> reduceByKey(final SpliceFunction2<Op,V, V, V> function2) {
-        Multimap<K,V> newMap = multimapFromIterator(source);
-        return new ControlPairDataSet<>(entryToTuple(Multimaps.<K,V>forMap(transformValues(newMap.asMap(),
-                new Function<Collection<V>, V>() {
-            @Override
-            public V apply(@Nullable Collection<V> vs) {
-                try {
-                    V returnValue = null;
-                    for (V v : vs) {
-                        returnValue = function2.call(returnValue, v);
-                    }
-                    return returnValue;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        })).entries()));
+        try {
+            CloseableIterator<Tuple2<K,V>> reduced = SpillingHashAggregator.<Op,K,V>reducer(function2).aggregate(source);
+            closeWith(function2.operationContext, reduced);
+            return new ControlPairDataSet<>(reduced);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -130,18 +122,11 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
 
     @Override
     public PairDataSet<K, V> sortByKey(final Comparator<K> comparator) {
-        /*
-         * -sf- this is done a bit goofily, so that we can support multiple versions of guava.
-         *
-         * This is essentially copying out FluentIterable.from(source).toSortedList(comparator) logic
-         * directly into the method, so that we can support the same code line from 12.0.1 on.
-         */
-        return new ControlPairDataSet<>(Ordering.from(new Comparator<Tuple2<K, V>>() {
-            @Override
-            public int compare(Tuple2<K, V> o1, Tuple2<K, V> o2) {
-                return comparator.compare(o1._1(), o2._1());
-            }
-        }).immutableSortedCopy(() -> source).iterator());
+        try {
+            return new ControlPairDataSet<>(new ExternalSorter<K,V>(comparator).sort(source));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -158,15 +143,21 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
 
     @Override
     public PairDataSet<K, Iterable<V>> groupByKey() {
-        Multimap<K,V> newMap = multimapFromIterator(source);
-        return new ControlPairDataSet<>(FluentIterable.from(newMap.asMap().entrySet()).transform(new Function<Map.Entry<K, Collection<V>>, Tuple2<K, Iterable<V>>>() {
-            @Nullable
-            @Override
-            public Tuple2<K, Iterable<V>> apply(@Nullable Map.Entry<K, Collection<V>> e) {
-                assert e!=null: "E cannot be null";
-                return new Tuple2<K, Iterable<V>>(e.getKey(), e.getValue());
-            }
-        }).iterator());
+        return groupByKey((OperationContext)null);
+    }
+
+    /**
+     * Group by key, deleting any spilled partitions which are never read once the operation of
+     * {@code operationContext} is closed.
+     */
+    public PairDataSet<K, Iterable<V>> groupByKey(OperationContext operationContext) {
+        try {
+            CloseableIterator<Tuple2<K,Iterable<V>>> grouped = SpillingHashAggregator.<K,V>grouper().aggregate(source);
+            closeWith(operationContext, grouped);
+            return new ControlPairDataSet<>(grouped);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -403,4 +394,12 @@ public class ControlPairDataSet<K,V> implements PairDataSet<K,V> {
         };
     }
 
+    /*
+     * A consumer may stop before it reaches every spilled partition (under a LIMIT, or when a downstream
+     * failure abandons the iteration), so the rest are cleaned up when the operation finishes.
+     */
+    private static void closeWith(OperationContext operationContext, CloseableIterator<?> iterator) throws StandardException {
+        if (operationContext != null)
+            operationContext.registerCloseable(iterator);
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import javax.management.MXBean;
+
+/**
+ * JMX statistics for control-side operations which spill to local disk when they exceed
+ * their memory budget. All counts are cumulative since the server started.
+ */
+@MXBean
+public interface ControlSpillStatistics{
+
+    /**
+     * @return the number of hash partitions written by spilling aggregations
+     */
+    long getAggregationPartitionsSpilled();
+
+    /**
+     * @return the number of bytes written by spilling aggregations
+     */
+    long getAggregationBytesSpilled();
+
+    /**
+     * @return the number of sorted runs written by spilling sorts (including intermediate merges)
+     */
+    long getSortRunsSpilled();
+
+    /**
+     * @return the number of records written by spilling sorts
+     */
+    long getSortRecordsSpilled();
+
+    /**
+     * @return the number of bytes written by spilling sorts
+     */
+    long getSortBytesSpilled();
+}
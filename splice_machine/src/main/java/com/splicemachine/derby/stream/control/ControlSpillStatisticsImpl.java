@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.hbase.jmx.JMXUtils;
+
+import javax.management.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-wide counters for control-side spilling.
+ */
+public class ControlSpillStatisticsImpl implements ControlSpillStatistics{
+
+    // Registered instance of the JMX MBean.
+    private static final ControlSpillStatisticsImpl mBean=new ControlSpillStatisticsImpl();
+
+    private final AtomicLong aggregationPartitions=new AtomicLong();
+    private final AtomicLong aggregationBytes=new AtomicLong();
+    private final AtomicLong sortRuns=new AtomicLong();
+    private final AtomicLong sortRecords=new AtomicLong();
+    private final AtomicLong sortBytes=new AtomicLong();
+
+    public static ControlSpillStatisticsImpl instance(){
+        return mBean;
+    }
+
+    /**
+     * Register this implementation under JMX.
+     *
+     * @param mbs the MBeanServer to use
+     */
+    public static void registerJMX(MBeanServer mbs)
+            throws MalformedObjectNameException,
+            NotCompliantMBeanException,
+            InstanceAlreadyExistsException,
+            MBeanRegistrationException{
+        mbs.registerMBean(mBean,new ObjectName(JMXUtils.CONTROL_SPILL_STATISTICS));
+    }
+
+    void recordAggregationSpill(long bytes){
+        aggregationPartitions.incrementAndGet();
+        aggregationBytes.addAndGet(bytes);
+    }
+
+    void recordSortRun(long records,long bytes){
+        sortRuns.incrementAndGet();
+        sortRecords.addAndGet(records);
+        sortBytes.addAndGet(bytes);
+    }
+
+    @Override
+    public long getAggregationPartitionsSpilled(){
+        return aggregationPartitions.get();
+    }
+
+    @Override
+    public long getAggregationBytesSpilled(){
+        return aggregationBytes.get();
+    }
+
+    @Override
+    public long getSortRunsSpilled(){
+        return sortRuns.get();
+    }
+
+    @Override
+    public long getSortRecordsSpilled(){
+        return sortRecords.get();
+    }
+
+    @Override
+    public long getSortBytesSpilled(){
+        return sortBytes.get();
+    }
+}
@@ -15,10 +15,15 @@
 
 package com.splicemachine.derby.stream.control;
 
+import com.splicemachine.EngineDriver;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
 import org.spark_project.guava.base.Function;
 import org.spark_project.guava.collect.*;
 import scala.Tuple2;
 import javax.annotation.Nullable;
+import java.io.File;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
@@ -28,6 +33,13 @@ import java.util.Map;
  * Created by dgomezferro on 7/31/15.
  */
 public class ControlUtils {
+    /*
+     * Rough heap costs used when estimating memory usage: the header and fields of a row (plus
+     * its column array), and anything we don't know how to size.
+     */
+    private static final long ROW_OVERHEAD=32;
+    private static final long DEFAULT_OBJECT_SIZE=64;
+
     public static <K, V> Iterator<Tuple2<K, V>> entryToTuple(Collection<Map.Entry<K, V>> collection) {
         return Iterators.transform(collection.iterator(),new Function<Map.Entry<K, V>, Tuple2<K, V>>() {
 
@@ -48,4 +60,44 @@ public class ControlUtils {
         }
         return newMap;
     }
+
+    /**
+     * @return an estimate of the heap consumed by {@code o}. Rows are sized from their columns; other
+     * objects are assigned a fixed cost.
+     */
+    public static long estimateSize(Object o) {
+        if (o == null) return 0L;
+        if (o instanceof LocatedRow)
+            return ROW_OVERHEAD + estimateSize(((LocatedRow) o).getRow());
+        if (o instanceof ExecRow) {
+            long size = ROW_OVERHEAD;
+            DataValueDescriptor[] dvds = ((ExecRow) o).getRowArray();
+            if (dvds != null) {
+                for (DataValueDescriptor dvd : dvds) {
+                    size += 8;
+                    if (dvd != null)
+                        size += dvd.estimateMemoryUsage();
+                }
+            }
+            return size;
+        }
+        return DEFAULT_OBJECT_SIZE;
+    }
+
+    /**
+     * @return the number of bytes a single control-side operation may hold in memory before spilling to disk
+     */
+    public static long spillMemoryBudget() {
+        EngineDriver driver = EngineDriver.driver();
+        return driver == null ? Long.MAX_VALUE : driver.getConfiguration().getControlSpillMemoryBudget();
+    }
+
+    /**
+     * @return the directory in which control-side operations write their spill files
+     */
+    public static File spillDirectory() {
+        EngineDriver driver = EngineDriver.driver();
+        String dir = driver == null ? null : driver.getConfiguration().getControlSpillDirectory();
+        return new File(dir == null ? System.getProperty("java.io.tmpdir") : dir);
+    }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.utils.SpliceLogUtils;
+import org.apache.log4j.Logger;
+import scala.Tuple2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A sort for the control side which spills to local disk rather than exceeding a memory budget.
+ * <p/>
+ * Pairs are buffered in memory until their estimated size exceeds the budget, at which point the buffer
+ * is sorted and written out as a run (a {@link SpillFile}). Once the input is exhausted, the remaining buffer
+ * is sorted in memory, and the runs are merged with it lazily, as the consumer iterates. If there are more
+ * than {@link #MAX_MERGE_WIDTH} runs, the oldest runs are first merged into longer runs, so that the final
+ * merge never holds more than that many files open.
+ * <p/>
+ * The sort is stable: pairs with equal keys come out in the order in which they went in.
+ */
+class ExternalSorter<K,V>{
+    private static final Logger LOG=Logger.getLogger(ExternalSorter.class);
+
+    static final int MAX_MERGE_WIDTH=64;
+    //the Tuple2 and its slot in the buffer
+    private static final long ENTRY_OVERHEAD=32;
+
+    private final Comparator<Tuple2<K,V>> comparator;
+    private final long memoryBudget;
+    private final File spillDirectory;
+
+    private long runsSpilled;
+    private long recordsSpilled;
+    private long bytesSpilled;
+
+    ExternalSorter(Comparator<? super K> keyComparator){
+        this(keyComparator,ControlUtils.spillMemoryBudget(),ControlUtils.spillDirectory());
+    }
+
+    ExternalSorter(final Comparator<? super K> keyComparator,long memoryBudget,File spillDirectory){
+        this.comparator=new Comparator<Tuple2<K,V>>(){
+            @Override
+            public int compare(Tuple2<K,V> o1,Tuple2<K,V> o2){
+                return keyComparator.compare(o1._1(),o2._1());
+            }
+        };
+        this.memoryBudget=memoryBudget;
+        this.spillDirectory=spillDirectory;
+    }
+
+    /**
+     * Consume the source, and return an iterator over its pairs in key order.
+     */
+    Iterator<Tuple2<K,V>> sort(Iterator<Tuple2<K,V>> source) throws IOException{
+        List<Tuple2<K,V>> buffer=new ArrayList<>();
+        List<SpillFile<K,V>> runs=new ArrayList<>();
+        long memoryUsed=0L;
+        try{
+            while(source.hasNext()){
+                Tuple2<K,V> next=source.next();
+                buffer.add(next);
+                memoryUsed+=ENTRY_OVERHEAD+ControlUtils.estimateSize(next._1())+ControlUtils.estimateSize(next._2());
+                if(memoryUsed>memoryBudget){
+                    Collections.sort(buffer,comparator);
+                    runs.add(writeRun(buffer.iterator()));
+                    buffer.clear();
+                    memoryUsed=0L;
+                }
+            }
+            Collections.sort(buffer,comparator);
+            if(runs.isEmpty())
+                return buffer.iterator();
+
+            //leave room in the final merge for the in-memory buffer
+            while(runs.size()>=MAX_MERGE_WIDTH){
+                List<SpillFile<K,V>> oldest=runs.subList(0,MAX_MERGE_WIDTH);
+                SpillFile<K,V> merged=writeRun(merge(read(oldest)));
+                oldest.clear();
+                runs.add(0,merged);
+            }
+        }catch(IOException|RuntimeException e){
+            for(SpillFile<K,V> run : runs){
+                run.discard();
+            }
+            throw e;
+        }
+
+        if(LOG.isDebugEnabled())
+            SpliceLogUtils.debug(LOG,"Spilled sort: %d runs, %d records, %d bytes",runsSpilled,recordsSpilled,bytesSpilled);
+        List<Iterator<Tuple2<K,V>>> inputs=read(runs);
+        inputs.add(buffer.iterator());
+        return merge(inputs);
+    }
+
+    long getRunsSpilled(){
+        return runsSpilled;
+    }
+
+    long getRecordsSpilled(){
+        return recordsSpilled;
+    }
+
+    long getBytesSpilled(){
+        return bytesSpilled;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private SpillFile<K,V> writeRun(Iterator<Tuple2<K,V>> sorted) throws IOException{
+        SpillFile<K,V> run=SpillFile.create(spillDirectory);
+        try{
+            while(sorted.hasNext()){
+                Tuple2<K,V> next=sorted.next();
+                run.write(next._1(),next._2());
+            }
+            run.finish();
+        }catch(IOException|RuntimeException e){
+            run.discard();
+            throw e;
+        }
+        runsSpilled++;
+        recordsSpilled+=run.getRecordCount();
+        bytesSpilled+=run.getBytesWritten();
+        ControlSpillStatisticsImpl.instance().recordSortRun(run.getRecordCount(),run.getBytesWritten());
+        return run;
+    }
+
+    private List<Iterator<Tuple2<K,V>>> read(List<SpillFile<K,V>> runs) throws IOException{
+        List<Iterator<Tuple2<K,V>>> inputs=new ArrayList<>(runs.size()+1);
+        for(SpillFile<K,V> run : runs){
+            inputs.add(run.read());
+        }
+        return inputs;
+    }
+
+    private Iterator<Tuple2<K,V>> merge(List<Iterator<Tuple2<K,V>>> inputs){
+        return new MergingIterator(inputs);
+    }
+
+    /*
+     * A k-way merge of sorted inputs. Ties are broken by input position, which keeps
+     * the merge stable as long as the inputs are listed in the order they were produced.
+     */
+    private class MergingIterator implements Iterator<Tuple2<K,V>>{
+        private final PriorityQueue<Head> heads;
+
+        MergingIterator(List<Iterator<Tuple2<K,V>>> inputs){
+            this.heads=new PriorityQueue<>(Math.max(1,inputs.size()));
+            for(int i=0;i<inputs.size();i++){
+                Iterator<Tuple2<K,V>> input=inputs.get(i);
+                if(input.hasNext())
+                    heads.add(new Head(input,i));
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Tuple2<K,V> next(){
+            Head head=heads.poll();
+            if(head==null) throw new NoSuchElementException();
+            Tuple2<K,V> next=head.current;
+            if(head.input.hasNext()){
+                head.current=head.input.next();
+                heads.add(head);
+            }
+            return next;
+        }
+
+        @Override
+        public void remove(){
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class Head implements Comparable<Head>{
+        private final Iterator<Tuple2<K,V>> input;
+        private final int position;
+        private Tuple2<K,V> current;
+
+        Head(Iterator<Tuple2<K,V>> input,int position){
+            this.input=input;
+            this.position=position;
+            this.current=input.next();
+        }
+
+        @Override
+        public int compareTo(Head o){
+            int c=comparator.compare(current,o.current);
+            if(c!=0) return c;
+            return Integer.compare(position,o.position);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.splicemachine.SpliceKryoRegistry;
+import com.splicemachine.collections.CloseableIterator;
+import com.splicemachine.utils.kryo.KryoPool;
+import scala.Tuple2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * A local temporary file of key-value pairs, which is written once and then read back once, in the
+ * order in which the pairs were written.
+ * <p/>
+ * Pairs are serialized with the {@link SpliceKryoRegistry}, so keys and values must be serializable
+ * by it (as {@code ExecRow} and {@code LocatedRow} are).
+ * <p/>
+ * The file is unlinked as soon as it is opened for reading. The open descriptor keeps the data readable
+ * until the reader is exhausted or closed, either of which releases the descriptor and the reader's Kryo
+ * instance. A file which is never read must be {@link #discard() discarded}.
+ */
+class SpillFile<K,V>{
+    private static final int BUFFER_SIZE=64*1024;
+
+    private final File file;
+    private final KryoPool kryoPool;
+    private Kryo kryo;
+    private Output output;
+    private long records;
+    private long bytesWritten;
+
+    private SpillFile(File file,KryoPool kryoPool) throws IOException{
+        this.file=file;
+        this.kryoPool=kryoPool;
+        this.output=new Output(new FileOutputStream(file),BUFFER_SIZE);
+        this.kryo=kryoPool.get();
+    }
+
+    static <K,V> SpillFile<K,V> create(File directory) throws IOException{
+        File file=File.createTempFile("splice-spill",".tmp",directory);
+        try{
+            return new SpillFile<>(file,SpliceKryoRegistry.getInstance());
+        }catch(IOException|RuntimeException e){
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+    }
+
+    void write(K key,V value){
+        assert output!=null: "Cannot write to a finished spill file";
+        kryo.writeClassAndObject(output,key);
+        kryo.writeClassAndObject(output,value);
+        records++;
+    }
+
+    /**
+     * Flush and close the file for writing. No further pairs may be written once this is called.
+     */
+    void finish() throws IOException{
+        if(output==null) return;
+        try{
+            output.close();
+            bytesWritten=output.total();
+        }finally{
+            output=null;
+            kryoPool.returnInstance(kryo);
+            kryo=null;
+        }
+    }
+
+    long getRecordCount(){
+        return records;
+    }
+
+    long getBytesWritten(){
+        return bytesWritten;
+    }
+
+    /**
+     * Delete the file without reading it (e.g. when the operation which spilled it fails).
+     */
+    void discard(){
+        try{
+            finish();
+        }catch(IOException ignored){
+            //we are throwing the file away anyway
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * @return an iterator over the pairs in this file, which must be closed if it is not exhausted. May only be
+     * called once, after {@link #finish()}.
+     */
+    CloseableIterator<Tuple2<K,V>> read() throws IOException{
+        assert output==null: "Cannot read a spill file which is still being written";
+        final Input input;
+        try{
+            input=new Input(new FileInputStream(file),BUFFER_SIZE);
+        }finally{
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        final long total=records;
+        return new CloseableIterator<Tuple2<K,V>>(){
+            private long position=0;
+            private Kryo reader=kryoPool.get();
+
+            @Override
+            public boolean hasNext(){
+                if(reader!=null && position<total) return true;
+                close();
+                return false;
+            }
+
+            @Override
+            public void close(){
+                if(reader==null) return;
+                input.close();
+                kryoPool.returnInstance(reader);
+                reader=null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Tuple2<K,V> next(){
+                if(!hasNext()) throw new NoSuchElementException();
+                K key=(K)reader.readClassAndObject(input);
+                V value=(V)reader.readClassAndObject(input);
+                position++;
+                return new Tuple2<>(key,value);
+            }
+
+            @Override
+            public void remove(){
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.collections.CloseableIterator;
+import com.splicemachine.collections.ForwardingCloseableIterator;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.stream.function.SpliceFunction2;
+import com.splicemachine.utils.SpliceLogUtils;
+import org.apache.log4j.Logger;
+import scala.Tuple2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash aggregation for the control side which folds each value into its group as it arrives, and
+ * which spills to local disk rather than exceeding a memory budget.
+ * <p/>
+ * Groups are held in a hash table, and the estimated size of the table is tracked as values are
+ * folded in. When the estimate exceeds the budget, the table is hash-partitioned into
+ * {@link #FAN_OUT} {@link SpillFile}s and cleared. Once the input is exhausted, whatever remains in memory
+ * is spilled in the same way, and each partition is then aggregated on its own (with a different
+ * slice of the hash, so that a partition which is still too large splits further when it spills). Since
+ * every occurrence of a key lands in the same partition, each partition produces complete groups.
+ * <p/>
+ * Partitions are aggregated lazily, one at a time, as the consumer iterates. A consumer which stops early must
+ * close the returned iterator, which deletes the partitions which have not been read yet. Beyond {@link #MAX_DEPTH}
+ * levels of partitioning we stop spilling and aggregate in memory regardless of the budget; a single
+ * oversized group cannot be split by hashing anyway.
+ */
+abstract class SpillingHashAggregator<K,V,A>{
+    private static final Logger LOG=Logger.getLogger(SpillingHashAggregator.class);
+
+    static final int FAN_OUT=16;
+    static final int MAX_DEPTH=4;
+    private static final int PARTITION_BITS=Integer.numberOfTrailingZeros(FAN_OUT);
+
+    /*
+     * Rough heap cost of a hash table node and its share of the table array, and of an
+     * (otherwise empty) list of grouped values.
+     */
+    private static final long ENTRY_OVERHEAD=48;
+    private static final long LIST_OVERHEAD=32;
+
+    private final long memoryBudget;
+    private final File spillDirectory;
+
+    private long spilledPartitions;
+    private long spilledRecords;
+    private long spilledBytes;
+
+    SpillingHashAggregator(long memoryBudget,File spillDirectory){
+        this.memoryBudget=memoryBudget;
+        this.spillDirectory=spillDirectory;
+    }
+
+    /**
+     * @param accumulator the current state of the group, or {@code null} if this is the first value seen for it
+     * @return the new state of the group
+     */
+    protected abstract A fold(A accumulator,V value) throws Exception;
+
+    /**
+     * @return the estimated number of bytes by which folding {@code value} grows {@code accumulator}
+     */
+    protected abstract long sizeIncrease(A accumulator,V value);
+
+    /**
+     * Write the group out as key-value pairs which fold back into an equivalent group.
+     */
+    protected abstract void spill(K key,A accumulator,SpillFile<K,V> out);
+
+    /**
+     * Consume the source, and return an iterator over the aggregated groups. The iterator must be closed
+     * if it is not exhausted.
+     */
+    CloseableIterator<Tuple2<K,A>> aggregate(Iterator<Tuple2<K,V>> source) throws Exception{
+        return aggregate(source,0);
+    }
+
+    long getSpilledPartitions(){
+        return spilledPartitions;
+    }
+
+    long getSpilledRecords(){
+        return spilledRecords;
+    }
+
+    long getSpilledBytes(){
+        return spilledBytes;
+    }
+
+    static <Op extends SpliceOperation,K,V> SpillingHashAggregator<K,V,V> reducer(SpliceFunction2<Op,V,V,V> function){
+        return reducer(function,ControlUtils.spillMemoryBudget(),ControlUtils.spillDirectory());
+    }
+
+    static <Op extends SpliceOperation,K,V> SpillingHashAggregator<K,V,V> reducer(final SpliceFunction2<Op,V,V,V> function,
+                                                                                  long memoryBudget,File spillDirectory){
+        return new SpillingHashAggregator<K,V,V>(memoryBudget,spillDirectory){
+            @Override
+            protected V fold(V accumulator,V value) throws Exception{
+                return function.call(accumulator,value);
+            }
+
+            @Override
+            protected long sizeIncrease(V accumulator,V value){
+                //merging into an existing group does not (appreciably) change its size
+                return accumulator==null?ControlUtils.estimateSize(value):0L;
+            }
+
+            @Override
+            protected void spill(K key,V accumulator,SpillFile<K,V> out){
+                //a partial aggregate merges with the others like any other value
+                out.write(key,accumulator);
+            }
+        };
+    }
+
+    static <K,V> SpillingHashAggregator<K,V,Iterable<V>> grouper(){
+        return grouper(ControlUtils.spillMemoryBudget(),ControlUtils.spillDirectory());
+    }
+
+    static <K,V> SpillingHashAggregator<K,V,Iterable<V>> grouper(long memoryBudget,File spillDirectory){
+        return new SpillingHashAggregator<K,V,Iterable<V>>(memoryBudget,spillDirectory){
+            @Override
+            protected Iterable<V> fold(Iterable<V> accumulator,V value) throws Exception{
+                @SuppressWarnings("unchecked") List<V> values=accumulator==null?new ArrayList<V>():(List<V>)accumulator;
+                values.add(value);
+                return values;
+            }
+
+            @Override
+            protected long sizeIncrease(Iterable<V> accumulator,V value){
+                return ControlUtils.estimateSize(value)+(accumulator==null?LIST_OVERHEAD:8L);
+            }
+
+            @Override
+            protected void spill(K key,Iterable<V> accumulator,SpillFile<K,V> out){
+                for(V value : accumulator){
+                    out.write(key,value);
+                }
+            }
+        };
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private CloseableIterator<Tuple2<K,A>> aggregate(Iterator<Tuple2<K,V>> source,int depth) throws Exception{
+        Map<K,A> table=new HashMap<>();
+        long memoryUsed=0L;
+        List<SpillFile<K,V>> partitions=null;
+        try{
+            while(source.hasNext()){
+                Tuple2<K,V> next=source.next();
+                K key=next._1();
+                A accumulator=table.get(key);
+                if(accumulator==null)
+                    memoryUsed+=ENTRY_OVERHEAD+ControlUtils.estimateSize(key);
+                memoryUsed+=sizeIncrease(accumulator,next._2());
+                table.put(key,fold(accumulator,next._2()));
+
+                if(memoryUsed>memoryBudget && depth<MAX_DEPTH){
+                    if(partitions==null)
+                        partitions=openPartitions();
+                    spill(table,partitions,depth);
+                    memoryUsed=0L;
+                }
+            }
+            if(partitions==null){
+                return new ForwardingCloseableIterator<Tuple2<K,A>>(ControlUtils.entryToTuple(table.entrySet())){
+                    @Override
+                    public void close(){
+                        //nothing was spilled
+                    }
+                };
+            }
+            spill(table,partitions,depth);
+            for(SpillFile<K,V> partition : partitions){
+                partition.finish();
+                spilledPartitions++;
+                spilledRecords+=partition.getRecordCount();
+                spilledBytes+=partition.getBytesWritten();
+                ControlSpillStatisticsImpl.instance().recordAggregationSpill(partition.getBytesWritten());
+            }
+        }catch(Exception e){
+            if(partitions!=null){
+                for(SpillFile<K,V> partition : partitions){
+                    partition.discard();
+                }
+            }
+            throw e;
+        }
+        if(LOG.isDebugEnabled())
+            SpliceLogUtils.debug(LOG,"Spilled aggregation at depth %d: %d partitions, %d records, %d bytes so far",
+                    depth,spilledPartitions,spilledRecords,spilledBytes);
+
+        return new PartitionIterator(partitions,depth+1);
+    }
+
+    private List<SpillFile<K,V>> openPartitions() throws IOException{
+        List<SpillFile<K,V>> partitions=new ArrayList<>(FAN_OUT);
+        try{
+            for(int i=0;i<FAN_OUT;i++){
+                partitions.add(SpillFile.<K,V>create(spillDirectory));
+            }
+        }catch(IOException e){
+            for(SpillFile<K,V> partition : partitions){
+                partition.discard();
+            }
+            throw e;
+        }
+        return partitions;
+    }
+
+    private void spill(Map<K,A> table,List<SpillFile<K,V>> partitions,int depth){
+        for(Map.Entry<K,A> entry : table.entrySet()){
+            spill(entry.getKey(),entry.getValue(),partitions.get(partition(entry.getKey(),depth)));
+        }
+        table.clear();
+    }
+
+    /*
+     * Aggregates the spilled partitions one at a time, deleting each as it is opened.
+     */
+    private class PartitionIterator implements CloseableIterator<Tuple2<K,A>>{
+        private final List<SpillFile<K,V>> partitions;
+        private final int depth;
+        private int nextPartition;
+        private CloseableIterator<Tuple2<K,A>> current;
+        private boolean closed;
+
+        PartitionIterator(List<SpillFile<K,V>> partitions,int depth){
+            this.partitions=partitions;
+            this.depth=depth;
+        }
+
+        @Override
+        public boolean hasNext(){
+            if(closed) return false;
+            try{
+                while(current==null || !current.hasNext()){
+                    if(current!=null)
+                        current.close();
+                    if(nextPartition==partitions.size()){
+                        current=null;
+                        closed=true;
+                        return false;
+                    }
+                    current=aggregatePartition(partitions.get(nextPartition++));
+                }
+                return true;
+            }catch(Exception e){
+                close();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public Tuple2<K,A> next(){
+            if(!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
+
+        @Override
+        public void remove(){
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close(){
+            if(closed) return;
+            closed=true;
+            if(current!=null){
+                try{
+                    current.close();
+                }catch(IOException ignored){
+                    //nothing further can be read from it anyway
+                }
+                current=null;
+            }
+            for(SpillFile<K,V> partition : partitions.subList(nextPartition,partitions.size())){
+                partition.discard();
+            }
+            nextPartition=partitions.size();
+        }
+
+        private CloseableIterator<Tuple2<K,A>> aggregatePartition(SpillFile<K,V> partition) throws Exception{
+            CloseableIterator<Tuple2<K,V>> reader=partition.read();
+            try{
+                //aggregation consumes the whole partition before it returns
+                return aggregate(reader,depth);
+            }finally{
+                reader.close();
+            }
+        }
+    }
+
+    /*
+     * Each level of partitioning takes a different slice of the (mixed) hash code, so that
+     * the keys of a single partition are spread evenly when it is partitioned again.
+     */
+    private static int partition(Object key,int depth){
+        int h=key==null?0:key.hashCode();
+        h^=h>>>16;
+        h*=0x85ebca6b;
+        h^=h>>>13;
+        h*=0xc2b2ae35;
+        h^=h>>>16;
+        return (h>>>(depth*PARTITION_BITS))&(FAN_OUT-1);
+    }
+}
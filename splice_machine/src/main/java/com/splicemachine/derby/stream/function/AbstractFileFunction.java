@@ -130,41 +130,13 @@ public abstract class AbstractFileFunction<I> extends SpliceFlatMapFunction<Spli
             ExecRow returnRow = execRow.getClone();
             for (int i = 1; i <= returnRow.nColumns(); i++) {
                 DataValueDescriptor dvd = returnRow.getColumn(i);
-                int type = dvd.getTypeFormatId();
                 if (values.size() <= i-1) {
                     throw StandardException.newException(SQLState.COLUMN_NUMBER_MISMATCH, execRow.nColumns(), values.size());
                 }
                 String value = values.get(i - 1);
                 if (shouldBeNull(value,quotedColumns.valueAt(i-1)))
                     value = null;
-                switch(type){
-                    case StoredFormatIds.SQL_TIME_ID:
-                        if(calendar==null)
-                            calendar = new GregorianCalendar();
-                        if (timeFormat == null || value==null){
-                            ((DateTimeDataValue)dvd).setValue(value,calendar);
-                        }else
-                            dvd.setValue(SpliceDateFunctions.TO_TIME(value, timeFormat),calendar);
-                        break;
-                    case StoredFormatIds.SQL_DATE_ID:
-                        if(calendar==null)
-                            calendar = new GregorianCalendar();
-                        if (dateTimeFormat == null || value == null)
-                            ((DateTimeDataValue)dvd).setValue(value,calendar);
-                        else
-                            dvd.setValue(SpliceDateFunctions.TO_DATE(value, dateTimeFormat),calendar);
-                        break;
-                    case StoredFormatIds.SQL_TIMESTAMP_ID:
-                        if(calendar==null)
-                            calendar = new GregorianCalendar();
-                        if (timestampFormat == null || value==null)
-                            ((DateTimeDataValue)dvd).setValue(value,calendar);
-                        else
-                            dvd.setValue(SpliceDateFunctions.TO_TIMESTAMP(value, timestampFormat),calendar);
-                        break;
-                    default:
-                        dvd.setValue(value);
-                }
+                setValue(dvd,value);
             }
             return new LocatedRow(returnRow);
         } catch (Exception e) {
@@ -176,6 +148,86 @@ public abstract class AbstractFileFunction<I> extends SpliceFlatMapFunction<Spli
         }
     }
 
+    /**
+     * Same as {@link #call(List, BooleanList)}, for a line already scanned by {@code scanner}. Columns are only
+     * turned into Strings when they can't be decoded in place.
+     */
+    @SuppressFBWarnings(value = "REC_CATCH_EXCEPTION",justification = "Intentional")
+    public LocatedRow call(CSVLineScanner scanner) throws Exception {
+        operationContext.recordRead();
+        try {
+            ExecRow returnRow = execRow.getClone();
+            for (int i = 1; i <= returnRow.nColumns(); i++) {
+                DataValueDescriptor dvd = returnRow.getColumn(i);
+                if (scanner.columnCount() <= i-1) {
+                    throw StandardException.newException(SQLState.COLUMN_NUMBER_MISMATCH, execRow.nColumns(), scanner.columnCount());
+                }
+                if (scanner.isNull(i - 1))
+                    setValue(dvd,null);
+                else if (hasFormat(dvd.getTypeFormatId()) || !scanner.setValue(i - 1, dvd))
+                    setValue(dvd,scanner.getColumn(i - 1));
+            }
+            return new LocatedRow(returnRow);
+        } catch (Exception e) {
+            if (operationContext.isPermissive()) {
+               operationContext.recordBadRecord(e.getLocalizedMessage() + scanner.getColumns(), e);
+                return null;
+            }
+            throw e; // Not Permissive of errors
+        }
+    }
+
+    private void setValue(DataValueDescriptor dvd,String value) throws StandardException {
+        switch(dvd.getTypeFormatId()){
+            case StoredFormatIds.SQL_TIME_ID:
+                if(calendar==null)
+                    calendar = new GregorianCalendar();
+                if (timeFormat == null || value==null){
+                    ((DateTimeDataValue)dvd).setValue(value,calendar);
+                }else
+                    dvd.setValue(SpliceDateFunctions.TO_TIME(value, timeFormat),calendar);
+                break;
+            case StoredFormatIds.SQL_DATE_ID:
+                if(calendar==null)
+                    calendar = new GregorianCalendar();
+                if (dateTimeFormat == null || value == null)
+                    ((DateTimeDataValue)dvd).setValue(value,calendar);
+                else
+                    dvd.setValue(SpliceDateFunctions.TO_DATE(value, dateTimeFormat),calendar);
+                break;
+            case StoredFormatIds.SQL_TIMESTAMP_ID:
+                if(calendar==null)
+                    calendar = new GregorianCalendar();
+                if (timestampFormat == null || value==null)
+                    ((DateTimeDataValue)dvd).setValue(value,calendar);
+                else
+                    dvd.setValue(SpliceDateFunctions.TO_TIMESTAMP(value, timestampFormat),calendar);
+                break;
+            default:
+                dvd.setValue(value);
+        }
+    }
+
+    /**
+     * @return true if values of this type are parsed with a user supplied format
+     */
+    private boolean hasFormat(int typeFormatId){
+        switch(typeFormatId){
+            case StoredFormatIds.SQL_TIME_ID:
+                return timeFormat!=null;
+            case StoredFormatIds.SQL_DATE_ID:
+                return dateTimeFormat!=null;
+            case StoredFormatIds.SQL_TIMESTAMP_ID:
+                return timestampFormat!=null;
+            default:
+                return false;
+        }
+    }
+
+    CSVLineScanner newLineScanner() {
+        checkPreference();
+        return new CSVLineScanner(preference.getQuoteChar(),(char)preference.getDelimiterChar());
+    }
 
     void checkPreference() {
         if (preference==null){
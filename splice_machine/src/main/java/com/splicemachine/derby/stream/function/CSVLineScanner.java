@@ -0,0 +1,288 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.function;
+
+import com.splicemachine.db.iapi.error.StandardException;
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.SQLDate;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLSmallint;
+import com.splicemachine.db.iapi.types.SQLTimestamp;
+import com.splicemachine.db.iapi.types.SQLTinyint;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-line CSV scanner used by imports. Rather than copying every column into its own String, the scanner
+ * records the boundaries of each column in a reusable array, and integral, date and timestamp columns in their
+ * canonical formats are decoded directly from the characters of the line.
+ *
+ * Only the common cases are handled here: columns which are either unquoted, or entirely enclosed in quotes
+ * without escaped quotes inside. When a line contains anything else (escaped or stray quotes, a quoted column
+ * spanning lines, an empty line), {@link #scan(String)} returns false and the line must be parsed with the
+ * {@link MutableCSVTokenizer}, whose behavior this class reproduces for the lines it accepts.
+ */
+@NotThreadSafe
+public class CSVLineScanner {
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+
+    private final char quoteChar;
+    private final char delimiterChar;
+
+    private String line;
+    private int columnCount;
+    /* start (inclusive) and end (exclusive) of each column, without the surrounding quotes */
+    private int[] bounds = new int[32];
+    private boolean[] quoted = new boolean[16];
+
+    public CSVLineScanner(char quoteChar, char delimiterChar) {
+        this.quoteChar = quoteChar;
+        this.delimiterChar = delimiterChar;
+    }
+
+    /**
+     * Scans the columns of the line.
+     *
+     * @return false if the line can't be handled by this scanner, in which case the state of the scanner is undefined
+     */
+    public boolean scan(String line) {
+        this.line = line;
+        this.columnCount = 0;
+        int length = line.length();
+        if (length == 0)
+            return false;
+        int position = 0;
+        while (true) {
+            int start, end, next;
+            boolean isQuoted = position < length && line.charAt(position) == quoteChar;
+            if (isQuoted) {
+                start = position + 1;
+                end = line.indexOf(quoteChar, start);
+                if (end < 0)
+                    return false; // unterminated, or spanning lines
+                next = end + 1;
+                if (next < length && line.charAt(next) != delimiterChar)
+                    return false; // escaped quote, or characters after the closing quote
+            } else {
+                start = position;
+                end = start;
+                while (end < length) {
+                    char c = line.charAt(end);
+                    if (c == delimiterChar)
+                        break;
+                    if (c == quoteChar)
+                        return false; // quoted section inside an unquoted column
+                    end++;
+                }
+                next = end;
+            }
+            addColumn(start, end, isQuoted);
+            if (next >= length)
+                return true;
+            position = next + 1; // skip the delimiter
+            if (position == length) {
+                addColumn(position, position, false); // trailing delimiter
+                return true;
+            }
+        }
+    }
+
+    public int columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return true if the column should be read as SQL NULL, following the import rules: an empty column, or an
+     * unquoted {@code null}
+     */
+    public boolean isNull(int column) {
+        int start = bounds[2 * column];
+        int length = bounds[2 * column + 1] - start;
+        if (length == 0)
+            return true;
+        return !quoted[column] && length == 4 && line.regionMatches(true, start, "null", 0, 4);
+    }
+
+    public String getColumn(int column) {
+        int start = bounds[2 * column];
+        int end = bounds[2 * column + 1];
+        return start == end ? null : line.substring(start, end);
+    }
+
+    /**
+     * @return the columns of the line, as the {@link MutableCSVTokenizer} would have returned them
+     */
+    public List<String> getColumns() {
+        List<String> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(getColumn(i));
+        }
+        return columns;
+    }
+
+    /**
+     * Sets the value of {@code dvd} from the characters of a non-null column when its type and format allow decoding
+     * it in place: integral types in plain decimal notation, ISO dates ({@code yyyy-mm-dd}) and JDBC timestamps
+     * ({@code yyyy-mm-dd hh:mm:ss[.fffffffff]}).
+     *
+     * @return false if the value must be set from the String form of the column instead; invalid and out of range
+     * values are left to that path, so errors are reported the same way in both cases.
+     */
+    public boolean setValue(int column, DataValueDescriptor dvd) throws StandardException {
+        int start = bounds[2 * column];
+        int end = bounds[2 * column + 1];
+        if (dvd instanceof SQLInteger) {
+            long value = parseLong(start, end);
+            if (value == Long.MIN_VALUE || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+                return false;
+            dvd.setValue((int) value);
+            return true;
+        } else if (dvd instanceof SQLLongint) {
+            long value = parseLong(start, end);
+            if (value == Long.MIN_VALUE)
+                return false;
+            dvd.setValue(value);
+            return true;
+        } else if (dvd instanceof SQLSmallint) {
+            long value = parseLong(start, end);
+            if (value == Long.MIN_VALUE || value < Short.MIN_VALUE || value > Short.MAX_VALUE)
+                return false;
+            dvd.setValue((short) value);
+            return true;
+        } else if (dvd instanceof SQLTinyint) {
+            long value = parseLong(start, end);
+            if (value == Long.MIN_VALUE || value < Byte.MIN_VALUE || value > Byte.MAX_VALUE)
+                return false;
+            dvd.setValue((byte) value);
+            return true;
+        } else if (dvd instanceof SQLTimestamp) {
+            return setTimestamp(start, end, (SQLTimestamp) dvd);
+        } else if (dvd instanceof SQLDate) {
+            if (end - start != 10)
+                return false;
+            int date = parseDate(start);
+            if (date < 0)
+                return false;
+            ((SQLDate) dvd).setValue(date);
+            return true;
+        }
+        return false;
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    private void addColumn(int start, int end, boolean isQuoted) {
+        if (2 * columnCount + 1 >= bounds.length)
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        if (columnCount >= quoted.length)
+            quoted = Arrays.copyOf(quoted, quoted.length * 2);
+        bounds[2 * columnCount] = start;
+        bounds[2 * columnCount + 1] = end;
+        quoted[columnCount] = isQuoted;
+        columnCount++;
+    }
+
+    /**
+     * @return the value of {@code [-]digits}, or {@link Long#MIN_VALUE} if the characters are anything else or the
+     * value overflows
+     */
+    private long parseLong(int start, int end) {
+        boolean negative = start < end && line.charAt(start) == '-';
+        int position = negative ? start + 1 : start;
+        if (position == end || end - position > 18)
+            return Long.MIN_VALUE; // 18 digits can't overflow, leave longer numbers to the String path
+        long value = 0;
+        for (; position < end; position++) {
+            int digit = line.charAt(position) - '0';
+            if (digit < 0 || digit > 9)
+                return Long.MIN_VALUE;
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private int parseDigits(int start, int count) {
+        int value = 0;
+        for (int position = start; position < start + count; position++) {
+            int digit = line.charAt(position) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return the encoded form of the {@code yyyy-mm-dd} date starting at {@code start}, as in {@link SQLDate},
+     * or -1 if the date is malformed or invalid
+     */
+    private int parseDate(int start) {
+        if (line.charAt(start + 4) != '-' || line.charAt(start + 7) != '-')
+            return -1;
+        int year = parseDigits(start, 4);
+        int month = parseDigits(start + 5, 2);
+        int day = parseDigits(start + 8, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1)
+            return -1;
+        int maxDay;
+        switch (month) {
+            case 4: case 6: case 9: case 11:
+                maxDay = 30;
+                break;
+            case 2:
+                maxDay = ((year % 4) == 0 && ((year % 100) != 0 || (year % 400) == 0)) ? 29 : 28;
+                break;
+            default:
+                maxDay = 31;
+        }
+        if (day > maxDay)
+            return -1;
+        return (year << 16) + (month << 8) + day;
+    }
+
+    private boolean setTimestamp(int start, int end, SQLTimestamp dvd) {
+        int length = end - start;
+        if (length < 19 || length == 20 || length > 29)
+            return false;
+        if (line.charAt(start + 10) != ' ' || line.charAt(start + 13) != ':' || line.charAt(start + 16) != ':')
+            return false;
+        int date = parseDate(start);
+        if (date < 0)
+            return false;
+        int hour = parseDigits(start + 11, 2);
+        int minute = parseDigits(start + 14, 2);
+        int second = parseDigits(start + 17, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+            return false;
+        int nanos = 0;
+        if (length > 19) {
+            if (line.charAt(start + 19) != '.')
+                return false;
+            int digits = length - 20;
+            nanos = parseDigits(start + 20, digits);
+            if (nanos < 0)
+                return false;
+            nanos *= POWERS_OF_TEN[9 - digits];
+        }
+        dvd.setValue(date, (hour << 16) + (minute << 8) + second, nanos);
+        return true;
+    }
+}
@@ -30,8 +30,8 @@ import java.util.List;
 
 /**
  *
- * Function for parsing CSV files that are splittable by Hadoop.  The tokenizer swaps in and out
- * the line to be tokenized.
+ * Function for parsing CSV files that are splittable by Hadoop.  Most lines are parsed in place by a
+ * {@link CSVLineScanner}; the others go through a tokenizer which swaps in and out the line to be tokenized.
  *
  * Special attention should be paid to permissive execution of the OperationContext.  This occurs
  * during imports so that failures are <i>handled</i>.
@@ -42,6 +42,7 @@ import java.util.List;
 public class FileFunction extends AbstractFileFunction<String> {
     boolean initialized = false;
     MutableCSVTokenizer tokenizer;
+    CSVLineScanner scanner;
     public FileFunction() {
         super();
     }
@@ -68,13 +69,20 @@ public class FileFunction extends AbstractFileFunction<String> {
             Reader reader = new StringReader(s);
             checkPreference();
             tokenizer= new MutableCSVTokenizer(reader,preference);
+            scanner = newLineScanner();
             initialized = true;
         }
         try {
-            tokenizer.setLine(s);
-            List<String> read=tokenizer.read();
-            BooleanList quotedColumns=tokenizer.getQuotedColumns();
-            LocatedRow lr =  call(read,quotedColumns);
+            LocatedRow lr;
+            if (scanner.scan(s)) {
+                lr = call(scanner);
+            } else {
+                // lines the scanner can't handle go through the full tokenizer
+                tokenizer.setLine(s);
+                List<String> read=tokenizer.read();
+                BooleanList quotedColumns=tokenizer.getQuotedColumns();
+                lr = call(read,quotedColumns);
+            }
             return lr==null?Collections.<LocatedRow>emptyList().iterator():new SingletonIterator(lr);
         } catch (Exception e) {
             if (operationContext.isPermissive()) {
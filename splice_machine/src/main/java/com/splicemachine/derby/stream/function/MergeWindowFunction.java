@@ -58,9 +58,15 @@ public class MergeWindowFunction<Op extends WindowOperation> extends SpliceFlatM
     @Override
     public Iterator<LocatedRow> call(Tuple2<ExecRow, Iterable<LocatedRow>> tuple) throws Exception {
         Iterable<LocatedRow> locatedRows = tuple._2();
-        List<LocatedRow> partitionRows =new ArrayList<>();
-        for(LocatedRow lr:locatedRows){
-            partitionRows.add(lr);
+        List<LocatedRow> partitionRows;
+        if (locatedRows instanceof ArrayList) {
+            // the grouping already materialized the partition in a list of its own, sort it in place
+            partitionRows = (List<LocatedRow>) locatedRows;
+        } else {
+            partitionRows = new ArrayList<>();
+            for (LocatedRow lr : locatedRows) {
+                partitionRows.add(lr);
+            }
         }
         WindowContext windowContext = operationContext.getOperation().getWindowContext();
         sort(partitionRows, new LocatedRowComparator(windowContext.getKeyColumns(), windowContext.getKeyOrders()));
@@ -20,11 +20,13 @@ import com.splicemachine.derby.stream.function.InnerJoinNullFilterFunction;
 import org.spark_project.guava.base.Function;
 import org.spark_project.guava.collect.FluentIterable;
 import com.splicemachine.EngineDriver;
+import com.splicemachine.collections.ForwardingCloseableIterator;
 import com.splicemachine.db.iapi.error.StandardException;
 import com.splicemachine.db.iapi.sql.execute.ExecRow;
 import com.splicemachine.derby.iapi.sql.execute.DataSetProcessorFactory;
 import com.splicemachine.derby.impl.sql.JoinTable;
 import com.splicemachine.derby.impl.sql.execute.operations.BroadcastJoinCache;
+import com.splicemachine.derby.impl.sql.execute.operations.BroadcastJoinTableKey;
 import com.splicemachine.derby.impl.sql.execute.operations.LocatedRow;
 import com.splicemachine.derby.stream.function.SpliceFlatMapFunction;
 import com.splicemachine.derby.stream.iapi.DataSetProcessor;
@@ -79,10 +81,48 @@ public abstract class AbstractBroadcastJoinFlatMapFunction<In, Out> extends Spli
             }
         };
         ExecRow leftTemplate = operation.getLeftOperation().getExecRowDefinition();
-        joinTable = broadcastJoinCache.get(operation.getSequenceId(), rhsLoader, operation.getRightHashKeys(), operation.getLeftHashKeys(), leftTemplate).newTable();
+        joinTable = getBroadcastJoinCache().get(BroadcastJoinTableKey.forOperation(operation), rhsLoader, operation.getRightHashKeys(), operation.getLeftHashKeys(), leftTemplate).newTable();
 
-        return call(locatedRows, joinTable).iterator();
+        /*
+         * The table stays pinned in the cache until it is closed. Close it as soon as the partition is exhausted,
+         * and in case the consumer stops early (or fails), once the task is done as well.
+         */
+        final JoinTableIterator<Out> iterator = new JoinTableIterator<>(call(locatedRows, joinTable).iterator(), joinTable);
+        operationContext.registerCloseable(iterator);
+        return iterator;
     }
 
     protected abstract Iterable<Out> call(Iterator<In> locatedRows, JoinTable joinTable);
+
+    protected BroadcastJoinCache getBroadcastJoinCache() {
+        return broadcastJoinCache;
+    }
+
+    private static class JoinTableIterator<Out> extends ForwardingCloseableIterator<Out> {
+        private final JoinTable joinTable;
+        private boolean closed;
+
+        JoinTableIterator(Iterator<Out> delegate, JoinTable joinTable) {
+            super(delegate);
+            this.joinTable = joinTable;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed)
+                return false;
+            if (super.hasNext())
+                return true;
+            close();
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            joinTable.close();
+        }
+    }
 }
@@ -46,8 +46,7 @@ public class SubtractByKeyBroadcastJoinFunction extends AbstractBroadcastJoinFla
             @Override
             public boolean apply(@Nullable LocatedRow locatedRow) {
                 try {
-                    boolean rowsOnRight = joinTable.fetchInner(locatedRow.getRow()).hasNext();
-                    return !rowsOnRight;
+                    return !joinTable.hasInner(locatedRow.getRow());
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
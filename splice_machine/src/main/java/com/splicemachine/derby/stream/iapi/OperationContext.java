@@ -88,5 +88,15 @@ public interface OperationContext<Op extends SpliceOperation> extends Externaliz
     void popScope();
 
     TxnView getTxn();
+
+    /**
+     * Register a resource to be closed once the work running under this context is finished, whether or not
+     * its output was consumed in full (on Spark, when the task completes; otherwise, when the operation is closed).
+     *
+     * @param closeable the resource to close
+     * @throws StandardException
+     */
+    void registerCloseable(AutoCloseable closeable) throws StandardException;
+
     OperationContext getClone() throws IOException, ClassNotFoundException;
 }
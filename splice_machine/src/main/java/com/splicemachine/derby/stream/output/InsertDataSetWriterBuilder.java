@@ -38,4 +38,12 @@ public interface InsertDataSetWriterBuilder extends DataSetWriterBuilder{
     InsertDataSetWriterBuilder pkCols(int[] keyCols);
 
     InsertDataSetWriterBuilder tableVersion(String tableVersion);
+
+    /**
+     * Write the rows as HFiles staged in the given directory and bulk load them into the table (and its indexes),
+     * instead of sending them through the write pipeline. Writers which can't bulk load ignore this.
+     *
+     * @param bulkImportDirectory the directory in which to stage HFiles, or null to use the write pipeline
+     */
+    InsertDataSetWriterBuilder bulkImportDirectory(String bulkImportDirectory);
 }
@@ -43,11 +43,14 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
     protected int start;
     protected int end;
     protected int current;
-    protected ArrayList<ExecRow> rows;
+    protected RowQueue rows;
     protected PeekingIterator<ExecRow> source;
     protected byte[] partition;
     protected int[] sortColumns;
     private boolean initialized;
+    // true when no function needs the whole partition, so each row can be returned as soon as it's evaluated
+    private boolean streaming;
+    private ExecRow nextRow;
 
     @SuppressFBWarnings(value="EI_EXPOSE_REP2", justification="Intentional")
     public static WindowFrameBuffer createFrameBuffer(
@@ -88,15 +91,35 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
         // The frame definition will not change over the life of this frame buffer
         this.frameStart = frameDefinition.getFrameStart().getValue();
         this.frameEnd = frameDefinition.getFrameEnd().getValue();
-        this.rows = new ArrayList<ExecRow>();
+        this.rows = new RowQueue();
         this.resultBuffer = new ResultBuffer();
     }
 
     public ExecRow next() {
-        return resultBuffer.next();
+        if (!streaming) {
+            return resultBuffer.next();
+        }
+        ExecRow row = nextRow;
+        if (row != null) {
+            try {
+                move();
+                nextRow = evaluate();
+            } catch (Exception se) {
+                throw new RuntimeException(se);
+            }
+        }
+        return row;
     }
 
     private ExecRow nextInternal() throws IOException, StandardException {
+        ExecRow row = evaluate();
+        if (row != null) {
+            this.resultBuffer.bufferResult(row);
+        }
+        return row;
+    }
+
+    private ExecRow evaluate() throws IOException, StandardException {
         ExecRow row;
         if (current >= rows.size()) {
             return null;
@@ -109,7 +132,6 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
             SpliceGenericWindowFunction function = (SpliceGenericWindowFunction) templateRow.getColumn(aggregatorColumnId).getObject();
             row.setColumn(resultColumnId, function.getResult().cloneValue(false));
         }
-        this.resultBuffer.bufferResult(row);
         return row;
     }
 
@@ -133,15 +155,19 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
             initialized = true;
             try {
                 reset();
-                while (nextInternal() != null) {
-                    move();
+                if (streaming) {
+                    nextRow = evaluate();
+                } else {
+                    while (nextInternal() != null) {
+                        move();
+                    }
+                    finishFrame();
                 }
-                finishFrame();
             } catch (Exception se) {
                 throw new RuntimeException(se);
             }
         }
-        return resultBuffer.hasNext();
+        return streaming ? nextRow != null : resultBuffer.hasNext();
     }
 
     @Override
@@ -165,15 +191,19 @@ abstract public class BaseFrameBuffer implements WindowFrameBuffer{
     }
 
     protected void reset() throws StandardException, IOException {
-        rows = new ArrayList<ExecRow>();
+        rows.clear();
 
         // Initialize window functions
+        streaming = true;
         for (WindowAggregator aggregator : this.aggregators) {
             int aggregatorColumnId = aggregator.getFunctionColumnId();
             SpliceGenericWindowFunction windowFunction =
                     (SpliceGenericWindowFunction) templateRow.getColumn(aggregatorColumnId).getObject();
             windowFunction.reset();
             aggregator.initialize(templateRow);
+            if (windowFunction.requiresFinishFrame()) {
+                streaming = false;
+            }
         }
 
         // initializes frame buffer
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.window;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+
+import java.util.Arrays;
+
+/**
+ * Indexable FIFO of the rows held by a frame buffer. Rows are appended at the tail and dropped from the head as
+ * the frame slides, both in constant time, which an {@link java.util.ArrayList} can't do for the head.
+ */
+class RowQueue {
+    private ExecRow[] buffer = new ExecRow[16];
+    private int head;
+    private int size;
+
+    void add(ExecRow row) {
+        if (size == buffer.length) {
+            grow();
+        }
+        buffer[(head + size) & (buffer.length - 1)] = row;
+        size++;
+    }
+
+    ExecRow get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return buffer[(head + index) & (buffer.length - 1)];
+    }
+
+    ExecRow removeFirst() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Empty queue");
+        }
+        ExecRow row = buffer[head];
+        buffer[head] = null;
+        head = (head + 1) & (buffer.length - 1);
+        size--;
+        return row;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(buffer, null);
+        head = size = 0;
+    }
+
+    private void grow() {
+        // capacity stays a power of two so indexes can be wrapped with a mask
+        ExecRow[] newBuffer = new ExecRow[buffer.length << 1];
+        int firstPart = buffer.length - head;
+        System.arraycopy(buffer, head, newBuffer, 0, firstPart);
+        System.arraycopy(buffer, 0, newBuffer, firstPart, head);
+        buffer = newBuffer;
+        head = 0;
+    }
+}
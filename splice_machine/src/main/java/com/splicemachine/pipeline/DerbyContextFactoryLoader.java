@@ -82,7 +82,7 @@ public class DerbyContextFactoryLoader implements ContextFactoryLoader{
         this.osf=osf;
         this.pef=pef;
         this.trc=trc;
-        this.fkGroup=new FKWriteFactoryHolder(pef,txnOperationFactory);
+        this.fkGroup=new FKWriteFactoryHolder(conglomId,pef,txnOperationFactory);
         //TODO -sf- memory leak
         this.ddlListener=new DDLWatcher.DDLListener(){
             @Override
@@ -42,6 +42,8 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class FKWriteFactoryHolder implements WriteFactoryGroup{
 
+    /* The conglomerate whose write context this holder belongs to. */
+    private final long conglomId;
     private final PipelineExceptionFactory exceptionFactory;
     private final TxnOperationFactory txnOperationFactory;
     /*
@@ -53,7 +55,8 @@ public class FKWriteFactoryHolder implements WriteFactoryGroup{
     private volatile Map<Long, ForeignKeyChildInterceptWriteFactory> childInterceptWriteFactories = new ConcurrentHashMap<>();
     private ForeignKeyParentInterceptWriteFactory parentInterceptWriteFactory;
 
-    public FKWriteFactoryHolder(PipelineExceptionFactory exceptionFactory,TxnOperationFactory txnOperationFactory){
+    public FKWriteFactoryHolder(long conglomId,PipelineExceptionFactory exceptionFactory,TxnOperationFactory txnOperationFactory){
+        this.conglomId=conglomId;
         this.exceptionFactory=exceptionFactory;
         this.txnOperationFactory = txnOperationFactory;
     }
@@ -105,7 +108,7 @@ public class FKWriteFactoryHolder implements WriteFactoryGroup{
     }
 
     public void addChildIntercept(long referencedConglomerateNumber, FKConstraintInfo fkConstraintInfo) {
-        childInterceptWriteFactories.put(referencedConglomerateNumber, new ForeignKeyChildInterceptWriteFactory(referencedConglomerateNumber, fkConstraintInfo,exceptionFactory));
+        childInterceptWriteFactories.put(referencedConglomerateNumber, new ForeignKeyChildInterceptWriteFactory(conglomId, referencedConglomerateNumber, fkConstraintInfo,exceptionFactory));
     }
 
     /**
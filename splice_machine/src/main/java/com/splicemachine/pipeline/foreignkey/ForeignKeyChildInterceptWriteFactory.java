@@ -27,13 +27,16 @@ import java.io.IOException;
  */
 class ForeignKeyChildInterceptWriteFactory implements LocalWriteFactory{
 
+    /* The FK backing index conglomerate the WriteHandlers from this factory are installed on. */
+    private final long indexConglomerateNumber;
     /* The base-table or unique-index conglomerate that this FK references. */
     private final long referencedConglomerateNumber;
     private final FKConstraintInfo fkConstraintInfo;
     private final PipelineExceptionFactory exceptionFactory;
 
-    ForeignKeyChildInterceptWriteFactory(long referencedConglomerateNumber, FKConstraintInfo fkConstraintInfo,
+    ForeignKeyChildInterceptWriteFactory(long indexConglomerateNumber, long referencedConglomerateNumber, FKConstraintInfo fkConstraintInfo,
                                          PipelineExceptionFactory exceptionFactory) {
+        this.indexConglomerateNumber = indexConglomerateNumber;
         this.referencedConglomerateNumber = referencedConglomerateNumber;
         this.fkConstraintInfo = fkConstraintInfo;
         this.exceptionFactory = exceptionFactory;
@@ -41,7 +44,7 @@ class ForeignKeyChildInterceptWriteFactory implements LocalWriteFactory{
 
     @Override
     public void addTo(PipelineWriteContext ctx, boolean keepState, int expectedWrites) throws IOException {
-        ctx.addLast(new ForeignKeyChildInterceptWriteHandler(referencedConglomerateNumber, fkConstraintInfo,exceptionFactory));
+        ctx.addLast(new ForeignKeyChildInterceptWriteHandler(indexConglomerateNumber, referencedConglomerateNumber, fkConstraintInfo,exceptionFactory));
     }
 
     @Override
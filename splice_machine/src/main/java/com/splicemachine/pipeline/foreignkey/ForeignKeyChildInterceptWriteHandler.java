@@ -17,33 +17,38 @@ package com.splicemachine.pipeline.foreignkey;
 
 import com.carrotsearch.hppc.BitSet;
 import com.carrotsearch.hppc.ObjectArrayList;
+import com.carrotsearch.hppc.ObjectIntOpenHashMap;
 import com.splicemachine.db.iapi.services.io.StoredFormatIds;
 import com.splicemachine.ddl.DDLMessage.*;
 import com.splicemachine.derby.utils.marshall.dvd.TypeProvider;
 import com.splicemachine.derby.utils.marshall.dvd.VersionedSerializers;
 import com.splicemachine.encoding.MultiFieldDecoder;
 import com.splicemachine.kvpair.KVPair;
+import com.splicemachine.pipeline.PipelineDriver;
 import com.splicemachine.pipeline.api.Code;
 import com.splicemachine.pipeline.api.PipelineExceptionFactory;
 import com.splicemachine.pipeline.client.WriteResult;
 import com.splicemachine.pipeline.constraint.ConstraintContext;
+import com.splicemachine.pipeline.constraint.ForeignKeyParentKeyCache;
 import com.splicemachine.pipeline.context.WriteContext;
 import com.splicemachine.pipeline.writehandler.WriteHandler;
-import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnSupplier;
 import com.splicemachine.si.impl.SimpleTxnFilter;
 import com.splicemachine.si.impl.driver.SIDriver;
 import com.splicemachine.si.impl.readresolve.NoOpReadResolver;
 import com.splicemachine.si.impl.txn.ActiveWriteTxn;
 import com.splicemachine.si.impl.txn.WritableTxn;
+import com.splicemachine.storage.CellType;
 import com.splicemachine.storage.DataCell;
 import com.splicemachine.storage.DataFilter;
 import com.splicemachine.storage.DataResult;
 import com.splicemachine.storage.Partition;
 import com.splicemachine.storage.util.MapAttributes;
+import com.splicemachine.utils.ByteSlice;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -53,6 +58,7 @@ import java.util.List;
  */
 @NotThreadSafe
 public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
+    private final long indexConglomerateNumber;
     private final long referencedConglomerateNumber;
     private final ForeignKeyViolationProcessor violationProcessor;
     private Partition table;
@@ -62,9 +68,11 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
     private final TypeProvider typeProvider;
     private FKConstraintInfo fkConstraintInfo;
 
-    public ForeignKeyChildInterceptWriteHandler(long referencedConglomerateNumber,
+    public ForeignKeyChildInterceptWriteHandler(long indexConglomerateNumber,
+                                                long referencedConglomerateNumber,
                                                 FKConstraintInfo fkConstraintInfo,
                                                 PipelineExceptionFactory exceptionFactory) {
+        this.indexConglomerateNumber = indexConglomerateNumber;
         this.referencedConglomerateNumber = referencedConglomerateNumber;
         this.violationProcessor = new ForeignKeyViolationProcessor(
                 new ForeignKeyViolationProcessor.ChildFkConstraintContextProvider(fkConstraintInfo),
@@ -95,24 +103,36 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
     public void flush(WriteContext ctx) throws IOException {
         try {
             initTable();
-            HashSet<byte[]> culledLookups = new HashSet(mutations.size());
+            ForeignKeyParentKeyCache parentKeyCache = PipelineDriver.driver().foreignKeyParentKeyCache();
+            TxnSupplier txnSupplier = SIDriver.driver().getTxnSupplier();
+            /*
+             * locations[i] is the position in rowKeysToFetch of the parent key for mutations[i], or -1 if that
+             * mutation needs no lookup (a null FK column, or a parent key verified recently).
+             */
+            ObjectIntOpenHashMap<ByteSlice> culledLookups = new ObjectIntOpenHashMap<>(mutations.size());
+            List<byte[]> rowKeysToFetch = new ArrayList<>(mutations.size());
+            List<Object> cacheTokens = new ArrayList<>(mutations.size());
             int[] locations = new int[mutations.size()];
-            int counter = 0;
             for (int i =0; i<mutations.size();i++) {
                 byte[] checkRowKey = getCheckRowKey(mutations.get(i).getRowKey());
-                if (culledLookups.contains(checkRowKey)) {
-                    locations[i] = counter-1;
+                if (checkRowKey == null || parentKeyCache.isVerified(indexConglomerateNumber, referencedConglomerateNumber, checkRowKey)) {
+                    locations[i] = -1;
+                    continue;
+                }
+                ByteSlice lookup = ByteSlice.wrap(checkRowKey);
+                if (culledLookups.containsKey(lookup)) {
+                    locations[i] = culledLookups.lget();
                 } else {
-                    culledLookups.add(checkRowKey);
-                    locations[i] = counter;
-                    counter++;
+                    locations[i] = rowKeysToFetch.size();
+                    culledLookups.put(lookup, locations[i]);
+                    rowKeysToFetch.add(checkRowKey);
+                    cacheTokens.add(parentKeyCache.prepare(indexConglomerateNumber, checkRowKey, txnSupplier));
                 }
             }
+            // Every parent key was verified recently...
+            if (rowKeysToFetch.isEmpty())
+                return;
 
-            List<byte[]> rowKeysToFetch = new ArrayList<>(culledLookups.size());
-            for (byte[] item: culledLookups) {
-                rowKeysToFetch.add(item);
-            }
             SimpleTxnFilter readUncommittedFilter;
             SimpleTxnFilter readCommittedFilter;
             if (ctx.getTxn() instanceof ActiveWriteTxn) {
@@ -134,6 +154,8 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
                 readUncommittedFilter.reset();
                 if (!hasData(result,readCommittedFilter) || !hasData(result,readUncommittedFilter))
                     misses.set(i);
+                else if (parentKeyCache.isEnabled() && isCommitted(result,txnSupplier))
+                    parentKeyCache.verified(indexConglomerateNumber, referencedConglomerateNumber, rowKeysToFetch.get(i), cacheTokens.get(i));
                 i++;
             }
 
@@ -143,7 +165,7 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
             // Assemble failures for the write pipeline with error codes.
             i=0;
             for (int location: locations) {
-                if (misses.get(location))
+                if (location >= 0 && misses.get(location))
                     failWrite(mutations.get(i),ctx);
                 i++;
             }
@@ -187,6 +209,27 @@ public class ForeignKeyChildInterceptWriteHandler implements WriteHandler{
         return false; // No data returned, fail
     }
 
+    /*
+     * Only committed parent rows may be cached: a parent written earlier by this same transaction passes the
+     * check as well, but could still roll back.
+     */
+    private boolean isCommitted(DataResult result,TxnSupplier txnSupplier) throws IOException {
+        long newestVersion = -1L;
+        for (DataCell dc : result) {
+            CellType type = dc.dataType();
+            if ((type == CellType.USER_DATA || type == CellType.TOMBSTONE || type == CellType.ANTI_TOMBSTONE)
+                    && dc.version() > newestVersion)
+                newestVersion = dc.version();
+        }
+        if (newestVersion < 0)
+            return false;
+        for (DataCell dc : result) {
+            if (dc.dataType() == CellType.COMMIT_TIMESTAMP && dc.version() == newestVersion)
+                return true;
+        }
+        return txnSupplier.getTransaction(newestVersion).getEffectiveState() == Txn.State.COMMITTED;
+    }
+
     /* Only need to create the CallBuffer once, but not until we have a WriteContext */
     private void initTable() throws IOException{
             if (table==null)
@@ -17,9 +17,11 @@ package com.splicemachine.pipeline.foreignkey;
 
 import com.carrotsearch.hppc.ObjectArrayList;
 import com.splicemachine.ddl.DDLMessage;
+import com.splicemachine.pipeline.PipelineDriver;
 import com.splicemachine.pipeline.api.Code;
 import com.splicemachine.pipeline.client.WriteResult;
 import com.splicemachine.pipeline.constraint.ConstraintContext;
+import com.splicemachine.pipeline.constraint.ForeignKeyParentKeyCache;
 import com.splicemachine.primitives.Bytes;
 import com.splicemachine.si.api.data.TxnOperationFactory;
 import com.splicemachine.si.impl.SimpleTxnFilter;
@@ -149,6 +151,14 @@ public class ForeignKeyParentInterceptWriteHandler implements WriteHandler{
         scan =scan.startKey(startKey);
         byte[] endKey = Bytes.unsignedCopyAndIncrement(startKey);//new byte[startKey.length+1];
         scan = scan.stopKey(endKey);
+        /*
+         * Evict the key from the FK parent key cache. The scan attribute reaches the region servers hosting this
+         * part of the index, which is where child writes referencing the key are checked; the local call covers
+         * engines which don't observe scans.
+         */
+        long txnId = ctx.getTxn().getTxnId();
+        scan.addAttribute(ForeignKeyParentKeyCache.INVALIDATE_ATTRIBUTE,ForeignKeyParentKeyCache.invalidateAttribute(txnId,startKey));
+        PipelineDriver.driver().foreignKeyParentKeyCache().invalidate(indexConglomerateId,startKey,txnId);
 
             SimpleTxnFilter readUncommittedFilter;
             SimpleTxnFilter readCommittedFilter;
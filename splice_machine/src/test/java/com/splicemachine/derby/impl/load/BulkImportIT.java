@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.load;
+
+import com.splicemachine.derby.test.framework.SpliceIndexWatcher;
+import com.splicemachine.derby.test.framework.SpliceSchemaWatcher;
+import com.splicemachine.derby.test.framework.SpliceTableWatcher;
+import com.splicemachine.derby.test.framework.SpliceUnitTest;
+import com.splicemachine.derby.test.framework.TestConnection;
+import org.junit.*;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+
+import java.io.File;
+import java.sql.CallableStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Correctness tests of SYSCS_UTIL.BULK_IMPORT_HFILE against tables which already hold data: primary keys and
+ * unique indexes must still be enforced against the existing rows, and existing indexes must cover the imported ones.
+ */
+public class BulkImportIT extends SpliceUnitTest {
+    private static final SpliceSchemaWatcher schema =
+            new SpliceSchemaWatcher(BulkImportIT.class.getSimpleName().toUpperCase());
+    private static final SpliceTableWatcher pkTable =
+            new SpliceTableWatcher("pk_table",schema.schemaName,"(a int, b int, primary key(a))");
+    private static final SpliceTableWatcher emptyPkTable =
+            new SpliceTableWatcher("empty_pk_table",schema.schemaName,"(a int, b int, primary key(a))");
+    private static final SpliceTableWatcher uniqueTable =
+            new SpliceTableWatcher("unique_table",schema.schemaName,"(a int, b int)");
+    private static final SpliceIndexWatcher uniqueIndex =
+            new SpliceIndexWatcher(uniqueTable.tableName,schema.schemaName,"unique_idx",schema.schemaName,"(b)",true);
+    private static final SpliceTableWatcher indexedTable =
+            new SpliceTableWatcher("indexed_table",schema.schemaName,"(a int, b int)");
+    private static final SpliceIndexWatcher index =
+            new SpliceIndexWatcher(indexedTable.tableName,schema.schemaName,"b_idx",schema.schemaName,"(b)",false);
+
+    @ClassRule public static TestRule chain = RuleChain.outerRule(schema)
+            .around(pkTable)
+            .around(emptyPkTable)
+            .around(uniqueTable)
+            .around(uniqueIndex)
+            .around(indexedTable)
+            .around(index);
+
+    private static File BADDIR;
+    private static File BULKDIR;
+    private static SpliceUnitTest.TestFileGenerator importFile;
+    private static int size;
+
+    private TestConnection conn;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        BADDIR = createBadLogDirectory(schema.schemaName);
+        assertNotNull(BADDIR);
+        File IMPORTDIR = createImportFileDirectory(schema.schemaName);
+        assertNotNull(IMPORTDIR);
+        BULKDIR = new File(SpliceUnitTest.getBaseDirectory()+"/target/bulk_import/"+schema.schemaName);
+        if (BULKDIR.exists())
+            recursiveDelete(BULKDIR);
+        Assert.assertTrue("Couldn't create "+BULKDIR,BULKDIR.mkdirs());
+
+        size = 5;
+        // rows are (i, 2*i) for i in [0, size)
+        importFile = generateFullRow(IMPORTDIR, "full", size, new ArrayList<int[]>(size), false);
+    }
+
+    @Before
+    public void before() throws Exception {
+        conn = createConnection();
+        conn.setAutoCommit(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            // ignore
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+    @Test
+    public void testBulkImportIntoEmptyTableWithPk() throws Exception {
+        validateImportResults(bulkImport(emptyPkTable).executeQuery(), size, 0);
+        Assert.assertEquals("Incorrect row count!", size, conn.count("select * from " + emptyPkTable));
+    }
+
+    @Test
+    public void testBulkImportFailsOnPkConflictWithExistingRow() throws Exception {
+        conn.execute("insert into " + pkTable + "(a,b) values (2,100)");
+        try {
+            bulkImport(pkTable).execute();
+            Assert.fail("Did not throw exception");
+        } catch (SQLException se) {
+            SpliceUnitTest.assertBadFileContainsError(BADDIR, importFile.getFileName(), "23505", null);
+        }
+        ResultSet rs = conn.query("select b from " + pkTable + " where a = 2");
+        Assert.assertTrue("Existing row missing!", rs.next());
+        Assert.assertEquals("Existing row was overwritten!", 100, rs.getInt(1));
+    }
+
+    @Test
+    public void testBulkImportFailsOnUniqueIndexConflictWithExistingRow() throws Exception {
+        conn.execute("insert into " + uniqueTable + "(a,b) values (100,4)");
+        try {
+            bulkImport(uniqueTable).execute();
+            Assert.fail("Did not throw exception");
+        } catch (SQLException se) {
+            SpliceUnitTest.assertBadFileContainsError(BADDIR, importFile.getFileName(), "23505", null);
+        }
+        Assert.assertEquals("Incorrect row count!", 1, conn.count("select * from " + uniqueTable));
+    }
+
+    @Test
+    public void testBulkImportPopulatesExistingIndex() throws Exception {
+        conn.execute("insert into " + indexedTable + "(a,b) values (100,4)");
+        validateImportResults(bulkImport(indexedTable).executeQuery(), size, 0);
+
+        Assert.assertEquals("Incorrect row count through the index!", size + 1,
+                conn.count("select * from " + indexedTable + " --SPLICE-PROPERTIES index=B_IDX \n"));
+        ResultSet rs = conn.query("select a from " + indexedTable + " --SPLICE-PROPERTIES index=B_IDX \n" +
+                "where b = 4 order by a");
+        Assert.assertTrue("No rows returned!", rs.next());
+        Assert.assertEquals(2, rs.getInt(1));
+        Assert.assertTrue("Existing row missing!", rs.next());
+        Assert.assertEquals(100, rs.getInt(1));
+        Assert.assertFalse("Too many rows returned!", rs.next());
+    }
+
+    private CallableStatement bulkImport(SpliceTableWatcher table) throws Exception {
+        CallableStatement statement =
+                conn.prepareCall("call SYSCS_UTIL.BULK_IMPORT_HFILE(?,?,null,?,null,null,null,null,null,0,?,null,null,?)");
+        statement.setString(1, schema.schemaName);
+        statement.setString(2, table.tableName);
+        statement.setString(3, importFile.getFilePath());
+        statement.setString(4, BADDIR.getCanonicalPath());
+        statement.setString(5, BULKDIR.getCanonicalPath());
+        return statement;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.derby.stream.function.broadcast.BroadcastJoinFlatMapFunction;
+import com.splicemachine.derby.stream.iapi.OperationContext;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import com.splicemachine.stream.Stream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Category(ArchitectureIndependent.class)
+public class BroadcastJoinCacheTest{
+    private static final long TABLE_SIZE=100;
+    private static final long NO_EXPIRATION=TimeUnit.HOURS.toNanos(1);
+
+    @Test
+    public void testRepeatedGetSharesTable() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,10*TABLE_SIZE,NO_EXPIRATION);
+
+        get(cache,1l).close();
+        get(cache,1l).close();
+        Assert.assertEquals("Table was loaded more than once!",1,loader.loads.get());
+        Assert.assertEquals("Incorrect hit count!",1l,cache.getHits());
+        Assert.assertEquals("Incorrect memory size!",TABLE_SIZE,cache.getMemorySize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedUnpinnedTable() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,2*TABLE_SIZE,NO_EXPIRATION);
+
+        get(cache,1l).close();
+        get(cache,2l).close();
+        get(cache,1l).close(); //table 2 is now the least recently used
+        get(cache,3l).close();
+        Assert.assertEquals("Incorrect eviction count!",1l,cache.getEvictions());
+        Assert.assertEquals("Incorrect memory size!",2*TABLE_SIZE,cache.getMemorySize());
+
+        get(cache,1l).close();
+        Assert.assertEquals("Most recently used table was evicted!",3,loader.loads.get());
+        get(cache,2l).close();
+        Assert.assertEquals("Least recently used table was not evicted!",4,loader.loads.get());
+    }
+
+    @Test
+    public void testPinnedTablesAreNotEvicted() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,TABLE_SIZE,NO_EXPIRATION);
+
+        JoinTable first=get(cache,1l);
+        JoinTable second=get(cache,2l);
+        Assert.assertEquals("Evicted a pinned table!",0l,cache.getEvictions());
+        Assert.assertEquals("Incorrect memory size!",2*TABLE_SIZE,cache.getMemorySize());
+
+        first.close();
+        Assert.assertEquals("Did not evict once the table was unpinned!",1l,cache.getEvictions());
+        Assert.assertEquals("Incorrect memory size!",TABLE_SIZE,cache.getMemorySize());
+
+        get(cache,2l).close();
+        Assert.assertEquals("Pinned table was reloaded!",2,loader.loads.get());
+        second.close();
+    }
+
+    @Test
+    public void testClosingTwiceUnpinsOnce() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,TABLE_SIZE,NO_EXPIRATION);
+
+        JoinTable first=get(cache,1l);
+        JoinTable second=get(cache,1l);
+        first.close();
+        first.close();
+        get(cache,2l).close();
+        Assert.assertEquals("Evicted a table which is still in use!",1l,cache.getEvictions());
+        get(cache,1l).close();
+        Assert.assertEquals("Table in use was reloaded!",2,loader.loads.get());
+        second.close();
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        loader.fail=true;
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,TABLE_SIZE,NO_EXPIRATION);
+        try{
+            get(cache,1l);
+            Assert.fail("Expected the load to fail!");
+        }catch(Exception expected){
+            //expected
+        }
+        loader.fail=false;
+        get(cache,1l).close();
+        Assert.assertEquals("Failed load was cached!",2,loader.loads.get());
+        Assert.assertEquals("Incorrect memory size!",TABLE_SIZE,cache.getMemorySize());
+    }
+
+    @Test
+    public void testIdleTablesExpire() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,10*TABLE_SIZE,0l);
+
+        get(cache,1l).close();
+        Thread.sleep(1);
+        get(cache,2l).close();
+        Assert.assertEquals("Idle table did not expire!",1l,cache.getEvictions());
+        Assert.assertEquals("Incorrect memory size!",TABLE_SIZE,cache.getMemorySize());
+    }
+
+    @Test
+    public void testJoinFunctionUnpinsTableWhenExhausted() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,0l,NO_EXPIRATION);
+        List<AutoCloseable> registered=new ArrayList<>();
+
+        Iterator<?> results=joinFunction(cache,registered).call(outerRows(3));
+        Assert.assertEquals("Evicted a table which is still in use!",0l,cache.getEvictions());
+        int count=0;
+        while(results.hasNext()){
+            results.next();
+            count++;
+        }
+        Assert.assertEquals("Incorrect number of joined rows!",3,count);
+        Assert.assertEquals("Table was not unpinned once the partition was exhausted!",1l,cache.getEvictions());
+        Assert.assertEquals("Incorrect memory size!",0l,cache.getMemorySize());
+
+        for(AutoCloseable closeable : registered){
+            closeable.close();
+        }
+        Assert.assertEquals("Table was unpinned more than once!",1l,cache.getEvictions());
+    }
+
+    @Test
+    public void testJoinFunctionUnpinsTableWhenAbandoned() throws Exception{
+        CountingLoader loader=new CountingLoader();
+        BroadcastJoinCache cache=new BroadcastJoinCache(loader,0l,NO_EXPIRATION);
+        List<AutoCloseable> registered=new ArrayList<>();
+
+        Iterator<?> results=joinFunction(cache,registered).call(outerRows(3));
+        results.next();
+        Assert.assertEquals("Evicted a table which is still in use!",0l,cache.getEvictions());
+        Assert.assertEquals("Join table was not registered for cleanup!",1,registered.size());
+
+        registered.get(0).close();
+        Assert.assertEquals("Table was not unpinned once the task finished!",1l,cache.getEvictions());
+        Assert.assertEquals("Incorrect memory size!",0l,cache.getMemorySize());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    @SuppressWarnings("unchecked")
+    private static BroadcastJoinFlatMapFunction joinFunction(final BroadcastJoinCache cache,
+                                                             final List<AutoCloseable> registered) throws Exception{
+        JoinOperation join=mock(JoinOperation.class);
+        SpliceOperation left=mock(SpliceOperation.class);
+        when(join.getLeftOperation()).thenReturn(left);
+        when(join.getRightOperation()).thenReturn(mock(SpliceOperation.class));
+        when(join.getSequenceId()).thenReturn(1l);
+        when(join.getLeftHashKeys()).thenReturn(new int[]{0});
+        when(join.getRightHashKeys()).thenReturn(new int[]{0});
+
+        OperationContext context=mock(OperationContext.class);
+        when(context.getOperation()).thenReturn(join);
+        doAnswer(new Answer<Void>(){
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable{
+                registered.add((AutoCloseable)invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(context).registerCloseable(any(AutoCloseable.class));
+
+        return new BroadcastJoinFlatMapFunction(context){
+            @Override
+            protected BroadcastJoinCache getBroadcastJoinCache(){
+                return cache;
+            }
+        };
+    }
+
+    private static Iterator<LocatedRow> outerRows(int count){
+        List<LocatedRow> rows=new ArrayList<>(count);
+        for(int i=0;i<count;i++){
+            rows.add(new LocatedRow(new ValueRow(1)));
+        }
+        return rows.iterator();
+    }
+
+    private static JoinTable get(BroadcastJoinCache cache,Object key) throws Exception{
+        return cache.get(key,null,new int[]{0},new int[]{0},null).newTable();
+    }
+
+    private static class CountingLoader implements BroadcastJoinCache.JoinTableLoader{
+        private final AtomicInteger loads=new AtomicInteger(0);
+        private volatile boolean fail;
+
+        @Override
+        public JoinTable.Factory load(Callable<Stream<ExecRow>> streamLoader,
+                                      int[] innerHashKeys,
+                                      int[] outerHashKeys,
+                                      ExecRow outerTemplateRow) throws ExecutionException{
+            loads.incrementAndGet();
+            if(fail)
+                throw new ExecutionException(new IllegalStateException("load failed"));
+            return new JoinTable.Factory(){
+                @Override
+                public JoinTable newTable(){
+                    return new JoinTable(){
+                        @Override
+                        public Iterator<ExecRow> fetchInner(ExecRow outer){
+                            return Collections.<ExecRow>singletonList(new ValueRow(1)).iterator();
+                        }
+
+                        @Override
+                        public boolean hasInner(ExecRow outer){
+                            return true;
+                        }
+
+                        @Override
+                        public void close(){
+                        }
+                    };
+                }
+
+                @Override
+                public long getMemorySize(){
+                    return TABLE_SIZE;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.sql.JoinTable;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Iterator;
+
+@Category(ArchitectureIndependent.class)
+public class CompactJoinTableTest{
+    private static final int[] INNER_KEYS=new int[]{1};
+    private static final int[] OUTER_KEYS=new int[]{0};
+
+    @Test
+    public void testFindsEveryRowForAKeyInLoadOrder() throws Exception{
+        CompactJoinTable.Builder builder=new CompactJoinTable.Builder(INNER_KEYS);
+        for(int i=0;i<1000;i++){
+            builder.add(innerRow(i,i%100));
+        }
+        JoinTable.Factory factory=builder.build(OUTER_KEYS,outerRow(0));
+        try(JoinTable table=factory.newTable()){
+            for(int key=0;key<100;key++){
+                Iterator<ExecRow> matches=table.fetchInner(outerRow(key));
+                int expectedId=key;
+                while(matches.hasNext()){
+                    ExecRow match=matches.next();
+                    Assert.assertEquals("Incorrect join key!",key,match.getColumn(2).getInt());
+                    Assert.assertEquals("Rows out of load order!",expectedId,match.getColumn(1).getInt());
+                    Assert.assertEquals("Incorrect row payload!","row"+expectedId,match.getColumn(3).getString());
+                    expectedId+=100;
+                }
+                Assert.assertEquals("Missing rows for key "+key+"!",key+1000,expectedId);
+            }
+        }
+        Assert.assertTrue("Memory size not reported!",factory.getMemorySize()>0);
+    }
+
+    @Test
+    public void testMissingKeyHasNoMatches() throws Exception{
+        CompactJoinTable.Builder builder=new CompactJoinTable.Builder(INNER_KEYS);
+        builder.add(innerRow(1,1));
+        try(JoinTable table=builder.build(OUTER_KEYS,outerRow(0)).newTable()){
+            Assert.assertFalse("Found a match for a missing key!",table.fetchInner(outerRow(2)).hasNext());
+        }
+    }
+
+    @Test
+    public void testEmptyTableHasNoMatches() throws Exception{
+        CompactJoinTable.Builder builder=new CompactJoinTable.Builder(INNER_KEYS);
+        try(JoinTable table=builder.build(OUTER_KEYS,outerRow(0)).newTable()){
+            Assert.assertFalse("Found a match in an empty table!",table.fetchInner(outerRow(1)).hasNext());
+        }
+    }
+
+    @Test
+    public void testRepeatedLookupsShareDecodedRows() throws Exception{
+        CompactJoinTable.Builder builder=new CompactJoinTable.Builder(INNER_KEYS);
+        builder.add(innerRow(1,1));
+        builder.add(innerRow(2,2));
+        try(JoinTable table=builder.build(OUTER_KEYS,outerRow(0)).newTable()){
+            ExecRow first=table.fetchInner(outerRow(1)).next();
+            ExecRow other=table.fetchInner(outerRow(2)).next();
+            ExecRow second=table.fetchInner(outerRow(1)).next();
+            Assert.assertSame("Matching row was decoded again!",first,second);
+            Assert.assertNotSame("Different rows share a decoded row!",first,other);
+            Assert.assertEquals("Incorrect row payload!","row1",second.getColumn(3).getString());
+            Assert.assertEquals("Incorrect row payload!","row2",other.getColumn(3).getString());
+        }
+    }
+
+    @Test
+    public void testDecodedRowCacheIsBounded() throws Exception{
+        CompactJoinTable.Builder builder=new CompactJoinTable.Builder(INNER_KEYS);
+        for(int i=0;i<5000;i++){
+            builder.add(innerRow(i,i));
+        }
+        try(JoinTable table=builder.build(OUTER_KEYS,outerRow(0)).newTable()){
+            for(int key=0;key<5000;key++){
+                ExecRow match=table.fetchInner(outerRow(key)).next();
+                Assert.assertEquals("Incorrect row returned from the cache!",key,match.getColumn(1).getInt());
+            }
+            //evicted rows are decoded again, correctly
+            Assert.assertEquals("Incorrect row payload!","row0",table.fetchInner(outerRow(0)).next().getColumn(3).getString());
+        }
+    }
+
+    @Test
+    public void testHasInner() throws Exception{
+        CompactJoinTable.Builder builder=new CompactJoinTable.Builder(INNER_KEYS);
+        builder.add(innerRow(1,1));
+        try(JoinTable table=builder.build(OUTER_KEYS,outerRow(0)).newTable()){
+            Assert.assertTrue("Did not find a present key!",table.hasInner(outerRow(1)));
+            Assert.assertFalse("Found a missing key!",table.hasInner(outerRow(2)));
+        }
+        try(JoinTable table=new CompactJoinTable.Builder(INNER_KEYS).build(OUTER_KEYS,outerRow(0)).newTable()){
+            Assert.assertFalse("Found a match in an empty table!",table.hasInner(outerRow(1)));
+        }
+    }
+
+    private static ExecRow innerRow(int id,int key){
+        ExecRow row=new ValueRow(3);
+        row.setColumn(1,new SQLInteger(id));
+        row.setColumn(2,new SQLInteger(key));
+        row.setColumn(3,new SQLVarchar("row"+id));
+        return row;
+    }
+
+    private static ExecRow outerRow(int key){
+        ExecRow row=new ValueRow(1);
+        row.setColumn(1,new SQLInteger(key));
+        return row;
+    }
+}
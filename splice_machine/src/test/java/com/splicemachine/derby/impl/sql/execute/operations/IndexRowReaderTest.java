@@ -0,0 +1,271 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations;
+
+import com.splicemachine.access.api.PartitionFactory;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import com.splicemachine.derby.impl.store.access.hbase.HBaseRowLocation;
+import com.splicemachine.derby.utils.marshall.KeyHashDecoder;
+import com.splicemachine.primitives.Bytes;
+import com.splicemachine.si.api.data.TxnOperationFactory;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import com.splicemachine.storage.Attributable;
+import com.splicemachine.storage.DataResult;
+import com.splicemachine.storage.Partition;
+import com.splicemachine.utils.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Category(ArchitectureIndependent.class)
+public class IndexRowReaderTest{
+    private static final byte[] EMPTY=new byte[0];
+
+    private ExecutorService lookupService;
+    private Partition table;
+    private PartitionFactory tableFactory;
+    private final Map<String,DataResult> rows=new HashMap<>();
+    private final List<List<byte[]>> multiGets=Collections.synchronizedList(new ArrayList<List<byte[]>>());
+
+    @Before
+    public void setUp() throws Exception{
+        lookupService=Executors.newFixedThreadPool(4);
+        table=mock(Partition.class);
+        tableFactory=mock(PartitionFactory.class);
+        when(tableFactory.getTable(anyString())).thenReturn(table);
+        when(table.batchGet(any(Attributable.class),any(List.class))).thenAnswer(new Answer<Iterator<DataResult>>(){
+            @Override
+            @SuppressWarnings("unchecked")
+            public Iterator<DataResult> answer(InvocationOnMock invocation) throws Throwable{
+                List<byte[]> keys=new ArrayList<>((List<byte[]>)invocation.getArguments()[1]);
+                multiGets.add(keys);
+                List<DataResult> fetched=new ArrayList<>(keys.size());
+                for(byte[] key : keys){
+                    fetched.add(rows.get(Bytes.toString(key)));
+                }
+                return fetched.iterator();
+            }
+        });
+    }
+
+    @After
+    public void tearDown(){
+        lookupService.shutdownNow();
+    }
+
+    @Test
+    public void testSingleRegionIsFetchedWithOneSortedMultiGet() throws Exception{
+        regions(region(EMPTY,EMPTY));
+
+        List<String> keys=Arrays.asList("c","a","d","b");
+        assertResultsInIndexOrder(keys,lookup(keys));
+
+        Assert.assertEquals("Incorrect number of multi-gets!",1,multiGets.size());
+        assertSorted(multiGets.get(0));
+        Assert.assertEquals(4,multiGets.get(0).size());
+    }
+
+    @Test
+    public void testRowsAreGroupedByRegionAndReturnedInIndexOrder() throws Exception{
+        // the cached regions are not necessarily sorted
+        regions(region(b("m"),b("t")),region(EMPTY,b("f")),region(b("t"),EMPTY),region(b("f"),b("m")));
+
+        List<String> keys=Arrays.asList("x","b","m","g","a","s","t","e","f","z");
+        assertResultsInIndexOrder(keys,lookup(keys));
+
+        Assert.assertEquals("Incorrect number of multi-gets!",4,multiGets.size());
+        assertGroup(Arrays.asList("a","b","e"));
+        assertGroup(Arrays.asList("f","g"));
+        assertGroup(Arrays.asList("m","s"));
+        assertGroup(Arrays.asList("t","x","z"));
+    }
+
+    @Test
+    public void testRegionsWithoutRowsAreSkipped() throws Exception{
+        regions(region(EMPTY,b("f")),region(b("f"),b("m")),region(b("m"),EMPTY));
+
+        List<String> keys=Arrays.asList("n","a","p");
+        assertResultsInIndexOrder(keys,lookup(keys));
+
+        Assert.assertEquals("Incorrect number of multi-gets!",2,multiGets.size());
+        assertGroup(Arrays.asList("a"));
+        assertGroup(Arrays.asList("n","p"));
+    }
+
+    @Test
+    public void testRowsOutsideStaleBoundariesStayInCurrentGroup() throws Exception{
+        // [f,m) has been split or moved since the boundaries were cached, so f..l are in no known region
+        regions(region(EMPTY,b("f")),region(b("m"),EMPTY));
+
+        List<String> keys=Arrays.asList("g","a","n","h");
+        assertResultsInIndexOrder(keys,lookup(keys));
+
+        Assert.assertEquals("Incorrect number of multi-gets!",2,multiGets.size());
+        assertGroup(Arrays.asList("a","g","h"));
+        assertGroup(Arrays.asList("n"));
+    }
+
+    @Test
+    public void testFirstRowOutsideStaleBoundariesStartsAGroup() throws Exception{
+        regions(region(b("m"),EMPTY));
+
+        List<String> keys=Arrays.asList("n","a");
+        assertResultsInIndexOrder(keys,lookup(keys));
+
+        Assert.assertEquals("Incorrect number of multi-gets!",1,multiGets.size());
+        assertGroup(Arrays.asList("a","n"));
+    }
+
+    @Test
+    public void testRegionsAreSortedOnceWhileTheCachedListIsUnchanged() throws Exception{
+        Partition first=region(EMPTY,b("m"));
+        Partition second=region(b("m"),EMPTY);
+        regions(second,first);
+
+        IndexRowReader reader=reader(2);
+        lookup(reader,Arrays.asList("a","n"));
+        lookup(reader,Arrays.asList("b","p"));
+        verify(first,times(1)).getStartKey();
+        verify(second,times(1)).getStartKey();
+
+        // the boundaries were refreshed, so the new list is sorted
+        Partition third=region(b("f"),b("m"));
+        regions(first,third,second);
+        multiGets.clear();
+        lookup(reader,Arrays.asList("a","g"));
+        verify(third,times(1)).getStartKey();
+        Assert.assertEquals("Incorrect number of multi-gets!",2,multiGets.size());
+        assertGroup(Arrays.asList("a"));
+        assertGroup(Arrays.asList("g"));
+    }
+
+    @Test
+    public void testFindsOwningRegion() throws Exception{
+        byte[][] startKeys={EMPTY,b("f"),b("m"),b("t")};
+        Assert.assertEquals(0,IndexRowReader.regionIndex(startKeys,b("a")));
+        Assert.assertEquals(1,IndexRowReader.regionIndex(startKeys,b("f")));
+        Assert.assertEquals(1,IndexRowReader.regionIndex(startKeys,b("l")));
+        Assert.assertEquals(2,IndexRowReader.regionIndex(startKeys,b("s")));
+        Assert.assertEquals(3,IndexRowReader.regionIndex(startKeys,b("z")));
+        // with stale boundaries, rows before the first known region belong to it
+        Assert.assertEquals(0,IndexRowReader.regionIndex(new byte[][]{b("m")},b("a")));
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private List<Pair<LocatedRow, DataResult>> lookup(List<String> keys) throws Exception{
+        return lookup(reader(keys.size()),keys);
+    }
+
+    private IndexRowReader reader(int batchSize){
+        return new IndexRowReader(lookupService,
+                Collections.<LocatedRow>emptyIterator(),
+                new ValueRow(0),
+                mock(TxnView.class),
+                batchSize,
+                1,
+                1L,
+                null,
+                mock(KeyHashDecoder.class),
+                mock(KeyHashDecoder.class),
+                new int[0],
+                mock(TxnOperationFactory.class),
+                tableFactory);
+    }
+
+    private List<Pair<LocatedRow, DataResult>> lookup(IndexRowReader reader,List<String> keys) throws Exception{
+        List<LocatedRow> sourceRows=new ArrayList<>(keys.size());
+        for(String key : keys){
+            DataResult result=mock(DataResult.class);
+            when(result.getClone()).thenReturn(result);
+            rows.put(key,result);
+            sourceRows.add(new LocatedRow(new HBaseRowLocation(b(key)),new ValueRow(0)));
+        }
+        return reader.new Lookup(sourceRows).call();
+    }
+
+    private void assertResultsInIndexOrder(List<String> keys,List<Pair<LocatedRow, DataResult>> results) throws Exception{
+        Assert.assertEquals("Incorrect number of results!",keys.size(),results.size());
+        for(int i=0;i<keys.size();i++){
+            Pair<LocatedRow, DataResult> result=results.get(i);
+            Assert.assertArrayEquals("Index row out of order!",b(keys.get(i)),result.getFirst().getRowLocation().getBytes());
+            Assert.assertSame("Incorrect base row for "+keys.get(i),rows.get(keys.get(i)),result.getSecond());
+        }
+    }
+
+    private void assertGroup(List<String> expected){
+        for(List<byte[]> multiGet : multiGets){
+            if(Bytes.toString(multiGet.get(0)).equals(expected.get(0))){
+                List<String> actual=new ArrayList<>(multiGet.size());
+                for(byte[] key : multiGet){
+                    actual.add(Bytes.toString(key));
+                }
+                Assert.assertEquals("Incorrect multi-get!",expected,actual);
+                return;
+            }
+        }
+        Assert.fail("No multi-get starting at "+expected.get(0));
+    }
+
+    private static void assertSorted(List<byte[]> keys){
+        for(int i=1;i<keys.size();i++){
+            Assert.assertTrue("Multi-get is not sorted!",Bytes.BASE_COMPARATOR.compare(keys.get(i-1),keys.get(i))<0);
+        }
+    }
+
+    private void regions(Partition... regions){
+        when(table.subPartitions()).thenReturn(Arrays.asList(regions));
+    }
+
+    private static Partition region(final byte[] start,final byte[] end){
+        Partition region=mock(Partition.class);
+        when(region.getStartKey()).thenReturn(start);
+        when(region.getEndKey()).thenReturn(end);
+        when(region.containsRow(any(byte[].class))).thenAnswer(new Answer<Boolean>(){
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable{
+                return Bytes.isRowInRange((byte[])invocation.getArguments()[0],start,end);
+            }
+        });
+        return region;
+    }
+
+    private static byte[] b(String key){
+        return Bytes.toBytes(key);
+    }
+}
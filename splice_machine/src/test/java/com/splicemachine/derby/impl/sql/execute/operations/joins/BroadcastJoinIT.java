@@ -73,6 +73,26 @@ public class BroadcastJoinIT{
         conn = classWatcher.getOrCreateConnection();
     }
 
+    @Test
+    public void testReexecutedJoinSeesRowsWrittenByItsTransaction() throws Exception{
+        String querySQL = "select count(*) from --SPLICE-PROPERTIES joinOrder=FIXED\n" +
+                " "+a+" l,"+ b+" r --SPLICE-PROPERTIES joinStrategy=BROADCAST\n" +
+                " where l.c2 = r.c2";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try(PreparedStatement queryStatement = conn.prepareStatement(querySQL)){
+            Assert.assertEquals("Incorrect initial join count!",3L,count(queryStatement));
+            try(Statement s = conn.createStatement()){
+                s.executeUpdate("insert into "+b+"(c2,c3) values (1,4)");
+            }
+            //re-execute immediately, while the first execution's inner table could still be cached
+            Assert.assertEquals("Join did not see the row inserted by its own transaction!",4L,count(queryStatement));
+        }finally{
+            conn.rollback();
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
     @Test
     @Ignore("Takes a super long time to work, and then knocks over the region server with an OOM")
     public void testBroadcastJoinDoesNotCauseRegionServerToCollapse() throws Exception{
@@ -91,4 +111,11 @@ public class BroadcastJoinIT{
             }
         }
     }
+
+    private static long count(PreparedStatement ps) throws Exception{
+        try(ResultSet rs = ps.executeQuery()){
+            Assert.assertTrue("No rows returned!",rs.next());
+            return rs.getLong(1);
+        }
+    }
 }
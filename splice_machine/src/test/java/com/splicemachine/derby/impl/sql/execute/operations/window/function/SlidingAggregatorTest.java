@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.sql.execute.operations.window.function;
+
+import com.splicemachine.db.iapi.types.DataValueDescriptor;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the running results of the sliding window aggregators match a recomputation over the frame.
+ */
+@Category(ArchitectureIndependent.class)
+public class SlidingAggregatorTest {
+
+    @Test
+    public void testMaxOverSlidingFrame() throws Exception {
+        helpTestSlidingFrame(newMaxMin("MAX"), 5, new MaxCheck(true));
+    }
+
+    @Test
+    public void testMinOverSlidingFrame() throws Exception {
+        helpTestSlidingFrame(newMaxMin("MIN"), 7, new MaxCheck(false));
+    }
+
+    @Test
+    public void testSumOverSlidingFrame() throws Exception {
+        SumAggregator sum = new SumAggregator();
+        sum.setResultType(new SQLLongint());
+        helpTestSlidingFrame(sum, 150, new SumCheck());
+    }
+
+    @Test
+    public void testEmptyFrameIsNull() throws Exception {
+        MaxMinAggregator max = newMaxMin("MAX");
+        max.accumulate(new DataValueDescriptor[]{new SQLInteger()});
+        assertTrue(max.getResult().isNull());
+        max.accumulate(new DataValueDescriptor[]{new SQLInteger(3)});
+        assertEquals(3, max.getResult().getInt());
+        max.remove();
+        max.remove();
+        assertTrue(max.getResult().isNull());
+    }
+
+    //================================================================================================
+    // helpers
+    //================================================================================================
+
+    private interface Check {
+        void verify(ArrayDeque<Integer> frame, DataValueDescriptor result) throws Exception;
+    }
+
+    private static class MaxCheck implements Check {
+        private final boolean isMax;
+
+        MaxCheck(boolean isMax) {
+            this.isMax = isMax;
+        }
+
+        @Override
+        public void verify(ArrayDeque<Integer> frame, DataValueDescriptor result) throws Exception {
+            Integer expected = null;
+            for (Integer v : frame) {
+                if (v != null && (expected == null || (isMax ? v > expected : v < expected)))
+                    expected = v;
+            }
+            if (expected == null)
+                assertTrue(result.isNull());
+            else
+                assertEquals(expected.intValue(), result.getInt());
+        }
+    }
+
+    private static class SumCheck implements Check {
+        @Override
+        public void verify(ArrayDeque<Integer> frame, DataValueDescriptor result) throws Exception {
+            long expected = 0;
+            boolean allNull = true;
+            for (Integer v : frame) {
+                if (v != null) {
+                    expected += v;
+                    allNull = false;
+                }
+            }
+            if (allNull)
+                assertTrue(result.isNull());
+            else
+                assertEquals(expected, result.getLong());
+        }
+    }
+
+    private static MaxMinAggregator newMaxMin(String name) {
+        MaxMinAggregator function = new MaxMinAggregator();
+        function.setup(null, name, null, null);
+        function.setResultType(new SQLInteger());
+        return function;
+    }
+
+    private static void helpTestSlidingFrame(SpliceGenericWindowFunction function, int frameSize, Check check)
+            throws Exception {
+        Random random = new Random(0L);
+        ArrayDeque<Integer> frame = new ArrayDeque<>();
+        // more rows than a window chunk, so values are removed across chunk boundaries
+        for (int i = 0; i < 3 * SpliceGenericWindowFunction.CHUNKSIZE; i++) {
+            Integer v = random.nextInt(10) == 0 ? null : random.nextInt(100);
+            frame.addLast(v);
+            function.accumulate(new DataValueDescriptor[]{v == null ? new SQLInteger() : new SQLInteger(v)});
+            if (frame.size() > frameSize) {
+                frame.removeFirst();
+                function.remove();
+            }
+            check.verify(frame, function.getResult());
+        }
+    }
+}
@@ -41,6 +41,7 @@ public class FixedStatsIT{
 
     private static final SpliceTableWatcher charDelete = new SpliceTableWatcher("CHAR_DELETE",schema.schemaName,"(c char(10))");
     private static final SpliceTableWatcher intDecimalBetween = new SpliceTableWatcher("BETWEEN_TEST",schema.schemaName,"(d DECIMAL, i int)");
+    private static final SpliceTableWatcher recollect = new SpliceTableWatcher("RECOLLECT",schema.schemaName,"(i int)");
     private static final SpliceTableWatcher load = new SpliceTableWatcher("TIME",schema.schemaName,"(a int generated by default as identity primary key, b TIME, c DATE, d TIME,e TIMESTAMP)");
 
     private static final int LOAD_ROW_COUNT=6000;
@@ -49,6 +50,7 @@ public class FixedStatsIT{
             .around(schema)
             .around(charDelete)
             .around(intDecimalBetween)
+            .around(recollect)
             .around(load)
             .around(new SpliceDataWatcher() {
                 @Override
@@ -149,6 +151,46 @@ public class FixedStatsIT{
         }
     }
 
+    @Test
+    public void testEstimatesFollowRecollectedStatistics() throws Exception{
+        /*
+         * Merged table statistics are cached between compilations, make sure that collecting them again
+         * is reflected by the next plan
+         */
+        insertInts(recollect,2);
+        conn.collectStats(schema.schemaName,recollect.tableName);
+        try(Statement s = conn.createStatement()){
+            assertEstimatedRows(s,2);
+            assertEstimatedRows(s,2);
+
+            insertInts(recollect,8);
+            conn.collectStats(schema.schemaName,recollect.tableName);
+            assertEstimatedRows(s,10);
+        }
+    }
+
+    private void insertInts(SpliceTableWatcher table,int count) throws SQLException{
+        try(PreparedStatement ps=conn.prepareStatement("insert into "+table+" (i) values (?)")){
+            for(int i=0;i<count;i++){
+                ps.setInt(1,i);
+                ps.execute();
+            }
+        }
+    }
+
+    private void assertEstimatedRows(Statement s,long expectedRows) throws SQLException{
+        try(ResultSet resultSet=s.executeQuery("explain select * from "+recollect)){
+            while(resultSet.next()){
+                String row=resultSet.getString(1);
+                if(row.contains("TableScan")){
+                    Assert.assertTrue("Incorrect estimated row count: "+row,row.contains("outputRows="+expectedRows));
+                    return;
+                }
+            }
+            Assert.fail("No TableScan in plan");
+        }
+    }
+
     private void assertExpectedCount(Statement s,int expectedCount) throws SQLException{
         try(ResultSet resultSet=s.executeQuery("select * from sys.systablestatistics "+
                 "where schemaname = '"+schema.schemaName+"' and tablename = '"+charDelete.tableName+"'")){
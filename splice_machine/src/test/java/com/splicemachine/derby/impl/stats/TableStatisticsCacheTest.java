@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.impl.stats;
+
+import com.splicemachine.db.iapi.sql.dictionary.PartitionStatisticsDescriptor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.spark_project.guava.base.Ticker;
+import org.spark_project.guava.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TableStatisticsCacheTest{
+    private static final long EXPIRATION=TimeUnit.SECONDS.toNanos(60);
+
+    private final FakeTicker ticker=new FakeTicker();
+    private TableStatisticsCache cache;
+
+    @Before
+    public void setUp(){
+        cache=new TableStatisticsCache(CacheBuilder.newBuilder()
+                .expireAfterWrite(EXPIRATION,TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .<Long,TableStatisticsCache.Entry>build());
+    }
+
+    @Test
+    public void testHitWhileSourceIsUnchanged(){
+        List<PartitionStatisticsDescriptor> source=descriptors();
+        Assert.assertNull(cache.get(1L,source));
+        TableStatisticsCache.Entry entry=entry(source);
+        cache.put(1L,entry);
+
+        Assert.assertSame(entry,cache.get(1L,source));
+        Assert.assertSame(entry,cache.get(1L,source));
+        Assert.assertEquals(2,cache.getHitCount());
+        Assert.assertEquals(1,cache.getMissCount());
+        Assert.assertEquals(1,cache.getSize());
+    }
+
+    @Test
+    public void testMissWhenSourceWasReloaded(){
+        List<PartitionStatisticsDescriptor> source=descriptors();
+        cache.put(1L,entry(source));
+
+        // the data dictionary hands out a new list once its descriptors have been invalidated, even if equal
+        List<PartitionStatisticsDescriptor> reloaded=new ArrayList<>(source);
+        Assert.assertEquals(source,reloaded);
+        Assert.assertNull(cache.get(1L,reloaded));
+        Assert.assertEquals(1,cache.getMissCount());
+
+        TableStatisticsCache.Entry refreshed=entry(reloaded);
+        cache.put(1L,refreshed);
+        Assert.assertSame(refreshed,cache.get(1L,reloaded));
+        Assert.assertNull(cache.get(1L,source));
+    }
+
+    @Test
+    public void testEntriesAreKeyedByConglomerate(){
+        List<PartitionStatisticsDescriptor> source=descriptors();
+        TableStatisticsCache.Entry entry=entry(source);
+        cache.put(1L,entry);
+
+        Assert.assertNull(cache.get(2L,source));
+        Assert.assertSame(entry,cache.get(1L,source));
+    }
+
+    @Test
+    public void testInvalidate(){
+        List<PartitionStatisticsDescriptor> source=descriptors();
+        cache.put(1L,entry(source));
+        TableStatisticsCache.Entry other=entry(source);
+        cache.put(2L,other);
+
+        cache.invalidate(1L);
+        Assert.assertNull(cache.get(1L,source));
+        Assert.assertSame(other,cache.get(2L,source));
+
+        cache.invalidateAll();
+        Assert.assertNull(cache.get(2L,source));
+        Assert.assertEquals(0,cache.getSize());
+    }
+
+    @Test
+    public void testEntriesExpire(){
+        List<PartitionStatisticsDescriptor> source=descriptors();
+        TableStatisticsCache.Entry entry=entry(source);
+        cache.put(1L,entry);
+
+        ticker.advance(EXPIRATION-1);
+        Assert.assertSame(entry,cache.get(1L,source));
+        ticker.advance(1);
+        Assert.assertNull("Entry should have expired",cache.get(1L,source));
+        Assert.assertEquals(1,cache.getEvictionCount());
+    }
+
+    @Test
+    public void testUnusedCacheReportsNothing(){
+        TableStatisticsCache unused=new TableStatisticsCache(null);
+        unused.invalidate(1L);
+        unused.invalidateAll();
+        Assert.assertEquals(0,unused.getSize());
+        Assert.assertEquals(0,unused.getEvictionCount());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static List<PartitionStatisticsDescriptor> descriptors(){
+        return new ArrayList<>(Collections.<PartitionStatisticsDescriptor>emptyList());
+    }
+
+    private static TableStatisticsCache.Entry entry(List<PartitionStatisticsDescriptor> source){
+        return new TableStatisticsCache.Entry(source,null,0,true);
+    }
+
+    private static class FakeTicker extends Ticker{
+        private long nanos;
+
+        @Override
+        public long read(){
+            return nanos;
+        }
+
+        void advance(long delta){
+            nanos+=delta;
+        }
+    }
+}
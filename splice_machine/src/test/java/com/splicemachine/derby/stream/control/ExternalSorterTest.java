@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import scala.Tuple2;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+
+import static com.splicemachine.derby.stream.control.SpillTestUtils.assertNoSpillFilesRemain;
+import static com.splicemachine.derby.stream.control.SpillTestUtils.rows;
+
+@Category(ArchitectureIndependent.class)
+public class ExternalSorterTest{
+    private static final int NUM_ROWS=1000;
+    private static final int NUM_KEYS=100;
+
+    private static final Comparator<ExecRow> KEY_ORDER=new Comparator<ExecRow>(){
+        @Override
+        public int compare(ExecRow o1,ExecRow o2){
+            try{
+                return Integer.compare(o1.getColumn(1).getInt(),o2.getColumn(1).getInt());
+            }catch(Exception e){
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    @Rule
+    public TemporaryFolder spillDirectory=new TemporaryFolder();
+
+    @Test
+    public void testSortsInMemory() throws Exception{
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(KEY_ORDER,Long.MAX_VALUE,spillDirectory.getRoot());
+        assertSortedAndStable(sorter.sort(rows(NUM_ROWS,NUM_KEYS,new Random(0l))));
+        Assert.assertEquals("Should not have spilled!",0l,sorter.getRunsSpilled());
+    }
+
+    @Test
+    public void testSpillsAndMergesRuns() throws Exception{
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(KEY_ORDER,4096,spillDirectory.getRoot());
+        assertSortedAndStable(sorter.sort(rows(NUM_ROWS,NUM_KEYS,new Random(0l))));
+        Assert.assertTrue("Did not spill!",sorter.getRunsSpilled()>0);
+        Assert.assertTrue("Did not record spilled bytes!",sorter.getBytesSpilled()>0);
+        assertNoSpillFilesRemain(spillDirectory.getRoot());
+    }
+
+    @Test
+    public void testMergesInPassesWhenThereAreTooManyRuns() throws Exception{
+        //every row becomes its own run
+        ExternalSorter<ExecRow,ExecRow> sorter=new ExternalSorter<>(KEY_ORDER,1,spillDirectory.getRoot());
+        assertSortedAndStable(sorter.sort(rows(NUM_ROWS,NUM_KEYS,new Random(0l))));
+        Assert.assertTrue("Did not merge in passes!",sorter.getRunsSpilled()>NUM_ROWS);
+        assertNoSpillFilesRemain(spillDirectory.getRoot());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static void assertSortedAndStable(Iterator<Tuple2<ExecRow,ExecRow>> sorted) throws Exception{
+        int count=0;
+        int lastKey=Integer.MIN_VALUE;
+        long lastValue=Long.MIN_VALUE;
+        while(sorted.hasNext()){
+            Tuple2<ExecRow,ExecRow> next=sorted.next();
+            int key=next._1().getColumn(1).getInt();
+            long value=next._2().getColumn(1).getLong();
+            Assert.assertTrue("Out of order!",key>=lastKey);
+            if(key==lastKey)
+                Assert.assertTrue("Sort is not stable!",value>lastValue);
+            lastKey=key;
+            lastValue=value;
+            count++;
+        }
+        Assert.assertEquals("Incorrect number of rows!",NUM_ROWS,count);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.impl.sql.execute.ValueRow;
+import org.junit.Assert;
+import scala.Tuple2;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fixtures shared by the tests of the spilling control-side operations.
+ */
+class SpillTestUtils{
+
+    private SpillTestUtils(){}
+
+    /**
+     * @return {@code numRows} pairs of (integer key, long value), where the value of row {@code i} is {@code i}
+     * and its key is {@code i % numKeys}.
+     */
+    static Iterator<Tuple2<ExecRow,ExecRow>> rows(int numRows,int numKeys){
+        return rows(numRows,numKeys,null);
+    }
+
+    /**
+     * @return {@code numRows} pairs of (integer key, long value), where the value of row {@code i} is {@code i}
+     * and its key is drawn from {@code random} (or is {@code i % numKeys} if {@code random} is null).
+     */
+    static Iterator<Tuple2<ExecRow,ExecRow>> rows(int numRows,int numKeys,Random random){
+        List<Tuple2<ExecRow,ExecRow>> rows=new ArrayList<>(numRows);
+        for(int i=0;i<numRows;i++){
+            ExecRow key=new ValueRow(1);
+            key.setColumn(1,new SQLInteger(random==null?i%numKeys:random.nextInt(numKeys)));
+            ExecRow value=new ValueRow(1);
+            value.setColumn(1,new SQLLongint(i));
+            rows.add(new Tuple2<>(key,value));
+        }
+        return rows.iterator();
+    }
+
+    static void assertNoSpillFilesRemain(File spillDirectory){
+        File[] files=spillDirectory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals("Spill files were left behind!",0,files.length);
+    }
+}
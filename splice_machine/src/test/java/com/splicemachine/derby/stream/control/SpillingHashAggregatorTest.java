@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.derby.stream.control;
+
+import com.splicemachine.collections.CloseableIterator;
+import com.splicemachine.db.iapi.sql.execute.ExecRow;
+import com.splicemachine.derby.iapi.sql.execute.SpliceOperation;
+import com.splicemachine.derby.stream.function.SpliceFunction2;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import scala.Tuple2;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.splicemachine.derby.stream.control.SpillTestUtils.assertNoSpillFilesRemain;
+import static com.splicemachine.derby.stream.control.SpillTestUtils.rows;
+
+@Category(ArchitectureIndependent.class)
+public class SpillingHashAggregatorTest{
+    private static final int NUM_ROWS=1000;
+    private static final int NUM_KEYS=50;
+
+    @Rule
+    public TemporaryFolder spillDirectory=new TemporaryFolder();
+
+    @Test
+    public void testReduceInMemory() throws Exception{
+        SpillingHashAggregator<ExecRow,ExecRow,ExecRow> aggregator=
+                SpillingHashAggregator.reducer(new SumFunction(),Long.MAX_VALUE,spillDirectory.getRoot());
+        assertSums(aggregator.aggregate(rows(NUM_ROWS,NUM_KEYS)));
+        Assert.assertEquals("Should not have spilled!",0l,aggregator.getSpilledPartitions());
+    }
+
+    @Test
+    public void testReduceSpillsAndMergesPartitions() throws Exception{
+        SpillingHashAggregator<ExecRow,ExecRow,ExecRow> aggregator=
+                SpillingHashAggregator.reducer(new SumFunction(),1024,spillDirectory.getRoot());
+        assertSums(aggregator.aggregate(rows(NUM_ROWS,NUM_KEYS)));
+        Assert.assertTrue("Did not spill!",aggregator.getSpilledPartitions()>0);
+        Assert.assertTrue("Did not record spilled bytes!",aggregator.getSpilledBytes()>0);
+        assertNoSpillFilesRemain(spillDirectory.getRoot());
+    }
+
+    @Test
+    public void testGroupSpillsAndKeepsEveryValue() throws Exception{
+        SpillingHashAggregator<ExecRow,ExecRow,Iterable<ExecRow>> aggregator=
+                SpillingHashAggregator.grouper(1024,spillDirectory.getRoot());
+        Iterator<Tuple2<ExecRow,Iterable<ExecRow>>> groups=aggregator.aggregate(rows(NUM_ROWS,NUM_KEYS));
+        Map<Integer,List<Long>> seen=new HashMap<>();
+        while(groups.hasNext()){
+            Tuple2<ExecRow,Iterable<ExecRow>> group=groups.next();
+            int key=group._1().getColumn(1).getInt();
+            Assert.assertFalse("Group "+key+" returned twice!",seen.containsKey(key));
+            List<Long> values=new ArrayList<>();
+            for(ExecRow row : group._2()){
+                Assert.assertEquals("Value in the wrong group!",key,row.getColumn(1).getLong()%NUM_KEYS);
+                values.add(row.getColumn(1).getLong());
+            }
+            seen.put(key,values);
+        }
+        Assert.assertEquals("Incorrect number of groups!",NUM_KEYS,seen.size());
+        for(List<Long> values : seen.values()){
+            Assert.assertEquals("Incorrect group size!",NUM_ROWS/NUM_KEYS,values.size());
+        }
+        Assert.assertTrue("Did not spill!",aggregator.getSpilledPartitions()>0);
+        assertNoSpillFilesRemain(spillDirectory.getRoot());
+    }
+
+    @Test
+    public void testClosingAnAbandonedIteratorDeletesUnreadPartitions() throws Exception{
+        SpillingHashAggregator<ExecRow,ExecRow,ExecRow> aggregator=
+                SpillingHashAggregator.reducer(new SumFunction(),1024,spillDirectory.getRoot());
+        CloseableIterator<Tuple2<ExecRow,ExecRow>> results=aggregator.aggregate(rows(NUM_ROWS,NUM_KEYS));
+        Assert.assertTrue("No results!",results.hasNext());
+        results.next();
+        File[] spilled=spillDirectory.getRoot().listFiles();
+        Assert.assertNotNull(spilled);
+        Assert.assertTrue("Unread partitions are not on disk!",spilled.length>0);
+
+        results.close();
+        Assert.assertFalse("Closed iterator still has results!",results.hasNext());
+        assertNoSpillFilesRemain(spillDirectory.getRoot());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static void assertSums(Iterator<Tuple2<ExecRow,ExecRow>> results) throws Exception{
+        int groups=0;
+        while(results.hasNext()){
+            Tuple2<ExecRow,ExecRow> result=results.next();
+            int key=result._1().getColumn(1).getInt();
+            long expected=0;
+            for(int i=key;i<NUM_ROWS;i+=NUM_KEYS){
+                expected+=i;
+            }
+            Assert.assertEquals("Incorrect sum for group "+key+"!",expected,result._2().getColumn(1).getLong());
+            groups++;
+        }
+        Assert.assertEquals("Incorrect number of groups!",NUM_KEYS,groups);
+    }
+
+    public static class SumFunction extends SpliceFunction2<SpliceOperation,ExecRow,ExecRow,ExecRow>{
+        @Override
+        public ExecRow call(ExecRow left,ExecRow right) throws Exception{
+            if(left==null) return right.getClone();
+            left.getColumn(1).setValue(left.getColumn(1).getLong()+right.getColumn(1).getLong());
+            return left;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.splicemachine.derby.stream.function;
+
+import com.splicemachine.db.iapi.types.SQLDate;
+import com.splicemachine.db.iapi.types.SQLInteger;
+import com.splicemachine.db.iapi.types.SQLLongint;
+import com.splicemachine.db.iapi.types.SQLSmallint;
+import com.splicemachine.db.iapi.types.SQLTimestamp;
+import com.splicemachine.db.iapi.types.SQLVarchar;
+import org.junit.Assert;
+import org.junit.Test;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CSVLineScannerTest{
+
+    @Test
+    public void matchesTokenizerOnSimpleLines() throws Exception{
+        String[] lines = {
+                "hello,goodbye,parseThis!,boots",
+                "\"hello\",goodbye,,\"boots, and more\"",
+                "a,b,",
+                ",",
+                "  spaced  ,\"\",null,\"null\"",
+                "1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24,25,26,27,28,29,30,31,32,33,34,35"
+        };
+        for(String line : lines){
+            CSVLineScanner scanner = new CSVLineScanner('"',',');
+            Assert.assertTrue("Did not scan "+line,scanner.scan(line));
+            Assert.assertEquals("Incorrect columns for "+line,tokenize(line),scanner.getColumns());
+        }
+    }
+
+    @Test
+    public void rejectsLinesNeedingTheTokenizer() throws Exception{
+        String[] lines = {
+                "",
+                "\"escaped \"\" quote\",b",
+                "\"unterminated,b",
+                "\"quoted\"trailing,b",
+                "un\"quoted\",b",
+                "  \"spaced\",b"
+        };
+        CSVLineScanner scanner = new CSVLineScanner('"',',');
+        for(String line : lines){
+            Assert.assertFalse("Should not scan "+line,scanner.scan(line));
+        }
+    }
+
+    @Test
+    public void detectsNulls() throws Exception{
+        CSVLineScanner scanner = new CSVLineScanner('"',',');
+        Assert.assertTrue(scanner.scan("a,,NuLl,\"null\",\"\""));
+        Assert.assertFalse(scanner.isNull(0));
+        Assert.assertTrue(scanner.isNull(1));
+        Assert.assertTrue(scanner.isNull(2));
+        Assert.assertFalse(scanner.isNull(3));
+        Assert.assertTrue(scanner.isNull(4));
+    }
+
+    @Test
+    public void decodesValuesInPlace() throws Exception{
+        CSVLineScanner scanner = new CSVLineScanner('"','|');
+        Assert.assertTrue(scanner.scan("-42|9000000000|12|2016-02-29|2016-10-17 12:34:56.5|text"));
+
+        SQLInteger integer = new SQLInteger();
+        Assert.assertTrue(scanner.setValue(0,integer));
+        Assert.assertEquals(-42,integer.getInt());
+
+        SQLLongint longint = new SQLLongint();
+        Assert.assertTrue(scanner.setValue(1,longint));
+        Assert.assertEquals(9000000000L,longint.getLong());
+
+        SQLSmallint smallint = new SQLSmallint();
+        Assert.assertTrue(scanner.setValue(2,smallint));
+        Assert.assertEquals(12,smallint.getShort());
+
+        SQLDate date = new SQLDate();
+        Assert.assertTrue(scanner.setValue(3,date));
+        Assert.assertEquals(new SQLDate("2016-02-29",false,null),date);
+
+        SQLTimestamp timestamp = new SQLTimestamp();
+        Assert.assertTrue(scanner.setValue(4,timestamp));
+        Assert.assertEquals(new SQLTimestamp("2016-10-17 12:34:56.5",false,null),timestamp);
+
+        Assert.assertFalse("Strings are not decoded in place",scanner.setValue(5,new SQLVarchar()));
+    }
+
+    @Test
+    public void leavesInvalidValuesToTheStringPath() throws Exception{
+        CSVLineScanner scanner = new CSVLineScanner('"',',');
+        Assert.assertTrue(scanner.scan("3000000000, 12,+7,2015-02-29,2016-1-1,99999"));
+        Assert.assertFalse(scanner.setValue(0,new SQLInteger()));
+        Assert.assertFalse(scanner.setValue(1,new SQLInteger()));
+        Assert.assertFalse(scanner.setValue(2,new SQLInteger()));
+        Assert.assertFalse(scanner.setValue(3,new SQLDate()));
+        Assert.assertFalse(scanner.setValue(4,new SQLDate()));
+        Assert.assertFalse(scanner.setValue(5,new SQLSmallint()));
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private List<String> tokenize(String line) throws Exception{
+        QuoteTrackingTokenizer qtt = new QuoteTrackingTokenizer(new StringReader(line),CsvPreference.STANDARD_PREFERENCE);
+        List<String> cols = new ArrayList<>();
+        Assert.assertTrue("Did not properly read the columns!",qtt.readColumns(cols));
+        return cols;
+    }
+}
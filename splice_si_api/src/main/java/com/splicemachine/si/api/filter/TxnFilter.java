@@ -18,9 +18,27 @@ package com.splicemachine.si.api.filter;
 import com.splicemachine.storage.DataCell;
 import com.splicemachine.storage.DataFilter;
 
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
 public interface TxnFilter extends DataFilter{
     void nextRow();
 
+    /**
+     * Resolve transactional visibility for a batch of rows in one pass, before the rows are filtered
+     * individually.
+     *
+     * Every distinct transaction referenced by the batch is looked up once, and rows which contain no
+     * user data visible to this filter are reported as such, so that callers can discard them without
+     * decoding. Rows which <em>are</em> reported visible must still be filtered cell-by-cell (for tombstones
+     * and accumulation).
+     *
+     * @param rows the rows in the batch, in scan order
+     * @param visibleRows on return, bit {@code i} is set if row {@code i} may contain visible data.
+     */
+    void filterBatch(List<List<DataCell>> rows,BitSet visibleRows) throws IOException;
+
     DataCell produceAccumulatedResult();
     boolean getExcludeRow();
 
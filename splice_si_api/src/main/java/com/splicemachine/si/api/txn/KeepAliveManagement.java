@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.api.txn;
+
+import javax.management.MXBean;
+
+/**
+ * JMX Hook for monitoring the transaction keep-alive heartbeats.
+ *
+ * Each heartbeat keeps alive every active transaction with a single batched request to
+ * the transaction table.
+ */
+@MXBean
+public interface KeepAliveManagement{
+
+    /**
+     * @return the number of transactions which are currently being kept alive
+     */
+    int getActiveTransactionCount();
+
+    /**
+     * @return the total number of heartbeats sent since the scheduler was created
+     */
+    long getTotalHeartbeats();
+
+    /**
+     * @return the total number of heartbeats which failed outright
+     */
+    long getTotalFailedHeartbeats();
+
+    /**
+     * @return the total number of transaction keep alives performed by heartbeats
+     */
+    long getTotalTransactionsKeptAlive();
+
+    /**
+     * @return the total number of transactions which were missing from a heartbeat's response (e.g.
+     * because their region was unavailable), and were kept alive individually instead
+     */
+    long getTotalIndividualKeepAlives();
+
+    /**
+     * @return the average latency of a heartbeat, in milliseconds
+     */
+    double getAverageHeartbeatLatency();
+
+    /**
+     * @return the largest latency of a heartbeat seen, in milliseconds
+     */
+    double getMaxHeartbeatLatency();
+}
@@ -26,4 +26,41 @@ import javax.management.MXBean;
 @MXBean
 public interface TransactionCacheManagement {
 
+    /**
+     * @return the total number (since the cache was created) of entries which
+     * were evicted to make room for other entries
+     */
+    long getTotalEvictedEntries();
+
+    /**
+     * @return the total number (since the cache was created) of GET requests which
+     * could be served from cache.
+     */
+    long getTotalHits();
+
+    /**
+     * @return the total number (since the cache was created) of GET requests which
+     * could <em>not</em> be served from cache.
+     */
+    long getTotalMisses();
+
+    /**
+     * @return the total number of GET requests made against the cache since it was created
+     */
+    long getTotalRequests();
+
+    /**
+     * @return the percentage of GET requests were hits--i.e. totalHits/totalRequests
+     */
+    float getHitPercentage();
+
+    /**
+     * @return the number of slots in the cache which are currently occupied
+     */
+    int getCurrentSize();
+
+    /**
+     * @return the maximum number of entries which can be contained before an eviction is forced.
+     */
+    int getMaxSize();
 }
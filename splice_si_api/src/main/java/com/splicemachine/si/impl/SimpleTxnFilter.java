@@ -17,6 +17,7 @@ package com.splicemachine.si.impl;
 
 import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.LongOpenHashSet;
+import com.carrotsearch.hppc.cursors.LongCursor;
 import com.splicemachine.si.api.filter.RowAccumulator;
 import com.splicemachine.si.api.filter.TxnFilter;
 import com.splicemachine.si.api.readresolve.ReadResolver;
@@ -30,6 +31,8 @@ import com.splicemachine.storage.DataFilter;
 import com.splicemachine.utils.ByteSlice;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Transaction filter which performs basic transactional filtering (i.e. row visibility, tombstones,
@@ -47,6 +50,9 @@ public class SimpleTxnFilter implements TxnFilter{
     private final LongArrayList tombstonedTxnRows=new LongArrayList(1); //usually, there are very few deletes
     private final LongArrayList antiTombstonedTxnRows=new LongArrayList(1);
     private final ByteSlice rowKey=new ByteSlice();
+    //per batch fields
+    private final LongOpenHashSet batchTxnIds=new LongOpenHashSet();
+    private final LongOpenHashSet visibleBatchTxnIds=new LongOpenHashSet();
     private final String tableName;
 
     /*
@@ -111,6 +117,67 @@ public class SimpleTxnFilter implements TxnFilter{
         }
     }
 
+    @Override
+    public void filterBatch(List<List<DataCell>> rows,BitSet visibleRows) throws IOException{
+        batchTxnIds.clear();
+        visibleBatchTxnIds.clear();
+        visibleRows.clear();
+        /*
+         * First, collect every distinct transaction which wrote user data in this batch. Commit timestamp
+         * cells are folded into the cache as we go, so that the lookups below can be served locally
+         * whenever the data has already been resolved.
+         */
+        for(int i=0;i<rows.size();i++){
+            List<DataCell> row=rows.get(i);
+            for(int j=0;j<row.size();j++){
+                DataCell cell=row.get(j);
+                CellType type=cell.dataType();
+                if(type==CellType.COMMIT_TIMESTAMP)
+                    cacheCommittedTransaction(cell);
+                else if(type==CellType.USER_DATA)
+                    batchTxnIds.add(cell.version());
+            }
+        }
+
+        /*
+         * Now look up each transaction exactly once, and record which ones we can see
+         */
+        for(LongCursor lc : batchTxnIds){
+            if(isVisible(lc.value))
+                visibleBatchTxnIds.add(lc.value);
+        }
+
+        /*
+         * A row which has no visible user data can never produce a result, so it can be skipped. We still
+         * need to read-resolve it, since it won't pass through filterCell().
+         */
+        for(int i=0;i<rows.size();i++){
+            List<DataCell> row=rows.get(i);
+            boolean visible=false;
+            for(int j=0;j<row.size();j++){
+                DataCell cell=row.get(j);
+                if(cell.dataType()==CellType.USER_DATA && visibleBatchTxnIds.contains(cell.version())){
+                    visible=true;
+                    break;
+                }
+            }
+            if(visible)
+                visibleRows.set(i);
+            else{
+                nextRow();
+                for(int j=0;j<row.size();j++){
+                    DataCell cell=row.get(j);
+                    CellType type=cell.dataType();
+                    if(type==CellType.COMMIT_TIMESTAMP)
+                        visitedTxnIds.add(cell.version());
+                    else if(type!=CellType.FOREIGN_KEY_COUNTER)
+                        readResolve(cell);
+                }
+            }
+        }
+        nextRow();
+    }
+
     @Override
     public DataCell produceAccumulatedResult(){
         return null;
@@ -249,6 +316,11 @@ public class SimpleTxnFilter implements TxnFilter{
     private void ensureTransactionIsCached(DataCell data) throws IOException{
         long txnId=data.version();//this.dataStore.getOpFactory().getTimestamp(data);
         visitedTxnIds.add(txnId);
+        cacheCommittedTransaction(data);
+    }
+
+    private void cacheCommittedTransaction(DataCell data) throws IOException{
+        long txnId=data.version();
         if(!transactionStore.transactionCached(txnId)){
 			/*
 			 * We do not have a cache entry for this transaction, so we want
@@ -40,6 +40,7 @@ import com.splicemachine.si.impl.readresolve.NoOpReadResolver;
 import com.splicemachine.si.impl.rollforward.NoopRollForward;
 import com.splicemachine.si.impl.rollforward.RollForwardStatus;
 import com.splicemachine.si.impl.server.SITransactor;
+import com.splicemachine.si.impl.store.TxnLowWatermark;
 import com.splicemachine.si.impl.txn.SITransactionReadController;
 import com.splicemachine.storage.DataFilterFactory;
 import com.splicemachine.storage.Partition;
@@ -89,6 +90,7 @@ public class SIDriver {
     private final OperationFactory baseOpFactory;
     private final PartitionInfoCache partitionInfoCache;
     private final SnowflakeFactory snowflakeFactory;
+    private final TxnLowWatermark txnLowWatermark;
 
     public SIDriver(SIEnvironment env){
         this.tableFactory = env.tableFactory();
@@ -120,6 +122,11 @@ public class SIDriver {
         readResolver = initializedReadResolver(config,env.keyedReadResolver());
         this.fileSystem = env.fileSystem();
         this.baseOpFactory = env.baseOperationFactory();
+        this.txnLowWatermark = new TxnLowWatermark(txnStore,
+                timestampSource,
+                clock,
+                config.getTxnLowWatermarkRefreshInterval(),
+                config.getTxnLowWatermarkReadOnlyGracePeriod());
     }
 
 
@@ -154,6 +161,13 @@ public class SIDriver {
         return txnSupplier;
     }
 
+    /**
+     * @return the transaction low watermark, below which compactions may purge superseded versions.
+     */
+    public TxnLowWatermark getTxnLowWatermark(){
+        return txnLowWatermark;
+    }
+
     public OperationStatusFactory getOperationStatusLib() {
         return operationStatusFactory;
     }
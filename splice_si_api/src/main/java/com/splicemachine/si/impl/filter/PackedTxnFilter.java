@@ -23,6 +23,8 @@ import com.splicemachine.storage.DataCell;
 import com.splicemachine.storage.DataFilter;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
 
 public class PackedTxnFilter implements TxnFilter, SIFilter{
     private final TxnFilter simpleFilter;
@@ -63,6 +65,11 @@ public class PackedTxnFilter implements TxnFilter, SIFilter{
         }
     }
 
+    @Override
+    public void filterBatch(List<List<DataCell>> rows,BitSet visibleRows) throws IOException{
+        simpleFilter.filterBatch(rows,visibleRows);
+    }
+
     @Override
     public boolean filterRow(){
         return getExcludeRow();
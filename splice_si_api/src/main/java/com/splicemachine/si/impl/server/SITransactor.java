@@ -15,9 +15,7 @@
 
 package com.splicemachine.si.impl.server;
 
-import com.carrotsearch.hppc.IntObjectOpenHashMap;
 import com.carrotsearch.hppc.LongOpenHashSet;
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.carrotsearch.hppc.cursors.LongCursor;
 import com.splicemachine.kvpair.KVPair;
 import com.splicemachine.primitives.Bytes;
@@ -36,7 +34,6 @@ import com.splicemachine.si.impl.SimpleTxnFilter;
 import com.splicemachine.si.impl.readresolve.NoOpReadResolver;
 import com.splicemachine.storage.*;
 import com.splicemachine.utils.ByteSlice;
-import com.splicemachine.utils.Pair;
 import com.splicemachine.utils.SpliceLogUtils;
 import org.apache.log4j.Logger;
 import org.spark_project.guava.base.Predicate;
@@ -170,80 +167,133 @@ public class SITransactor implements Transactor{
                                              ConstraintChecker constraintChecker) throws IOException{
 //                if (LOG.isTraceEnabled()) LOG.trace(String.format("processInternal: table = %s, txnId = %s", table.toString(), txn.getTxnId()));
         MutationStatus[] finalStatus=new MutationStatus[mutations.size()];
-        Pair<KVPair, Lock>[] lockPairs=new Pair[mutations.size()];
+        /*
+         * We work through the batch in row key order: locks are acquired in a consistent order, and
+         * the existing versions of the rows can be read in a single forward pass. rows is sorted in place,
+         * order[k] is the position (in the caller's collection) of rows[k], and every other array here is
+         * indexed by sorted position.
+         */
+        KVPair[] rows=mutations.toArray(new KVPair[mutations.size()]);
+        int[] order=sortByRowKey(rows);
+        Lock[] locks=new Lock[rows.length];
         TxnFilter constraintState=null;
         if(constraintChecker!=null)
             constraintState=new SimpleTxnFilter(null,txn,NoOpReadResolver.INSTANCE,txnSupplier);
-        @SuppressWarnings("unchecked") final LongOpenHashSet[] conflictingChildren=new LongOpenHashSet[mutations.size()];
         try{
-            lockRows(table,mutations,lockPairs,finalStatus);
+            lockRows(table,rows,order,locks,finalStatus);
 
             /*
              * You don't need a low-level operation check here, because this code can only be called from
              * 1 of 2 paths (bulk write pipeline and SIObserver). Since both of those will externally ensure that
              * the region can't close until after this method is complete, we don't need the calls.
              */
-            IntObjectOpenHashMap<DataPut> writes=checkConflictsForKvBatch(table,rollForwardQueue,lockPairs,
+            LongOpenHashSet[] conflictingChildren=new LongOpenHashSet[rows.length];
+            DataPut[] writes=checkConflictsForKvBatch(table,rollForwardQueue,rows,order,
                     conflictingChildren,txn,family,qualifier,constraintChecker,constraintState,finalStatus);
 
-            //TODO -sf- this can probably be made more efficient
-            //convert into array for usefulness
-            DataPut[] toWrite=new DataPut[writes.size()];
+            int writeCount=0;
+            for(DataPut write : writes){
+                if(write!=null) writeCount++;
+            }
+            DataPut[] toWrite=new DataPut[writeCount];
             int i=0;
-            for(IntObjectCursor<DataPut> write : writes){
-                toWrite[i]=write.value;
-                i++;
+            for(DataPut write : writes){
+                if(write!=null) toWrite[i++]=write;
             }
             Iterator<MutationStatus> status=table.writeBatch(toWrite);
 
-            //convert the status back into the larger array
-            i=0;
-            for(IntObjectCursor<DataPut> write : writes){
+            //convert the status back into the caller's order
+            for(int k=0;k<writes.length;k++){
+                if(writes[k]==null) continue;
                 if(!status.hasNext())
                     throw new IllegalStateException("Programmer Error: incorrect length for returned status");
-                finalStatus[write.key]=status.next().getClone(); //TODO -sf- is clone needed here?
+                MutationStatus writeStatus=status.next();
+                int position=order[k];
+                //the returned status may be reused by the iterator, so we only need to copy failures
+                finalStatus[position]=writeStatus.isSuccess()?operationStatusLib.success():writeStatus.getClone();
                 //resolve child conflicts
                 try{
-                    resolveChildConflicts(table,write.value,conflictingChildren[i]);
+                    resolveChildConflicts(table,writes[k],conflictingChildren[k]);
                 }catch(Exception e){
-                    finalStatus[i] = operationStatusLib.failure(e);
+                    finalStatus[position] = operationStatusLib.failure(e);
                 }
-                i++;
             }
             return finalStatus;
         }finally{
-            releaseLocksForKvBatch(lockPairs);
+            releaseLocksForKvBatch(locks);
         }
     }
 
-    private void releaseLocksForKvBatch(Pair<KVPair, Lock>[] locks){
+    /**
+     * Sort {@code rows} in place by row key.
+     *
+     * @return the original positions of the sorted rows
+     */
+    private static int[] sortByRowKey(final KVPair[] rows){
+        int[] order=new int[rows.length];
+        boolean sorted=true;
+        for(int i=0;i<order.length;i++){
+            order[i]=i;
+            if(sorted && i>0 && compareRowKeys(rows[i-1],rows[i])>0)
+                sorted=false;
+        }
+        if(sorted) return order; //the writer usually sends rows in order already
+
+        Integer[] positions=new Integer[rows.length];
+        for(int i=0;i<positions.length;i++){
+            positions[i]=i;
+        }
+        Arrays.sort(positions,new Comparator<Integer>(){
+            @Override
+            public int compare(Integer o1,Integer o2){
+                return compareRowKeys(rows[o1],rows[o2]);
+            }
+        });
+        KVPair[] unsorted=rows.clone();
+        for(int i=0;i<order.length;i++){
+            order[i]=positions[i];
+            rows[i]=unsorted[positions[i]];
+        }
+        return order;
+    }
+
+    private static int compareRowKeys(KVPair left,KVPair right){
+        ByteSlice l=left.rowKeySlice();
+        ByteSlice r=right.rowKeySlice();
+        return Bytes.BASE_COMPARATOR.compare(l.array(),l.offset(),l.length(),r.array(),r.offset(),r.length());
+    }
+
+    private void releaseLocksForKvBatch(Lock[] locks){
         if(locks==null) return;
-        for(Pair<KVPair, Lock> lock : locks){
-            if(lock==null || lock.getSecond()==null) continue;
-            lock.getSecond().unlock();
+        for(Lock lock : locks){
+            if(lock==null) continue;
+            lock.unlock();
         }
     }
 
-    private IntObjectOpenHashMap<DataPut> checkConflictsForKvBatch(Partition table,
-                                                                   RollForward rollForwardQueue,
-                                                                   Pair<KVPair, Lock>[] dataAndLocks,
-                                                                   LongOpenHashSet[] conflictingChildren,
-                                                                   TxnView transaction,
-                                                                   byte[] family,byte[] qualifier,
-                                                                   ConstraintChecker constraintChecker,
-                                                                   TxnFilter constraintStateFilter,
-                                                                   MutationStatus[] finalStatus) throws IOException {
-        IntObjectOpenHashMap<DataPut> finalMutationsToWrite = IntObjectOpenHashMap.newInstance(dataAndLocks.length, 0.9f);
-        DataResult possibleConflicts = null;
-        BitSet bloomInMemoryCheck  = table.getBloomInMemoryCheck(constraintChecker!=null,dataAndLocks);
-        for(int i=0;i<dataAndLocks.length;i++){
-            Pair<KVPair, Lock> baseDataAndLock=dataAndLocks[i];
-            if(baseDataAndLock==null) continue;
+    private DataPut[] checkConflictsForKvBatch(Partition table,
+                                               RollForward rollForwardQueue,
+                                               KVPair[] rows,
+                                               int[] order,
+                                               LongOpenHashSet[] conflictingChildren,
+                                               TxnView transaction,
+                                               byte[] family,byte[] qualifier,
+                                               ConstraintChecker constraintChecker,
+                                               TxnFilter constraintStateFilter,
+                                               MutationStatus[] finalStatus) throws IOException {
+        DataPut[] finalMutationsToWrite=new DataPut[rows.length];
+        BitSet bloomInMemoryCheck  = table.getBloomInMemoryCheck(constraintChecker!=null,rows);
 
-            ConflictResults conflictResults=ConflictResults.NO_CONFLICT;
-            KVPair kvPair=baseDataAndLock.getFirst();
-            KVPair.Type writeType=kvPair.getType();
-            if(constraintChecker!=null || !KVPair.Type.INSERT.equals(writeType)){
+        /*
+         * Gather every row which might conflict, and fetch them all at once. Since rows is sorted,
+         * so are the keys.
+         */
+        BitSet toRead=new BitSet(rows.length);
+        List<byte[]> readKeys=new ArrayList<>();
+        for(int k=0;k<rows.length;k++){
+            KVPair kvPair=rows[k];
+            if(kvPair==null) continue;
+            if(constraintChecker!=null || !KVPair.Type.INSERT.equals(kvPair.getType())){
                 /*
                  *
                  * If the table has no keys, then the hbase row key is a randomly generated UUID, so it's not
@@ -253,12 +303,27 @@ public class SITransactor implements Transactor{
                  * We know that this is the case because there is no constraint checker (constraint checkers are only
                  * applied on key elements.
                  */
-                //todo -sf remove the Row key copy here
-                possibleConflicts=bloomInMemoryCheck==null||bloomInMemoryCheck.get(i)?table.getLatest(kvPair.getRowKey(),possibleConflicts):null;
+                if(bloomInMemoryCheck==null || bloomInMemoryCheck.get(k)){
+                    toRead.set(k);
+                    readKeys.add(kvPair.getRowKey());
+                }
+            }
+        }
+        Iterator<DataResult> latest=readKeys.isEmpty()?null:table.batchGetLatest(readKeys);
+
+        for(int k=0;k<rows.length;k++){
+            KVPair kvPair=rows[k];
+            if(kvPair==null) continue;
+
+            int position=order[k];
+            ConflictResults conflictResults=ConflictResults.NO_CONFLICT;
+            KVPair.Type writeType=kvPair.getType();
+            if(constraintChecker!=null || !KVPair.Type.INSERT.equals(writeType)){
+                DataResult possibleConflicts=toRead.get(k)?latest.next():null;
                 if(possibleConflicts!=null){
                     //we need to check for write conflicts
                     conflictResults=ensureNoWriteConflict(transaction,writeType,possibleConflicts);
-                    if(applyConstraint(constraintChecker,constraintStateFilter,i,kvPair,possibleConflicts,finalStatus,conflictResults.hasAdditiveConflicts())) //filter this row out, it fails the constraint
+                    if(applyConstraint(constraintChecker,constraintStateFilter,position,kvPair,possibleConflicts,finalStatus,conflictResults.hasAdditiveConflicts())) //filter this row out, it fails the constraint
                         continue;
                 }
                 //TODO -sf- if type is an UPSERT, and conflict type is ADDITIVE_CONFLICT, then we
@@ -269,15 +334,14 @@ public class SITransactor implements Transactor{
                      * we fail this row with an ADDITIVE_UPSERT_CONFLICT.
                      */
                     if(conflictResults.hasAdditiveConflicts()){
-                        finalStatus[i]=operationStatusLib.failure(exceptionLib.additiveWriteConflict());
+                        finalStatus[position]=operationStatusLib.failure(exceptionLib.additiveWriteConflict());
                     }
                 }
             }
 
-            conflictingChildren[i]=conflictResults.getChildConflicts();
-            DataPut mutationToRun=getMutationToRun(table,rollForwardQueue,kvPair,
+            conflictingChildren[k]=conflictResults.getChildConflicts();
+            finalMutationsToWrite[k]=getMutationToRun(table,rollForwardQueue,kvPair,
                     family,qualifier,transaction,conflictResults);
-            finalMutationsToWrite.put(i,mutationToRun);
         }
         return finalMutationsToWrite;
     }
@@ -326,27 +390,25 @@ public class SITransactor implements Transactor{
     }
 
 
-    private void lockRows(Partition table,Collection<KVPair> mutations,Pair<KVPair, Lock>[] mutationsAndLocks,MutationStatus[] finalStatus) throws IOException{
+    private void lockRows(Partition table,KVPair[] rows,int[] order,Lock[] locks,MutationStatus[] finalStatus) throws IOException{
         /*
-         * We attempt to lock each row in the collection.
+         * We attempt to lock each row in the (sorted) batch.
          *
-         * If the lock is acquired, we place it into mutationsAndLocks (at the position equal
-         * to the position in the collection's iterator).
+         * If the lock is acquired, we place it into locks at the row's sorted position.
          *
          * If the lock cannot be acquired, then we set NOT_RUN into the finalStatus array. Those rows will be filtered
-         * out and must be retried by the writer. mutationsAndLocks at the same location will be null
+         * out (by clearing them from rows) and must be retried by the writer.
          */
-        int position=0;
         try{
-            for(KVPair mutation : mutations){
-                ByteSlice byteSlice=mutation.rowKeySlice();
+            for(int k=0;k<rows.length;k++){
+                ByteSlice byteSlice=rows[k].rowKeySlice();
                 Lock lock=table.getRowLock(byteSlice.array(),byteSlice.offset(),byteSlice.length());//tableWriter.getRowLock(table, mutation.rowKeySlice());
                 if(lock.tryLock())
-                    mutationsAndLocks[position]=Pair.newPair(mutation,lock);
-                else
-                    finalStatus[position]=operationStatusLib.notRun();
-
-                position++;
+                    locks[k]=lock;
+                else{
+                    rows[k]=null;
+                    finalStatus[order[k]]=operationStatusLib.notRun();
+                }
             }
         }catch(RuntimeException re){
             /*
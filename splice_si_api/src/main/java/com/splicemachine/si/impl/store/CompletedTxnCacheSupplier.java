@@ -15,12 +15,19 @@
 
 package com.splicemachine.si.impl.store;
 
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.splicemachine.si.api.txn.TransactionCacheManagement;
 import com.splicemachine.si.api.txn.Txn;
 import com.splicemachine.si.api.txn.TxnSupplier;
 import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.txn.InheritingTxnView;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -28,27 +35,56 @@ import java.util.concurrent.atomic.AtomicLong;
  * TxnSupplier which caches transaction which have "Completed"--i.e. which have entered the COMMITTED or ROLLEDBACK
  * state.
  * <p/>
+ * Entries are held in a {@link PackedTxnCache}, which stores only the fields needed to rebuild a view
+ * of the transaction (id, begin timestamp, parent id, commit timestamps and a packed flags word), keyed by
+ * the primitive transaction id. A view is reconstructed on a hit; its parent is resolved through this
+ * supplier, so an entire completed hierarchy is typically served from cache. Views whose whole hierarchy
+ * has completed can never change, so each thread also keeps a small direct-mapped array of the views it
+ * most recently reconstructed, and repeated lookups of the same transaction return the same view without
+ * allocating. Destination tables are not retained, so requests for them always go to the delegate.
+ * <p/>
+ * Only top-level lookups are counted in the JMX statistics; resolving a parent is part of the request
+ * for its child.
+ * <p/>
  * This class is thread-safe, and safe to be shared between many threads.
  *
  * @author Scott Fines
  *         Date: 6/18/14
  */
-public class CompletedTxnCacheSupplier implements TxnSupplier{
-    private ConcurrentLinkedHashMap<Long, TxnView> cache; // autobox for now
+public class CompletedTxnCacheSupplier implements TxnSupplier, TransactionCacheManagement{
+    public static final String JMX_NAME="com.splicemachine.si.txn:type=TransactionCacheManagement";
+    private static final int RECENT_VIEWS=64;
+
+    private final PackedTxnCache cache;
     private final TxnSupplier delegate;
     private final AtomicLong hits=new AtomicLong();
     private final AtomicLong requests=new AtomicLong();
+    private final ThreadLocal<LookupState> lookupState=new ThreadLocal<LookupState>(){
+        @Override
+        protected LookupState initialValue(){
+            return new LookupState();
+        }
+    };
 
     public CompletedTxnCacheSupplier(TxnSupplier delegate,int maxSize,int concurrencyLevel){
-        cache=new ConcurrentLinkedHashMap.Builder<Long, TxnView>()
-                .maximumWeightedCapacity(maxSize)
-                .concurrencyLevel(concurrencyLevel)
-                .build();
+        this(delegate,maxSize,concurrencyLevel,false);
+    }
+
+    /**
+     * @param delegate the supplier to use on a cache miss
+     * @param maxSize the (approximate) maximum number of transactions to cache. This is rounded up to
+     *                a power of two.
+     * @param concurrencyLevel ignored; reads are lock-free and writes claim individual slots, so no
+     *                         striping is required. Retained for configuration compatibility.
+     * @param offHeap if true, cache entries are held in direct memory rather than on the heap
+     */
+    public CompletedTxnCacheSupplier(TxnSupplier delegate,int maxSize,int concurrencyLevel,boolean offHeap){
+        this.cache=new PackedTxnCache(maxSize,offHeap);
         this.delegate=delegate;
     }
 
-    public int getMaxSize(){
-        return cache.size();
+    public void registerJMX(MBeanServer mbs) throws MalformedObjectNameException, NotCompliantMBeanException, InstanceAlreadyExistsException, MBeanRegistrationException{
+        mbs.registerMBean(this,new ObjectName(JMX_NAME));
     }
 
     @Override
@@ -63,12 +99,12 @@ public class CompletedTxnCacheSupplier implements TxnSupplier{
     public TxnView getTransaction(long txnId,boolean getDestinationTables) throws IOException{
         if(txnId==-1)
             return Txn.ROOT_TRANSACTION;
-        requests.incrementAndGet();
-        TxnView txn=cache.get(txnId); // autobox until Cliff C merge
-        if(txn!=null){
-            hits.incrementAndGet();
-            return txn;
-        }
+        if(!getDestinationTables){
+            TxnView txn=getTransactionFromCache(txnId);
+            if(txn!=null)
+                return txn;
+        }else
+            requests.incrementAndGet();
         //bummer, we aren't in the cache, need to check the delegate
         TxnView transaction=delegate.getTransaction(txnId,getDestinationTables);
         if(transaction==null) //noinspection ConstantConditions
@@ -77,28 +113,148 @@ public class CompletedTxnCacheSupplier implements TxnSupplier{
         switch(transaction.getEffectiveState()){
             case COMMITTED:
             case ROLLEDBACK:
-                cache.put(transaction.getTxnId(),transaction); // Cache for Future Use
+                put(transaction); // Cache for Future Use
         }
         return transaction;
     }
 
     @Override
     public boolean transactionCached(long txnId){
-        return cache.get(txnId)!=null;
+        return cache.contains(txnId);
     }
 
     @Override
     public void cache(TxnView toCache){
         if(toCache.getState()==Txn.State.ACTIVE) return; //cannot cache incomplete transactions
-        cache.put(toCache.getTxnId(),toCache);
+        put(toCache);
     }
 
     @Override
     public TxnView getTransactionFromCache(long txnId){
         requests.incrementAndGet();
-        TxnView txn=cache.get(txnId);
+        TxnView txn=lookup(txnId);
         if(txn!=null)
             hits.incrementAndGet();
         return txn;
     }
+
+    /**
+     * Release the cache's storage; nothing is cached after this. Any off-heap memory is freed
+     * once lookups which are already in progress have finished.
+     */
+    public void close(){
+        cache.close();
+    }
+
+    /* ****************************************************************************************************************/
+    /*JMX methods*/
+    @Override
+    public long getTotalEvictedEntries(){
+        return cache.getEvictions();
+    }
+
+    @Override
+    public long getTotalHits(){
+        return hits.get();
+    }
+
+    @Override
+    public long getTotalMisses(){
+        return requests.get()-hits.get();
+    }
+
+    @Override
+    public long getTotalRequests(){
+        return requests.get();
+    }
+
+    @Override
+    public float getHitPercentage(){
+        long r=requests.get();
+        if(r==0) return 0f;
+        return (float)hits.get()/r;
+    }
+
+    @Override
+    public int getCurrentSize(){
+        return cache.getSize();
+    }
+
+    @Override
+    public int getMaxSize(){
+        return cache.getCapacity();
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private TxnView lookup(long txnId){
+        LookupState state=lookupState.get();
+        int pos=(int)(PackedTxnCache.mix(txnId)&(RECENT_VIEWS-1));
+        TxnView recent=state.recentViews[pos];
+        if(recent!=null && recent.getTxnId()==txnId)
+            return recent;
+
+        long[] fields=state.fields;
+        if(!cache.get(txnId,fields))
+            return null;
+        //resolving the parent reuses the same scratch fields, so copy out what we need first
+        long beginTs=fields[1];
+        long parentId=fields[2];
+        long commitTs=fields[3];
+        long globalCommitTs=fields[4];
+        long flags=fields[5];
+        TxnView parent;
+        if(parentId==-1)
+            parent=Txn.ROOT_TRANSACTION;
+        else{
+            try{
+                parent=resolveParent(parentId);
+            }catch(IOException e){
+                //we can't resolve the parent, so treat it as a miss and let the delegate deal with it
+                return null;
+            }
+            if(parent==null) return null;
+        }
+        TxnView view=new InheritingTxnView(parent,txnId,beginTs,
+                PackedTxnCache.decodeIsolationLevel(flags),
+                PackedTxnCache.hasAdditive(flags),PackedTxnCache.isAdditive(flags),
+                PackedTxnCache.hasAllowWrites(flags),PackedTxnCache.allowsWrites(flags),
+                commitTs,globalCommitTs,
+                PackedTxnCache.decodeState(flags));
+        //an effectively-active view depends on an ancestor which may still change, so it can't be reused
+        if(view.getEffectiveState()!=Txn.State.ACTIVE)
+            state.recentViews[pos]=view;
+        return view;
+    }
+
+    @SuppressFBWarnings("SF_SWITCH_NO_DEFAULT") //intentional
+    private TxnView resolveParent(long parentId) throws IOException{
+        TxnView parent=lookup(parentId);
+        if(parent!=null)
+            return parent;
+        parent=delegate.getTransaction(parentId,false);
+        if(parent==null)
+            return null;
+        switch(parent.getEffectiveState()){
+            case COMMITTED:
+            case ROLLEDBACK:
+                put(parent);
+        }
+        return parent;
+    }
+
+    private void put(TxnView txn){
+        TxnView parent=txn.getParentTxnView();
+        long parentId=parent==null?-1l:parent.getTxnId();
+        long flags=PackedTxnCache.encodeFlags(txn.getState(),txn.getIsolationLevel(),
+                true,txn.isAdditive(),
+                true,txn.allowsWrites());
+        cache.put(txn.getTxnId(),txn.getBeginTimestamp(),parentId,
+                txn.getCommitTimestamp(),txn.getGlobalCommitTimestamp(),flags);
+    }
+
+    private static class LookupState{
+        private final long[] fields=new long[6];
+        private final TxnView[] recentViews=new TxnView[RECENT_VIEWS];
+    }
 }
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.store;
+
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.utils.UnsafeUtil;
+import sun.misc.Unsafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A primitive, long-keyed cache of completed transaction information.
+ * <p/>
+ * Rather than holding {@code TxnView} objects, each entry is packed into a fixed-width slot of longs:
+ * <pre>
+ *     [sequence | txnId | beginTs | parentTxnId | commitTs | globalCommitTs | flags]
+ * </pre>
+ * The slots live either in a single {@code long[]} or in a block of direct memory, and are addressed
+ * through {@link Unsafe} in both cases, so there is no boxing, no map entry and no object header per
+ * cached transaction.
+ * <p/>
+ * The table is set-associative: a transaction id hashes to a set of {@link #WAYS} adjacent slots, and
+ * is stored in any slot of that set (open addressing with a bounded probe). When a set is full, the
+ * slot holding the <em>oldest</em> transaction id is evicted, since scans are far more likely to see
+ * recent writes than old ones.
+ * <p/>
+ * Reads are lock-free. Each slot carries a sequence number which is odd while a writer is modifying
+ * it; a reader which observes a change in sequence number while reading a slot treats the read as a
+ * miss rather than retrying. Writers claim a slot by CAS on its sequence number, and a writer which
+ * loses that race simply does not cache its entry--the cache is best-effort by design. Two writers which
+ * race to cache the same transaction may claim different slots of its set; each checks for the other after
+ * publishing, and a writer which filled an empty slot backs its own copy out if one is found, so that the size
+ * is never counted twice. (A writer which evicted an entry keeps its copy, since backing out would leave
+ * the slot empty; at worst the set holds a harmless duplicate until one of them is evicted.)
+ * <p/>
+ * Direct memory is released by {@link #close()}. Every access registers itself in a striped count of
+ * active readers, and close waits for that count to drain before freeing, so that no thread can touch
+ * the block after it is released.
+ */
+class PackedTxnCache{
+    static final int WAYS=8;
+
+    private static final Unsafe UNSAFE=UnsafeUtil.unsafe();
+    private static final long LONG_ARRAY_BASE=UNSAFE.arrayBaseOffset(long[].class);
+
+    private static final int SEQ=0;
+    private static final int TXN_ID=8;
+    private static final int BEGIN_TS=16;
+    private static final int PARENT_ID=24;
+    private static final int COMMIT_TS=32;
+    private static final int GLOBAL_COMMIT_TS=40;
+    private static final int FLAGS=48;
+    private static final int SLOT_BYTES=56;
+    private static final int SLOT_LONGS=SLOT_BYTES/8;
+
+    /*
+     * Flag layout. The state bits are never zero for a cached (i.e. completed) transaction,
+     * so a zero flags word marks an empty slot.
+     */
+    private static final long STATE_MASK=0xFFL;
+    private static final int ISOLATION_SHIFT=8;
+    private static final long ISOLATION_MASK=0xFFL<<ISOLATION_SHIFT;
+    private static final long HAS_ADDITIVE=1L<<16;
+    private static final long IS_ADDITIVE=1L<<17;
+    private static final long HAS_ALLOW_WRITES=1L<<18;
+    private static final long ALLOWS_WRITES=1L<<19;
+
+    private static final int READER_STRIPES=64;
+    private static final int STRIPE_PAD=8; //keep each stripe on its own cache line
+
+    private final Object base;
+    private final long baseOffset;
+    private final int setMask;
+    private final int capacity;
+
+    private final AtomicLong evictions=new AtomicLong();
+    private final AtomicLong size=new AtomicLong();
+    private final boolean offHeap;
+    private final AtomicLongArray activeReaders=new AtomicLongArray(READER_STRIPES*STRIPE_PAD);
+    private volatile boolean closed;
+
+    PackedTxnCache(int maxSize,boolean offHeap){
+        int sets=1;
+        while(sets*WAYS<maxSize)
+            sets<<=1;
+        this.setMask=sets-1;
+        this.capacity=sets*WAYS;
+        if(offHeap){
+            long bytes=(long)capacity*SLOT_BYTES;
+            this.base=null;
+            this.baseOffset=UNSAFE.allocateMemory(bytes);
+            UNSAFE.setMemory(baseOffset,bytes,(byte)0);
+        }else{
+            this.base=new long[capacity*SLOT_LONGS];
+            this.baseOffset=LONG_ARRAY_BASE;
+        }
+        this.offHeap=offHeap;
+    }
+
+    /**
+     * Look up the transaction and copy its packed fields into {@code dest}.
+     *
+     * @param txnId the transaction to look up
+     * @param dest an array of at least 6 elements, filled with
+     *             {@code [txnId,beginTs,parentTxnId,commitTs,globalCommitTs,flags]} on a hit.
+     * @return true if the transaction was found (and {@code dest} was filled), false otherwise.
+     */
+    boolean get(long txnId,long[] dest){
+        int stripe=enter();
+        if(stripe<0) return false;
+        try{
+            return read(txnId,dest);
+        }finally{
+            exit(stripe);
+        }
+    }
+
+    boolean contains(long txnId){
+        int stripe=enter();
+        if(stripe<0) return false;
+        try{
+            long setStart=setOffset(txnId);
+            for(int i=0;i<WAYS;i++){
+                long slot=setStart+(long)i*SLOT_BYTES;
+                if(UNSAFE.getLongVolatile(base,slot+TXN_ID)==txnId
+                        && UNSAFE.getLongVolatile(base,slot+FLAGS)!=0) return true;
+            }
+            return false;
+        }finally{
+            exit(stripe);
+        }
+    }
+
+    void put(long txnId,long beginTs,long parentTxnId,long commitTs,long globalCommitTs,long flags){
+        assert flags!=0: "Cannot cache a transaction with no state";
+        int stripe=enter();
+        if(stripe<0) return;
+        try{
+            write(txnId,beginTs,parentTxnId,commitTs,globalCommitTs,flags);
+        }finally{
+            exit(stripe);
+        }
+    }
+
+    /**
+     * Release the cache's storage. Subsequent lookups miss and subsequent puts are ignored.
+     * <p/>
+     * Off-heap memory is only freed once every access which started before the close has finished.
+     */
+    synchronized void close(){
+        if(closed) return;
+        closed=true;
+        if(!offHeap) return;
+        for(int i=0;i<READER_STRIPES;i++){
+            while(activeReaders.get(i*STRIPE_PAD)!=0)
+                Thread.yield();
+        }
+        UNSAFE.freeMemory(baseOffset);
+    }
+
+    int getCapacity(){
+        return capacity;
+    }
+
+    int getSize(){
+        return (int)size.get();
+    }
+
+    long getEvictions(){
+        return evictions.get();
+    }
+
+    static long encodeFlags(Txn.State state,Txn.IsolationLevel level,
+                            boolean hasAdditive,boolean isAdditive,
+                            boolean hasAllowWrites,boolean allowsWrites){
+        long flags=state.getId()&STATE_MASK;
+        if(level!=null)
+            flags|=((long)level.encode()<<ISOLATION_SHIFT)&ISOLATION_MASK;
+        if(hasAdditive){
+            flags|=HAS_ADDITIVE;
+            if(isAdditive) flags|=IS_ADDITIVE;
+        }
+        if(hasAllowWrites){
+            flags|=HAS_ALLOW_WRITES;
+            if(allowsWrites) flags|=ALLOWS_WRITES;
+        }
+        return flags;
+    }
+
+    static Txn.State decodeState(long flags){
+        return Txn.State.fromByte((byte)(flags&STATE_MASK));
+    }
+
+    static Txn.IsolationLevel decodeIsolationLevel(long flags){
+        int level=(int)((flags&ISOLATION_MASK)>>>ISOLATION_SHIFT);
+        if(level==0) return null; //inherited from the parent
+        return Txn.IsolationLevel.fromInt(level);
+    }
+
+    static boolean hasAdditive(long flags){ return (flags&HAS_ADDITIVE)!=0; }
+
+    static boolean isAdditive(long flags){ return (flags&IS_ADDITIVE)!=0; }
+
+    static boolean hasAllowWrites(long flags){ return (flags&HAS_ALLOW_WRITES)!=0; }
+
+    static boolean allowsWrites(long flags){ return (flags&ALLOWS_WRITES)!=0; }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+
+    /*
+     * Register the calling thread as accessing the cache. The count is raised before closed is checked, and
+     * close sets closed before reading the counts, so either the closer sees this access or this access sees
+     * the close.
+     *
+     * @return the stripe to pass to exit(), or -1 if the cache is closed
+     */
+    private int enter(){
+        int stripe=(int)(Thread.currentThread().getId()&(READER_STRIPES-1))*STRIPE_PAD;
+        activeReaders.incrementAndGet(stripe);
+        if(closed){
+            activeReaders.decrementAndGet(stripe);
+            return -1;
+        }
+        return stripe;
+    }
+
+    private void exit(int stripe){
+        activeReaders.decrementAndGet(stripe);
+    }
+
+    private boolean read(long txnId,long[] dest){
+        long setStart=setOffset(txnId);
+        for(int i=0;i<WAYS;i++){
+            long slot=setStart+(long)i*SLOT_BYTES;
+            long seq=UNSAFE.getLongVolatile(base,slot+SEQ);
+            if((seq&1L)!=0) continue; //a writer is modifying this slot
+            if(UNSAFE.getLongVolatile(base,slot+TXN_ID)!=txnId) continue;
+            long flags=UNSAFE.getLongVolatile(base,slot+FLAGS);
+            if(flags==0) continue;
+            dest[0]=txnId;
+            dest[1]=UNSAFE.getLongVolatile(base,slot+BEGIN_TS);
+            dest[2]=UNSAFE.getLongVolatile(base,slot+PARENT_ID);
+            dest[3]=UNSAFE.getLongVolatile(base,slot+COMMIT_TS);
+            dest[4]=UNSAFE.getLongVolatile(base,slot+GLOBAL_COMMIT_TS);
+            dest[5]=flags;
+            //if the slot was rewritten underneath us, then the copy is torn; treat it as a miss
+            return UNSAFE.getLongVolatile(base,slot+SEQ)==seq;
+        }
+        return false;
+    }
+
+    private void write(long txnId,long beginTs,long parentTxnId,long commitTs,long globalCommitTs,long flags){
+        long setStart=setOffset(txnId);
+        long victim=-1;
+        long victimTxnId=Long.MAX_VALUE;
+        boolean victimOccupied=true;
+        for(int i=0;i<WAYS;i++){
+            long slot=setStart+(long)i*SLOT_BYTES;
+            long occupant=UNSAFE.getLongVolatile(base,slot+TXN_ID);
+            boolean occupied=UNSAFE.getLongVolatile(base,slot+FLAGS)!=0;
+            if(occupied && occupant==txnId){
+                //already cached. Completed transactions are immutable, so there is nothing to do
+                return;
+            }else if(!occupied){
+                if(victimOccupied){
+                    victim=slot;
+                    victimOccupied=false;
+                }
+            }else if(victimOccupied && occupant<victimTxnId){
+                victim=slot;
+                victimTxnId=occupant;
+            }
+        }
+
+        long seq=UNSAFE.getLongVolatile(base,victim+SEQ);
+        if((seq&1L)!=0 || !UNSAFE.compareAndSwapLong(base,victim+SEQ,seq,seq+1))
+            return; //someone else is writing this slot; skip caching rather than contend
+
+        UNSAFE.putLongVolatile(base,victim+FLAGS,0L);
+        UNSAFE.putLongVolatile(base,victim+TXN_ID,txnId);
+        UNSAFE.putLongVolatile(base,victim+BEGIN_TS,beginTs);
+        UNSAFE.putLongVolatile(base,victim+PARENT_ID,parentTxnId);
+        UNSAFE.putLongVolatile(base,victim+COMMIT_TS,commitTs);
+        UNSAFE.putLongVolatile(base,victim+GLOBAL_COMMIT_TS,globalCommitTs);
+        UNSAFE.putLongVolatile(base,victim+FLAGS,flags);
+        UNSAFE.putLongVolatile(base,victim+SEQ,seq+2);
+
+        if(victimOccupied)
+            evictions.incrementAndGet();
+        else
+            size.incrementAndGet();
+
+        /*
+         * A concurrent writer may have cached the same transaction in another slot of the set. Both
+         * of us publish before looking, so at least one of us sees the other; whoever does backs its
+         * own copy out (if both do, the transaction is simply not cached). Only a copy which filled an
+         * empty slot is backed out, since that is the only one which was counted in the size.
+         */
+        if(victimOccupied) return;
+        for(int i=0;i<WAYS;i++){
+            long slot=setStart+(long)i*SLOT_BYTES;
+            if(slot==victim) continue;
+            if(UNSAFE.getLongVolatile(base,slot+TXN_ID)==txnId && UNSAFE.getLongVolatile(base,slot+FLAGS)!=0){
+                if(UNSAFE.compareAndSwapLong(base,victim+SEQ,seq+2,seq+3)){
+                    UNSAFE.putLongVolatile(base,victim+FLAGS,0L);
+                    UNSAFE.putLongVolatile(base,victim+SEQ,seq+4);
+                    size.decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    private long setOffset(long txnId){
+        int set=(int)(mix(txnId)&setMask);
+        return baseOffset+(long)set*WAYS*SLOT_BYTES;
+    }
+
+    /*
+     * Transaction ids are allocated in large strides, so the low bits are nearly constant;
+     * spread them before masking (this is the finalizer from Murmur3).
+     */
+    static long mix(long h){
+        h^=h>>>33;
+        h*=0xff51afd7ed558ccdL;
+        h^=h>>>33;
+        h*=0xc4ceb9fe1a85ec53L;
+        h^=h>>>33;
+        return h;
+    }
+}
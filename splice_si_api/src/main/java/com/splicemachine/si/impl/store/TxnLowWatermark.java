@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.store;
+
+import com.splicemachine.concurrent.Clock;
+import com.splicemachine.si.api.data.ExceptionFactory;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnStore;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.timestamp.api.TimestampSource;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Tracks the transaction low watermark: a timestamp such that every transaction which is active now, or which
+ * will begin in the future, has a begin timestamp at or above it. Data which was committed before the low
+ * watermark is therefore visible to every transaction which can still read it, which is what allows
+ * compactions to purge versions which have been superseded before that point.
+ * <p/>
+ * Writable transactions are found in the transaction table, but read-only transactions are never recorded
+ * anywhere. To cover those, the watermark is additionally held back to the timestamp which was current
+ * {@code readOnlyGracePeriod} milliseconds ago, which is sampled each time the watermark is refreshed. A read-only
+ * transaction which runs for longer than that can't be protected, so it is failed instead: every watermark is
+ * published (as the remembered minimum active timestamp) before it is used, and {@link #isSnapshotTooOld(TxnView)}
+ * rejects reads by transactions which began below the highest published watermark.
+ * <p/>
+ * The watermark is expensive to compute (it reads the active transactions from every transaction region), so it is
+ * refreshed at most once every {@code refreshInterval} milliseconds. Servers re-read the published watermark
+ * at the same rate, so a new watermark is only used for purging two refresh intervals after it was published,
+ * by which time every server checks reads against it.
+ */
+public class TxnLowWatermark{
+    private static final Logger LOG=Logger.getLogger(TxnLowWatermark.class);
+
+    private final TxnStore txnStore;
+    private final TimestampSource timestampSource;
+    private final Clock clock;
+    private final long refreshInterval;
+    private final long readOnlyGracePeriod;
+
+    /* (wall clock time, timestamp) pairs taken at each refresh, oldest first. Guarded by this */
+    private final ArrayDeque<long[]> samples=new ArrayDeque<>();
+    /* (wall clock time, watermark) pairs published but not yet usable, oldest first. Guarded by this */
+    private final ArrayDeque<long[]> published=new ArrayDeque<>();
+    private long lastRefresh=-1L;
+    private long lastPublished=0L;
+    private long watermark=0L;
+
+    private final Object horizonLock=new Object();
+    private volatile long lastHorizonRead=-1L;
+    private volatile long horizon=0L;
+
+    public TxnLowWatermark(TxnStore txnStore,
+                           TimestampSource timestampSource,
+                           Clock clock,
+                           long refreshInterval,
+                           long readOnlyGracePeriod){
+        this.txnStore=txnStore;
+        this.timestampSource=timestampSource;
+        this.clock=clock;
+        this.refreshInterval=refreshInterval;
+        this.readOnlyGracePeriod=readOnlyGracePeriod;
+    }
+
+    /**
+     * @return the current low watermark, or 0 if none is known yet (in which case nothing may be purged).
+     */
+    public synchronized long lowWatermark(){
+        long now=clock.currentTimeMillis();
+        if(lastRefresh<0 || now-lastRefresh>=refreshInterval){
+            lastRefresh=now;
+            try{
+                long candidate=computeWatermark(now);
+                if(candidate>lastPublished)
+                    publish(now,candidate);
+            }catch(IOException|RuntimeException e){
+                /*
+                 * The previous watermark is still a valid lower bound, since transactions which began since
+                 * then have higher timestamps. It just won't advance until we can reach the transaction table.
+                 */
+                LOG.warn("Unable to refresh the transaction low watermark, keeping "+watermark,e);
+            }
+        }
+        while(!published.isEmpty() && now-published.peekFirst()[0]>=2*refreshInterval){
+            long[] next=published.removeFirst();
+            if(minimumActive()<next[1]){
+                // lowered by a concurrent publication from another server, publish again and wait anew
+                long highest=published.isEmpty()?next[1]:published.peekLast()[1];
+                published.clear();
+                publish(now,highest);
+                break;
+            }
+            watermark=next[1];
+        }
+        return watermark;
+    }
+
+    /**
+     * @param txn a transaction reading at snapshot isolation
+     * @return true if {@code txn}, or one of its ancestors, began below a published low watermark, in which case
+     * versions it should see may have been purged by compactions.
+     */
+    public boolean isSnapshotTooOld(TxnView txn){
+        if(txn.getIsolationLevel()!=Txn.IsolationLevel.SNAPSHOT_ISOLATION)
+            return false; //reads the latest committed versions, which are never purged
+        long horizon=snapshotHorizon();
+        for(TxnView t=txn;t!=null && t!=Txn.ROOT_TRANSACTION;t=t.getParentTxnView()){
+            if(t.getBeginTimestamp()<horizon)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fails a read by {@code txn} if its snapshot may no longer be complete.
+     *
+     * @throws IOException a non-retryable "snapshot too old" error if {@link #isSnapshotTooOld(TxnView)}
+     */
+    public void checkSnapshot(TxnView txn,ExceptionFactory exceptionFactory) throws IOException{
+        if(isSnapshotTooOld(txn)){
+            throw exceptionFactory.doNotRetry("Snapshot too old: transaction "+txn.getTxnId()+
+                    " began before the transaction low watermark, below which compactions may have purged versions");
+        }
+    }
+
+    /**
+     * @return the highest low watermark published by any server, as read at most {@code refreshInterval} ago.
+     */
+    long snapshotHorizon(){
+        long now=clock.currentTimeMillis();
+        if(lastHorizonRead<0 || now-lastHorizonRead>=refreshInterval){
+            synchronized(horizonLock){
+                if(lastHorizonRead<0 || now-lastHorizonRead>=refreshInterval){
+                    horizon=Math.max(horizon,minimumActive());
+                    lastHorizonRead=now;
+                }
+            }
+        }
+        return horizon;
+    }
+
+    private long computeWatermark(long now) throws IOException{
+        long currentTimestamp=timestampSource.nextTimestamp();
+        samples.addLast(new long[]{now,currentTimestamp});
+        while(samples.size()>1 && now-secondOldestSampleTime()>=readOnlyGracePeriod){
+            samples.removeFirst();
+        }
+        long[] oldest=samples.peekFirst();
+        if(now-oldest[0]<readOnlyGracePeriod){
+            /*
+             * We haven't been running long enough to know which timestamps were issued a full grace period
+             * ago, so we can't yet bound the read-only transactions.
+             */
+            return 0L;
+        }
+        long lowWatermark=oldest[1];
+
+        long floor=minimumActive();
+        if(lowWatermark<=floor)
+            return lowWatermark; //every active transaction is at or above the floor already
+        for(TxnView txn:txnStore.getActiveTransactions(floor,currentTimestamp,null)){
+            if(txn.getBeginTimestamp()<lowWatermark)
+                lowWatermark=txn.getBeginTimestamp();
+        }
+        return lowWatermark;
+    }
+
+    private void publish(long now,long lowWatermark){
+        try{
+            // never lower a watermark published by another server, which may be purging below it
+            if(minimumActive()<lowWatermark)
+                timestampSource.rememberTimestamp(lowWatermark);
+            published.addLast(new long[]{now,lowWatermark});
+            lastPublished=lowWatermark;
+        }catch(RuntimeException re){
+            LOG.warn("Unable to publish the transaction low watermark "+lowWatermark,re);
+        }
+    }
+
+    private long secondOldestSampleTime(){
+        Iterator<long[]> it=samples.iterator();
+        it.next();
+        return it.next()[0];
+    }
+
+    private long minimumActive(){
+        try{
+            return timestampSource.retrieveTimestamp();
+        }catch(RuntimeException re){
+            LOG.warn("Unable to read the minimum active timestamp",re);
+            return 0L;
+        }
+    }
+}
@@ -2083,6 +2083,45 @@ public class SITransactorTest {
         Assert.assertEquals("147zoe age=51 job=null", testUtility.read(t2, "147zoe"));
     }
 
+    @Test
+    public void batchUpdateOutOfKeyOrder() throws IOException {
+        Txn t1 = control.beginTransaction(DESTINATION_TABLE);
+        testUtility.insertAge(t1, "148zoe", 10);
+        testUtility.insertAge(t1, "148moe", 20);
+        testUtility.insertAge(t1, "148boe", 30);
+        t1.commit();
+
+        //the batch is deliberately not in row key order, and mixes existing and new rows
+        Txn t2 = control.beginTransaction(DESTINATION_TABLE);
+        testUtility.insertAgeBatch(new Object[]{t2, "148zoe", 11}, new Object[]{t2, "148boe", 31},
+                new Object[]{t2, "148aoe", 1}, new Object[]{t2, "148moe", 21});
+        t2.commit();
+
+        Txn t3 = control.beginTransaction();
+        Assert.assertEquals("148zoe age=11 job=null", testUtility.read(t3, "148zoe"));
+        Assert.assertEquals("148moe age=21 job=null", testUtility.read(t3, "148moe"));
+        Assert.assertEquals("148boe age=31 job=null", testUtility.read(t3, "148boe"));
+        Assert.assertEquals("148aoe age=1 job=null", testUtility.read(t3, "148aoe"));
+    }
+
+    @Test
+    public void batchUpdateDetectsWriteConflict() throws IOException {
+        Txn t1 = control.beginTransaction(DESTINATION_TABLE);
+        testUtility.insertAge(t1, "149zoe", 10);
+        testUtility.insertAge(t1, "149boe", 30);
+        t1.commit();
+
+        Txn t2 = control.beginTransaction(DESTINATION_TABLE);
+        Txn t3 = control.beginTransaction(DESTINATION_TABLE);
+        testUtility.insertAge(t2, "149boe", 31);
+        try {
+            testUtility.insertAgeBatch(new Object[]{t3, "149zoe", 12}, new Object[]{t3, "149boe", 32});
+            Assert.fail("No WriteConflict thrown!");
+        } catch (IOException e) {
+            testUtility.assertWriteConflict(e);
+        }
+    }
+
     // Commit & begin together tests
     @Test
     public void testCommitAndBeginSeparate() throws IOException {
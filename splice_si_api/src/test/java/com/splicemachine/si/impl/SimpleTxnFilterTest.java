@@ -48,6 +48,10 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
@@ -131,6 +135,31 @@ public class SimpleTxnFilterTest{
         Assert.assertEquals("Incorrect return code for data cell!",DataFilter.ReturnCode.SKIP,returnCode);
     }
 
+    @Test
+    public void testBatchFilterSkipsRowsWithNoVisibleData() throws Exception{
+        TxnSupplier baseStore=txnStore;
+
+        Txn rolledBack=txnLifecycleManager.beginTransaction(Bytes.toBytes("hello"));
+        rolledBack.rollback();
+        Txn committed=txnLifecycleManager.beginTransaction(Bytes.toBytes("hello"));
+        committed.commit();
+
+        final Pair<ByteSlice, Long> rolledBackTs=new Pair<>();
+        ReadResolver resolver=getRollBackReadResolver(rolledBackTs);
+        TxnView myTxn=new InheritingTxnView(Txn.ROOT_TRANSACTION,10l,10l,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.State.ACTIVE);
+        SimpleTxnFilter filterState=new SimpleTxnFilter(null,myTxn,resolver,baseStore);
+
+        List<List<DataCell>> rows=Arrays.asList(
+                Collections.singletonList(getUserCell(rolledBack)),
+                Collections.singletonList(getUserCell(committed)));
+        BitSet visibleRows=new BitSet();
+        filterState.filterBatch(rows,visibleRows);
+
+        Assert.assertFalse("Row written by a rolled back transaction is marked visible!",visibleRows.get(0));
+        Assert.assertTrue("Row written by a committed transaction is not marked visible!",visibleRows.get(1));
+        Assert.assertEquals("Skipped row was not read-resolved!",rolledBack.getTxnId(),(long)rolledBackTs.getSecond());
+    }
+
 
 	/*Tests that Read-Resolution doesn't happen with active transactions*/
 
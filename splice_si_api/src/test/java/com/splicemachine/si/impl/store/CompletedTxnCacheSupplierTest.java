@@ -17,6 +17,7 @@ package com.splicemachine.si.impl.store;
 
 import com.splicemachine.concurrent.IncrementingClock;
 import com.splicemachine.si.api.txn.*;
+import com.splicemachine.si.impl.txn.InheritingTxnView;
 import com.splicemachine.si.impl.txn.WritableTxn;
 import com.splicemachine.si.testenv.ArchitectureIndependent;
 import org.junit.Assert;
@@ -160,4 +161,69 @@ public class CompletedTxnCacheSupplierTest{
         TxnView fromCache=store.getTransaction(txn.getTxnId());
         assertTxnsMatch("Transaction from store is not correct!",txn,fromCache);
     }
+
+    @Test
+    public void testCountsOnlyTopLevelLookups() throws Exception{
+        TxnSupplier backStore=mock(TxnSupplier.class);
+        CompletedTxnCacheSupplier store=new CompletedTxnCacheSupplier(backStore,64,16);
+        TxnView parent=new InheritingTxnView(Txn.ROOT_TRANSACTION,0x100,0x100,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                true,false,true,true,0x300,-1l,Txn.State.COMMITTED);
+        TxnView child=new InheritingTxnView(parent,0x200,0x200,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                true,false,true,true,0x250,-1l,Txn.State.COMMITTED);
+        store.cache(parent);
+        store.cache(child);
+
+        TxnView fromCache=store.getTransaction(child.getTxnId());
+        assertTxnsMatch("Transaction from cache is not correct!",child,fromCache);
+        assertTxnsMatch("Parent from cache is not correct!",parent,fromCache.getParentTxnView());
+        Assert.assertEquals("Parent lookup should not count as a request!",1l,store.getTotalRequests());
+        Assert.assertEquals("Parent lookup should not count as a hit!",1l,store.getTotalHits());
+        Assert.assertEquals("Incorrect miss count!",0l,store.getTotalMisses());
+    }
+
+    @Test
+    public void testRepeatedHitsReuseView() throws Exception{
+        TxnSupplier backStore=mock(TxnSupplier.class);
+        CompletedTxnCacheSupplier store=new CompletedTxnCacheSupplier(backStore,64,16);
+        TxnView txn=new InheritingTxnView(Txn.ROOT_TRANSACTION,0x100,0x100,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                true,false,true,true,0x300,-1l,Txn.State.COMMITTED);
+        store.cache(txn);
+
+        TxnView first=store.getTransaction(txn.getTxnId());
+        TxnView second=store.getTransaction(txn.getTxnId());
+        Assert.assertSame("Completed view was rebuilt on a repeated hit!",first,second);
+        Assert.assertEquals("Incorrect hit count!",2l,store.getTotalHits());
+    }
+
+    @Test
+    public void testDoesNotReuseViewWithActiveParent() throws Exception{
+        TxnView activeParent=new InheritingTxnView(Txn.ROOT_TRANSACTION,0x100,0x100,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                true,false,true,true,-1l,-1l,Txn.State.ACTIVE);
+        TxnSupplier backStore=mock(TxnSupplier.class);
+        when(backStore.getTransaction(0x100,false)).thenReturn(activeParent);
+        CompletedTxnCacheSupplier store=new CompletedTxnCacheSupplier(backStore,64,16);
+        TxnView child=new InheritingTxnView(activeParent,0x200,0x200,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                true,false,true,true,0x250,-1l,Txn.State.COMMITTED);
+        store.cache(child);
+
+        TxnView first=store.getTransaction(child.getTxnId());
+        Assert.assertEquals("Incorrect effective state!",Txn.State.ACTIVE,first.getEffectiveState());
+        Assert.assertNotSame("Reused a view whose parent may still change!",first,store.getTransaction(child.getTxnId()));
+        Assert.assertFalse("Cached an active parent!",store.transactionCached(activeParent.getTxnId()));
+    }
+
+    @Test
+    public void testCloseReleasesOffHeapCache() throws Exception{
+        TxnSupplier backStore=mock(TxnSupplier.class);
+        CompletedTxnCacheSupplier store=new CompletedTxnCacheSupplier(backStore,64,16,true);
+        TxnView txn=new InheritingTxnView(Txn.ROOT_TRANSACTION,0x100,0x100,Txn.IsolationLevel.SNAPSHOT_ISOLATION,
+                true,false,true,true,0x300,-1l,Txn.State.COMMITTED);
+        store.cache(txn);
+        Assert.assertTrue("Transaction was not cached!",store.transactionCached(txn.getTxnId()));
+
+        store.close();
+        Assert.assertFalse("Closed cache still reports the transaction!",store.transactionCached(txn.getTxnId()));
+        store.cache(txn);
+        Assert.assertFalse("Closed cache accepted a transaction!",store.transactionCached(txn.getTxnId()));
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.store;
+
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Category(ArchitectureIndependent.class)
+public class PackedTxnCacheTest{
+
+    @Test
+    public void testRoundTripsOnHeap() throws Exception{
+        assertRoundTrips(new PackedTxnCache(64,false));
+    }
+
+    @Test
+    public void testRoundTripsOffHeap() throws Exception{
+        assertRoundTrips(new PackedTxnCache(64,true));
+    }
+
+    @Test
+    public void testMissingTransactionIsNotFound() throws Exception{
+        PackedTxnCache cache=new PackedTxnCache(64,false);
+        long[] fields=new long[6];
+        Assert.assertFalse("Found a transaction which was never cached!",cache.get(0x100,fields));
+        Assert.assertFalse("Cache thinks it contains a transaction which was never cached!",cache.contains(0x100));
+    }
+
+    @Test
+    public void testEvictsOldestTransactionWhenFull() throws Exception{
+        //a single set, so every transaction competes for the same slots
+        PackedTxnCache cache=new PackedTxnCache(PackedTxnCache.WAYS,false);
+        long flags=PackedTxnCache.encodeFlags(Txn.State.COMMITTED,Txn.IsolationLevel.SNAPSHOT_ISOLATION,true,false,true,true);
+        for(int i=1;i<=PackedTxnCache.WAYS;i++){
+            long txnId=i*0x100;
+            cache.put(txnId,txnId,-1l,txnId+1,txnId+1,flags);
+        }
+        Assert.assertEquals("Incorrect size!",PackedTxnCache.WAYS,cache.getSize());
+        Assert.assertEquals("Should not have evicted yet!",0l,cache.getEvictions());
+
+        long newest=(PackedTxnCache.WAYS+1)*0x100;
+        cache.put(newest,newest,-1l,newest+1,newest+1,flags);
+        Assert.assertEquals("Should have evicted one entry!",1l,cache.getEvictions());
+        Assert.assertFalse("Oldest transaction was not evicted!",cache.contains(0x100));
+        Assert.assertTrue("Newest transaction was not cached!",cache.contains(newest));
+        for(int i=2;i<=PackedTxnCache.WAYS;i++){
+            Assert.assertTrue("Transaction "+i+" was incorrectly evicted!",cache.contains(i*0x100));
+        }
+    }
+
+    @Test
+    public void testConcurrentPutsOfSameTransactionCountOnce() throws Exception{
+        final long flags=PackedTxnCache.encodeFlags(Txn.State.COMMITTED,Txn.IsolationLevel.SNAPSHOT_ISOLATION,true,false,true,true);
+        int threads=8;
+        ExecutorService executor=Executors.newFixedThreadPool(threads);
+        try{
+            for(int round=0;round<200;round++){
+                final PackedTxnCache cache=new PackedTxnCache(PackedTxnCache.WAYS,false);
+                final long txnId=(round+1)*0x100;
+                final CountDownLatch start=new CountDownLatch(1);
+                List<Future<Void>> futures=new ArrayList<>(threads);
+                for(int i=0;i<threads;i++){
+                    futures.add(executor.submit(new Callable<Void>(){
+                        @Override
+                        public Void call() throws Exception{
+                            start.await();
+                            cache.put(txnId,txnId,-1l,txnId+1,txnId+1,flags);
+                            return null;
+                        }
+                    }));
+                }
+                start.countDown();
+                for(Future<Void> future:futures){
+                    future.get();
+                }
+                int expected=cache.contains(txnId)?1:0;
+                Assert.assertEquals("Size does not match the number of cached transactions!",expected,cache.getSize());
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentEvictingPutsKeepSize() throws Exception{
+        final long flags=PackedTxnCache.encodeFlags(Txn.State.COMMITTED,Txn.IsolationLevel.SNAPSHOT_ISOLATION,true,false,true,true);
+        int threads=8;
+        ExecutorService executor=Executors.newFixedThreadPool(threads);
+        try{
+            for(int round=0;round<200;round++){
+                //fill the only set, so that every put of the new transaction evicts
+                final PackedTxnCache cache=new PackedTxnCache(PackedTxnCache.WAYS,false);
+                for(int i=1;i<=PackedTxnCache.WAYS;i++){
+                    long txnId=i*0x100;
+                    cache.put(txnId,txnId,-1l,txnId+1,txnId+1,flags);
+                }
+                final long txnId=(PackedTxnCache.WAYS+1)*0x100;
+                final CountDownLatch start=new CountDownLatch(1);
+                List<Future<Void>> futures=new ArrayList<>(threads);
+                for(int i=0;i<threads;i++){
+                    futures.add(executor.submit(new Callable<Void>(){
+                        @Override
+                        public Void call() throws Exception{
+                            start.await();
+                            cache.put(txnId,txnId,-1l,txnId+1,txnId+1,flags);
+                            return null;
+                        }
+                    }));
+                }
+                start.countDown();
+                for(Future<Void> future:futures){
+                    future.get();
+                }
+                Assert.assertEquals("Evictions changed the size!",PackedTxnCache.WAYS,cache.getSize());
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForConcurrentReaders() throws Exception{
+        final long flags=PackedTxnCache.encodeFlags(Txn.State.COMMITTED,Txn.IsolationLevel.SNAPSHOT_ISOLATION,true,false,true,true);
+        int threads=4;
+        ExecutorService executor=Executors.newFixedThreadPool(threads);
+        try{
+            for(int round=0;round<10;round++){
+                final PackedTxnCache cache=new PackedTxnCache(64,true);
+                final CountDownLatch started=new CountDownLatch(threads);
+                final AtomicBoolean stop=new AtomicBoolean(false);
+                List<Future<Void>> futures=new ArrayList<>(threads);
+                for(int i=0;i<threads;i++){
+                    final long first=(i+1)*0x100;
+                    futures.add(executor.submit(new Callable<Void>(){
+                        @Override
+                        public Void call() throws Exception{
+                            long[] fields=new long[6];
+                            started.countDown();
+                            //keep going through the close; every access after it must miss rather than touch freed memory
+                            for(long txnId=first;!stop.get();txnId+=0x1000){
+                                cache.put(txnId,txnId,-1l,txnId+1,txnId+1,flags);
+                                cache.get(txnId,fields);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                started.await();
+                cache.close();
+                stop.set(true);
+                for(Future<Void> future:futures){
+                    future.get();
+                }
+                Assert.assertFalse("Found a transaction after close!",cache.contains(0x100));
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testClosedCacheMissesAndIgnoresPuts() throws Exception{
+        PackedTxnCache cache=new PackedTxnCache(64,true);
+        long flags=PackedTxnCache.encodeFlags(Txn.State.COMMITTED,Txn.IsolationLevel.SNAPSHOT_ISOLATION,true,false,true,true);
+        cache.put(0x100,0x100,-1l,0x101,0x101,flags);
+        Assert.assertTrue("Did not find cached transaction!",cache.contains(0x100));
+
+        cache.close();
+        long[] fields=new long[6];
+        Assert.assertFalse("Found a transaction after close!",cache.get(0x100,fields));
+        Assert.assertFalse("Contains a transaction after close!",cache.contains(0x100));
+        cache.put(0x200,0x200,-1l,0x201,0x201,flags);
+        Assert.assertFalse("Accepted a transaction after close!",cache.contains(0x200));
+    }
+
+    private void assertRoundTrips(PackedTxnCache cache){
+        long flags=PackedTxnCache.encodeFlags(Txn.State.ROLLEDBACK,Txn.IsolationLevel.READ_COMMITTED,true,true,true,false);
+        cache.put(0x200,0x200,0x100,-1l,-1l,flags);
+
+        long[] fields=new long[6];
+        Assert.assertTrue("Did not find cached transaction!",cache.get(0x200,fields));
+        Assert.assertEquals("Incorrect txn id!",0x200,fields[0]);
+        Assert.assertEquals("Incorrect begin timestamp!",0x200,fields[1]);
+        Assert.assertEquals("Incorrect parent id!",0x100,fields[2]);
+        Assert.assertEquals("Incorrect commit timestamp!",-1l,fields[3]);
+        Assert.assertEquals("Incorrect global commit timestamp!",-1l,fields[4]);
+        Assert.assertEquals("Incorrect state!",Txn.State.ROLLEDBACK,PackedTxnCache.decodeState(fields[5]));
+        Assert.assertEquals("Incorrect isolation level!",Txn.IsolationLevel.READ_COMMITTED,PackedTxnCache.decodeIsolationLevel(fields[5]));
+        Assert.assertTrue("Incorrect additivity!",PackedTxnCache.isAdditive(fields[5]));
+        Assert.assertFalse("Incorrect writability!",PackedTxnCache.allowsWrites(fields[5]));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.si.impl.store;
+
+import com.splicemachine.concurrent.IncrementingClock;
+import com.splicemachine.si.api.txn.Txn;
+import com.splicemachine.si.api.txn.TxnLifecycleManager;
+import com.splicemachine.si.api.txn.TxnView;
+import com.splicemachine.si.impl.txn.WritableTxn;
+import com.splicemachine.si.testenv.ArchitectureIndependent;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the transaction low watermark.
+ */
+@Category(ArchitectureIndependent.class)
+public class TxnLowWatermarkTest{
+    private static final long MILLIS=1000000L;
+
+    private final IncrementingClock clock=new IncrementingClock();
+    private final TestingTimestampSource timestampSource=new TestingTimestampSource();
+    private final TestingTxnStore txnStore=new TestingTxnStore(new IncrementingClock(),timestampSource,null,Long.MAX_VALUE);
+    private final TxnLowWatermark lowWatermark=new TxnLowWatermark(txnStore,timestampSource,clock,10L,100L);
+
+    @Test
+    public void testNoWatermarkUntilGracePeriodElapsed() throws Exception{
+        Assert.assertEquals("Watermark should not be known yet!",0L,lowWatermark.lowWatermark());
+        clock.increment(50*MILLIS);
+        Assert.assertEquals("Watermark should not be known yet!",0L,lowWatermark.lowWatermark());
+    }
+
+    @Test
+    public void testWatermarkHeldBackByActiveTransaction() throws Exception{
+        Txn txn=newTransaction();
+        Assert.assertEquals(0L,lowWatermark.lowWatermark());
+
+        clock.increment(100*MILLIS);
+        Assert.assertEquals("Watermark should not be used before servers have seen it!",0L,lowWatermark.lowWatermark());
+        Assert.assertEquals("Watermark was not published!",txn.getBeginTimestamp(),timestampSource.retrieveTimestamp());
+
+        clock.increment(20*MILLIS);
+        Assert.assertEquals("Watermark should stop at the active transaction!",
+                txn.getBeginTimestamp(),lowWatermark.lowWatermark());
+
+        txnStore.commit(txn.getTxnId());
+        clock.increment(5*MILLIS);
+        Assert.assertEquals("Watermark should not be refreshed within the refresh interval!",
+                txn.getBeginTimestamp(),lowWatermark.lowWatermark());
+    }
+
+    @Test
+    public void testWatermarkAdvancesToGracePeriodSample() throws Exception{
+        Txn txn=newTransaction();
+        lowWatermark.lowWatermark(); //samples timestamp 2
+        clock.increment(100*MILLIS);
+        lowWatermark.lowWatermark(); //samples timestamp 3
+        txnStore.commit(txn.getTxnId());
+
+        clock.increment(100*MILLIS);
+        lowWatermark.lowWatermark();
+        Assert.assertEquals("Watermark should be the timestamp current one grace period ago!",
+                3L,timestampSource.retrieveTimestamp());
+        clock.increment(20*MILLIS);
+        Assert.assertEquals("Watermark should be the timestamp current one grace period ago!",
+                3L,lowWatermark.lowWatermark());
+    }
+
+    @Test
+    public void testPublicationNeverLowersWatermark() throws Exception{
+        newTransaction();
+        timestampSource.rememberTimestamp(50L); //published by another server
+        lowWatermark.lowWatermark();
+        clock.increment(100*MILLIS);
+        lowWatermark.lowWatermark();
+        clock.increment(20*MILLIS);
+        Assert.assertEquals("Watermark should be the timestamp current one grace period ago!",2L,lowWatermark.lowWatermark());
+        Assert.assertEquals("Published watermark was lowered!",50L,timestampSource.retrieveTimestamp());
+    }
+
+    @Test
+    public void testWatermarkRepublishedWhenLowered() throws Exception{
+        newTransaction();
+        lowWatermark.lowWatermark();
+        clock.increment(100*MILLIS);
+        lowWatermark.lowWatermark();
+        timestampSource.rememberTimestamp(0L); //lowered by a concurrent publication
+
+        clock.increment(20*MILLIS);
+        Assert.assertEquals("Watermark which is not published should not be used!",0L,lowWatermark.lowWatermark());
+        Assert.assertEquals("Watermark was not published again!",1L,timestampSource.retrieveTimestamp());
+
+        clock.increment(20*MILLIS);
+        Assert.assertEquals(1L,lowWatermark.lowWatermark());
+    }
+
+    @Test
+    public void testSnapshotTooOldBelowPublishedWatermark() throws Exception{
+        timestampSource.rememberTimestamp(10L);
+
+        Assert.assertTrue(lowWatermark.isSnapshotTooOld(txn(5L,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.ROOT_TRANSACTION)));
+        Assert.assertFalse(lowWatermark.isSnapshotTooOld(txn(10L,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.ROOT_TRANSACTION)));
+        Assert.assertFalse(lowWatermark.isSnapshotTooOld(txn(11L,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.ROOT_TRANSACTION)));
+        Assert.assertFalse("Read committed transactions don't need old versions",
+                lowWatermark.isSnapshotTooOld(txn(5L,Txn.IsolationLevel.READ_COMMITTED,Txn.ROOT_TRANSACTION)));
+
+        Txn parent=txn(5L,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.ROOT_TRANSACTION);
+        Assert.assertTrue("Child reads with the snapshot of its parent",
+                lowWatermark.isSnapshotTooOld(txn(12L,Txn.IsolationLevel.SNAPSHOT_ISOLATION,parent)));
+    }
+
+    @Test
+    public void testSnapshotHorizonIsRereadEachRefreshInterval() throws Exception{
+        timestampSource.rememberTimestamp(10L);
+        Assert.assertEquals(10L,lowWatermark.snapshotHorizon());
+
+        timestampSource.rememberTimestamp(20L);
+        Assert.assertEquals("Horizon should not be re-read within the refresh interval!",10L,lowWatermark.snapshotHorizon());
+        clock.increment(10*MILLIS);
+        Assert.assertEquals(20L,lowWatermark.snapshotHorizon());
+
+        timestampSource.rememberTimestamp(5L);
+        clock.increment(10*MILLIS);
+        Assert.assertEquals("Horizon should never move back!",20L,lowWatermark.snapshotHorizon());
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private Txn newTransaction() throws Exception{
+        long beginTs=timestampSource.nextTimestamp();
+        Txn txn=txn(beginTs,Txn.IsolationLevel.SNAPSHOT_ISOLATION,Txn.ROOT_TRANSACTION);
+        txnStore.recordNewTransaction(txn);
+        return txn;
+    }
+
+    private static Txn txn(long beginTs,Txn.IsolationLevel isolationLevel,TxnView parent){
+        return new WritableTxn(beginTs,beginTs,isolationLevel,parent,mock(TxnLifecycleManager.class),false,null);
+    }
+}
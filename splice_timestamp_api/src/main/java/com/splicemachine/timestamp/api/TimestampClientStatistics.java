@@ -30,5 +30,13 @@ public interface TimestampClientStatistics{
 	long getNumberTimestampRequests();
 	
  	double getAvgTimestampRequestDuration();
+
+	/**
+	 * @return the number of requests actually sent to the timestamp server. Concurrent
+	 * timestamp requests are coalesced, so this is at most {@link #getNumberTimestampRequests()}.
+	 */
+	long getNumberTimestampBatches();
+
+	double getAvgTimestampBatchSize();
 	
 }
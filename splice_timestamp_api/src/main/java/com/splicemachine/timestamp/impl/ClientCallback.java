@@ -22,7 +22,7 @@ import java.util.concurrent.TimeUnit;
 
 public class ClientCallback implements Callback {
 
-    private final short _callerId;
+    private volatile short _callerId;
     private volatile long _newTimestamp = -1l;
     private Exception _e = null;
     private CountDownLatch _latch = new CountDownLatch(1);
@@ -34,6 +34,10 @@ public class ClientCallback implements Callback {
     public short getCallerId() {
     	return _callerId;
     }
+
+    void setCallerId(short callerId) {
+        _callerId = callerId;
+    }
     
     public Exception getException() {
        return _e;
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import com.splicemachine.timestamp.api.Callback;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single request to the {@link TimestampServer} made on behalf of several
+ * concurrent callers.
+ * <p>
+ * The server responds with the first timestamp of a contiguous range of {@link #size()}
+ * timestamps, and each caller is handed one timestamp from that range. Since every caller
+ * in the batch was waiting before the request was sent, any assignment of the range to
+ * the callers is consistent with the order in which they asked.
+ */
+class TimestampBatch implements Callback {
+
+    private final short callerId;
+    private final List<ClientCallback> callbacks;
+    private final long sendTimeNanos;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    TimestampBatch(short callerId, List<ClientCallback> callbacks) {
+        this.callerId = callerId;
+        this.callbacks = callbacks;
+        this.sendTimeNanos = System.nanoTime();
+    }
+
+    short getCallerId() {
+        return callerId;
+    }
+
+    int size() {
+        return callbacks.size();
+    }
+
+    long getSendTimeNanos() {
+        return sendTimeNanos;
+    }
+
+    @Override
+    public void complete(long firstTimestamp) {
+        if (!done.compareAndSet(false, true)) return; // already failed or completed
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).complete(firstTimestamp + i);
+        }
+    }
+
+    @Override
+    public void error(Exception e) {
+        if (!done.compareAndSet(false, true)) return; // already failed or completed
+        for (ClientCallback callback : callbacks) {
+            callback.error(e);
+        }
+    }
+
+    public String toString() {
+        return "TimestampBatch (callerId = " + callerId + ", size = " + callbacks.size() + ")";
+    }
+}
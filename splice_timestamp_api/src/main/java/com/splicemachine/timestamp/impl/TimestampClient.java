@@ -17,7 +17,10 @@ package com.splicemachine.timestamp.impl;
 
 import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.ConcurrentHashMap;
@@ -53,6 +56,19 @@ import org.apache.log4j.Logger;
  * For the caller, the invocation of {@link #getNextTimestamp()}
  * is synchronous.
  * <p>
+ * Requests are coalesced: at most one request is outstanding against the server at
+ * a time, and every caller which arrives while it is outstanding is queued. When the response
+ * arrives, all queued callers are sent as a single {@link TimestampBatch}, and the server hands back
+ * a contiguous range of timestamps, one per caller. Under load this reduces the number of round trips
+ * to roughly one per server response time, rather than one per transaction. Only callers which are
+ * already waiting share a batch, so no timestamp is ever handed out that was allocated before its
+ * caller asked for it.
+ * <p>
+ * Ranged requests are negotiated when the client connects: it sends a hello (see
+ * {@link TimestampServer#RANGED_HELLO_ID}), and only sends ranged requests if the server acknowledges it. A server
+ * which predates ranged requests answers the hello with timestamps instead, and the client then falls back to
+ * requesting a single timestamp at a time, so that clients and servers can be upgraded one at a time.
+ * <p>
  * This class should generally not be constructed directly.
  *
  * @author Walt Koetke
@@ -67,19 +83,45 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
     /**
      * Fixed number of bytes in the message we expect to receive back from the server.
      */
-    private static final int FIXED_MSG_RECEIVED_LENGTH = 10; // 2 byte client id + 8 byte timestamp
+    private static final int FIXED_MSG_RECEIVED_LENGTH = 10; // 2 byte client id + 8 byte first timestamp
+
+    /**
+     * Maximum number of callers to coalesce into a single request. The count is sent as an unsigned short.
+     */
+    static final int MAX_BATCH_SIZE = 1024;
 
     private enum State {
         DISCONNECTED, CONNECTING, CONNECTED, SHUTDOWN
     }
 
+    private enum Protocol {
+        /** the server has not yet answered the hello of the current connection */
+        UNKNOWN,
+        /** one timestamp per request */
+        LEGACY,
+        /** one range of timestamps per request */
+        RANGED
+    }
+
     /**
      * A map representing all currently active callers to this TimestampClient
      * waiting for their response.
      */
     private ConcurrentMap<Short, Callback> clientCallbacks = null;
 
+    /**
+     * Callers waiting for a timestamp which have not yet been sent to the server.
+     */
+    private final ConcurrentLinkedQueue<ClientCallback> pendingCallbacks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The batch currently outstanding against the server, or {@code null} if there is none.
+     */
+    private final AtomicReference<TimestampBatch> inFlightBatch = new AtomicReference<>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
     private final AtomicReference<State> state = new AtomicReference<>(State.DISCONNECTED);
+    private volatile Protocol protocol = Protocol.UNKNOWN;
 
     private ClientBootstrap bootstrap;
     private volatile Channel channel;
@@ -102,6 +144,8 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
     // for solid definitions of each metric.
     private AtomicLong numRequests = new AtomicLong(0);
     private AtomicLong totalRequestDuration = new AtomicLong(0);
+    private AtomicLong numBatches = new AtomicLong(0);
+    private AtomicLong totalBatchedRequests = new AtomicLong(0);
     private TimestampHostProvider timestampHostProvider;
 
 
@@ -215,54 +259,32 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
 
         connectIfNeeded();
 
-        short clientCallId = (short) clientCallCounter.getAndIncrement();
-        final ClientCallback callback = new ClientCallback(clientCallId);
-        SpliceLogUtils.debug(LOG, "Starting new client call with id %s", clientCallId);
-
-        // Add this caller (id and callback) to the map of current clients.
-        // If an entry was already present for this caller id, that is a bug,
-        // so throw an exception.
-        if (clientCallbacks.putIfAbsent(clientCallId, callback) != null) {
-            doClientErrorThrow(LOG, "Found existing client callback with caller id %s, so unable to handle new call.", null, clientCallId);
-        }
+        final ClientCallback callback = new ClientCallback((short)-1);
+        pendingCallbacks.add(callback);
+        flushPending();
 
-        try {
-            ChannelBuffer buffer = ChannelBuffers.buffer(2);
-            buffer.writeShort(clientCallId);
-            SpliceLogUtils.trace(LOG, "Writing request message to server for client: %s", callback);
-            ChannelFuture futureWrite = channel.write(buffer);
-            futureWrite.addListener(new ChannelFutureListener() {
-                @Override
-                public void operationComplete(ChannelFuture future) throws Exception {
-                    if (!future.isSuccess()) {
-                        doClientErrorThrow(LOG, "Error writing message from timestamp client to server", future.getCause());
-                    } else {
-                        SpliceLogUtils.trace(LOG, "Request sent. Waiting for response for client: %s", callback);
-                    }
-                }
-            });
-        } catch (Exception e) { // Correct to catch all Exceptions in this case so we can remove client call
-            clientCallbacks.remove(clientCallId);
-            callback.error(e);
-            doClientErrorThrow(LOG, "Exception writing message to timestamp server for client: %s", e, callback);
-        }
-
-        // If we get here, request was successfully sent without exception.
-        // However, we might not have received response yet, so we need to
+        // We might not have received response yet, so we need to
         // wait for that now.
 
         try {
             boolean success = callback.await(timeoutMillis);
             if (!success) {
+                pendingCallbacks.remove(callback);
+                expireStaleBatch();
+                flushPending();
                 doClientErrorThrow(LOG, "Client timed out after %s ms waiting for new timestamp: %s", null, timeoutMillis, callback);
             }
         } catch (InterruptedException e) {
+            pendingCallbacks.remove(callback);
             doClientErrorThrow(LOG, "Interrupted waiting for timestamp client: %s", e, callback);
         }
 
         // If we get here, it should mean the client received the response with the timestamp,
         // which we can fetch now from the callback and send it back to the caller.
 
+        if (callback.getException() != null) {
+            doClientErrorThrow(LOG, "Exception requesting timestamp from server for client: %s", callback.getException(), callback);
+        }
         long timestamp = callback.getNewTimestamp();
         if (timestamp < 0) {
             doClientErrorThrow(LOG, "Invalid timestamp found for client: %s", null, callback);
@@ -277,6 +299,113 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         return timestamp;
     }
 
+    /**
+     * Send all pending callers to the server as a single batch, unless a batch is already outstanding
+     * (in which case the response to that batch will trigger the next flush).
+     */
+    private void flushPending() {
+        while (!pendingCallbacks.isEmpty() && inFlightBatch.get() == null) {
+            if (!flushing.compareAndSet(false, true)) return; // someone else is flushing
+            TimestampBatch batch = null;
+            try {
+                Channel c = channel;
+                if (c == null) return; // will be flushed once we connect
+                Protocol p = protocol;
+                if (p == Protocol.UNKNOWN) return; // will be flushed once the server answers the hello
+                if (inFlightBatch.get() != null) continue; // re-checked once we release the flush
+
+                int maxBatchSize = p == Protocol.RANGED ? MAX_BATCH_SIZE : 1;
+                List<ClientCallback> callbacks = new ArrayList<>();
+                ClientCallback next;
+                while (callbacks.size() < maxBatchSize && (next = pendingCallbacks.poll()) != null) {
+                    callbacks.add(next);
+                }
+                if (callbacks.isEmpty()) continue;
+
+                short clientCallId = nextClientCallId();
+                for (ClientCallback callback : callbacks) {
+                    callback.setCallerId(clientCallId);
+                }
+                batch = new TimestampBatch(clientCallId, callbacks);
+                SpliceLogUtils.debug(LOG, "Starting new client call: %s", batch);
+
+                // Add this batch (id and callback) to the map of current requests.
+                // If an entry was already present for this caller id, that is a bug.
+                if (clientCallbacks.putIfAbsent(clientCallId, batch) != null) {
+                    batch.error(new TimestampIOException("Found existing client callback with caller id " + clientCallId + ", so unable to handle new call."));
+                    continue;
+                }
+                inFlightBatch.set(batch);
+                numBatches.incrementAndGet();
+                totalBatchedRequests.addAndGet(callbacks.size());
+
+                ChannelBuffer buffer;
+                if (p == Protocol.RANGED) {
+                    buffer = ChannelBuffers.buffer(TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
+                    buffer.writeShort(clientCallId);
+                    buffer.writeShort(callbacks.size());
+                } else {
+                    buffer = ChannelBuffers.buffer(TimestampServer.LEGACY_MSG_RECEIVED_LENGTH);
+                    buffer.writeShort(clientCallId);
+                }
+                SpliceLogUtils.trace(LOG, "Writing request message to server for client: %s", batch);
+                final TimestampBatch sent = batch;
+                ChannelFuture futureWrite = c.write(buffer);
+                futureWrite.addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        if (!future.isSuccess()) {
+                            failBatch(sent, new TimestampIOException("Error writing message from timestamp client to server", future.getCause()));
+                        } else {
+                            SpliceLogUtils.trace(LOG, "Request sent. Waiting for response for client: %s", sent);
+                        }
+                    }
+                });
+            } catch (Exception e) { // Correct to catch all Exceptions in this case so we can remove client call
+                if (batch != null)
+                    failBatch(batch, e);
+                SpliceLogUtils.error(LOG, "Exception writing message to timestamp server for client: %s", e, batch);
+            } finally {
+                flushing.set(false);
+            }
+        }
+    }
+
+    private short nextClientCallId() {
+        short id;
+        do {
+            id = (short) clientCallCounter.getAndIncrement();
+        } while (id == TimestampServer.RANGED_HELLO_ID); // reserved for the hello
+        return id;
+    }
+
+    private void sendHello(Channel c) {
+        ChannelBuffer buffer = ChannelBuffers.buffer(TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
+        buffer.writeShort(TimestampServer.RANGED_HELLO_ID);
+        buffer.writeShort(TimestampServer.RANGED_HELLO_ID);
+        c.write(buffer);
+    }
+
+    /**
+     * Fail a batch which has been outstanding for longer than the client timeout, so that
+     * subsequent callers are not stuck behind a response which will never arrive.
+     */
+    private void expireStaleBatch() {
+        TimestampBatch batch = inFlightBatch.get();
+        if (batch == null) return;
+        long age = System.nanoTime() - batch.getSendTimeNanos();
+        if (age >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+            failBatch(batch, new TimestampIOException("Timed out waiting for response to " + batch));
+        }
+    }
+
+    private void failBatch(TimestampBatch batch, Exception e) {
+        clientCallbacks.remove(batch.getCallerId(), batch);
+        inFlightBatch.compareAndSet(batch, null);
+        batch.error(e);
+        flushPending();
+    }
+
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
         ChannelBuffer buf = (ChannelBuffer) e.getMessage();
@@ -287,19 +416,33 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         ensureReadableBytes(buf, 8);
 
         long timestamp = buf.readLong();
-        assert (timestamp > 0);
         ensureReadableBytes(buf, 0);
 
+        if (clientCallerId == TimestampServer.RANGED_HELLO_ID) {
+            // an older server answers the hello twice, with timestamps; only the first answer counts
+            if (protocol == Protocol.UNKNOWN) {
+                protocol = timestamp == TimestampServer.RANGED_HELLO_ACK ? Protocol.RANGED : Protocol.LEGACY;
+                SpliceLogUtils.info(LOG, "Timestamp server %s ranged requests", protocol == Protocol.RANGED ? "accepts" : "does not accept");
+                flushPending();
+            }
+            super.messageReceived(ctx, e);
+            return;
+        }
+
+        assert (timestamp > 0);
         SpliceLogUtils.debug(LOG, "Response from server: clientCallerId = %s, timestamp = %s", clientCallerId, timestamp);
         Callback cb = clientCallbacks.remove(clientCallerId);
         if (cb == null) {
-            doClientErrorThrow(LOG, "Client callback with id %s not found, so unable to deliver timestamp %s", null, clientCallerId, timestamp);
+            // the batch was expired before the server responded; its callers have already been failed
+            SpliceLogUtils.warn(LOG, "Client callback with id %s not found, so unable to deliver timestamp %s", clientCallerId, timestamp);
+        } else {
+            // This releases the latches the original client threads are waiting for
+            // (to provide the synchronous behavior for those callers) and also
+            // provides the timestamps.
+            inFlightBatch.compareAndSet((TimestampBatch) cb, null);
+            cb.complete(timestamp);
         }
-
-        // This releases the latch the original client thread is waiting for
-        // (to provide the synchronous behavior for that caller) and also
-        // provides the timestamp.
-        cb.complete(timestamp);
+        flushPending();
 
         super.messageReceived(ctx, e);
     }
@@ -308,7 +451,9 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
     public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
         SpliceLogUtils.info(LOG, "Successfully connected to server");
         channel = e.getChannel();
+        protocol = Protocol.UNKNOWN;
         state.set(State.CONNECTED);
+        sendHello(channel);
         super.channelConnected(ctx, e);
     }
 
@@ -320,8 +465,13 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
             State s = state.get();
             if(s==State.SHUTDOWN) return; //ignore shut down errors
             channel=null;
+            protocol = Protocol.UNKNOWN;
             shouldContinue = !state.compareAndSet(s,State.DISCONNECTED);
         }while(shouldContinue);
+        // any outstanding request will never be answered, so fail it rather than waiting for the timeout
+        TimestampBatch batch = inFlightBatch.get();
+        if (batch != null)
+            failBatch(batch, new TimestampIOException("TimestampClient was disconnected from the server"));
         connectIfNeeded();
     }
 
@@ -353,6 +503,18 @@ public class TimestampClient extends TimestampBaseHandler implements TimestampCl
         return a / b;
     }
 
+    @Override
+    public long getNumberTimestampBatches() {
+        return numBatches.get();
+    }
+
+    @Override
+    public double getAvgTimestampBatchSize() {
+        long b = numBatches.get();
+        if (b == 0) return 0d; // no batches sent yet
+        return (double) totalBatchedRequests.get() / b;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
         if(state.get() != State.SHUTDOWN) {
@@ -88,13 +88,28 @@ public class TimestampOracle implements TimestampOracleStatistics{
     }
 
 	public long getNextTimestamp() throws TimestampIOException {
-		long nextTS = _timestampCounter.getAndIncrement();
+		return getNextTimestamps(1);
+	}
+
+	/**
+	 * Allocate a contiguous range of timestamps.
+	 *
+	 * @param count the number of timestamps to allocate. Must be positive.
+	 * @return the first timestamp in the range; the caller owns {@code [first, first+count)}.
+	 * @throws TimestampIOException if a new block could not be reserved
+	 */
+	public long getNextTimestamps(int count) throws TimestampIOException {
+		assert count > 0 : "Cannot allocate "+count+" timestamps";
+		long firstTS = _timestampCounter.getAndAdd(count);
+		long lastTS = firstTS + count - 1;
 		long maxTS = _maxReservedTimestamp; // avoid the double volatile read
-		if (nextTS > maxTS) {
+		while (lastTS > maxTS) {
+			// a large range may span more than one block
 			reserveNextBlock(maxTS);
+			maxTS = _maxReservedTimestamp;
 		}
-		_numTimestampsCreated.incrementAndGet(); // JMX metric
-		return nextTS;
+		_numTimestampsCreated.addAndGet(count); // JMX metric
+		return firstTS;
 	}
 
     private void reserveNextBlock(long priorMaxReservedTimestamp) throws TimestampIOException {
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+
+/**
+ * Frames the requests of a single connection to the {@link TimestampServer}.
+ * <p>
+ * A connection which opens with the ranged hello (see {@link TimestampServer#RANGED_HELLO_ID}) carries
+ * ranged requests of {@link TimestampServer#FIXED_MSG_RECEIVED_LENGTH} bytes; any other connection comes from
+ * a client which predates them, and carries requests of {@link TimestampServer#LEGACY_MSG_RECEIVED_LENGTH} bytes.
+ * (An older client whose first request happens to use the hello id is only answered once it sends a second
+ * request, since until then the two cannot be told apart.)
+ * <p>
+ * The decoder holds the state of its connection, so each channel pipeline needs its own instance.
+ */
+class TimestampRequestDecoder extends FrameDecoder {
+    private Boolean ranged; // null until the first request has been seen
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (ranged == null) {
+            if (buffer.readableBytes() < TimestampServer.LEGACY_MSG_RECEIVED_LENGTH) return null;
+            if (buffer.getShort(buffer.readerIndex()) != TimestampServer.RANGED_HELLO_ID) {
+                ranged = false;
+            } else {
+                if (buffer.readableBytes() < TimestampServer.FIXED_MSG_RECEIVED_LENGTH) return null;
+                ranged = buffer.getShort(buffer.readerIndex() + 2) == TimestampServer.RANGED_HELLO_ID;
+            }
+        }
+        int length = ranged ? TimestampServer.FIXED_MSG_RECEIVED_LENGTH : TimestampServer.LEGACY_MSG_RECEIVED_LENGTH;
+        if (buffer.readableBytes() < length) return null;
+        return buffer.readBytes(length);
+    }
+}
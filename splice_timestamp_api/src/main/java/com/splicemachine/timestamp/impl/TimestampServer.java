@@ -32,14 +32,31 @@ public class TimestampServer {
     private static final Logger LOG = Logger.getLogger(TimestampServer.class);
 
     /**
-     * Fixed number of bytes in the message we expect to receive from the client.
+     * Number of bytes in a request for a single timestamp, as sent by clients which predate ranged requests.
      */
-    static final int FIXED_MSG_RECEIVED_LENGTH = 2; // 2 byte client id
+    static final int LEGACY_MSG_RECEIVED_LENGTH = 2; // 2 byte client id
+
+    /**
+     * Number of bytes in a ranged request, which clients only send once the server has acknowledged their hello.
+     */
+    static final int FIXED_MSG_RECEIVED_LENGTH = 4; // 2 byte client id + 2 byte timestamp count
 
     /**
      * Fixed number of bytes in the message we expect to send back to the client.
      */
-    static final int FIXED_MSG_SENT_LENGTH = 10; // 2 byte client id + 8 byte timestamp
+    static final int FIXED_MSG_SENT_LENGTH = 10; // 2 byte client id + 8 byte first timestamp of the range
+
+    /**
+     * A client which sends ranged requests opens each connection with a hello of this id, twice. Older clients
+     * never send the same id twice in a row. Servers which understand ranged requests answer it with
+     * {@link #RANGED_HELLO_ACK}; older servers answer it as two requests for a timestamp.
+     */
+    static final short RANGED_HELLO_ID = (short) 0x5453;
+
+    /**
+     * Sent in place of a timestamp in the response to a hello. It is never a valid timestamp.
+     */
+    static final long RANGED_HELLO_ACK = -1L;
 
     private int port;
     private ChannelFactory factory;
@@ -57,24 +57,43 @@ public class TimestampServerHandler extends TimestampBaseHandler {
 
         ChannelBuffer buf = (ChannelBuffer) e.getMessage();
         assert buf != null;
-        ensureReadableBytes(buf, TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
 
-        final short callerId = buf.readShort();
+        final short callerId;
+        int count;
+        if (buf.readableBytes() == TimestampServer.LEGACY_MSG_RECEIVED_LENGTH) {
+            // a client which predates ranged requests
+            callerId = buf.readShort();
+            count = 1;
+        } else {
+            ensureReadableBytes(buf, TimestampServer.FIXED_MSG_RECEIVED_LENGTH);
+            callerId = buf.readShort();
+            count = buf.readUnsignedShort();
+            if (callerId == TimestampServer.RANGED_HELLO_ID && (short) count == TimestampServer.RANGED_HELLO_ID) {
+                SpliceLogUtils.debug(LOG, "Acknowledging ranged requests from client");
+                respond(e, callerId, TimestampServer.RANGED_HELLO_ACK);
+                super.messageReceived(ctx, e);
+                return;
+            }
+        }
         ensureReadableBytes(buf, 0);
+        if (count <= 0) {
+            throw new TimestampIOException("Invalid timestamp count " + count + " requested by caller id " + callerId);
+        }
 
-        SpliceLogUtils.trace(LOG, "Received timestamp request from client. Caller id = %s", callerId);
-        long nextTimestamp = oracle.getNextTimestamp();
+        SpliceLogUtils.trace(LOG, "Received timestamp request from client. Caller id = %s, count = %s", callerId, count);
+        long nextTimestamp = oracle.getNextTimestamps(count);
         assert nextTimestamp > 0;
 
+        SpliceLogUtils.debug(LOG, "Responding to caller %s with timestamps [%s,%s)", callerId, nextTimestamp, nextTimestamp + count);
+        respond(e, callerId, nextTimestamp);
 
-        //
-        // Respond to the client
-        //
+        super.messageReceived(ctx, e);
+    }
 
+    private void respond(MessageEvent e, final short callerId, long timestamp) {
         ChannelBuffer writeBuf = ChannelBuffers.buffer(TimestampServer.FIXED_MSG_SENT_LENGTH);
         writeBuf.writeShort(callerId);
-        writeBuf.writeLong(nextTimestamp);
-        SpliceLogUtils.debug(LOG, "Responding to caller %s with timestamp %s", callerId, nextTimestamp);
+        writeBuf.writeLong(timestamp);
         ChannelFuture futureResponse = e.getChannel().write(writeBuf); // Could also use Channels.write
         futureResponse.addListener(new ChannelFutureListener() {
                                        @Override
@@ -86,8 +105,6 @@ public class TimestampServerHandler extends TimestampBaseHandler {
                                        }
                                    }
         );
-
-        super.messageReceived(ctx, e);
     }
 
     protected void doError(String message, Throwable t, Object... args) {
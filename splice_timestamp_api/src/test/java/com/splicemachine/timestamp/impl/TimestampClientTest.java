@@ -0,0 +1,276 @@
+/*
+ * Copyright 2012 - 2016 Splice Machine, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.splicemachine.timestamp.impl;
+
+import com.splicemachine.timestamp.api.TimestampBlockManager;
+import com.splicemachine.timestamp.api.TimestampHostProvider;
+import com.splicemachine.timestamp.api.TimestampIOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TimestampClientTest {
+
+    @Test
+    public void testAverageBatchSizeIsZeroBeforeFirstBatch() throws Exception {
+        TimestampClient client = new TimestampClient(1000, hostProvider(freePort()));
+        try {
+            Assert.assertEquals("Incorrect number of batches!", 0L, client.getNumberTimestampBatches());
+            Assert.assertEquals("Average batch size should be zero before any batch is sent!", 0d, client.getAvgTimestampBatchSize(), 0d);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsAreBatched() throws Exception {
+        int port = freePort();
+        TimestampServer server = new TimestampServer(port, new InMemoryBlockManager(), 1000);
+        server.startServer();
+        final TimestampClient client = new TimestampClient(10000, hostProvider(port));
+        int threads = 16;
+        final int requestsPerThread = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<long[]>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        start.await();
+                        long[] timestamps = new long[requestsPerThread];
+                        for (int j = 0; j < requestsPerThread; j++) {
+                            timestamps[j] = client.getNextTimestamp();
+                        }
+                        return timestamps;
+                    }
+                }));
+            }
+            start.countDown();
+
+            Set<Long> seen = new HashSet<>();
+            for (Future<long[]> future : futures) {
+                long[] timestamps = future.get();
+                for (int j = 0; j < timestamps.length; j++) {
+                    Assert.assertTrue("Timestamp " + timestamps[j] + " was handed out twice!", seen.add(timestamps[j]));
+                    if (j > 0)
+                        Assert.assertTrue("Timestamps are not increasing for a single caller!", timestamps[j] > timestamps[j - 1]);
+                }
+            }
+            long requests = (long) threads * requestsPerThread;
+            Assert.assertEquals("Incorrect number of requests!", requests, client.getNumberTimestampRequests());
+            Assert.assertTrue("Sent more batches than requests!", client.getNumberTimestampBatches() <= requests);
+            Assert.assertEquals("Average batch size does not match the batch count!",
+                    (double) requests / client.getNumberTimestampBatches(), client.getAvgTimestampBatchSize(), 1e-9);
+        } finally {
+            executor.shutdownNow();
+            client.shutdown();
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsAllFailWhenServerDoesNotRespond() throws Exception {
+        // accepts connections but never answers, so every outstanding batch must time out
+        final ServerSocket silentServer = new ServerSocket(0);
+        final List<Socket> accepted = new ArrayList<>();
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = silentServer.accept();
+                        synchronized (accepted) {
+                            accepted.add(socket);
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // server socket closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        final TimestampClient client = new TimestampClient(500, hostProvider(silentServer.getLocalPort()));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        start.await();
+                        return client.getNextTimestamp();
+                    }
+                }));
+            }
+            start.countDown();
+
+            for (Future<Long> future : futures) {
+                try {
+                    future.get();
+                    Assert.fail("Received a timestamp from a server which never responds!");
+                } catch (ExecutionException ee) {
+                    Assert.assertTrue("Unexpected error: " + ee.getCause(), ee.getCause() instanceof TimestampIOException);
+                }
+            }
+            Assert.assertEquals("Failed requests should not be counted!", 0L, client.getNumberTimestampRequests());
+        } finally {
+            executor.shutdownNow();
+            client.shutdown();
+            silentServer.close();
+            synchronized (accepted) {
+                for (Socket socket : accepted) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testServerAnswersRequestsFromLegacyClients() throws Exception {
+        int port = freePort();
+        TimestampServer server = new TimestampServer(port, new InMemoryBlockManager(), 1000);
+        server.startServer();
+        try (Socket socket = new Socket("localhost", port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            long last = 0L;
+            for (short id = 100; id < 105; id++) {
+                // a client which predates ranged requests sends only its caller id
+                out.writeShort(id);
+                out.flush();
+                Assert.assertEquals("Incorrect caller id in the response!", id, in.readShort());
+                long timestamp = in.readLong();
+                Assert.assertTrue("Timestamps are not increasing!", timestamp > last);
+                last = timestamp;
+            }
+        } finally {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testClientFallsBackToSingleRequestsWithLegacyServer() throws Exception {
+        final ServerSocket legacyServer = new ServerSocket(0);
+        Thread responder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = legacyServer.accept()) {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    long next = 1L;
+                    while (true) {
+                        // a server which predates ranged requests reads a 2 byte caller id, and answers with one timestamp
+                        short id = in.readShort();
+                        out.writeShort(id);
+                        out.writeLong(next++);
+                        out.flush();
+                    }
+                } catch (IOException ignored) {
+                    // client disconnected
+                }
+            }
+        });
+        responder.setDaemon(true);
+        responder.start();
+
+        final TimestampClient client = new TimestampClient(10000, hostProvider(legacyServer.getLocalPort()));
+        int threads = 4;
+        final int requestsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        long[] timestamps = new long[requestsPerThread];
+                        for (int j = 0; j < requestsPerThread; j++) {
+                            timestamps[j] = client.getNextTimestamp();
+                        }
+                        return timestamps;
+                    }
+                }));
+            }
+            Set<Long> seen = new HashSet<>();
+            for (Future<long[]> future : futures) {
+                for (long timestamp : future.get()) {
+                    Assert.assertTrue("Timestamp " + timestamp + " was handed out twice!", seen.add(timestamp));
+                }
+            }
+            long requests = (long) threads * requestsPerThread;
+            Assert.assertEquals("Incorrect number of requests!", requests, client.getNumberTimestampRequests());
+            Assert.assertEquals("Sent a ranged request to a legacy server!", requests, client.getNumberTimestampBatches());
+        } finally {
+            executor.shutdownNow();
+            client.shutdown();
+            legacyServer.close();
+        }
+    }
+
+    /* ****************************************************************************************************************/
+    /*private helper methods*/
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static TimestampHostProvider hostProvider(final int port) {
+        return new TimestampHostProvider() {
+            @Override
+            public String getHost() throws TimestampIOException {
+                return "localhost";
+            }
+
+            @Override
+            public int getPort() {
+                return port;
+            }
+        };
+    }
+
+    private static class InMemoryBlockManager implements TimestampBlockManager {
+        @Override
+        public void reserveNextBlock(long currentMaxReserved) throws TimestampIOException {
+        }
+
+        @Override
+        public long initialize() throws TimestampIOException {
+            return 0L;
+        }
+    }
+}